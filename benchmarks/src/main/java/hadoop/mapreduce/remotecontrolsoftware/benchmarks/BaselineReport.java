@@ -0,0 +1,145 @@
+package hadoop.mapreduce.remotecontrolsoftware.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compare deux bilans de bancs d’essai au format CSV de JMH ({@code -rf csv -rff <fichier>}), typiquement
+ * celui de la version précédente ({@code benchmarks/baselines/}) et celui de la version en cours.
+ * Chaque mesure est identifiée par son banc d’essai, son mode, ses threads et ses paramètres ; un écart
+ * n’est signalé que s’il dépasse les marges d’erreur des deux mesures réunies.
+ * <p>
+ * Usage : {@code java -cp benchmarks/target/benchmarks.jar hadoop.mapreduce.remotecontrolsoftware.benchmarks.BaselineReport
+ * <référence.csv> <nouveau.csv>}. Code de sortie 1 si une mesure s’est dégradée.
+ */
+public final class BaselineReport {
+
+    /**
+     * Une ligne du bilan de JMH.
+     */
+    private static final class Score {
+        private final String mode; // thrpt, avgt, sample ou ss
+        private final double value; // Score
+        private final double error; // Marge d’erreur à 99,9 % (0 si inconnue)
+        private final String unit; // Unité du score
+
+        Score(String mode, double value, double error, String unit) {
+            this.mode = mode;
+            this.value = value;
+            this.error = Double.isNaN(error) ? 0 : error; // Une seule mesure : pas de marge
+            this.unit = unit;
+        }
+
+        /**
+         * @return true si un score plus élevé est meilleur (débit), false pour les durées
+         */
+        boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    private BaselineReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage : BaselineReport <référence.csv> <nouveau.csv>");
+            System.exit(2);
+        }
+        Map<String, Score> before = read(Paths.get(args[0]));
+        Map<String, Score> after = read(Paths.get(args[1]));
+        boolean regressed = false;
+        System.out.printf(Locale.ROOT, "%-70s %14s %14s %9s  %s%n", "Mesure", "Référence", "Nouveau", "Écart", "Verdict");
+        for (Map.Entry<String, Score> entry : after.entrySet()) {
+            Score now = entry.getValue();
+            Score then = before.get(entry.getKey());
+            if (then == null || !then.unit.equals(now.unit)) {
+                System.out.printf(Locale.ROOT, "%-70s %14s %14.3f %9s  %s%n", entry.getKey(), "-", now.value, "", "nouvelle");
+                continue;
+            }
+            double change = then.value == 0 ? 0 : (now.value - then.value) / then.value * 100;
+            String verdict;
+            if (Math.abs(now.value - then.value) <= then.error + now.error) { // Écart dans le bruit de mesure
+                verdict = "inchangée";
+            } else if ((now.value > then.value) == now.higherIsBetter()) {
+                verdict = "meilleure";
+            } else {
+                verdict = "DÉGRADÉE";
+                regressed = true;
+            }
+            System.out.printf(Locale.ROOT, "%-70s %14.3f %14.3f %+8.1f%%  %s (%s)%n", entry.getKey(), then.value,
+                    now.value, change, verdict, now.unit);
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key)) {
+                System.out.printf(Locale.ROOT, "%-70s %14.3f %14s %9s  %s%n", key, before.get(key).value, "-", "",
+                        "disparue");
+            }
+        }
+        System.exit(regressed ? 1 : 0);
+    }
+
+    /**
+     * @param file Un bilan CSV de JMH
+     * @return Ses scores par mesure (banc d’essai, mode, threads et paramètres), dans l’ordre du fichier
+     * @throws IOException Si le fichier est illisible
+     */
+    private static Map<String, Score> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            throw new IOException("Bilan vide : " + file);
+        }
+        List<String> header = fields(lines.get(0));
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> values = fields(line);
+            StringBuilder key = new StringBuilder(shortName(values.get(0))); // Banc d’essai sans le paquetage
+            key.append(' ').append(values.get(1));
+            if (!"1".equals(values.get(2))) {
+                key.append(" t=").append(values.get(2));
+            }
+            for (int i = 7; i < values.size() && i < header.size(); i++) { // Colonnes "Param: x"
+                if (!values.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).replace("Param: ", "")).append('=').append(values.get(i));
+                }
+            }
+            scores.put(key.toString(), new Score(values.get(1), Double.parseDouble(values.get(4)),
+                    Double.parseDouble(values.get(5)), values.get(6)));
+        }
+        return scores;
+    }
+
+    /**
+     * @param benchmark Nom complet d’un banc d’essai
+     * @return Classe et méthode seulement
+     */
+    private static String shortName(String benchmark) {
+        int method = benchmark.lastIndexOf('.');
+        int type = benchmark.lastIndexOf('.', method - 1);
+        return benchmark.substring(type + 1);
+    }
+
+    /**
+     * @param line Une ligne CSV (champs éventuellement entre guillemets, sans virgule à l’intérieur)
+     * @return Ses champs, sans guillemets
+     */
+    private static List<String> fields(String line) {
+        List<String> fields = new ArrayList<>();
+        for (String field : line.split(",", -1)) {
+            fields.add(field.length() >= 2 && field.startsWith("\"") && field.endsWith("\"")
+                    ? field.substring(1, field.length() - 1) : field);
+        }
+        return fields;
+    }
+}
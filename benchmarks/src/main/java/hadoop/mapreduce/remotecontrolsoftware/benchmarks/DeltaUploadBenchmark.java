@@ -0,0 +1,104 @@
+package hadoop.mapreduce.remotecontrolsoftware.benchmarks;
+
+import hadoop.mapreduce.remotecontrolsoftware.client.RemoteClient;
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envoi d’un fichier déjà présent sur le serveur, de bout en bout (découpage, transfert, vérification SHA-256
+ * et publication) : upload reprenable ({@code put}, tout le fichier) contre upload par différence ({@code sync},
+ * seuls les morceaux absents du serveur). Avec {@code change=edited}, chaque envoi alterne entre deux versions
+ * du fichier qui diffèrent par 100 octets insérés et 4 Kio modifiés.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeltaUploadBenchmark {
+    private static final int MEBIBYTES = 32; // Taille du fichier envoyé
+    private static final String NAME = "bench-delta.bin"; // Nom du fichier sur le serveur
+    private static final Path RECEIVED = Paths.get("received_" + NAME); // Fichier écrit par le serveur
+
+    @Param({"NIO"})
+    public ServerConfig.IoMode io; // Modèle d’entrées/sorties du serveur
+
+    @Param({"put", "sync"})
+    public String mode; // Upload reprenable ou par différence
+
+    @Param({"unchanged", "edited"})
+    public String change; // Même fichier à chaque envoi, ou deux versions en alternance
+
+    private LoopbackServer server; // Serveur mesuré
+    private RemoteClient client; // Connexion authentifiée
+    private Path directory; // Versions du fichier
+    private Path[] versions; // Fichiers envoyés tour à tour
+    private int next; // Prochaine version envoyée
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        byte[] original = new byte[MEBIBYTES * 1024 * 1024];
+        new Random(42).nextBytes(original); // Ni compressible ni répétitif
+        byte[] edited = new byte[original.length + 100];
+        int insert = original.length / 3;
+        System.arraycopy(original, 0, edited, 0, insert);
+        System.arraycopy(original, insert, edited, insert + 100, original.length - insert); // 100 octets insérés
+        for (int i = 0; i < 4096; i++) {
+            edited[edited.length * 2 / 3 + i] ^= 0x55; // 4 Kio modifiés
+        }
+        directory = Files.createTempDirectory("rcs-delta");
+        Path first = Files.write(Files.createDirectory(directory.resolve("v1")).resolve(NAME), original);
+        versions = "edited".equals(change)
+                ? new Path[]{first, Files.write(Files.createDirectory(directory.resolve("v2")).resolve(NAME), edited)}
+                : new Path[]{first}; // Même nom : le serveur reçoit chaque fois received_bench-delta.bin
+        server = new LoopbackServer(io, ServerConfig.ShellMode.FORK);
+        client = RemoteClient.connect("127.0.0.1", server.port(), "bouba", "passer").get();
+        client.uploadDelta(versions[versions.length - 1]).get(); // Version précédente présente et indexée
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        client.close();
+        server.close();
+        for (Path version : versions) {
+            Files.deleteIfExists(version);
+            Files.deleteIfExists(version.getParent());
+        }
+        Files.deleteIfExists(directory);
+        Files.deleteIfExists(RECEIVED);
+        Files.deleteIfExists(Paths.get(RECEIVED + ".chunks"));
+    }
+
+    /**
+     * Envoie la version suivante et attend sa vérification par le serveur.
+     */
+    @Benchmark
+    public void upload() throws Exception {
+        Path file = versions[next];
+        next = (next + 1) % versions.length;
+        if ("sync".equals(mode)) {
+            client.uploadDelta(file).get();
+        } else {
+            client.upload(file).get();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package hadoop.mapreduce.remotecontrolsoftware.benchmarks;
+
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Établissement d’une connexion : TCP, négociation TLS avec le certificat de {@code server.keystore},
+ * puis demande de login du serveur. Sans reprise, la session TLS est invalidée après chaque connexion :
+ * chaque négociation est complète (échange de clés et vérification du certificat).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandshakeBenchmark {
+    @Param({"NIO", "BLOCKING"})
+    public ServerConfig.IoMode io; // Modèle d’entrées/sorties du serveur
+
+    @Param({"false", "true"})
+    public boolean resumed; // Reprise de la session TLS précédente
+
+    private LoopbackServer server; // Serveur mesuré
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        server = new LoopbackServer(io, ServerConfig.ShellMode.FORK);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        server.close();
+    }
+
+    /**
+     * Ouvre une connexion jusqu’à la demande de login, puis la ferme.
+     */
+    @Benchmark
+    public void connect() throws IOException {
+        try (TextSession session = server.connect()) {
+            if (!resumed) {
+                session.tlsSession().invalidate(); // La connexion suivante refait une négociation complète
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package hadoop.mapreduce.remotecontrolsoftware.benchmarks;
+
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerConfig;
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerCore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût d’un appel à {@link ServerCore#log(String)} pour la session qui journalise : dépôt dans l’anneau
+ * du journal, l’écriture du fichier restant au thread {@code rcs-logger}. Quand l’écriture ne suit pas,
+ * les entrées en trop sont perdues : le score inclut alors le coût d’une perte, jamais celui d’une attente.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogBenchmark {
+    private ServerCore server; // Serveur non démarré : seul le journal travaille
+    private Path logFile; // Journal, supprimé à la fin
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        logFile = Files.createTempFile("rcs-bench", ".txt");
+        server = new ServerCore(new ServerConfig().metricsPort(0).logFile(logFile));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        server.close();
+        Files.deleteIfExists(logFile);
+    }
+
+    /**
+     * Une session journalise seule.
+     */
+    @Benchmark
+    @Threads(1)
+    public void log() {
+        server.log("Commande reçue de 127.0.0.1 : echo bench");
+    }
+
+    /**
+     * Quatre sessions journalisent en même temps.
+     */
+    @Benchmark
+    @Threads(4)
+    public void logContended() {
+        server.log("Commande reçue de 127.0.0.1 : echo bench");
+    }
+}
@@ -0,0 +1,129 @@
+package hadoop.mapreduce.remotecontrolsoftware.benchmarks;
+
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerConfig;
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerCore;
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerListener;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Serveur réel démarré dans le JVM du banc d’essai, sur un port libre de l’adresse de boucle locale,
+ * avec le certificat de {@code server.keystore} : les mesures traversent TLS, l’accepteur et
+ * {@code ClientHandler} comme pour un vrai client. Le journal va dans un répertoire temporaire.
+ * <p>
+ * Comme le serveur lui-même, le banc d’essai doit être lancé depuis la racine du projet,
+ * là où se trouve {@code server.keystore}.
+ */
+final class LoopbackServer implements AutoCloseable {
+    static final Path KEYSTORE = Paths.get("server.keystore"); // Chemin utilisé par ServerCore
+    private static final char[] KEYSTORE_PASSWORD = "password".toCharArray(); // Mot de passe du keystore
+
+    private final ServerCore server; // Serveur mesuré
+    private final Path logDirectory; // Journal du serveur, supprimé à la fermeture
+    private final SSLContext clientContext; // Contexte des clients, propre à ce serveur (cache de sessions TLS compris)
+    private final int port; // Port choisi par le système
+
+    /**
+     * Démarre le serveur.
+     * @param ioMode Modèle d’entrées/sorties
+     * @param shellMode Lancement des commandes (un processus par commande ou interpréteur persistant)
+     * @throws IOException Si le serveur ne démarre pas
+     */
+    LoopbackServer(ServerConfig.IoMode ioMode, ServerConfig.ShellMode shellMode) throws IOException {
+        if (!Files.isReadable(KEYSTORE)) {
+            throw new IllegalStateException("server.keystore introuvable : lancez le banc d’essai depuis la racine du projet");
+        }
+        logDirectory = Files.createTempDirectory("rcs-bench");
+        clientContext = trustingKeystore();
+        server = new ServerCore(new ServerConfig()
+                .port(0) // Port libre
+                .ioMode(ioMode)
+                .shellMode(shellMode)
+                .metricsPort(0) // Pas de point d’accès HTTP pendant les mesures
+                .logFile(logDirectory.resolve("server_log.txt")));
+        AtomicInteger opened = new AtomicInteger(); // Port annoncé au démarrage
+        server.addListener(new ServerListener() {
+            @Override
+            public void onServerStarted(int port) {
+                opened.set(port);
+            }
+        });
+        if (!server.start()) {
+            server.close();
+            throw new IOException("Le serveur n’a pas démarré (voir " + logDirectory + ")");
+        }
+        port = opened.get();
+    }
+
+    /**
+     * @return Le serveur mesuré
+     */
+    ServerCore server() {
+        return server;
+    }
+
+    /**
+     * @return Une fabrique de sockets qui fait confiance au certificat du serveur
+     */
+    SSLSocketFactory socketFactory() {
+        return clientContext.getSocketFactory();
+    }
+
+    /**
+     * @return Une nouvelle session texte, négociation TLS terminée et demande de login lue
+     * @throws IOException Si la connexion échoue
+     */
+    TextSession connect() throws IOException {
+        return TextSession.connect(socketFactory(), port);
+    }
+
+    /**
+     * @return Le port d’écoute
+     */
+    int port() {
+        return port;
+    }
+
+    /**
+     * Arrête le serveur et supprime son journal.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close(); // Arrête le serveur et vide le journal
+        try (Stream<Path> files = Files.walk(logDirectory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * @return Un contexte TLS dont le magasin de confiance est le keystore du serveur
+     * @throws IOException Si le keystore est illisible
+     */
+    private static SSLContext trustingKeystore() throws IOException {
+        try (InputStream input = Files.newInputStream(KEYSTORE)) {
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(input, KEYSTORE_PASSWORD);
+            TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trust.init(keyStore);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, trust.getTrustManagers(), null);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Keystore illisible : " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package hadoop.mapreduce.remotecontrolsoftware.benchmarks;
+
+import hadoop.mapreduce.remotecontrolsoftware.client.FramedConnection;
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reconnexion d’un client au protocole binaire ({@link FramedConnection}), jusqu’à la session authentifiée :
+ * TCP, négociation TLS, passage au protocole binaire, négociation de la compression, puis identifiants
+ * ou jeton de session. Sans reprise, la session TLS est invalidée après chaque connexion.
+ * La combinaison {@code resumed=false, auth=password} est le coût d’une connexion avant les jetons.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReconnectBenchmark {
+    @Param({"NIO", "BLOCKING"})
+    public ServerConfig.IoMode io; // Modèle d’entrées/sorties du serveur
+
+    @Param({"false", "true"})
+    public boolean resumed; // Reprise de la session TLS précédente
+
+    @Param({"password", "token"})
+    public String auth; // Identifiants ou jeton de session
+
+    private LoopbackServer server; // Serveur mesuré
+    private String token; // Jeton remis à la première connexion
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        server = new LoopbackServer(io, ServerConfig.ShellMode.FORK);
+        try (FramedConnection first = new FramedConnection("127.0.0.1", server.port(), cause -> { })) {
+            first.authenticate("bouba", "passer");
+            token = first.sessionToken();
+        }
+        if (token == null) {
+            throw new IllegalStateException("Le serveur n’émet pas de jetons de session");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        server.close();
+    }
+
+    /**
+     * Ouvre une connexion authentifiée, puis la ferme.
+     */
+    @Benchmark
+    public void reconnect() throws IOException {
+        try (FramedConnection connection = new FramedConnection("127.0.0.1", server.port(), cause -> { })) {
+            if ("token".equals(auth)) {
+                connection.resume(token);
+            } else {
+                connection.authenticate("bouba", "passer");
+            }
+            if (!resumed) {
+                connection.tlsSession().invalidate(); // La connexion suivante refait une négociation complète
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package hadoop.mapreduce.remotecontrolsoftware.benchmarks;
+
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aller-retour complet du protocole texte à travers {@code ClientHandler} : commande envoyée,
+ * processus lancé (ou interpréteur persistant), sortie relayée jusqu’à la ligne de fin.
+ * {@link #command()} mesure une commande sur une session ouverte ; {@link #loginAndCommand()} ajoute
+ * la connexion (session TLS reprise) et l’authentification, comme un script qui se connecte pour
+ * une seule commande.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+    private static final String COMMAND = "echo bench"; // Une ligne de sortie, processus le plus court possible
+
+    @Param({"NIO", "BLOCKING"})
+    public ServerConfig.IoMode io; // Modèle d’entrées/sorties du serveur
+
+    @Param({"FORK", "PERSISTENT"})
+    public ServerConfig.ShellMode shell; // Lancement des commandes
+
+    private LoopbackServer server; // Serveur mesuré
+    private TextSession session; // Session authentifiée de command()
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        server = new LoopbackServer(io, shell);
+        session = server.connect();
+        session.login("bouba", "passer");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        session.close();
+        server.close();
+    }
+
+    /**
+     * @return Le code de sortie (consommé par JMH)
+     */
+    @Benchmark
+    public int command() throws IOException {
+        return session.run(COMMAND);
+    }
+
+    /**
+     * @return Le code de sortie (consommé par JMH)
+     */
+    @Benchmark
+    public int loginAndCommand() throws IOException {
+        try (TextSession fresh = server.connect()) {
+            fresh.login("bouba", "passer");
+            return fresh.run(COMMAND);
+        }
+    }
+}
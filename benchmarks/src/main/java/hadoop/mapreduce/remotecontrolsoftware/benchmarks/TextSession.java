@@ -0,0 +1,140 @@
+package hadoop.mapreduce.remotecontrolsoftware.benchmarks;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Client minimal du protocole texte, pour les bancs d’essai : une ligne envoyée, les lignes
+ * attendues lues, sans interface ni thread supplémentaire.
+ */
+final class TextSession implements Closeable {
+    private final SSLSocket socket; // Connexion au serveur
+    private final BufferedReader input; // Lignes du serveur
+    private final OutputStream output; // Vers le serveur
+
+    private TextSession(SSLSocket socket) throws IOException {
+        this.socket = socket;
+        this.input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.output = socket.getOutputStream();
+    }
+
+    /**
+     * Ouvre une connexion et attend la demande de login.
+     * @param factory Fabrique de sockets TLS
+     * @param port Port du serveur local
+     * @return La session, prête pour {@link #login(String, String)}
+     * @throws IOException Si la connexion échoue
+     */
+    static TextSession connect(SSLSocketFactory factory, int port) throws IOException {
+        SSLSocket socket = (SSLSocket) factory.createSocket("127.0.0.1", port);
+        socket.setTcpNoDelay(true); // Comme le client : pas d’attente de Nagle sur les petites lignes
+        TextSession session = new TextSession(socket);
+        try {
+            socket.startHandshake();
+            session.readLine(); // Demande de login
+        } catch (IOException e) {
+            session.close();
+            throw e;
+        }
+        return session;
+    }
+
+    /**
+     * @param login Le login
+     * @param password Le mot de passe
+     * @throws IOException Si les identifiants sont refusés ou la connexion perdue
+     */
+    void login(String login, String password) throws IOException {
+        send(login);
+        readLine(); // Demande du mot de passe
+        send(password);
+        String reply = readLine();
+        if (!reply.startsWith("Authentification réussie")) {
+            throw new IOException("Authentification refusée : " + reply);
+        }
+    }
+
+    /**
+     * Exécute une commande et lit sa sortie jusqu’à la ligne de fin.
+     * @param command La commande
+     * @return Le code de sortie
+     * @throws IOException Si la connexion est perdue
+     */
+    int run(String command) throws IOException {
+        send(command);
+        String line;
+        while (!Protocol.isEnd(line = readLine())) {
+            // Sortie de la commande, ignorée
+        }
+        return Integer.parseInt(line.split("\\" + Protocol.LINE_END)[1]); // END|code|délai
+    }
+
+    /**
+     * Envoie un fichier par le protocole texte ({@code upload:}), en morceaux de taille fixe.
+     * @param name Nom du fichier sur le serveur (reçu en {@code received_<nom>})
+     * @param data Contenu
+     * @param chunk Taille de chaque écriture sur le socket
+     * @throws IOException Si le serveur ne confirme pas la réception
+     */
+    void upload(String name, byte[] data, int chunk) throws IOException {
+        send("upload:");
+        readLine(); // SEND_FILE_NAME
+        send(name);
+        readLine(); // SEND_FILE_SIZE
+        send(String.valueOf(data.length));
+        for (int offset = 0; offset < data.length; offset += chunk) {
+            output.write(data, offset, Math.min(chunk, data.length - offset));
+        }
+        output.flush();
+        String reply = readLine();
+        if (!reply.startsWith("Fichier reçu")) {
+            throw new IOException("Upload refusé : " + reply);
+        }
+    }
+
+    /**
+     * @return La session TLS de la connexion
+     */
+    SSLSession tlsSession() {
+        return socket.getSession();
+    }
+
+    /**
+     * Ferme la connexion.
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * @param line Ligne à envoyer
+     * @throws IOException Si la connexion est perdue
+     */
+    private void send(String line) throws IOException {
+        output.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+
+    /**
+     * @return La ligne suivante du serveur
+     * @throws IOException Si la connexion est fermée
+     */
+    private String readLine() throws IOException {
+        String line = input.readLine();
+        if (line == null) {
+            throw new EOFException("Connexion fermée par le serveur");
+        }
+        return line;
+    }
+}
@@ -0,0 +1,123 @@
+package hadoop.mapreduce.remotecontrolsoftware.benchmarks;
+
+import hadoop.mapreduce.remotecontrolsoftware.client.RemoteClient;
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envoi d’une arborescence de petits fichiers, de bout en bout (lecture, transfert, écriture sur le disque
+ * du serveur) : upload de dossier ({@code tree}, un seul flux, écritures en parallèle sur le serveur) contre
+ * un upload simple par fichier, l’un après l’autre ({@code files}). Le dossier compte {@value #FILES} fichiers
+ * de {@code size} octets répartis dans {@value #DIRECTORIES} sous-dossiers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeUploadBenchmark {
+    private static final int FILES = 1000; // Fichiers du dossier envoyé
+    private static final int DIRECTORIES = 10; // Sous-dossiers
+    private static final String NAME = "bench-tree"; // Nom du dossier sur le serveur
+
+    @Param({"NIO"})
+    public ServerConfig.IoMode io; // Modèle d’entrées/sorties du serveur
+
+    @Param({"tree", "files"})
+    public String mode; // Un flux pour le dossier, ou un upload par fichier
+
+    @Param({"4096"})
+    public int size; // Taille de chaque fichier
+
+    private LoopbackServer server; // Serveur mesuré
+    private RemoteClient client; // Connexion authentifiée
+    private Path directory; // Dossier envoyé
+    private final List<Path> files = new ArrayList<>(); // Ses fichiers
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        directory = Files.createTempDirectory("rcs-tree").resolve(NAME);
+        Random random = new Random(42);
+        for (int i = 0; i < FILES; i++) {
+            byte[] content = new byte[size];
+            random.nextBytes(content);
+            Path parent = Files.createDirectories(directory.resolve("d" + i % DIRECTORIES));
+            files.add(Files.write(parent.resolve("f" + i + ".bin"), content)); // Noms uniques : received_f<i>.bin
+        }
+        server = new LoopbackServer(io, ServerConfig.ShellMode.FORK);
+        client = RemoteClient.connect("127.0.0.1", server.port(), "bouba", "passer").get();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        client.close();
+        server.close();
+        delete(directory.getParent());
+        delete(Paths.get("received_" + NAME));
+        for (Path file : files) {
+            Files.deleteIfExists(Paths.get("received_" + file.getFileName()));
+        }
+    }
+
+    /**
+     * Envoie le dossier et attend que le serveur ait tout écrit.
+     */
+    @Benchmark
+    public void upload() throws Exception {
+        if ("tree".equals(mode)) {
+            client.uploadTree(directory, null).get();
+        } else {
+            for (Path file : files) {
+                client.upload(file).get();
+            }
+        }
+    }
+
+    /**
+     * Efface une arborescence.
+     * @param root La racine (sans effet si elle n’existe pas)
+     */
+    private static void delete(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,76 @@
+package hadoop.mapreduce.remotecontrolsoftware.benchmarks;
+
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit de l’upload du protocole texte ({@code upload:}) : réception par {@code ClientHandler} et écriture
+ * sur disque, selon la taille des écritures du client sur le socket. Le score est en Mio/s
+ * (une opération par Mio envoyé).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UploadBenchmark {
+    private static final int MEBIBYTES = 16; // Taille du fichier envoyé
+    private static final String NAME = "bench-upload.bin"; // Nom du fichier sur le serveur
+    private static final Path RECEIVED = Paths.get("received_" + NAME); // Fichier écrit par le serveur
+
+    @Param({"NIO", "BLOCKING"})
+    public ServerConfig.IoMode io; // Modèle d’entrées/sorties du serveur
+
+    @Param({"1024", "8192", "65536", "262144"})
+    public int chunk; // Taille de chaque écriture du client
+
+    private LoopbackServer server; // Serveur mesuré
+    private TextSession session; // Session authentifiée
+    private byte[] data; // Contenu envoyé (aléatoire : ni compressible ni répétitif)
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        data = new byte[MEBIBYTES * 1024 * 1024];
+        new Random(42).nextBytes(data);
+        server = new LoopbackServer(io, ServerConfig.ShellMode.FORK);
+        session = server.connect();
+        session.login("bouba", "passer");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        session.close();
+        server.close();
+        Files.deleteIfExists(RECEIVED);
+    }
+
+    /**
+     * Envoie le fichier et attend la confirmation du serveur.
+     */
+    @Benchmark
+    @OperationsPerInvocation(MEBIBYTES)
+    public void upload() throws IOException {
+        session.upload(NAME, data, chunk);
+    }
+}
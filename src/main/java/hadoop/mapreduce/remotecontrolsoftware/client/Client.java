@@ -1,7 +1,13 @@
 package hadoop.mapreduce.remotecontrolsoftware.client;
 
+import hadoop.mapreduce.remotecontrolsoftware.protocol.CompressionStats;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
@@ -9,29 +15,56 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
-import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
-import java.io.*;
-import java.nio.file.Files;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 /**
  * Classe principale du client pour le logiciel de contrôle à distance.
  * Fournit une interface graphique JavaFX pour se connecter au serveur,
  * envoyer des commandes, uploader des fichiers et afficher les réponses.
+ * Simple couche graphique sur la bibliothèque cliente ({@link RemoteClient}) : plusieurs commandes et uploads
+ * peuvent être en cours en même temps, leurs sorties s’affichent au fil de l’eau. Le bouton « Arrêter »
+ * interrompt les commandes en cours, et chaque commande peut recevoir une durée maximale.
+ * Un lot de commandes ({@link CommandBatch}) s’exécute avec un nombre borné de commandes en cours,
+ * suivi dans une fenêtre de progression.
  */
 public class Client extends Application {
+    private static final int TREE_PROGRESS_FILES = 100; // Fichiers écrits entre deux lignes d’avancement d’un dossier
+
     private TextField commandField; // Champ texte pour saisir les commandes
     private TextArea responseArea; // Zone de texte pour afficher les réponses du serveur
     private ListView<String> commandHistory; // Liste graphique de l’historique des commandes
     private ObservableList<String> historyList; // Liste observable pour l’historique
-    private SSLSocket socket; // Socket SSL pour la connexion sécurisée au serveur
-    private PrintWriter out; // Flux de sortie pour envoyer des données au serveur
-    private BufferedReader in; // Flux d’entrée pour lire les réponses du serveur
+    private RemoteClient remote; // Connexion sécurisée au serveur
     private volatile boolean connected = false; // Indicateur d’état de connexion (thread-safe)
     private volatile boolean uploading = false; // Indicateur d’état d’upload (thread-safe)
+    private final Queue<String> pendingText = new ConcurrentLinkedQueue<>(); // Texte en attente d’affichage
+    private final AtomicBoolean textFlushScheduled = new AtomicBoolean(); // Un seul passage JavaFX pour une rafale
+    private int displayedCommand; // Commande dont la sortie a été affichée en dernier (thread de lecture)
+    private boolean atLineStart = true; // L’affichage est en début de ligne (sous le verrou de show)
+    private int commandCount; // Numérotation des commandes envoyées (thread JavaFX)
+    private final Set<CommandView> runningCommands = ConcurrentHashMap.newKeySet(); // Commandes en cours, pour « Arrêter »
+    private Spinner<Integer> timeoutField; // Durée maximale des commandes en secondes (0 : celle du serveur)
+    private volatile String[] credentials; // Identifiants acceptés, pour les connexions d’upload en bandes
+    private volatile String sessionToken; // Jeton de session, pour se reconnecter sans identifiants
 
     /**
      * Méthode principale de lancement de l’interface client.
@@ -51,13 +84,23 @@ public class Client extends Application {
 
         // Crée les boutons de contrôle
         Button sendButton = new Button("Envoyer"); // Bouton pour envoyer une commande
+        Button stopButton = new Button("Arrêter"); // Bouton pour arrêter les commandes en cours
+        timeoutField = new Spinner<>(0, 24 * 3600, 0); // Durée maximale en secondes, 0 : celle du serveur
+        timeoutField.setEditable(true);
+        timeoutField.setPrefWidth(90);
+        timeoutField.setTooltip(new Tooltip("Durée maximale de la commande en secondes (0 : celle du serveur)"));
         Button uploadButton = new Button("Uploader"); // Bouton pour uploader un fichier
+        Button uploadTreeButton = new Button("Uploader un dossier"); // Bouton pour uploader un dossier entier
+        Button downloadButton = new Button("Télécharger"); // Bouton pour télécharger un fichier du serveur
+        Button batchButton = new Button("Lot…"); // Bouton pour exécuter un lot de commandes
+        Button fanOutButton = new Button("Multi-serveurs…"); // Bouton pour exécuter une commande sur plusieurs serveurs
         Button connectButton = new Button("Se connecter"); // Bouton pour se connecter
         Button disconnectButton = new Button("Se déconnecter"); // Bouton pour se déconnecter
         disconnectButton.setDisable(true); // Désactive "Se déconnecter" par défaut
 
         // Crée une barre horizontale pour les boutons avec un espacement de 15px
-        HBox controlBar = new HBox(15, connectButton, disconnectButton, sendButton, uploadButton);
+        HBox controlBar = new HBox(15, connectButton, disconnectButton, sendButton, stopButton, timeoutField,
+                batchButton, fanOutButton, uploadButton, uploadTreeButton, downloadButton);
         controlBar.setPadding(new Insets(10)); // Ajoute un padding de 10px
         // Applique un style CSS à la barre (fond blanc, bordure inférieure)
         controlBar.setStyle("-fx-background-color: #ffffff; -fx-border-color: #d3d3d3; -fx-border-width: 0 0 1 0;");
@@ -91,8 +134,18 @@ public class Client extends Application {
 
         // Définit l’action du bouton "Envoyer"
         sendButton.setOnAction(event -> sendCommand());
+        // Définit l’action du bouton "Arrêter"
+        stopButton.setOnAction(event -> stopCommands());
+        // Définit l’action du bouton "Lot…"
+        batchButton.setOnAction(event -> sendBatch());
+        // Définit l’action du bouton "Multi-serveurs…" : fenêtre indépendante de la connexion principale
+        fanOutButton.setOnAction(event -> new FanOutWindow().show(credentials != null ? credentials[0] : ""));
         // Définit l’action du bouton "Uploader" (exécuté dans le thread JavaFX)
         uploadButton.setOnAction(event -> Platform.runLater(() -> uploadFile(primaryStage)));
+        // Définit l’action du bouton "Uploader un dossier" (exécuté dans le thread JavaFX)
+        uploadTreeButton.setOnAction(event -> Platform.runLater(() -> uploadDirectory(primaryStage)));
+        // Définit l’action du bouton "Télécharger" (exécuté dans le thread JavaFX)
+        downloadButton.setOnAction(event -> Platform.runLater(() -> downloadFile(primaryStage)));
         // Définit l’action du bouton "Se connecter"
         connectButton.setOnAction(event -> {
             if (!connected) { // Vérifie si pas déjà connecté
@@ -112,8 +165,8 @@ public class Client extends Application {
             }
         });
 
-        // Crée la scène principale avec une taille de 700x500px
-        Scene scene = new Scene(root, 700, 500);
+        // Crée la scène principale avec une taille de 960x500px
+        Scene scene = new Scene(root, 960, 500);
         // Charge le fichier CSS pour styliser l’interface
         scene.getStylesheets().add(getClass().getResource("/styles.css").toExternalForm());
         primaryStage.setTitle("Client de Contrôle à Distance"); // Définit le titre de la fenêtre
@@ -126,40 +179,40 @@ public class Client extends Application {
      */
     private void connectToServer() {
         try {
-            // Définit le truststore SSL pour valider le certificat du serveur
-            System.setProperty("javax.net.ssl.trustStore", "server.keystore");
-            System.setProperty("javax.net.ssl.trustStorePassword", "password");
-            // Récupère une factory pour créer des sockets SSL
-            SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
-            // Crée un socket client SSL connecté à localhost:12345
-            socket = (SSLSocket) factory.createSocket("localhost", 12345);
-
-            // Initialise les flux de sortie (texte) et d’entrée (lecture)
-            out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            // Se connecte à localhost:12345 et négocie le protocole binaire ; le certificat du serveur
+            // est vérifié avec server.keystore (ClientTls), la session TLS précédente est reprise
+            remote = new RemoteClient("localhost", 12345, this::onConnectionLost);
+            if (sessionToken != null) { // Reconnexion : le jeton évite de redemander les identifiants
+                try {
+                    log(remote.resume(sessionToken));
+                    connected = true;
+                    return;
+                } catch (IOException e) {
+                    sessionToken = null;
+                    log(e.getMessage()); // Jeton expiré ou serveur redémarré
+                    if (!remote.isOpen()) {
+                        return;
+                    }
+                }
+            }
 
             while (!connected) { // Boucle jusqu’à connexion réussie ou abandon
                 String[] credentials = showLoginDialog(); // Affiche la boîte de dialogue d’authentification
                 if (credentials == null || "quit".equalsIgnoreCase(credentials[0])) { // Si annulé ou "quit"
                     log("Connexion abandonnée."); // Log l’abandon
-                    socket.close(); // Ferme le socket
+                    remote.close(); // Ferme la connexion
                     return; // Quitte la méthode
                 }
-
-                String serverResponse = in.readLine(); // Lit la demande de login
-                log(serverResponse); // Affiche la demande dans l’interface
-                out.println(credentials[0]); // Envoie le login
-                serverResponse = in.readLine(); // Lit la demande de mot de passe
-                log(serverResponse); // Affiche la demande
-                out.println(credentials[1]); // Envoie le mot de passe
-
-                serverResponse = in.readLine(); // Lit la réponse d’authentification
-                log(serverResponse); // Affiche la réponse
-                if (serverResponse.contains("Authentification réussie")) { // Si authentifié
+                try {
+                    log(remote.authenticate(credentials[0], credentials[1])); // Affiche la réponse
+                    this.credentials = credentials; // Réutilisés par les connexions d’upload parallèles
+                    sessionToken = remote.sessionToken(); // Pour les reconnexions suivantes
                     connected = true; // Marque comme connecté
-                    new Thread(this::listenToServer).start(); // Lance un thread pour écouter le serveur
-                    break; // Sort de la boucle
-                } else {
+                } catch (IOException e) {
+                    log(e.getMessage()); // Affiche le refus
+                    if (!remote.isOpen()) { // Connexion perdue pendant l’authentification
+                        return;
+                    }
                     log("Voulez-vous réessayer ?"); // Invite à réessayer
                 }
             }
@@ -168,6 +221,17 @@ public class Client extends Application {
         }
     }
 
+    /**
+     * Appelé quand le serveur ferme la connexion ou qu’elle est perdue.
+     * @param cause La cause
+     */
+    private void onConnectionLost(String cause) {
+        if (connected) {
+            connected = false; // Marque comme déconnecté
+            log("Connexion perdue : " + cause);
+        }
+    }
+
     /**
      * Affiche une boîte de dialogue pour saisir les identifiants.
      * @return Tableau avec login et mot de passe, ou null si annulé
@@ -206,23 +270,25 @@ public class Client extends Application {
      * Déconnecte le client du serveur.
      */
     private void disconnectFromServer() {
-        try {
-            if (socket != null && !socket.isClosed()) { // Vérifie si le socket existe et est ouvert
-                socket.close(); // Ferme le socket
-            }
-            connected = false; // Marque comme déconnecté
-            if (uploading) { // Si un upload est en cours
-                log("Déconnexion pendant l’upload. Envoi annulé."); // Log l’interruption
-            } else {
-                log("Déconnecté du serveur."); // Log la déconnexion normale
+        boolean wasConnected = connected;
+        connected = false; // Marque comme déconnecté
+        if (remote != null) { // Vérifie si la connexion existe
+            remote.close(); // Ferme la connexion, les commandes en cours sont interrompues
+            CompressionStats stats = remote.connection().compressionStats();
+            if (wasConnected && stats != null && stats.isUsed()) { // Bilan de la compression de la session
+                log("Compression " + stats.summary());
             }
-        } catch (IOException e) {
-            log("Erreur lors de la déconnexion : " + e.getMessage()); // Log une erreur
+        }
+        if (uploading) { // Si un upload est en cours
+            log("Déconnexion pendant l’upload. Envoi annulé."); // Log l’interruption
+        } else if (wasConnected) {
+            log("Déconnecté du serveur."); // Log la déconnexion normale
         }
     }
 
     /**
-     * Envoie une commande au serveur.
+     * Envoie une commande au serveur. Sa sortie s’affiche au fil de l’eau, même si d’autres
+     * commandes sont en cours.
      */
     private void sendCommand() {
         if (!connected) { // Vérifie si connecté
@@ -231,14 +297,82 @@ public class Client extends Application {
         }
         String command = commandField.getText(); // Récupère la commande saisie
         if (command != null && !command.trim().isEmpty()) { // Vérifie qu’elle n’est pas vide
-            out.println(command); // Envoie la commande au serveur
+            CommandView view = new CommandView(++commandCount, command);
+            // Envoie la commande au serveur, avec la durée maximale choisie (en millisecondes)
+            view.track(remote.execute(command, timeoutField.getValue() * 1000L, view));
             historyList.add(command); // Ajoute à l’historique
             commandField.clear(); // Vide le champ texte
         }
     }
 
     /**
-     * Uploade un fichier vers le serveur dans un thread séparé.
+     * Arrête les commandes en cours : le serveur détruit leurs processus et chacune se termine en erreur.
+     */
+    private void stopCommands() {
+        if (!connected || runningCommands.isEmpty()) {
+            log("Aucune commande en cours.");
+            return;
+        }
+        for (CommandView view : runningCommands) {
+            view.future.cancel(true); // Retirée de la file, ou arrêtée sur le serveur
+        }
+    }
+
+    /**
+     * Demande un lot de commandes (une par ligne) puis l’exécute dans un thread séparé,
+     * avec une fenêtre de progression. Les sorties s’affichent dans la zone de réponses.
+     */
+    private void sendBatch() {
+        if (!connected) { // Vérifie si connecté
+            log("Erreur : Vous devez être connecté pour envoyer un lot de commandes."); // Log une erreur
+            return; // Quitte la méthode
+        }
+        Dialog<ButtonType> dialog = new Dialog<>(); // Éditeur du lot
+        dialog.setTitle("Lot de commandes");
+        dialog.setHeaderText("Une commande par ligne (" + Protocol.MAX_BATCH + " au plus)");
+        TextArea editor = new TextArea(); // Commandes, une par ligne
+        editor.setPrefRowCount(12);
+        editor.setPrefColumnCount(50);
+        Spinner<Integer> parallelism = new Spinner<>(1, Protocol.MAX_STREAMS, CommandBatch.DEFAULT_PARALLELISM);
+        HBox options = new HBox(10, new Label("Commandes en parallèle :"), parallelism);
+        dialog.getDialogPane().setContent(new VBox(10, editor, options));
+        ButtonType runType = new ButtonType("Exécuter", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(runType, ButtonType.CANCEL);
+        if (dialog.showAndWait().orElse(ButtonType.CANCEL) != runType) { // Annulé
+            return;
+        }
+        List<String> commands = new ArrayList<>(); // Lignes non vides
+        for (String line : editor.getText().split("\\R")) {
+            if (!line.trim().isEmpty()) {
+                commands.add(line);
+            }
+        }
+        if (commands.isEmpty() || commands.size() > Protocol.MAX_BATCH) {
+            log("Erreur : un lot contient de 1 à " + Protocol.MAX_BATCH + " commandes.");
+            return;
+        }
+        CommandBatch batch = new CommandBatch(remote.connection(), commands, parallelism.getValue());
+        BatchProgress progress = new BatchProgress(batch, commands, commandCount + 1);
+        commandCount += commands.size(); // Numéros des commandes du lot dans la zone de réponses
+        historyList.addAll(commands); // Ajoute à l’historique
+        progress.show();
+        new Thread(() -> { // Lance le lot dans un thread séparé
+            try {
+                int failures = batch.run(progress::listener);
+                log("Lot terminé : " + batch.finished() + " commandes sur " + commands.size() + ", " + failures
+                        + " en échec.");
+            } catch (IOException e) {
+                log("Lot interrompu : " + e.getMessage());
+            } catch (InterruptedException e) {
+                log("Lot interrompu.");
+            } finally {
+                Platform.runLater(progress::finished);
+            }
+        }, "rcs-client-batch").start();
+    }
+
+    /**
+     * Uploade un fichier vers le serveur, en arrière-plan.
      * @param stage Fenêtre principale pour afficher le sélecteur de fichier
      */
     private void uploadFile(Stage stage) {
@@ -249,68 +383,187 @@ public class Client extends Application {
         FileChooser fileChooser = new FileChooser(); // Crée un sélecteur de fichier
         fileChooser.setTitle("Choisir un fichier à envoyer"); // Définit le titre du sélecteur
         File file = fileChooser.showOpenDialog(stage); // Ouvre le sélecteur et récupère le fichier choisi
-        if (file != null) { // Si un fichier est sélectionné
+        if (file == null) { // Aucun fichier sélectionné
+            return;
+        }
+        uploading = true; // Indique qu’un upload est en cours
+        log("Début de l’envoi du fichier : " + file.getName()); // Log le début
+        int stripes = ParallelUpload.stripesFor(file.length(), ParallelUpload.DEFAULT_STRIPES);
+        if (stripes > 1) { // Gros fichier : une bande par connexion, en parallèle
+            log("Envoi en " + stripes + " bandes parallèles.");
             new Thread(() -> { // Lance l’upload dans un thread séparé
-                uploading = true; // Indique qu’un upload est en cours
                 try {
-                    log("Début de l’envoi du fichier : " + file.getName()); // Log le début
-                    out.println("upload:" + file.getAbsolutePath()); // Envoie la commande upload avec chemin
-
-                    String response = in.readLine(); // Lit la demande de nom de fichier
-                    if ("SEND_FILE_NAME".equals(response)) { // Si serveur demande le nom
-                        out.println(file.getName()); // Envoie le nom du fichier
-                    }
-                    response = in.readLine(); // Lit la demande de taille
-                    if ("SEND_FILE_SIZE".equals(response)) { // Si serveur demande la taille
-                        long fileSize = Files.size(file.toPath()); // Calcule la taille du fichier
-                        out.println(fileSize); // Envoie la taille
-
-                        // Ouvre les flux pour envoyer le fichier
-                        try (BufferedOutputStream fileOutput = new BufferedOutputStream(socket.getOutputStream());
-                             FileInputStream fileInput = new FileInputStream(file)) {
-                            byte[] buffer = new byte[8192]; // Buffer de 8KB pour un transfert rapide
-                            int bytesRead; // Nombre d’octets lus
-                            while (connected && (bytesRead = fileInput.read(buffer)) > 0) { // Tant que connecté et données à lire
-                                fileOutput.write(buffer, 0, bytesRead); // Écrit les octets dans le flux
-                            }
-                            fileOutput.flush(); // Vide le buffer pour garantir l’envoi
-                        }
-
-                        if (connected) { // Si toujours connecté
-                            response = in.readLine(); // Lit la confirmation du serveur
-                            log(response); // Affiche la confirmation
-                        }
-                    }
+                    log(ParallelUpload.upload(this::openUploadConnection, file.toPath(), stripes, null));
                 } catch (IOException e) {
-                    if (connected) { // Si erreur et encore connecté
-                        log("Erreur lors de l’envoi du fichier : " + e.getMessage()); // Log l’erreur
-                    } else {
-                        log("Envoi interrompu par déconnexion."); // Log l’interruption
-                    }
+                    uploadFailed(e);
                 } finally {
                     uploading = false; // Réinitialise l’indicateur d’upload
                 }
             }).start(); // Démarre le thread
+            return;
+        }
+        // Les commandes restent utilisables pendant l’envoi : chaque flux a son propre crédit.
+        // Envoi par différence : seuls les morceaux que le serveur n’a pas déjà (version précédente) partent.
+        remote.uploadDelta(file.toPath()).whenComplete((result, error) -> {
+            uploading = false; // Réinitialise l’indicateur d’upload
+            if (error != null) {
+                uploadFailed(error);
+                return;
+            }
+            if (result.reused() > 0) { // Une partie du fichier était déjà sur le serveur
+                log(result.reused() + " octets déjà présents sur le serveur : seuls " + result.sent()
+                        + " octets ont été envoyés.");
+            }
+            log(result.message()); // Affiche la confirmation
+        });
+    }
+
+    /**
+     * Uploade un dossier et son arborescence vers le serveur, en arrière-plan, dans un seul flux.
+     * L’avancement est affiché tous les {@value #TREE_PROGRESS_FILES} fichiers écrits par le serveur.
+     * @param stage Fenêtre principale pour afficher le sélecteur de dossier
+     */
+    private void uploadDirectory(Stage stage) {
+        if (!connected) { // Vérifie si connecté
+            log("Erreur : Vous devez être connecté pour uploader un dossier."); // Log une erreur
+            return; // Quitte la méthode
+        }
+        DirectoryChooser directoryChooser = new DirectoryChooser(); // Crée un sélecteur de dossier
+        directoryChooser.setTitle("Choisir un dossier à envoyer"); // Définit le titre du sélecteur
+        File directory = directoryChooser.showDialog(stage); // Ouvre le sélecteur et récupère le dossier choisi
+        if (directory == null) { // Aucun dossier sélectionné
+            return;
+        }
+        uploading = true; // Indique qu’un upload est en cours
+        log("Début de l’envoi du dossier : " + directory.getName()); // Log le début
+        int[] files = new int[1]; // Fichiers écrits (thread de lecture de la connexion uniquement)
+        String[] last = new String[1]; // Dernier fichier écrit
+        remote.uploadTree(directory.toPath(), path -> {
+            files[0]++;
+            last[0] = path;
+        }).onProgress(bytes -> { // Appelé juste après chaque fichier écrit
+            if (files[0] % TREE_PROGRESS_FILES == 0) { // Avancement agrégé et dernier fichier écrit
+                log(files[0] + " fichier(s) écrit(s) sur le serveur, " + bytes + " octets (dernier : " + last[0] + ").");
+            }
+        }).whenComplete((result, error) -> {
+            uploading = false; // Réinitialise l’indicateur d’upload
+            if (error != null) {
+                uploadFailed(error);
+                return;
+            }
+            log(result.toString()); // Affiche la confirmation et le bilan
+        });
+    }
+
+    /**
+     * Signale l’échec d’un upload.
+     * @param error La cause
+     */
+    private void uploadFailed(Throwable error) {
+        if (connected) { // Si erreur et encore connecté
+            log("Erreur lors de l’envoi du fichier : " + error.getMessage()); // Log l’erreur
+        } else {
+            log("Envoi interrompu par déconnexion."); // Log l’interruption
         }
     }
 
     /**
-     * Écoute les réponses du serveur dans un thread séparé.
+     * Télécharge un fichier du serveur, en arrière-plan. Le fichier est écrit sur disque
+     * au fil de la réception ; un téléchargement interrompu reprend là où il s’était arrêté.
+     * @param stage Fenêtre principale pour afficher le sélecteur de fichier
      */
-    private void listenToServer() {
+    private void downloadFile(Stage stage) {
+        if (!connected) { // Vérifie si connecté
+            log("Erreur : Vous devez être connecté pour télécharger un fichier."); // Log une erreur
+            return; // Quitte la méthode
+        }
+        TextInputDialog pathDialog = new TextInputDialog(); // Demande le chemin sur le serveur
+        pathDialog.setTitle("Télécharger un fichier");
+        pathDialog.setHeaderText("Chemin du fichier sur le serveur");
+        String remotePath = pathDialog.showAndWait().map(String::trim).orElse("");
+        if (remotePath.isEmpty()) { // Annulé
+            return;
+        }
+        FileChooser fileChooser = new FileChooser(); // Crée un sélecteur de fichier
+        fileChooser.setTitle("Enregistrer le fichier sous"); // Définit le titre du sélecteur
+        String remoteName = remotePath.substring(Math.max(remotePath.lastIndexOf('/'), remotePath.lastIndexOf('\\')) + 1);
+        fileChooser.setInitialFileName(remoteName); // Propose le nom distant (chemin Windows ou Unix)
+        File file = fileChooser.showSaveDialog(stage); // Ouvre le sélecteur et récupère le fichier choisi
+        if (file != null) { // Si un fichier est choisi
+            log("Début du téléchargement du fichier : " + remotePath); // Log le début
+            RemoteClient.RemoteFuture<Long> download = remote.download(remotePath, file.toPath());
+            download.whenComplete((size, error) -> {
+                if (error != null) {
+                    if (connected) { // Si erreur et encore connecté
+                        log("Erreur lors du téléchargement du fichier : " + error.getMessage()); // Log l’erreur
+                    } else {
+                        log("Téléchargement interrompu par déconnexion. Il reprendra au prochain essai."); // Log l’interruption
+                    }
+                    return;
+                }
+                if (download.resumedFrom() > 0) { // Une partie du fichier était déjà sur le disque
+                    log("Téléchargement repris à l’octet " + download.resumedFrom() + ".");
+                }
+                log("Fichier téléchargé : " + file + " (" + size + " octets)."); // Log la réussite
+            });
+        }
+    }
+
+    /**
+     * Ouvre une connexion supplémentaire pour une bande d’upload, avec les identifiants de la session.
+     * @return La connexion authentifiée
+     * @throws IOException Si la connexion ou l’authentification échoue
+     */
+    private FramedConnection openUploadConnection() throws IOException {
+        FramedConnection extra = new FramedConnection("localhost", 12345, cause -> { }); // Pertes signalées par la bande
         try {
-            String response; // Variable pour stocker les réponses
-            while (connected && (response = in.readLine()) != null) { // Tant que connecté et données à lire
-                // Ignore les messages de protocole d’upload
-                if (!"SEND_FILE_NAME".equals(response) && !"SEND_FILE_SIZE".equals(response)) {
-                    log("Réponse du serveur : " + response); // Affiche la réponse
+            String token = sessionToken;
+            if (token != null) {
+                try {
+                    extra.resume(token); // Sans renvoyer les identifiants
+                    return extra;
+                } catch (IOException e) {
+                    if (!extra.isOpen()) {
+                        throw e;
+                    }
+                    // Jeton expiré : identifiants
                 }
             }
+            extra.authenticate(credentials[0], credentials[1]);
         } catch (IOException e) {
-            if (connected) { // Si erreur et encore connecté
-                log("Erreur de lecture : " + e.getMessage()); // Log l’erreur
+            extra.close();
+            throw e;
+        }
+        return extra;
+    }
+
+    /**
+     * Affiche la sortie d’une commande (thread de lecture de la connexion, ou thread JavaFX pour une commande arrêtée).
+     * Un en-tête rappelle la commande chaque fois que l’affichage passe d’une commande à une autre.
+     * @param number Le numéro de la commande
+     * @param command La commande
+     * @param text Le texte à afficher
+     * @param stderr true pour la sortie d’erreur, préfixée ligne par ligne
+     */
+    private synchronized void show(int number, String command, String text, boolean stderr) {
+        StringBuilder shown = new StringBuilder();
+        if (displayedCommand != number) { // Autre commande que la précédente
+            if (!atLineStart) {
+                shown.append('\n');
             }
+            shown.append('[').append(number).append("] ").append(command).append('\n');
+            displayedCommand = number;
+            atLineStart = true;
         }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (atLineStart && stderr) {
+                shown.append("ERREUR : "); // Distingue les lignes de stderr
+            }
+            shown.append(c);
+            atLineStart = c == '\n';
+        }
+        append(shown.toString());
     }
 
     /**
@@ -318,8 +571,284 @@ public class Client extends Application {
      * @param message Le message à afficher
      */
     private void log(String message) {
-        // Ajoute le message dans le thread JavaFX pour éviter les conflits
-        javafx.application.Platform.runLater(() -> responseArea.appendText(message + "\n"));
+        append(message + "\n");
+    }
+
+    /**
+     * Ajoute du texte à la zone de réponses (thread-safe).
+     * Les ajouts rapprochés sont regroupés en un seul passage dans le thread JavaFX.
+     * @param text Le texte à afficher
+     */
+    private void append(String text) {
+        pendingText.add(text); // Met le texte en attente
+        if (textFlushScheduled.compareAndSet(false, true)) { // Planifie un seul affichage
+            Platform.runLater(this::flushText);
+        }
+    }
+
+    /**
+     * Affiche le texte en attente (thread JavaFX).
+     */
+    private void flushText() {
+        textFlushScheduled.set(false); // Les ajouts suivants planifieront un nouvel affichage
+        StringBuilder text = new StringBuilder();
+        String part;
+        while ((part = pendingText.poll()) != null) {
+            text.append(part);
+        }
+        if (text.length() > 0) {
+            responseArea.appendText(text.toString()); // Un seul ajout pour toute la rafale
+        }
+    }
+
+    /**
+     * Affichage d’une commande en cours : décode sa sortie au fil de l’eau puis affiche son bilan.
+     * La sortie arrive depuis le thread de lecture de la connexion.
+     */
+    private final class CommandView implements RemoteClient.OutputListener {
+        private final int number; // Numéro de la commande
+        private final String command; // Commande envoyée
+        private final Utf8Decoder stdout = new Utf8Decoder(); // Décodeur de la sortie standard
+        private final Utf8Decoder stderr = new Utf8Decoder(); // Décodeur de la sortie d’erreur
+        private final long sentNanos = System.nanoTime(); // Instant d’envoi
+        private long firstChunkNanos; // Réception du premier octet (0 tant que rien n’est arrivé)
+        private volatile RemoteClient.RemoteFuture<RemoteClient.Result> future; // Résultat, pour l’arrêter
+
+        CommandView(int number, String command) {
+            this.number = number;
+            this.command = command;
+        }
+
+        /**
+         * Enregistre la commande parmi celles en cours jusqu’à son résultat.
+         * @param future Le résultat de la commande
+         */
+        void track(RemoteClient.RemoteFuture<RemoteClient.Result> future) {
+            this.future = future;
+            runningCommands.add(this);
+            future.whenComplete(this::finished); // Tout de suite si elle est déjà terminée
+        }
+
+        @Override
+        public void onOutput(ByteBuffer data, boolean fromStderr) {
+            if (firstChunkNanos == 0) {
+                firstChunkNanos = System.nanoTime(); // Premier octet de la commande
+            }
+            show(number, command, (fromStderr ? stderr : stdout).decode(data), fromStderr);
+        }
+
+        /**
+         * Retire la commande de celles en cours et affiche son bilan.
+         * @param result Le résultat, ou null en cas d’échec
+         * @param error La cause de l’échec, ou null
+         */
+        private void finished(RemoteClient.Result result, Throwable error) {
+            runningCommands.remove(this);
+            if (error instanceof CancellationException) {
+                summary("[Commande arrêtée]");
+            } else if (error != null) {
+                failed(error.getMessage());
+            } else {
+                ended(String.valueOf(result.exitCode()), result.serverFirstByteMillis());
+            }
+        }
+
+        /**
+         * Affiche le bilan d’une commande terminée.
+         * @param exitCode Son code de sortie
+         * @param serverMillis Le délai avant le premier octet mesuré par le serveur (négatif : inconnu)
+         */
+        void ended(String exitCode, long serverMillis) {
+            String clientDelay = firstChunkNanos == 0 ? "-" : (firstChunkNanos - sentNanos) / 1_000_000 + " ms";
+            String serverDelay = serverMillis < 0 ? "-" : serverMillis + " ms";
+            summary("[Code de sortie " + exitCode + " ; premier octet reçu après " + clientDelay
+                    + " (serveur : " + serverDelay + ")]");
+        }
+
+        /**
+         * @param message La cause de l’échec de la commande
+         */
+        void failed(String message) {
+            summary("[Erreur : " + message + "]");
+        }
+
+        /**
+         * @param summary Le bilan, affiché sur sa propre ligne
+         */
+        private void summary(String summary) {
+            show(number, command, (atLineStart ? "" : "\n") + summary + "\n", false);
+        }
+    }
+
+    /**
+     * Fenêtre de progression d’un lot : barre de progression, bilan et état de chaque commande.
+     */
+    private final class BatchProgress {
+        private final CommandBatch batch; // Lot suivi
+        private final List<BatchRow> rows = new ArrayList<>(); // Une ligne par commande, par indice
+        private final int firstNumber; // Numéro de la première commande dans la zone de réponses
+        private final Stage stage = new Stage(); // Fenêtre de progression
+        private final ProgressBar bar = new ProgressBar(0); // Avancement du lot
+        private final Label summary = new Label(); // Commandes terminées et en échec
+        private final Button cancelButton = new Button("Annuler le lot"); // Arrête le lot
+        private final AtomicBoolean refreshScheduled = new AtomicBoolean(); // Un seul passage JavaFX pour une rafale
+
+        BatchProgress(CommandBatch batch, List<String> commands, int firstNumber) {
+            this.batch = batch;
+            this.firstNumber = firstNumber;
+            for (int i = 0; i < commands.size(); i++) {
+                rows.add(new BatchRow(firstNumber + i, commands.get(i)));
+            }
+        }
+
+        /**
+         * Affiche la fenêtre (thread JavaFX).
+         */
+        void show() {
+            TableView<BatchRow> table = new TableView<>(FXCollections.observableArrayList(rows));
+            table.getColumns().add(column("N°", 50, row -> new ReadOnlyObjectWrapper<>(String.valueOf(row.number))));
+            table.getColumns().add(column("Commande", 260, row -> new ReadOnlyObjectWrapper<>(row.command)));
+            table.getColumns().add(column("État", 90, row -> row.state));
+            table.getColumns().add(column("Code", 60, row -> row.exitCode));
+            table.getColumns().add(column("Durée", 80, row -> row.duration));
+            bar.setMaxWidth(Double.MAX_VALUE);
+            cancelButton.setOnAction(event -> {
+                cancelButton.setDisable(true);
+                batch.cancel();
+            });
+            VBox root = new VBox(10, bar, summary, table, cancelButton);
+            root.setPadding(new Insets(10));
+            refresh();
+            stage.setTitle("Lot de " + rows.size() + " commandes");
+            stage.setScene(new Scene(root, 600, 400));
+            stage.show();
+        }
+
+        /**
+         * @param title Le titre de la colonne
+         * @param width La largeur de la colonne
+         * @param value La valeur affichée pour une ligne
+         * @return La colonne
+         */
+        private TableColumn<BatchRow, String> column(String title, double width,
+                                                     Function<BatchRow, ObservableValue<String>> value) {
+            TableColumn<BatchRow, String> column = new TableColumn<>(title);
+            column.setPrefWidth(width);
+            column.setCellValueFactory(cell -> value.apply(cell.getValue()));
+            return column;
+        }
+
+        /**
+         * Donne l’observateur d’une commande au moment de son lancement (thread du lot).
+         * @param index L’indice de la commande
+         * @return L’observateur, qui affiche la sortie et met à jour la ligne de la commande
+         */
+        FramedConnection.StreamListener listener(int index) {
+            BatchRow row = rows.get(index);
+            long startNanos = System.nanoTime();
+            Platform.runLater(() -> row.state.set("En cours"));
+            CommandView view = new CommandView(firstNumber + index, row.command);
+            return new FramedConnection.StreamListener() {
+                @Override
+                public void onData(ByteBuffer data, boolean stderr) {
+                    view.onOutput(data, stderr);
+                }
+
+                @Override
+                public void onEnd(String[] fields) {
+                    view.ended(fields[0], fields.length > 1 && !String.valueOf(Protocol.NONE).equals(fields[1])
+                            ? Long.parseLong(fields[1].trim()) : -1);
+                    completed(row, "0".equals(fields[0]) ? "Terminée" : "Échec", fields[0], startNanos);
+                }
+
+                @Override
+                public void onError(String message) {
+                    view.failed(message);
+                    completed(row, "Erreur", "-", startNanos);
+                }
+            };
+        }
+
+        /**
+         * Note la fin d’une commande (thread de lecture de la connexion).
+         * @param row La ligne de la commande
+         * @param state Son état final
+         * @param exitCode Son code de sortie
+         * @param startNanos L’instant de son lancement
+         */
+        private void completed(BatchRow row, String state, String exitCode, long startNanos) {
+            String duration = (System.nanoTime() - startNanos) / 1_000_000 + " ms";
+            Platform.runLater(() -> {
+                row.state.set(state);
+                row.exitCode.set(exitCode);
+                row.duration.set(duration);
+            });
+            if (refreshScheduled.compareAndSet(false, true)) { // Un seul bilan pour une rafale de fins
+                Platform.runLater(this::refresh);
+            }
+        }
+
+        /**
+         * Met à jour la barre et le bilan (thread JavaFX).
+         */
+        private void refresh() {
+            refreshScheduled.set(false);
+            bar.setProgress((double) batch.finished() / rows.size());
+            summary.setText(batch.finished() + " / " + rows.size() + " terminées, " + batch.failures() + " en échec");
+        }
+
+        /**
+         * Fin du lot (thread JavaFX) : les commandes jamais lancées sont marquées annulées.
+         */
+        void finished() {
+            for (BatchRow row : rows) {
+                if ("En attente".equals(row.state.get())) {
+                    row.state.set("Annulée");
+                }
+            }
+            refresh();
+            cancelButton.setDisable(true);
+        }
+    }
+
+    /**
+     * Ligne de la fenêtre de progression d’un lot (propriétés modifiées dans le thread JavaFX).
+     */
+    private static final class BatchRow {
+        private final int number; // Numéro de la commande dans la zone de réponses
+        private final String command; // Commande
+        private final StringProperty state = new SimpleStringProperty("En attente"); // État de la commande
+        private final StringProperty exitCode = new SimpleStringProperty(""); // Code de sortie
+        private final StringProperty duration = new SimpleStringProperty(""); // Durée d’exécution
+
+        BatchRow(int number, String command) {
+            this.number = number;
+            this.command = command;
+        }
+    }
+
+    /**
+     * Décodeur UTF-8 incrémental : un caractère coupé entre deux trames est complété par la suivante.
+     */
+    private static final class Utf8Decoder {
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private ByteBuffer carry; // Octets d’un caractère incomplet
+
+        /**
+         * @param data Les octets reçus
+         * @return Le texte des caractères complets
+         */
+        String decode(ByteBuffer data) {
+            ByteBuffer input = data;
+            if (carry != null) { // Complète le caractère commencé
+                input = ByteBuffer.allocate(carry.remaining() + data.remaining()).put(carry).put(data).flip();
+            }
+            CharBuffer chars = CharBuffer.allocate(input.remaining());
+            decoder.decode(input, chars, false);
+            carry = input.hasRemaining() ? ByteBuffer.allocate(input.remaining()).put(input).flip() : null;
+            return chars.flip().toString();
+        }
     }
 
     /**
@@ -0,0 +1,110 @@
+package hadoop.mapreduce.remotecontrolsoftware.client;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * Contexte TLS des clients, construit une fois et partagé par toutes les connexions du processus :
+ * son cache de sessions permet à une reconnexion vers le même serveur de reprendre la session TLS
+ * précédente (négociation abrégée, sans vérification du certificat), en TLS 1.3 comme en TLS 1.2.
+ * <p>
+ * Magasin de confiance, par ordre de priorité : la propriété {@code rcs.truststore} (mot de passe
+ * {@code rcs.truststore.password}), la propriété standard {@code javax.net.ssl.trustStore}, le fichier
+ * {@code server.keystore} du répertoire courant (serveur de développement), sinon les autorités du JDK.
+ */
+public final class ClientTls {
+    private static final String DEVELOPMENT_KEYSTORE = "server.keystore"; // Certificat du serveur de développement
+    private static final int SESSION_CACHE = 1000; // Sessions TLS gardées, une par serveur en général
+    private static final int SESSION_SECONDS = 24 * 60 * 60; // Validité d’une session TLS gardée
+    private static volatile SSLContext context; // Contexte partagé, construit au premier usage
+
+    private ClientTls() {
+    }
+
+    /**
+     * @return Le contexte TLS partagé des clients
+     * @throws IOException Si le magasin de confiance est illisible
+     */
+    public static SSLContext context() throws IOException {
+        SSLContext current = context;
+        if (current == null) {
+            synchronized (ClientTls.class) {
+                current = context;
+                if (current == null) {
+                    current = build();
+                    context = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Ouvre une connexion TLS vers un serveur, avec le contexte partagé.
+     * @param host Adresse du serveur
+     * @param port Port du serveur
+     * @return Le socket, négociation TLS pas encore faite
+     * @throws IOException Si la connexion échoue
+     */
+    public static SSLSocket connect(String host, int port) throws IOException {
+        SSLSocket socket = (SSLSocket) context().getSocketFactory().createSocket(host, port);
+        socket.setEnabledProtocols(Protocol.tlsProtocols(socket.getSupportedProtocols()));
+        return socket;
+    }
+
+    /**
+     * @return Le contexte TLS des clients, avec le magasin de confiance choisi
+     * @throws IOException Si le magasin de confiance est illisible
+     */
+    private static SSLContext build() throws IOException {
+        String path = System.getProperty("rcs.truststore");
+        String password = System.getProperty("rcs.truststore.password", "password");
+        if (path == null && System.getProperty("javax.net.ssl.trustStore") != null) { // Configuration standard
+            path = System.getProperty("javax.net.ssl.trustStore");
+            password = System.getProperty("javax.net.ssl.trustStorePassword", "");
+        }
+        if (path == null && Files.isReadable(Paths.get(DEVELOPMENT_KEYSTORE))) {
+            path = DEVELOPMENT_KEYSTORE;
+        }
+        try {
+            SSLContext built = SSLContext.getInstance("TLS");
+            built.init(null, path != null ? trustManagers(Paths.get(path), password) : null, null);
+            SSLSessionContext sessions = built.getClientSessionContext(); // Sessions reprises aux reconnexions
+            sessions.setSessionCacheSize(SESSION_CACHE);
+            sessions.setSessionTimeout(SESSION_SECONDS);
+            return built;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Contexte TLS indisponible : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param path Le magasin de confiance
+     * @param password Son mot de passe
+     * @return Ses gestionnaires de confiance
+     * @throws IOException Si le fichier est illisible
+     * @throws GeneralSecurityException Si le magasin est invalide
+     */
+    private static TrustManager[] trustManagers(Path path, String password)
+            throws IOException, GeneralSecurityException {
+        try (InputStream input = Files.newInputStream(path)) {
+            KeyStore trusted = KeyStore.getInstance(KeyStore.getDefaultType());
+            trusted.load(input, password.toCharArray());
+            TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init(trusted);
+            return factory.getTrustManagers();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package hadoop.mapreduce.remotecontrolsoftware.client;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Lot de commandes exécuté sur une connexion en protocole binaire, avec un nombre borné de commandes
+ * en cours : dès qu’une commande se termine, la suivante part, sans attendre d’aller-retour de plus.
+ * Chaque commande a son propre flux, donc ses sorties et son bilan arrivent séparément, dans l’ordre
+ * où les commandes avancent.
+ * <p>
+ * Le nombre de commandes en cours par défaut se règle par la propriété système {@code rcs.batch.parallel}.
+ * Une commande refusée par un serveur occupé ({@link Protocol#BUSY}) est renvoyée après le délai conseillé,
+ * en gardant sa place, au plus {@link #MAX_RETRIES} fois.
+ */
+public final class CommandBatch {
+    public static final int DEFAULT_PARALLELISM = Math.max(1, Math.min(Protocol.MAX_STREAMS,
+            Integer.getInteger("rcs.batch.parallel", 4))); // Commandes en cours par défaut
+    public static final int MAX_RETRIES = 5; // Renvois au plus d’une commande refusée par un serveur occupé
+    private static final ScheduledExecutorService RETRIES = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "rcs-batch-retry");
+        thread.setDaemon(true); // N’empêche pas la fermeture du client
+        return thread;
+    }); // Renvoie les commandes refusées après le délai conseillé
+
+    private final FramedConnection connection; // Connexion authentifiée
+    private final List<String> commands; // Commandes du lot
+    private final int parallelism; // Commandes en cours au plus
+    private final Semaphore slots; // Places libres pour lancer une commande
+    private final Map<Integer, Integer> running = new ConcurrentHashMap<>(); // Flux des commandes en cours, par indice
+    private final AtomicInteger finished = new AtomicInteger(); // Commandes terminées
+    private final AtomicInteger failures = new AtomicInteger(); // Commandes en échec (code non nul ou erreur)
+    private volatile boolean cancelled; // Annulation demandée
+
+    /**
+     * @param connection La connexion authentifiée
+     * @param commands Les commandes du lot, au plus {@link Protocol#MAX_BATCH}
+     * @param parallelism Le nombre de commandes en cours au plus (borné par {@link Protocol#MAX_STREAMS})
+     */
+    public CommandBatch(FramedConnection connection, List<String> commands, int parallelism) {
+        if (commands.isEmpty() || commands.size() > Protocol.MAX_BATCH) {
+            throw new IllegalArgumentException("Lot de " + commands.size() + " commandes : entre 1 et "
+                    + Protocol.MAX_BATCH + " attendues");
+        }
+        this.connection = connection;
+        this.commands = new ArrayList<>(commands);
+        this.parallelism = Math.max(1, Math.min(Protocol.MAX_STREAMS, parallelism));
+        this.slots = new Semaphore(this.parallelism);
+    }
+
+    /**
+     * Exécute le lot dans le thread appelant et attend la fin de toutes les commandes lancées.
+     * @param listeners Donne l’observateur de chaque commande, par indice (appelé au lancement)
+     * @return Le nombre de commandes en échec
+     * @throws IOException Si la connexion est perdue
+     * @throws InterruptedException Si l’attente est interrompue
+     */
+    public int run(IntFunction<FramedConnection.StreamListener> listeners) throws IOException, InterruptedException {
+        try {
+            for (int i = 0; i < commands.size() && !cancelled; i++) {
+                slots.acquire(); // Attend qu’une commande en cours se termine
+                if (cancelled) {
+                    slots.release();
+                    break;
+                }
+                int index = i;
+                FramedConnection.StreamListener listener = listeners.apply(index);
+                Tracker tracker = new Tracker(index, listener);
+                try {
+                    running.put(index, connection.exec(commands.get(index), tracker));
+                    if (tracker.done) { // Terminée avant d’être enregistrée
+                        running.remove(index);
+                    }
+                } catch (IOException e) {
+                    slots.release();
+                    throw e;
+                }
+            }
+        } finally {
+            slots.acquire(parallelism); // Attend les dernières commandes (ou leur échec si la connexion est perdue)
+            slots.release(parallelism);
+        }
+        return failures.get();
+    }
+
+    /**
+     * Arrête le lot : les commandes pas encore lancées ne le seront pas, celles en cours sont annulées.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Integer streamId : running.values()) {
+            try {
+                connection.cancel(streamId);
+            } catch (IOException e) {
+                return; // Connexion perdue : les flux échouent d’eux-mêmes
+            }
+        }
+    }
+
+    /**
+     * @return Le nombre de commandes du lot
+     */
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * @return Le nombre de commandes terminées (réussies ou non)
+     */
+    public int finished() {
+        return finished.get();
+    }
+
+    /**
+     * @return Le nombre de commandes en échec jusqu’ici
+     */
+    public int failures() {
+        return failures.get();
+    }
+
+    /**
+     * Suit la fin d’une commande pour libérer sa place, puis transmet à son observateur.
+     */
+    private final class Tracker implements FramedConnection.StreamListener {
+        private final int index; // Indice de la commande
+        private final FramedConnection.StreamListener listener; // Observateur de la commande
+        private volatile boolean done; // Commande terminée
+        private int retries; // Renvois après un refus du serveur
+
+        Tracker(int index, FramedConnection.StreamListener listener) {
+            this.index = index;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onData(ByteBuffer data, boolean stderr) {
+            listener.onData(data, stderr);
+        }
+
+        @Override
+        public void onEnd(String[] fields) {
+            if (!"0".equals(fields[0])) {
+                failures.incrementAndGet();
+            }
+            done();
+            listener.onEnd(fields);
+        }
+
+        @Override
+        public void onError(String message) {
+            failures.incrementAndGet();
+            done();
+            listener.onError(message);
+        }
+
+        @Override
+        public void onBusy(long retryAfterMillis, String reason) {
+            running.remove(index);
+            if (cancelled || ++retries > MAX_RETRIES) { // Abandon : la commande échoue
+                onError(reason + (cancelled ? "" : " (" + MAX_RETRIES + " renvois)"));
+                return;
+            }
+            RETRIES.schedule(this::retry, retryAfterMillis, TimeUnit.MILLISECONDS); // Garde sa place en attendant
+        }
+
+        /**
+         * Renvoie la commande refusée sur un nouveau flux.
+         */
+        private void retry() {
+            if (cancelled) {
+                onError("Lot annulé");
+                return;
+            }
+            try {
+                running.put(index, connection.exec(commands.get(index), this));
+                if (done) { // Terminée avant d’être enregistrée
+                    running.remove(index);
+                }
+            } catch (IOException e) {
+                onError(e.getMessage()); // Connexion perdue
+            }
+        }
+
+        /**
+         * Libère la place de la commande.
+         */
+        private void done() {
+            done = true;
+            running.remove(index);
+            finished.incrementAndGet();
+            slots.release();
+        }
+    }
+}
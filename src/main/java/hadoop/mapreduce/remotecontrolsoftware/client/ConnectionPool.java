@@ -0,0 +1,244 @@
+package hadoop.mapreduce.remotecontrolsoftware.client;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connexions authentifiées réutilisées, par serveur ({@code hôte:port}), avec les mêmes identifiants.
+ * Chaque requête part sur la connexion la moins chargée du serveur ; une connexion de plus est ouverte
+ * quand toutes ont déjà {@link Protocol#MAX_STREAMS} requêtes en cours, jusqu’à {@code maxPerHost}.
+ * Au-delà, les requêtes attendent dans la file de la connexion choisie ({@link RemoteClient}).
+ * Les connexions perdues sont oubliées et remplacées à la requête suivante ; les connexions suivantes
+ * d’un serveur présentent le jeton de session de la précédente et reprennent sa session TLS, sans
+ * renvoyer les identifiants tant que le jeton est valable.
+ */
+public class ConnectionPool implements Closeable {
+    public static final int DEFAULT_MAX_PER_HOST = Math.max(1, Integer.getInteger("rcs.pool.connections", 4)); // Connexions par serveur
+
+    /**
+     * Connexion en cours d’ouverture, et les requêtes qui l’attendent.
+     */
+    private static final class Opening {
+        private final CompletableFuture<RemoteClient> client; // Connexion à venir
+        private int waiters = 1; // Requêtes qui partiront sur cette connexion
+
+        Opening(CompletableFuture<RemoteClient> client) {
+            this.client = client;
+        }
+    }
+
+    /**
+     * Connexions d’un serveur.
+     */
+    private static final class HostClients {
+        private final List<RemoteClient> clients = new ArrayList<>(); // Connexions authentifiées
+        private final List<Opening> openings = new ArrayList<>(); // Connexions en cours d’ouverture
+        private String token; // Dernier jeton de session reçu, pour ouvrir les suivantes sans identifiants
+    }
+
+    private final String login; // Login des connexions
+    private final String password; // Mot de passe des connexions
+    private final int maxPerHost; // Connexions au plus par serveur
+    private final ReentrantLock lock = new ReentrantLock(); // Protège les connexions
+    private final Map<String, HostClients> hosts = new HashMap<>(); // Connexions, par "hôte:port"
+    private boolean closed; // Pool fermé
+
+    /**
+     * @param login Le login des connexions
+     * @param password Le mot de passe des connexions
+     */
+    public ConnectionPool(String login, String password) {
+        this(login, password, DEFAULT_MAX_PER_HOST);
+    }
+
+    /**
+     * @param login Le login des connexions
+     * @param password Le mot de passe des connexions
+     * @param maxPerHost Le nombre maximal de connexions par serveur
+     */
+    public ConnectionPool(String login, String password, int maxPerHost) {
+        this.login = login;
+        this.password = password;
+        this.maxPerHost = Math.max(1, maxPerHost);
+    }
+
+    /**
+     * Choisit une connexion vers un serveur, ouverte si besoin.
+     * @param host Adresse du serveur
+     * @param port Port du serveur
+     * @return La connexion la moins chargée, ou l’échec de l’ouverture
+     */
+    public CompletableFuture<RemoteClient> client(String host, int port) {
+        String key = host + ":" + port;
+        lock.lock();
+        try {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IOException("Pool fermé."));
+            }
+            HostClients entry = hosts.computeIfAbsent(key, k -> new HostClients());
+            entry.clients.removeIf(client -> !client.isOpen()); // Connexions perdues
+            RemoteClient best = null;
+            for (RemoteClient client : entry.clients) {
+                if (best == null || client.pending() < best.pending()) {
+                    best = client;
+                }
+            }
+            if (best != null && best.pending() < Protocol.MAX_STREAMS) { // Flux libre
+                return CompletableFuture.completedFuture(best);
+            }
+            Opening quietest = null; // Ouverture en cours la moins attendue
+            for (Opening opening : entry.openings) {
+                if (quietest == null || opening.waiters < quietest.waiters) {
+                    quietest = opening;
+                }
+            }
+            if (quietest != null && quietest.waiters < Protocol.MAX_STREAMS) { // Elle aura encore un flux libre
+                quietest.waiters++;
+                return quietest.client;
+            }
+            if (entry.clients.size() + entry.openings.size() < maxPerHost) { // Une connexion de plus
+                Opening opening = new Opening(RemoteClient.connect(host, port, login, password, entry.token));
+                entry.openings.add(opening);
+                opening.client.whenComplete((client, error) -> opened(entry, opening, client));
+                return opening.client;
+            }
+            if (best != null) { // Plus de connexion permise : attente dans la file de la moins chargée
+                return CompletableFuture.completedFuture(best);
+            }
+            quietest.waiters++;
+            return quietest.client;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Exécute une commande sur un serveur (voir {@link RemoteClient#execute(String)}).
+     * @param host Adresse du serveur
+     * @param port Port du serveur
+     * @param command La commande
+     * @return Son résultat
+     */
+    public CompletableFuture<RemoteClient.Result> execute(String host, int port, String command) {
+        return client(host, port).thenCompose(client -> client.execute(command));
+    }
+
+    /**
+     * Envoie un fichier à un serveur (voir {@link RemoteClient#upload(Path)}).
+     * @param host Adresse du serveur
+     * @param port Port du serveur
+     * @param file Le fichier
+     * @return Le message de confirmation du serveur
+     */
+    public CompletableFuture<String> upload(String host, int port, Path file) {
+        return client(host, port).thenCompose(client -> client.upload(file));
+    }
+
+    /**
+     * Envoie un fichier à un serveur par différence (voir {@link RemoteClient#uploadDelta(Path)}).
+     * @param host Adresse du serveur
+     * @param port Port du serveur
+     * @param file Le fichier
+     * @return Le bilan de l’envoi
+     */
+    public CompletableFuture<RemoteClient.DeltaResult> uploadDelta(String host, int port, Path file) {
+        return client(host, port).thenCompose(client -> client.uploadDelta(file));
+    }
+
+    /**
+     * Envoie un dossier à un serveur (voir {@link RemoteClient#uploadTree(Path, java.util.function.Consumer)}).
+     * @param host Adresse du serveur
+     * @param port Port du serveur
+     * @param directory Le dossier
+     * @return Le bilan de l’envoi
+     */
+    public CompletableFuture<RemoteClient.TreeResult> uploadTree(String host, int port, Path directory) {
+        return client(host, port).thenCompose(client -> client.uploadTree(directory, null));
+    }
+
+    /**
+     * Télécharge un fichier d’un serveur (voir {@link RemoteClient#download(String, Path)}).
+     * @param host Adresse du serveur
+     * @param port Port du serveur
+     * @param remotePath Chemin du fichier sur le serveur
+     * @param target Fichier local à créer
+     * @return La taille du fichier téléchargé
+     */
+    public CompletableFuture<Long> download(String host, int port, String remotePath, Path target) {
+        return client(host, port).thenCompose(client -> client.download(remotePath, target));
+    }
+
+    /**
+     * @return Le nombre de connexions ouvertes, tous serveurs confondus
+     */
+    public int size() {
+        lock.lock();
+        try {
+            int size = 0;
+            for (HostClients entry : hosts.values()) {
+                for (RemoteClient client : entry.clients) {
+                    if (client.isOpen()) {
+                        size++;
+                    }
+                }
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ferme toutes les connexions. Les requêtes en cours se terminent en échec.
+     */
+    @Override
+    public void close() {
+        List<RemoteClient> clients = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            for (HostClients entry : hosts.values()) {
+                clients.addAll(entry.clients);
+            }
+            hosts.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (RemoteClient client : clients) {
+            client.close();
+        }
+    }
+
+    /**
+     * Range une connexion qui vient d’être ouverte.
+     * @param entry Les connexions de son serveur
+     * @param opening L’ouverture terminée
+     * @param client La connexion, ou null si l’ouverture a échoué
+     */
+    private void opened(HostClients entry, Opening opening, RemoteClient client) {
+        boolean keep;
+        lock.lock();
+        try {
+            entry.openings.remove(opening);
+            keep = !closed && client != null;
+            if (keep) {
+                entry.clients.add(client);
+                entry.token = client.sessionToken(); // Le plus récent, valable le plus longtemps
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!keep && client != null) { // Pool fermé pendant l’ouverture
+            client.close();
+        }
+    }
+}
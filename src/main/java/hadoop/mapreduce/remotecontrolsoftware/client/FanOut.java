@@ -0,0 +1,398 @@
+package hadoop.mapreduce.remotecontrolsoftware.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Exécution d’une même commande sur plusieurs serveurs. Une session authentifiée par serveur est
+ * ouverte à la première commande puis gardée pour les suivantes (rouverte si elle a été perdue).
+ * Au plus {@code parallelism} serveurs sont contactés en même temps ; chaque serveur a son bilan
+ * ({@link HostResult}) avec sa latence, son code de sortie ou son erreur, et sa sortie (bornée)
+ * pour une réduction côté client ({@link FanOutReduce}).
+ * <p>
+ * Le nombre de serveurs contactés en même temps par défaut se règle par la propriété système
+ * {@code rcs.fanout.parallel}.
+ */
+public class FanOut implements Closeable {
+    public static final int DEFAULT_PARALLELISM = Math.max(1, Integer.getInteger("rcs.fanout.parallel", 32)); // Serveurs en parallèle
+    public static final int DEFAULT_PORT = 12345; // Port d’un serveur sans port précisé
+    public static final int MAX_OUTPUT_BYTES = 1024 * 1024; // Sortie gardée par serveur (au-delà : tronquée)
+
+    /**
+     * Serveur de la liste.
+     */
+    public static final class Host {
+        private final String name; // Nom ou adresse
+        private final int port; // Port
+
+        /**
+         * @param name Le nom ou l’adresse du serveur
+         * @param port Son port
+         */
+        public Host(String name, int port) {
+            this.name = name;
+            this.port = port;
+        }
+
+        /**
+         * Lit une liste de serveurs : un par ligne, {@code nom}, {@code nom:port} ou {@code [ipv6]:port} ;
+         * les lignes vides et celles qui commencent par {@code #} sont ignorées, les doublons aussi.
+         * @param text La liste
+         * @return Les serveurs, dans l’ordre de la liste
+         * @throws IllegalArgumentException Si un port est invalide
+         */
+        public static List<Host> parseList(String text) {
+            Map<String, Host> hosts = new LinkedHashMap<>(); // Sans doublons, ordre conservé
+            for (String raw : text.split("\\R")) {
+                String line = raw.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String name = line;
+                int port = DEFAULT_PORT;
+                int colon = line.lastIndexOf(':');
+                boolean bracketed = line.startsWith("[");
+                if (colon > 0 && (bracketed ? line.lastIndexOf(']') < colon : line.indexOf(':') == colon)) {
+                    name = line.substring(0, colon);
+                    try {
+                        port = Integer.parseInt(line.substring(colon + 1));
+                    } catch (NumberFormatException e) {
+                        port = -1;
+                    }
+                    if (port < 1 || port > 65535) {
+                        throw new IllegalArgumentException("Port invalide : " + line);
+                    }
+                }
+                if (bracketed && name.endsWith("]")) { // [ipv6] : sans crochets pour la connexion
+                    name = name.substring(1, name.length() - 1);
+                }
+                Host host = new Host(name, port);
+                hosts.putIfAbsent(host.toString(), host);
+            }
+            return new ArrayList<>(hosts.values());
+        }
+
+        @Override
+        public String toString() {
+            return (name.indexOf(':') >= 0 ? "[" + name + "]" : name) + ":" + port;
+        }
+    }
+
+    /**
+     * Bilan d’une commande sur un serveur, immuable.
+     */
+    public static final class HostResult {
+        private final Host host; // Serveur
+        private final String exitCode; // Code de sortie ("-" en cas d’erreur)
+        private final long millis; // Durée de la commande, connexion comprise si elle a été ouverte
+        private final String stdout; // Sortie standard (tronquée à MAX_OUTPUT_BYTES)
+        private final String stderr; // Sortie d’erreur (tronquée à MAX_OUTPUT_BYTES)
+        private final boolean truncated; // Une sortie a été tronquée
+        private final String error; // Cause de l’échec (connexion, authentification, annulation), ou null
+
+        HostResult(Host host, String exitCode, long millis, String stdout, String stderr, boolean truncated,
+                   String error) {
+            this.host = host;
+            this.exitCode = exitCode;
+            this.millis = millis;
+            this.stdout = stdout;
+            this.stderr = stderr;
+            this.truncated = truncated;
+            this.error = error;
+        }
+
+        /**
+         * @return Le serveur
+         */
+        public Host host() {
+            return host;
+        }
+
+        /**
+         * @return Le code de sortie, ou "-" si la commande n’a pas abouti
+         */
+        public String exitCode() {
+            return exitCode;
+        }
+
+        /**
+         * @return La durée de la commande en millisecondes (ouverture de la session comprise)
+         */
+        public long millis() {
+            return millis;
+        }
+
+        /**
+         * @return La sortie standard
+         */
+        public String stdout() {
+            return stdout;
+        }
+
+        /**
+         * @return La sortie d’erreur
+         */
+        public String stderr() {
+            return stderr;
+        }
+
+        /**
+         * @return true si une sortie dépassait {@link #MAX_OUTPUT_BYTES} et a été tronquée
+         */
+        public boolean truncated() {
+            return truncated;
+        }
+
+        /**
+         * @return La cause de l’échec, ou null si la commande a abouti
+         */
+        public String error() {
+            return error;
+        }
+
+        /**
+         * @return true si la commande a abouti avec le code 0
+         */
+        public boolean succeeded() {
+            return error == null && "0".equals(exitCode);
+        }
+    }
+
+    private final List<Host> hosts; // Serveurs, dans l’ordre de la liste
+    private final String login; // Identifiants communs à tous les serveurs
+    private final String password; // Mot de passe
+    private final ExecutorService workers; // Un thread par serveur contacté en même temps
+    private final Map<Host, FramedConnection> connections = new ConcurrentHashMap<>(); // Sessions ouvertes
+    private final Map<Host, Integer> running = new ConcurrentHashMap<>(); // Flux de la commande en cours, par serveur
+    private volatile boolean cancelled; // Annulation de la commande en cours
+
+    /**
+     * @param hosts Les serveurs
+     * @param login Le login, le même sur tous les serveurs
+     * @param password Le mot de passe
+     * @param parallelism Le nombre de serveurs contactés en même temps au plus
+     */
+    public FanOut(List<Host> hosts, String login, String password, int parallelism) {
+        if (hosts.isEmpty()) {
+            throw new IllegalArgumentException("Aucun serveur dans la liste");
+        }
+        this.hosts = new ArrayList<>(hosts);
+        this.login = login;
+        this.password = password;
+        AtomicInteger ids = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "rcs-fanout-" + ids.incrementAndGet());
+            thread.setDaemon(true); // N’empêche pas la fermeture de l’application
+            return thread;
+        });
+    }
+
+    /**
+     * @return Les serveurs, dans l’ordre de la liste
+     */
+    public List<Host> hosts() {
+        return Collections.unmodifiableList(hosts);
+    }
+
+    /**
+     * Exécute une commande sur tous les serveurs, dans le thread appelant.
+     * @param command La commande
+     * @param onResult Reçoit le bilan de chaque serveur dès qu’il est connu (depuis un thread de travail)
+     * @return Les bilans, dans l’ordre de la liste des serveurs
+     * @throws InterruptedException Si l’attente est interrompue
+     */
+    public List<HostResult> run(String command, Consumer<HostResult> onResult) throws InterruptedException {
+        cancelled = false;
+        List<Future<HostResult>> futures = new ArrayList<>();
+        for (Host host : hosts) {
+            futures.add(workers.submit(() -> {
+                HostResult result = runOn(host, command);
+                onResult.accept(result);
+                return result;
+            }));
+        }
+        List<HostResult> results = new ArrayList<>();
+        for (Future<HostResult> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) { // Erreur inattendue dans l’observateur
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Arrête la commande en cours : les serveurs pas encore contactés sont ignorés, les commandes lancées annulées.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Map.Entry<Host, Integer> stream : running.entrySet()) {
+            FramedConnection connection = connections.get(stream.getKey());
+            try {
+                if (connection != null) {
+                    connection.cancel(stream.getValue());
+                }
+            } catch (IOException ignored) {
+                // Connexion perdue : le flux échoue de lui-même
+            }
+        }
+    }
+
+    /**
+     * @return Le nombre de sessions ouvertes
+     */
+    public int openSessions() {
+        return (int) connections.values().stream().filter(FramedConnection::isOpen).count();
+    }
+
+    /**
+     * Ferme les sessions de tous les serveurs.
+     */
+    @Override
+    public void close() {
+        cancelled = true;
+        workers.shutdownNow();
+        for (FramedConnection connection : connections.values()) {
+            connection.close();
+        }
+        connections.clear();
+    }
+
+    /**
+     * Exécute la commande sur un serveur (thread de travail).
+     * @param host Le serveur
+     * @param command La commande
+     * @return Son bilan
+     */
+    private HostResult runOn(Host host, String command) {
+        long start = System.nanoTime();
+        if (cancelled) {
+            return new HostResult(host, "-", 0, "", "", false, "Annulée");
+        }
+        Output stdout = new Output();
+        Output stderr = new Output();
+        CompletableFuture<String[]> end = new CompletableFuture<>();
+        try {
+            FramedConnection connection = session(host);
+            running.put(host, connection.exec(command, new FramedConnection.StreamListener() {
+                @Override
+                public void onData(ByteBuffer data, boolean fromStderr) {
+                    (fromStderr ? stderr : stdout).add(data);
+                }
+
+                @Override
+                public void onEnd(String[] fields) {
+                    end.complete(fields);
+                }
+
+                @Override
+                public void onError(String message) {
+                    end.completeExceptionally(new IOException(message));
+                }
+            }));
+            if (cancelled) { // Annulée pendant le lancement
+                connection.cancel(running.get(host));
+            }
+            String[] fields = end.get();
+            return new HostResult(host, fields[0], elapsed(start), stdout.text(), stderr.text(),
+                    stdout.truncated() || stderr.truncated(), null);
+        } catch (IOException e) {
+            return new HostResult(host, "-", elapsed(start), stdout.text(), stderr.text(), false, e.getMessage());
+        } catch (ExecutionException e) {
+            return new HostResult(host, "-", elapsed(start), stdout.text(), stderr.text(), false,
+                    e.getCause().getMessage());
+        } catch (InterruptedException e) { // Fermeture pendant la commande
+            Thread.currentThread().interrupt();
+            return new HostResult(host, "-", elapsed(start), stdout.text(), stderr.text(), false, "Interrompue");
+        } finally {
+            running.remove(host);
+        }
+    }
+
+    /**
+     * @param host Un serveur
+     * @return Sa session authentifiée, ouverte si besoin
+     * @throws IOException Si la connexion ou l’authentification échoue
+     */
+    private FramedConnection session(Host host) throws IOException {
+        FramedConnection connection = connections.get(host);
+        if (connection != null && connection.isOpen()) {
+            return connection;
+        }
+        connection = new FramedConnection(host.name, host.port, cause -> { }); // Perte vue à la commande suivante
+        try {
+            connection.authenticate(login, password);
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        FramedConnection previous = connections.put(host, connection);
+        if (previous != null) {
+            previous.close();
+        }
+        return connection;
+    }
+
+    /**
+     * @param start Un instant de {@link System#nanoTime()}
+     * @return Les millisecondes écoulées depuis
+     */
+    private static long elapsed(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Sortie d’une commande sur un serveur, bornée à {@link #MAX_OUTPUT_BYTES} (thread de lecture de la connexion).
+     */
+    private static final class Output {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(); // Octets reçus
+        private boolean truncated; // Octets ignorés au-delà de la limite
+
+        synchronized void add(ByteBuffer data) {
+            int kept = Math.min(data.remaining(), MAX_OUTPUT_BYTES - bytes.size());
+            if (kept < data.remaining()) {
+                truncated = true;
+            }
+            byte[] chunk = new byte[kept];
+            data.get(chunk);
+            bytes.write(chunk, 0, kept);
+        }
+
+        synchronized boolean truncated() {
+            return truncated;
+        }
+
+        synchronized String text() {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @param text Un texte
+     * @return Le texte sans la fin de ligne finale, pour comparer des sorties
+     */
+    static String trimEnd(String text) {
+        int end = text.length();
+        while (end > 0 && (text.charAt(end - 1) == '\n' || text.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+}
@@ -0,0 +1,127 @@
+package hadoop.mapreduce.remotecontrolsoftware.client;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Réduction côté client des sorties d’une commande exécutée sur plusieurs serveurs ({@link FanOut}).
+ * Seuls les serveurs où la commande a abouti sont réduits ; les échecs sont listés à la fin.
+ */
+public enum FanOutReduce {
+    NONE("Aucune"), // Pas de réduction : le tableau des serveurs suffit
+    GROUP("Sorties identiques"), // Regroupe les serveurs qui ont produit exactement la même sortie
+    COUNT("Nombre de serveurs par ligne"), // Compte, pour chaque ligne, les serveurs qui l’ont produite
+    DISTINCT("Lignes distinctes"); // Liste triée des lignes produites, sans doublons
+
+    private static final int MAX_HOSTS_LISTED = 20; // Serveurs nommés par groupe au plus
+
+    private final String label; // Libellé du choix
+
+    FanOutReduce(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Réduit les sorties standard des serveurs.
+     * @param results Les bilans des serveurs
+     * @return Le rapport de la réduction
+     */
+    public String apply(List<FanOut.HostResult> results) {
+        StringBuilder report = new StringBuilder();
+        List<FanOut.HostResult> failed = new ArrayList<>(); // Serveurs sans sortie exploitable
+        List<FanOut.HostResult> reduced = new ArrayList<>();
+        for (FanOut.HostResult result : results) {
+            (result.error() != null ? failed : reduced).add(result);
+        }
+        switch (this) {
+            case GROUP:
+                group(reduced, report);
+                break;
+            case COUNT:
+                countLines(reduced, report, false);
+                break;
+            case DISTINCT:
+                countLines(reduced, report, true);
+                break;
+            default:
+                report.append(reduced.size()).append(" serveurs ont répondu.\n");
+                break;
+        }
+        if (!failed.isEmpty()) {
+            report.append('\n').append(failed.size()).append(" serveurs en échec :\n");
+            for (FanOut.HostResult result : failed) {
+                report.append("  ").append(result.host()).append(" : ").append(result.error()).append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Regroupe les serveurs par sortie identique, les groupes les plus nombreux d’abord.
+     * @param results Les bilans à réduire
+     * @param report Reçoit le rapport
+     */
+    private static void group(List<FanOut.HostResult> results, StringBuilder report) {
+        Map<String, List<FanOut.HostResult>> groups = new LinkedHashMap<>(); // Sortie (et code) -> serveurs
+        for (FanOut.HostResult result : results) {
+            String key = "code " + result.exitCode() + "\n" + FanOut.trimEnd(result.stdout());
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(result);
+        }
+        List<Map.Entry<String, List<FanOut.HostResult>>> sorted = new ArrayList<>(groups.entrySet());
+        sorted.sort((a, b) -> b.getValue().size() - a.getValue().size());
+        report.append(sorted.size()).append(" sorties différentes sur ").append(results.size()).append(" serveurs.\n");
+        for (Map.Entry<String, List<FanOut.HostResult>> group : sorted) {
+            List<FanOut.HostResult> hosts = group.getValue();
+            report.append("\n=== ").append(hosts.size()).append(" serveurs (")
+                    .append(group.getKey(), 0, group.getKey().indexOf('\n')).append(") : ");
+            for (int i = 0; i < Math.min(hosts.size(), MAX_HOSTS_LISTED); i++) {
+                report.append(i > 0 ? ", " : "").append(hosts.get(i).host());
+            }
+            if (hosts.size() > MAX_HOSTS_LISTED) {
+                report.append(", … (").append(hosts.size() - MAX_HOSTS_LISTED).append(" de plus)");
+            }
+            String output = group.getKey().substring(group.getKey().indexOf('\n') + 1);
+            report.append('\n').append(output.isEmpty() ? "(sortie vide)" : output).append('\n');
+        }
+    }
+
+    /**
+     * Compte les serveurs qui ont produit chaque ligne (une ligne répétée sur un serveur compte une fois).
+     * @param results Les bilans à réduire
+     * @param report Reçoit le rapport
+     * @param distinctOnly true pour lister les lignes triées sans leur nombre
+     */
+    private static void countLines(List<FanOut.HostResult> results, StringBuilder report, boolean distinctOnly) {
+        Map<String, Integer> counts = new TreeMap<>(); // Ligne -> serveurs, triées
+        for (FanOut.HostResult result : results) {
+            String output = FanOut.trimEnd(result.stdout());
+            if (output.isEmpty()) {
+                continue;
+            }
+            for (String line : new LinkedHashSet<>(List.of(output.split("\\R")))) { // Une fois par serveur
+                counts.merge(line, 1, Integer::sum);
+            }
+        }
+        report.append(counts.size()).append(" lignes distinctes sur ").append(results.size()).append(" serveurs.\n");
+        if (distinctOnly) {
+            for (String line : counts.keySet()) {
+                report.append(line).append('\n');
+            }
+            return;
+        }
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(counts.entrySet());
+        sorted.sort((a, b) -> b.getValue() - a.getValue()); // Stable : à nombre égal, ordre alphabétique
+        for (Map.Entry<String, Integer> entry : sorted) {
+            report.append(String.format("%7d  %s", entry.getValue(), entry.getKey())).append('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
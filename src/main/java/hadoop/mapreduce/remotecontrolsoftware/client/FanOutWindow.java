@@ -0,0 +1,258 @@
+package hadoop.mapreduce.remotecontrolsoftware.client;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.*;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Fenêtre du mode multi-serveurs : une commande exécutée sur tous les serveurs d’une liste ({@link FanOut}).
+ * Le tableau donne, serveur par serveur, l’état, le code de sortie, la latence et l’erreur éventuelle ;
+ * la zone du bas affiche la réduction choisie ({@link FanOutReduce}) une fois tous les serveurs terminés.
+ * Les sessions restent ouvertes d’une commande à l’autre tant que la liste et les identifiants ne changent pas.
+ */
+final class FanOutWindow {
+    private final Stage stage = new Stage(); // Fenêtre
+    private final TextArea hostList = new TextArea(); // Un serveur par ligne
+    private final TextField loginField = new TextField(); // Login commun
+    private final PasswordField passwordField = new PasswordField(); // Mot de passe commun
+    private final Spinner<Integer> parallelism = new Spinner<>(1, 1024, FanOut.DEFAULT_PARALLELISM); // Serveurs en parallèle
+    private final TextField commandField = new TextField(); // Commande à exécuter
+    private final ComboBox<FanOutReduce> reduce = new ComboBox<>(
+            FXCollections.observableArrayList(FanOutReduce.values())); // Réduction des sorties
+    private final Button runButton = new Button("Exécuter"); // Lance la commande
+    private final Button cancelButton = new Button("Annuler"); // Arrête la commande en cours
+    private final Label summary = new Label(); // Bilan de la dernière commande
+    private final ObservableList<HostRow> rows = FXCollections.observableArrayList(); // Une ligne par serveur
+    private final TextArea reduction = new TextArea(); // Résultat de la réduction
+    private FanOut fanOut; // Sessions ouvertes (thread JavaFX)
+    private String fanOutKey; // Liste et identifiants de ces sessions
+
+    /**
+     * Affiche la fenêtre (thread JavaFX).
+     * @param login Le login proposé (celui de la session principale, ou vide)
+     */
+    void show(String login) {
+        hostList.setPromptText("Un serveur par ligne : nom, nom:port ou [ipv6]:port (# pour un commentaire)");
+        hostList.setPrefRowCount(5);
+        loginField.setText(login == null ? "" : login);
+        loginField.setPromptText("Login");
+        passwordField.setPromptText("Mot de passe");
+        parallelism.setEditable(true);
+        Button loadButton = new Button("Charger…"); // Lit la liste depuis un fichier
+        loadButton.setOnAction(event -> loadHosts());
+        HBox access = new HBox(10, loadButton, loginField, passwordField, new Label("Serveurs en parallèle :"),
+                parallelism);
+
+        commandField.setPromptText("Commande");
+        HBox.setHgrow(commandField, Priority.ALWAYS);
+        reduce.setValue(FanOutReduce.GROUP);
+        cancelButton.setDisable(true);
+        runButton.setOnAction(event -> run());
+        commandField.setOnAction(event -> run());
+        cancelButton.setOnAction(event -> {
+            if (fanOut != null) {
+                fanOut.cancel();
+            }
+        });
+        HBox commandBar = new HBox(10, commandField, new Label("Réduction :"), reduce, runButton, cancelButton);
+
+        TableView<HostRow> table = new TableView<>(rows);
+        table.getColumns().add(column("Serveur", 200, row -> new ReadOnlyObjectWrapper<>(row.host.toString())));
+        table.getColumns().add(column("État", 90, row -> row.state));
+        table.getColumns().add(column("Code", 50, row -> row.exitCode));
+        table.getColumns().add(column("Latence", 80, row -> row.latency));
+        table.getColumns().add(column("Sortie", 260, row -> row.output));
+        table.getColumns().add(column("Erreur", 220, row -> row.error));
+        table.setPrefHeight(260);
+        reduction.setEditable(false);
+        reduction.setPrefRowCount(10);
+        reduction.setStyle("-fx-font-family: monospace;");
+
+        VBox root = new VBox(10, new Label("Serveurs"), hostList, access, commandBar, summary, table, reduction);
+        root.setPadding(new Insets(10));
+        VBox.setVgrow(table, Priority.ALWAYS);
+        stage.setTitle("Commande sur plusieurs serveurs");
+        stage.setScene(new Scene(root, 1000, 700));
+        stage.setOnHidden(event -> closeSessions()); // Ferme les sessions avec la fenêtre
+        stage.show();
+    }
+
+    /**
+     * Lit la liste des serveurs depuis un fichier texte.
+     */
+    private void loadHosts() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Liste des serveurs");
+        File file = chooser.showOpenDialog(stage);
+        if (file == null) {
+            return;
+        }
+        try {
+            hostList.setText(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            summary.setText("Impossible de lire " + file + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lance la commande sur tous les serveurs dans un thread séparé.
+     */
+    private void run() {
+        String command = commandField.getText();
+        if (command == null || command.trim().isEmpty()) {
+            return;
+        }
+        List<FanOut.Host> hosts;
+        try {
+            hosts = FanOut.Host.parseList(hostList.getText());
+        } catch (IllegalArgumentException e) {
+            summary.setText(e.getMessage());
+            return;
+        }
+        if (hosts.isEmpty()) {
+            summary.setText("Aucun serveur dans la liste.");
+            return;
+        }
+        String key = hosts + "\n" + loginField.getText() + "\n" + passwordField.getText() + "\n" + parallelism.getValue();
+        if (fanOut == null || !key.equals(fanOutKey)) { // Nouvelle liste ou nouveaux identifiants : nouvelles sessions
+            closeSessions();
+            fanOut = new FanOut(hosts, loginField.getText(), passwordField.getText(), parallelism.getValue());
+            fanOutKey = key;
+        }
+        FanOut current = fanOut;
+        FanOutReduce reducer = reduce.getValue();
+        HostRow[] byIndex = new HostRow[hosts.size()];
+        for (int i = 0; i < hosts.size(); i++) {
+            byIndex[i] = new HostRow(hosts.get(i));
+        }
+        rows.setAll(Arrays.asList(byIndex));
+        reduction.clear();
+        summary.setText("En cours sur " + hosts.size() + " serveurs…");
+        runButton.setDisable(true);
+        cancelButton.setDisable(false);
+        new Thread(() -> { // Les sessions s’ouvrent et les commandes tournent hors du thread JavaFX
+            long start = System.nanoTime();
+            List<FanOut.HostResult> results;
+            try {
+                results = current.run(command, result -> {
+                    HostRow row = byIndex[hosts.indexOf(result.host())];
+                    Platform.runLater(() -> row.update(result));
+                });
+            } catch (InterruptedException e) {
+                Platform.runLater(() -> finished("Commande interrompue.", ""));
+                return;
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            String report = reducer.apply(results);
+            Platform.runLater(() -> finished(summarize(results, millis), report));
+        }, "rcs-client-fanout").start();
+    }
+
+    /**
+     * Affiche la fin d’une commande (thread JavaFX).
+     * @param text Le bilan
+     * @param report La réduction
+     */
+    private void finished(String text, String report) {
+        summary.setText(text);
+        reduction.setText(report);
+        runButton.setDisable(false);
+        cancelButton.setDisable(true);
+    }
+
+    /**
+     * @param results Les bilans des serveurs
+     * @param millis La durée totale
+     * @return Le nombre de réussites et d’échecs et la répartition des latences
+     */
+    private static String summarize(List<FanOut.HostResult> results, long millis) {
+        long[] latencies = results.stream().filter(result -> result.error() == null)
+                .mapToLong(FanOut.HostResult::millis).sorted().toArray();
+        long succeeded = results.stream().filter(FanOut.HostResult::succeeded).count();
+        long errors = results.size() - latencies.length;
+        String text = results.size() + " serveurs en " + millis + " ms : " + succeeded + " code 0, "
+                + (latencies.length - succeeded) + " autre code, " + errors + " en erreur";
+        if (latencies.length > 0) {
+            text += " ; latence p50 " + latencies[latencies.length / 2] + " ms, p99 "
+                    + latencies[Math.min(latencies.length - 1, latencies.length * 99 / 100)] + " ms, max "
+                    + latencies[latencies.length - 1] + " ms";
+        }
+        return text;
+    }
+
+    /**
+     * Ferme les sessions ouvertes.
+     */
+    private void closeSessions() {
+        if (fanOut != null) {
+            FanOut closing = fanOut;
+            fanOut = null;
+            fanOutKey = null;
+            new Thread(closing::close, "rcs-client-fanout-close").start(); // Fermetures TLS hors du thread JavaFX
+        }
+    }
+
+    /**
+     * @param title Le titre de la colonne
+     * @param width La largeur de la colonne
+     * @param value La valeur affichée pour une ligne
+     * @return La colonne
+     */
+    private static TableColumn<HostRow, String> column(String title, double width,
+                                                      Function<HostRow, ObservableValue<String>> value) {
+        TableColumn<HostRow, String> column = new TableColumn<>(title);
+        column.setPrefWidth(width);
+        column.setCellValueFactory(cell -> value.apply(cell.getValue()));
+        return column;
+    }
+
+    /**
+     * Ligne du tableau des serveurs (propriétés modifiées dans le thread JavaFX).
+     */
+    private static final class HostRow {
+        private final FanOut.Host host; // Serveur
+        private final StringProperty state = new SimpleStringProperty("En cours"); // État de la commande
+        private final StringProperty exitCode = new SimpleStringProperty(""); // Code de sortie
+        private final StringProperty latency = new SimpleStringProperty(""); // Durée de la commande
+        private final StringProperty output = new SimpleStringProperty(""); // Première ligne de la sortie
+        private final StringProperty error = new SimpleStringProperty(""); // Cause de l’échec
+
+        HostRow(FanOut.Host host) {
+            this.host = host;
+        }
+
+        /**
+         * @param result Le bilan du serveur
+         */
+        void update(FanOut.HostResult result) {
+            state.set(result.error() != null ? "Erreur" : result.succeeded() ? "Terminée" : "Échec");
+            exitCode.set(result.exitCode());
+            latency.set(result.millis() + " ms");
+            String text = FanOut.trimEnd(result.stdout());
+            int lineEnd = text.indexOf('\n');
+            output.set((lineEnd >= 0 ? text.substring(0, lineEnd) + " …" : text) + (result.truncated() ? " (tronquée)" : ""));
+            String stderr = FanOut.trimEnd(result.stderr());
+            error.set(result.error() != null ? result.error() : stderr.isEmpty() ? "" : stderr.lines().findFirst().orElse(""));
+        }
+    }
+}
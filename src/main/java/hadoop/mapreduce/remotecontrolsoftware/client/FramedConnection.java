@@ -0,0 +1,1140 @@
+package hadoop.mapreduce.remotecontrolsoftware.client;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Checksums;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Chunker;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Codec;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Codecs;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.CompressionStats;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Compressor;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Frame;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.FrameDecoder;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.StreamCredit;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Connexion au serveur en protocole binaire, sans interface graphique.
+ * Négocie le protocole, s’authentifie, puis ouvre autant de flux que nécessaire (commandes,
+ * uploads) qui progressent en parallèle sur la même connexion TLS.
+ * Un thread de lecture distribue les trames reçues aux {@link StreamListener} de chaque flux.
+ * <p>
+ * La compression des trames DATA est négociée à l’ouverture : le client propose les algorithmes
+ * de la propriété système {@code rcs.compress} (par défaut tous ceux de {@link Codecs}, {@code none}
+ * pour désactiver) et le serveur en retient un.
+ */
+public class FramedConnection implements Closeable {
+
+    /**
+     * Observateur d’un flux. Les méthodes sont appelées depuis le thread de lecture de la connexion :
+     * tant qu’elles ne rendent pas la main, le crédit du flux n’est pas renouvelé.
+     */
+    public interface StreamListener {
+
+        /**
+         * Appelé pour chaque trame DATA reçue.
+         * @param data Les octets reçus
+         * @param stderr true s’il s’agit de la sortie d’erreur d’une commande
+         */
+        default void onData(ByteBuffer data, boolean stderr) {
+        }
+
+        /**
+         * Appelé quand le flux s’est terminé normalement.
+         * @param fields Le bilan envoyé par le serveur (code de sortie et délai pour une commande)
+         */
+        void onEnd(String[] fields);
+
+        /**
+         * Appelé quand le flux a échoué ou que la connexion est perdue.
+         * @param message La cause
+         */
+        void onError(String message);
+
+        /**
+         * Appelé quand le serveur refuse une commande parce qu’il est occupé : rien n’a été lancé,
+         * la commande peut être renvoyée après le délai conseillé. Par défaut, traité comme une erreur.
+         * @param retryAfterMillis Le délai conseillé avant de renvoyer la commande
+         * @param reason La raison du refus
+         */
+        default void onBusy(long retryAfterMillis, String reason) {
+            onError(reason + ", réessayez dans " + retryAfterMillis + " ms");
+        }
+    }
+
+    private final SSLSocket socket; // Socket SSL connecté au serveur
+    private final InputStream input; // Flux d’entrée du socket
+    private final OutputStream output; // Flux de sortie du socket
+    private final ReentrantLock writeLock = new ReentrantLock(); // Une trame à la fois sur le socket
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>(); // Flux ouverts, par identifiant
+    private final AtomicInteger nextStreamId = new AtomicInteger(); // Identifiants croissants
+    private final BlockingQueue<Frame> authReplies = new LinkedBlockingQueue<>(); // Réponses AUTH_OK ou ERROR
+    private final Consumer<String> onDisconnect; // Prévenu quand la connexion est perdue
+    private final CompletableFuture<Frame> settings = new CompletableFuture<>(); // Réponse SETTINGS du serveur
+    private volatile Supplier<Codec> codec; // Compression négociée (null : aucune)
+    private volatile CompressionStats compression; // Bilan de la compression négociée
+    private volatile String sessionToken; // Jeton reçu à l’authentification, pour les reconnexions (null : aucun)
+    private volatile boolean closed; // Connexion fermée
+
+    /**
+     * Ouvre une connexion et négocie le protocole binaire.
+     * @param host Adresse du serveur
+     * @param port Port du serveur
+     * @param onDisconnect Prévenu (avec la cause) si la connexion est perdue sans appel à close()
+     * @throws IOException Si la connexion échoue ou si le serveur ne connaît pas le protocole binaire
+     */
+    public FramedConnection(String host, int port, Consumer<String> onDisconnect) throws IOException {
+        this.onDisconnect = onDisconnect;
+        this.socket = ClientTls.connect(host, port); // Contexte partagé : une reconnexion reprend la session TLS
+        try {
+            socket.setTcpNoDelay(true); // Petites trames (AUTH, WINDOW, OPEN) envoyées sans attendre d’acquittement
+            this.input = socket.getInputStream();
+            this.output = socket.getOutputStream();
+            readLine(); // Demande de login du protocole texte
+            output.write((Protocol.FRAMED_PREFACE + "\n").getBytes(StandardCharsets.UTF_8)); // Demande le protocole binaire
+            output.flush();
+            if (!Protocol.FRAMED_PREFACE.equals(readLine())) {
+                throw new ProtocolException("Le serveur ne propose pas le protocole binaire");
+            }
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        Thread reader = new Thread(this::readFrames, "rcs-client-reader");
+        reader.setDaemon(true); // N’empêche pas la fermeture de l’application
+        reader.start();
+        negotiateCompression(System.getProperty("rcs.compress", String.join(",", Codecs.names())));
+    }
+
+    /**
+     * Propose des algorithmes de compression et attend le choix du serveur.
+     * @param offered Les algorithmes, par ordre de préférence, séparés par des virgules
+     * @throws IOException Si la connexion est perdue
+     */
+    private void negotiateCompression(String offered) throws IOException {
+        if (offered.isBlank() || Protocol.NO_COMPRESSION.equals(offered)) {
+            return; // Sans négociation, le serveur ne compresse rien
+        }
+        send(Frame.text(Frame.Type.SETTINGS, Frame.CONNECTION_STREAM, Protocol.COMPRESS, offered));
+        String[] reply;
+        try {
+            reply = settings.get().fields(); // Distribuée par le thread de lecture
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IOException("Négociation interrompue");
+        } catch (ExecutionException e) {
+            close();
+            throw new IOException(e.getCause().getMessage());
+        }
+        String chosen = reply.length == 2 ? reply[1] : Protocol.NO_COMPRESSION;
+        codec = Codecs.factory(chosen);
+        compression = codec == null ? null : new CompressionStats(chosen);
+    }
+
+    /**
+     * @return Le bilan de la compression négociée, ou null si la connexion n’est pas compressée
+     */
+    public CompressionStats compressionStats() {
+        return compression;
+    }
+
+    /**
+     * Envoie les identifiants et attend la réponse du serveur. Le jeton de session éventuellement
+     * remis par le serveur est ensuite disponible par {@link #sessionToken()}.
+     * @param login Login saisi
+     * @param password Mot de passe saisi
+     * @return Le message du serveur si l’authentification a réussi
+     * @throws IOException Si l’authentification échoue (message du serveur) ou si la connexion est perdue
+     */
+    public String authenticate(String login, String password) throws IOException {
+        String[] reply = awaitAuth(Frame.text(Frame.Type.AUTH, Frame.CONNECTION_STREAM, login, password));
+        sessionToken = reply.length > 1 ? reply[1] : null;
+        return reply[0];
+    }
+
+    /**
+     * Se réauthentifie avec un jeton de session reçu lors d’une connexion précédente, sans identifiants.
+     * @param token Le jeton ({@link #sessionToken()} d’une connexion précédente)
+     * @return Le message du serveur si le jeton est accepté
+     * @throws IOException Si le jeton est refusé (expiré, serveur redémarré) ou si la connexion est perdue
+     */
+    public String resume(String token) throws IOException {
+        String[] reply = awaitAuth(Frame.text(Frame.Type.RESUME, Frame.CONNECTION_STREAM, token));
+        sessionToken = token; // Toujours valable jusqu’à son expiration
+        return reply[0];
+    }
+
+    /**
+     * @return Le jeton de session remis par le serveur, à présenter à {@link #resume(String)} lors d’une
+     * reconnexion, ou null si le serveur n’en émet pas
+     */
+    public String sessionToken() {
+        return sessionToken;
+    }
+
+    /**
+     * @return La session TLS de la connexion (reprise d’une connexion précédente ou négociée en entier)
+     */
+    public SSLSession tlsSession() {
+        return socket.getSession();
+    }
+
+    /**
+     * Envoie une trame d’authentification et attend la réponse du serveur.
+     * @param request La trame AUTH ou RESUME
+     * @return Les champs de la réponse AUTH_OK : message, puis jeton éventuel
+     * @throws IOException Si l’authentification échoue (message du serveur) ou si la connexion est perdue
+     */
+    private String[] awaitAuth(Frame request) throws IOException {
+        send(request);
+        Frame reply;
+        try {
+            reply = authReplies.take(); // Réponse distribuée par le thread de lecture
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Authentification interrompue");
+        }
+        if (reply.type() != Frame.Type.AUTH_OK) {
+            throw new IOException(reply.text());
+        }
+        return reply.fields();
+    }
+
+    /**
+     * Lance une commande sur le serveur. La sortie arrive au fil de l’eau dans le listener.
+     * @param command La commande à exécuter
+     * @param listener Reçoit la sortie puis le bilan "code\ndélai"
+     * @return L’identifiant du flux, pour {@link #cancel(int)}
+     * @throws IOException Si la connexion est perdue
+     */
+    public int exec(String command, StreamListener listener) throws IOException {
+        return open(listener, Protocol.EXEC, command).id;
+    }
+
+    /**
+     * Lance une commande que le serveur arrête, avec tous ses processus, si elle dure trop longtemps.
+     * @param command La commande à exécuter
+     * @param timeoutMillis La durée maximale en millisecondes (0 : celle du serveur)
+     * @param listener Reçoit la sortie puis le bilan "code\ndélai", ou l’erreur si la durée est dépassée
+     * @return L’identifiant du flux, pour {@link #cancel(int)}
+     * @throws IOException Si la connexion est perdue
+     */
+    public int exec(String command, long timeoutMillis, StreamListener listener) throws IOException {
+        if (timeoutMillis <= 0) {
+            return exec(command, listener);
+        }
+        return open(listener, Protocol.EXEC, command, String.valueOf(timeoutMillis)).id;
+    }
+
+    /**
+     * Envoie un fichier au serveur, dans le thread appelant : la méthode rend la main une fois
+     * tout le fichier envoyé, le bilan arrive ensuite dans le listener.
+     * Plusieurs uploads et commandes peuvent avancer en même temps depuis des threads différents.
+     * @param file Le fichier à envoyer
+     * @param listener Reçoit le bilan de l’upload
+     * @param progress Reçoit le nombre d’octets envoyés après chaque trame (peut être null)
+     * @throws IOException Si le fichier ne peut pas être lu ou si la connexion est perdue
+     * (un refus du serveur arrive dans le listener)
+     */
+    public void upload(Path file, StreamListener listener, Consumer<Long> progress) throws IOException {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            Stream stream = open(listener, Protocol.UPLOAD, file.getFileName().toString(), String.valueOf(source.size()));
+            ByteBuffer buffer = ByteBuffer.allocate(Protocol.MAX_DATA); // Une trame DATA au plus
+            long sent = 0; // Octets envoyés
+            while (true) {
+                buffer.clear();
+                try {
+                    buffer.limit(stream.credit.acquire(Protocol.MAX_DATA)); // Attend que le serveur ait de la place
+                } catch (IOException e) {
+                    if (!streams.containsKey(stream.id)) { // Refusé ou annulé : le listener est déjà prévenu
+                        return;
+                    }
+                    if (e instanceof InterruptedIOException) { // Envoi abandonné : le serveur oublie le flux
+                        cancel(stream.id);
+                    }
+                    throw e;
+                }
+                int count = source.read(buffer);
+                if (count < 0) {
+                    break;
+                }
+                buffer.flip();
+                ByteBuffer packed = stream.compressor.compress(buffer);
+                if (packed != null) { // Compressée : rend le crédit non utilisé
+                    stream.credit.grant(count - packed.remaining());
+                    send(new Frame(Frame.Type.DATA, Frame.FLAG_COMPRESSED, stream.id, packed));
+                } else {
+                    send(new Frame(Frame.Type.DATA, 0, stream.id, buffer));
+                }
+                sent += count;
+                if (progress != null) {
+                    progress.accept(sent);
+                }
+            }
+            send(Frame.text(Frame.Type.END, stream.id)); // Fin du fichier
+        }
+    }
+
+    /**
+     * Envoie un fichier de façon reprenable, dans le thread appelant : le serveur indique l’octet
+     * déjà reçu lors d’un envoi précédent interrompu, chaque morceau porte sa somme CRC32C et
+     * le fichier complet est vérifié par SHA-256 avant d’être publié.
+     * Les octets du fichier sont lus directement dans le buffer de la trame, sans copie intermédiaire.
+     * @param file Le fichier à envoyer
+     * @param listener Reçoit le bilan de l’upload
+     * @param progress Reçoit le nombre d’octets du fichier présents sur le serveur après chaque trame
+     *                 (reprise comprise, peut être null)
+     * @return L’octet à partir duquel l’envoi a repris (0 pour un nouvel envoi), ou -1 si le serveur a refusé
+     * (la cause arrive dans le listener)
+     * @throws IOException Si le fichier ne peut pas être lu ou si la connexion est perdue
+     */
+    public long uploadResumable(Path file, StreamListener listener, Consumer<Long> progress) throws IOException {
+        String sha256;
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            sha256 = Checksums.sha256(source); // Vérifiée par le serveur une fois le fichier complet
+        }
+        return uploadStripe(file, sha256, 1, 0, listener, progress);
+    }
+
+    /**
+     * Envoie une bande d’un fichier découpé ({@link Protocol#stripeStart(long, int, int)}), dans le thread
+     * appelant. Les autres bandes sont envoyées en parallèle, en général par d’autres connexions
+     * ({@link ParallelUpload}) ; le listener reçoit le bilan une fois le fichier complet vérifié par le serveur.
+     * @param file Le fichier à envoyer
+     * @param sha256 L’empreinte SHA-256 du fichier entier, en hexadécimal
+     * @param stripes Le nombre de bandes
+     * @param index La bande envoyée
+     * @param listener Reçoit le bilan de l’upload
+     * @param progress Reçoit le nombre d’octets de la bande présents sur le serveur après chaque trame
+     *                 (reprise comprise, peut être null)
+     * @return Le nombre d’octets de la bande déjà reçus lors d’un envoi précédent, ou -1 si le serveur a refusé
+     * (la cause arrive dans le listener)
+     * @throws IOException Si le fichier ne peut pas être lu ou si la connexion est perdue
+     */
+    public long uploadStripe(Path file, String sha256, int stripes, int index, StreamListener listener,
+                             Consumer<Long> progress) throws IOException {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = source.size();
+            long start = Protocol.stripeStart(size, stripes, index); // Premier octet de la bande
+            long end = Protocol.stripeStart(size, stripes, index + 1); // Fin de la bande
+            Stream stream = open(listener, Protocol.PUT, file.getFileName().toString(), String.valueOf(size), sha256,
+                    String.valueOf(stripes), String.valueOf(index));
+            Frame ack = awaitAck(stream);
+            if (ack == null) { // Refusé : le listener est déjà prévenu
+                return -1;
+            }
+            long position = Long.parseLong(ack.text().trim()); // Reprise après les octets déjà reçus par le serveur
+            long resumed = position - start;
+            long[] sent = {position - start}; // Octets de la bande présents sur le serveur
+            if (!sendRange(stream, source, file, position, end, count -> {
+                sent[0] += count;
+                if (progress != null) {
+                    progress.accept(sent[0]);
+                }
+            })) {
+                return -1;
+            }
+            send(Frame.text(Frame.Type.END, stream.id)); // Fin de la bande : le serveur vérifie le fichier une fois complet
+            return resumed;
+        }
+    }
+
+    /**
+     * Envoie un fichier par différence, dans le thread appelant : le client découpe le fichier ({@link Chunker})
+     * et envoie son manifeste, le serveur recopie les morceaux qu’il possède déjà (version précédente du fichier
+     * ou n’importe quel fichier reçu) et ne demande que les autres. Chaque morceau est vérifié
+     * par son empreinte SHA-256 avant que le fichier soit publié ; le bilan du listener porte le message,
+     * les octets repris et les octets reçus.
+     * @param file Le fichier à envoyer
+     * @param listener Reçoit le bilan de l’upload
+     * @param progress Reçoit le nombre d’octets du fichier présents sur le serveur après chaque trame
+     *                 (morceaux repris compris, peut être null)
+     * @return Le nombre d’octets du fichier envoyés (les morceaux manquants), ou -1 si le serveur a refusé
+     * (la cause arrive dans le listener)
+     * @throws IOException Si le fichier ne peut pas être lu ou si la connexion est perdue
+     */
+    public long uploadDelta(Path file, StreamListener listener, Consumer<Long> progress) throws IOException {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteArrayOutputStream manifest = new ByteArrayOutputStream(); // Une entrée par morceau
+            long size = Chunker.scan(source, (offset, length, hash) -> {
+                manifest.write(length >>> 24);
+                manifest.write(length >>> 16);
+                manifest.write(length >>> 8);
+                manifest.write(length);
+                manifest.write(hash, 0, hash.length);
+            });
+            int chunks = manifest.size() / Protocol.SYNC_ENTRY;
+            ByteArrayOutputStream missing = new ByteArrayOutputStream(); // Morceaux demandés, un bit chacun
+            Stream stream = open(new StreamListener() {
+                @Override
+                public void onData(ByteBuffer data, boolean stderr) {
+                    byte[] bytes = new byte[data.remaining()]; // Buffer en lecture seule
+                    data.get(bytes);
+                    missing.writeBytes(bytes);
+                }
+
+                @Override
+                public void onEnd(String[] fields) {
+                    listener.onEnd(fields);
+                }
+
+                @Override
+                public void onError(String message) {
+                    listener.onError(message);
+                }
+            }, Protocol.SYNC, file.getFileName().toString(), String.valueOf(size), String.valueOf(chunks));
+            ByteBuffer entries = ByteBuffer.wrap(manifest.toByteArray());
+            while (entries.hasRemaining()) {
+                int length;
+                try {
+                    length = stream.credit.acquire(Math.min(entries.remaining(), Protocol.MAX_DATA));
+                } catch (IOException e) {
+                    if (!streams.containsKey(stream.id)) { // Refusé ou annulé : le listener est déjà prévenu
+                        return -1;
+                    }
+                    if (e instanceof InterruptedIOException) { // Envoi abandonné : le serveur oublie le flux
+                        cancel(stream.id);
+                    }
+                    throw e;
+                }
+                ByteBuffer slice = entries.duplicate().limit(entries.position() + length);
+                entries.position(entries.position() + length);
+                send(new Frame(Frame.Type.DATA, 0, stream.id, slice)); // Empreintes : rien à gagner à compresser
+            }
+            Frame ack = awaitAck(stream); // Précédé des trames DATA de la liste des morceaux manquants
+            if (ack == null) {
+                return -1;
+            }
+            long reused = Long.parseLong(ack.fields()[2].trim()); // Octets déjà présents sur le serveur
+            if (progress != null) {
+                progress.accept(reused);
+            }
+            BitSet wanted = BitSet.valueOf(missing.toByteArray());
+            long[] sent = {0}; // Octets de fichier envoyés
+            long offset = 0; // Position du morceau
+            int next = wanted.nextSetBit(0);
+            for (int i = 0; i < chunks && next >= 0; i++) {
+                int length = entries.getInt(i * Protocol.SYNC_ENTRY); // Lecture absolue dans le manifeste
+                if (i == next) {
+                    if (!sendRange(stream, source, file, offset, offset + length, count -> {
+                        sent[0] += count;
+                        if (progress != null) {
+                            progress.accept(reused + sent[0]);
+                        }
+                    })) {
+                        return -1;
+                    }
+                    next = wanted.nextSetBit(i + 1);
+                }
+                offset += length;
+            }
+            send(Frame.text(Frame.Type.END, stream.id)); // Le serveur assemble et vérifie le fichier
+            return sent[0];
+        }
+    }
+
+    /**
+     * Envoie un dossier et toute son arborescence dans un seul flux, dans le thread appelant : chaque fichier
+     * et chaque dossier devient une entrée (chemin relatif, type, taille, date de modification, contenu), lue
+     * directement dans les trames DATA sans archive intermédiaire ; plusieurs petits fichiers partagent une trame.
+     * Les liens symboliques et les fichiers spéciaux sont ignorés. Le serveur écrit les fichiers en parallèle et
+     * confirme chacun une fois sur son disque ; le bilan du listener porte le message, le nombre d’entrées et les
+     * octets de contenu.
+     * @param directory Le dossier à envoyer
+     * @param listener Reçoit le bilan de l’upload
+     * @param progress Reçoit le nombre d’octets de contenu écrits sur le disque du serveur après chaque
+     *                 confirmation (peut être null)
+     * @param written Reçoit le chemin relatif (séparateur {@code /}) de chaque fichier écrit sur le disque du serveur
+     *                (peut être null)
+     * @return Le nombre d’entrées envoyées, ou -1 si le serveur a refusé (la cause arrive dans le listener)
+     * @throws IOException Si l’arborescence ne peut pas être lue ou si la connexion est perdue
+     */
+    public int uploadTree(Path directory, StreamListener listener, Consumer<Long> progress, Consumer<String> written)
+            throws IOException {
+        List<TreeEntry> entries = TreeEntry.list(directory);
+        long total = 0; // Octets de contenu
+        for (TreeEntry entry : entries) {
+            total += entry.size;
+        }
+        Path name = directory.toAbsolutePath().normalize().getFileName();
+        Stream stream = open(new StreamListener() {
+            private long stored; // Octets de contenu écrits sur le serveur
+            private int index; // Indice en cours de lecture
+
+            @Override
+            public void onData(ByteBuffer data, boolean stderr) {
+                while (data.hasRemaining()) { // Une ligne par entrée écrite, éventuellement coupée entre deux trames
+                    byte b = data.get();
+                    if (b != '\n') {
+                        index = index * 10 + (b - '0');
+                        continue;
+                    }
+                    TreeEntry entry = index < entries.size() ? entries.get(index) : null;
+                    index = 0;
+                    if (entry == null || entry.type == Protocol.TREE_DIRECTORY) {
+                        continue;
+                    }
+                    stored += entry.size;
+                    if (written != null) {
+                        written.accept(entry.path);
+                    }
+                    if (progress != null) {
+                        progress.accept(stored);
+                    }
+                }
+            }
+
+            @Override
+            public void onEnd(String[] fields) {
+                listener.onEnd(fields);
+            }
+
+            @Override
+            public void onError(String message) {
+                listener.onError(message);
+            }
+        }, Protocol.TREE, name == null ? "racine" : name.toString(), String.valueOf(entries.size()), String.valueOf(total));
+        if (awaitAck(stream) == null) { // Dossier d’assemblage prêt
+            return -1;
+        }
+        TreeSender sender = new TreeSender(stream);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(Protocol.TREE_HEADER);
+            for (TreeEntry entry : entries) {
+                byte[] path = entry.path.getBytes(StandardCharsets.UTF_8);
+                header.clear();
+                header.putShort((short) path.length).put(entry.type).putLong(entry.size).putLong(entry.modified).flip();
+                sender.put(header);
+                sender.put(ByteBuffer.wrap(path));
+                if (entry.type != Protocol.TREE_DIRECTORY) {
+                    try (FileChannel source = FileChannel.open(entry.file, StandardOpenOption.READ)) {
+                        sender.copy(source, entry.size, entry.file);
+                    }
+                }
+            }
+            sender.flush();
+        } catch (IOException e) {
+            if (!streams.containsKey(stream.id)) { // Refusé ou annulé : le listener est déjà prévenu
+                return -1;
+            }
+            try {
+                cancel(stream.id); // Fichier illisible ou envoi interrompu : le serveur efface l’assemblage
+            } catch (IOException ignored) {
+                // Connexion perdue : le serveur abandonne de lui-même
+            }
+            throw e;
+        }
+        send(Frame.text(Frame.Type.END, stream.id)); // Le serveur publie l’arborescence une fois tout écrit
+        return entries.size();
+    }
+
+    /**
+     * Envoie une plage d’un fichier en trames DATA au format d’un put : position et CRC32C, puis les octets,
+     * lus directement dans le buffer de la trame. Une trame ne couvre jamais deux plages.
+     * @param stream Le flux
+     * @param source Le fichier
+     * @param file Son chemin, pour les messages
+     * @param start Premier octet de la plage
+     * @param end Octet suivant le dernier de la plage
+     * @param sent Reçoit le nombre d’octets de fichier de chaque trame envoyée
+     * @return false si le flux a été refusé ou annulé (le listener est déjà prévenu)
+     * @throws IOException Si le fichier ne peut pas être lu ou si la connexion est perdue
+     */
+    private boolean sendRange(Stream stream, FileChannel source, Path file, long start, long end, IntConsumer sent)
+            throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(Frame.HEADER_LENGTH + Frame.MAX_PAYLOAD); // Une trame, réutilisée
+        long position = start;
+        while (position < end) {
+            int length;
+            try {
+                length = stream.credit.acquire(Protocol.PUT_HEADER + 1,
+                        Protocol.PUT_HEADER + (int) Math.min(Protocol.PUT_CHUNK, end - position));
+            } catch (IOException e) {
+                if (!streams.containsKey(stream.id)) { // Refusé ou annulé : le listener est déjà prévenu
+                    return false;
+                }
+                if (e instanceof InterruptedIOException) { // Envoi abandonné : le serveur oublie le flux
+                    cancel(stream.id);
+                }
+                throw e;
+            }
+            int chunk = length - Protocol.PUT_HEADER; // Octets de fichier dans cette trame
+            frame.clear();
+            frame.position(Frame.HEADER_LENGTH + Protocol.PUT_HEADER).limit(Frame.HEADER_LENGTH + length);
+            try {
+                while (frame.hasRemaining()) { // Lecture positionnée, directement à sa place dans la trame
+                    if (source.read(frame, position + frame.position() - Frame.HEADER_LENGTH - Protocol.PUT_HEADER) < 0) {
+                        throw new IOException("Fichier modifié pendant l’envoi : " + file);
+                    }
+                }
+            } catch (ClosedByInterruptException e) { // Interrompu pendant la lecture : le serveur oublie le flux
+                cancel(stream.id);
+                throw e;
+            }
+            ByteBuffer data = frame.duplicate().position(Frame.HEADER_LENGTH + Protocol.PUT_HEADER);
+            int crc = Checksums.crc32c(data); // Somme des octets d’origine
+            int flags = 0;
+            ByteBuffer packed = stream.compressor.compress(data);
+            if (packed != null) { // Compressée : remplace les octets lus et rend le crédit non utilisé
+                frame.position(Frame.HEADER_LENGTH + Protocol.PUT_HEADER);
+                frame.put(packed).limit(frame.position());
+                stream.credit.grant(length - (frame.limit() - Frame.HEADER_LENGTH));
+                length = frame.limit() - Frame.HEADER_LENGTH;
+                flags = Frame.FLAG_COMPRESSED;
+            }
+            frame.position(0);
+            Frame.writeHeader(frame, Frame.Type.DATA, flags, stream.id, length);
+            frame.putLong(position).putInt(crc).position(0);
+            sendEncoded(frame);
+            position += chunk;
+            sent.accept(chunk);
+        }
+        return true;
+    }
+
+    /**
+     * Télécharge un fichier du serveur, dans le thread appelant, en l’écrivant sur disque au fil de la réception.
+     * Les octets arrivent dans {@code <cible>.part}, renommé en cible une fois le fichier complet :
+     * un téléchargement interrompu reprend à la taille du fichier .part (le fichier distant ne doit
+     * pas avoir été modifié entre-temps).
+     * @param remotePath Chemin du fichier sur le serveur
+     * @param target Fichier local à créer (remplacé s’il existe)
+     * @param progress Reçoit le nombre d’octets du fichier présents sur le disque après chaque trame
+     *                 (reprise comprise, peut être null)
+     * @return L’octet à partir duquel le téléchargement a repris (0 pour un nouveau téléchargement)
+     * @throws IOException Si le serveur refuse, si l’écriture échoue ou si la connexion est perdue
+     */
+    public long download(String remotePath, Path target, Consumer<Long> progress) throws IOException {
+        Path part = Paths.get(target + ".part");
+        long resumed;
+        try (FileChannel file = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            resumed = file.size(); // Octets déjà reçus lors d’un téléchargement précédent
+            long size = fetch(remotePath, resumed, Protocol.NONE, file, progress);
+            if (resumed > size) { // Le fichier distant a rétréci : la copie partielle est inutilisable
+                file.truncate(0);
+                resumed = 0;
+                fetch(remotePath, 0, Protocol.NONE, file, progress);
+            }
+            file.force(false);
+        }
+        try {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return resumed;
+    }
+
+    /**
+     * Télécharge une plage d’un fichier du serveur, dans le thread appelant. Chaque octet est écrit
+     * dans {@code target} à sa position dans le fichier distant, si bien que plusieurs plages
+     * peuvent remplir le même fichier local.
+     * @param remotePath Chemin du fichier sur le serveur
+     * @param offset Premier octet demandé
+     * @param length Nombre d’octets demandés, ou {@link Protocol#NONE} jusqu’à la fin du fichier
+     * @param target Le fichier local, écrit par positions (sa position courante n’est pas utilisée)
+     * @param progress Reçoit la position atteinte après chaque trame (peut être null)
+     * @return La taille du fichier distant
+     * @throws IOException Si le serveur refuse, si la plage est incomplète, si l’écriture échoue
+     * ou si la connexion est perdue
+     */
+    public long fetch(String remotePath, long offset, long length, FileChannel target, Consumer<Long> progress)
+            throws IOException {
+        CompletableFuture<Long> result = new CompletableFuture<>(); // Octets envoyés selon le serveur
+        long[] position = {offset}; // Position d’écriture (thread de lecture)
+        Stream[] opened = new Stream[1];
+        opened[0] = open(new StreamListener() {
+            @Override
+            public void onData(ByteBuffer data, boolean stderr) {
+                if (result.isDone()) { // Écriture déjà en échec : la suite est ignorée
+                    return;
+                }
+                try {
+                    while (data.hasRemaining()) {
+                        position[0] += target.write(data, position[0]); // Écriture positionnée, sans copie
+                    }
+                } catch (IOException e) {
+                    result.completeExceptionally(e);
+                    try {
+                        cancel(opened[0].id); // Inutile de recevoir la suite
+                    } catch (IOException ignored) {
+                        // La connexion est perdue : le flux échouera de lui-même
+                    }
+                    return;
+                }
+                if (progress != null) {
+                    progress.accept(position[0]);
+                }
+            }
+
+            @Override
+            public void onEnd(String[] fields) {
+                result.complete(Long.parseLong(fields[0].trim()));
+            }
+
+            @Override
+            public void onError(String message) {
+                result.completeExceptionally(new IOException(message));
+            }
+        }, Protocol.GET, remotePath, String.valueOf(offset), String.valueOf(length));
+        Frame ack = awaitAck(opened[0]);
+        long sent;
+        try {
+            sent = result.get(); // Toutes les trames DATA précèdent END sur le flux
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(opened[0].id);
+            throw new IOException("Téléchargement interrompu");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+        if (ack == null) { // Impossible : un refus termine le résultat en erreur
+            throw new IOException("Téléchargement refusé");
+        }
+        long size = Long.parseLong(ack.text().trim());
+        if (position[0] - offset != sent) {
+            throw new IOException("Téléchargement incomplet : " + (position[0] - offset) + " octets reçus sur " + sent);
+        }
+        return size;
+    }
+
+    /**
+     * Demande l’arrêt d’un flux (commande ou upload). Le listener reçoit ensuite onError.
+     * @param streamId L’identifiant du flux
+     * @throws IOException Si la connexion est perdue
+     */
+    public void cancel(int streamId) throws IOException {
+        if (streams.containsKey(streamId)) {
+            send(Frame.text(Frame.Type.CANCEL, streamId));
+        }
+    }
+
+    /**
+     * @return true tant que la connexion est ouverte
+     */
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Ferme la connexion. Les flux en cours reçoivent onError.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            socket.close(); // Débloque le thread de lecture
+        } catch (IOException ignored) {
+            // Le socket est déjà inutilisable
+        }
+        failAll("Connexion fermée.");
+    }
+
+    /**
+     * Ouvre un flux.
+     * @param listener Son observateur
+     * @param fields Le verbe et ses arguments
+     * @return Le flux ouvert
+     * @throws IOException Si la connexion est perdue
+     */
+    private Stream open(StreamListener listener, String... fields) throws IOException {
+        writeLock.lock(); // Identifiants envoyés dans l’ordre croissant : le serveur refuse un identifiant déjà dépassé
+        try {
+            Stream stream = new Stream(nextStreamId.incrementAndGet(), listener, new Compressor(codec, compression));
+            streams.put(stream.id, stream);
+            try {
+                send(Frame.text(Frame.Type.OPEN, stream.id, fields));
+            } catch (IOException e) {
+                streams.remove(stream.id);
+                throw e;
+            }
+            return stream;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Envoie une trame, sans l’entrelacer avec celles des autres threads.
+     * @param frame La trame
+     * @throws IOException Si la connexion est perdue
+     */
+    private void send(Frame frame) throws IOException {
+        sendEncoded(frame.encode());
+    }
+
+    /**
+     * Envoie une trame déjà encodée (en-tête compris), sans l’entrelacer avec celles des autres threads.
+     * @param encoded La trame, dans un buffer à tableau, lue de sa position à sa limite
+     * @throws IOException Si la connexion est perdue
+     */
+    private void sendEncoded(ByteBuffer encoded) throws IOException {
+        if (closed) {
+            throw new IOException("Connexion fermée.");
+        }
+        writeLock.lock();
+        try {
+            output.write(encoded.array(), encoded.arrayOffset() + encoded.position(), encoded.remaining());
+            output.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Attend la réponse du serveur à l’ouverture d’un flux.
+     * @param stream Le flux
+     * @return La trame ACK, ou null si le flux a été refusé
+     * @throws IOException Si l’attente est interrompue
+     */
+    private Frame awaitAck(Stream stream) throws IOException {
+        try {
+            return stream.ack.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(stream.id); // Flux abandonné : le serveur l’oublie
+            throw new InterruptedIOException("Attente du serveur interrompue");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Boucle du thread de lecture : décode les trames et les distribue aux flux.
+     */
+    private void readFrames() {
+        FrameDecoder decoder = new FrameDecoder();
+        byte[] buffer = new byte[64 * 1024]; // Buffer de lecture
+        String cause = "Connexion fermée par le serveur.";
+        try {
+            int count;
+            while ((count = input.read(buffer)) > 0) {
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+                Frame frame;
+                while ((frame = decoder.next(data)) != null) {
+                    onFrame(frame);
+                }
+            }
+        } catch (IOException e) {
+            cause = e.getMessage();
+        }
+        if (!closed) { // Perte de connexion non demandée
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Le socket est déjà inutilisable
+            }
+            failAll(cause);
+            settings.completeExceptionally(new IOException(cause)); // Débloque la négociation
+            authReplies.add(Frame.text(Frame.Type.ERROR, Frame.CONNECTION_STREAM, cause)); // Débloque authenticate()
+            onDisconnect.accept(cause);
+        }
+    }
+
+    /**
+     * Distribue une trame reçue.
+     * @param frame La trame
+     * @throws IOException Si l’envoi d’un crédit échoue
+     */
+    private void onFrame(Frame frame) throws IOException {
+        if (frame.type() == Frame.Type.SETTINGS) { // Réponse à la négociation
+            settings.complete(frame);
+            return;
+        }
+        if (frame.streamId() == Frame.CONNECTION_STREAM) { // Authentification ou erreur de connexion
+            authReplies.add(frame); // Lue par authenticate() ; une erreur après l’authentification précède la fermeture
+            return;
+        }
+        Stream stream = streams.get(frame.streamId());
+        if (stream == null) { // Flux déjà terminé
+            return;
+        }
+        switch (frame.type()) {
+            case DATA:
+                ByteBuffer payload = stream.compressor.unpack(frame.payload(), frame.flags()); // Décompressée si besoin
+                stream.listener.onData(payload, (frame.flags() & Frame.FLAG_STDERR) != 0);
+                int increment = stream.credit.consumed(frame.length()); // Octets traités par le listener
+                if (increment > 0) {
+                    send(Frame.window(stream.id, increment)); // Autorise la suite
+                }
+                break;
+            case ACK:
+                stream.ack.complete(frame); // Réveille l’upload en attente de sa position de reprise
+                break;
+            case WINDOW:
+                stream.credit.grant(frame.increment()); // Le serveur a écrit des octets d’upload
+                break;
+            case END:
+                finish(stream).listener.onEnd(frame.fields());
+                break;
+            case ERROR:
+                String message = frame.text();
+                long retryAfter = Protocol.retryAfterMillis(message); // Refus d’un serveur occupé ?
+                if (retryAfter != Protocol.NONE) {
+                    finish(stream).listener.onBusy(retryAfter, Protocol.busyReason(message));
+                } else {
+                    finish(stream).listener.onError(message);
+                }
+                break;
+            default:
+                throw new ProtocolException("Trame inattendue : " + frame);
+        }
+    }
+
+    /**
+     * Retire un flux terminé et libère un upload en attente de crédit ou de réponse.
+     * @param stream Le flux
+     * @return Le flux
+     */
+    private Stream finish(Stream stream) {
+        streams.remove(stream.id);
+        stream.credit.close();
+        stream.compressor.close();
+        stream.ack.complete(null); // Flux refusé avant sa réponse
+        return stream;
+    }
+
+    /**
+     * Termine tous les flux en erreur.
+     * @param message La cause
+     */
+    private void failAll(String message) {
+        for (Stream stream : streams.values()) {
+            finish(stream).listener.onError(message);
+        }
+    }
+
+    /**
+     * Lit une ligne du protocole texte, avant le passage aux trames.
+     * Lit octet par octet pour ne rien consommer au-delà de la fin de ligne.
+     * @return La ligne, sans fin de ligne
+     * @throws IOException Si la connexion est fermée
+     */
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("Connexion fermée par le serveur.");
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Entrée d’un upload de dossier.
+     */
+    private static final class TreeEntry {
+        final String path; // Chemin relatif, segments séparés par /
+        final Path file; // Fichier local (null pour un dossier)
+        final byte type; // Protocol.TREE_FILE, TREE_EXECUTABLE ou TREE_DIRECTORY
+        final long size; // Taille du contenu
+        final long modified; // Date de modification (ms)
+
+        TreeEntry(String path, Path file, byte type, long size, long modified) {
+            this.path = path;
+            this.file = file;
+            this.type = type;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        /**
+         * Parcourt une arborescence, dossiers avant leur contenu.
+         * @param root Le dossier
+         * @return Ses entrées, sans le dossier lui-même
+         * @throws IOException Si un dossier ne peut pas être lu ou si un chemin est trop long
+         */
+        static List<TreeEntry> list(Path root) throws IOException {
+            List<TreeEntry> entries = new ArrayList<>();
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                    if (!directory.equals(root)) {
+                        entries.add(new TreeEntry(relative(directory), null, Protocol.TREE_DIRECTORY, 0,
+                                attributes.lastModifiedTime().toMillis()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    if (attributes.isRegularFile()) { // Ni lien symbolique ni fichier spécial
+                        entries.add(new TreeEntry(relative(file), file,
+                                Files.isExecutable(file) ? Protocol.TREE_EXECUTABLE : Protocol.TREE_FILE,
+                                attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                /**
+                 * @return Le chemin relatif à la racine, segments séparés par / quel que soit le système
+                 */
+                private String relative(Path path) throws IOException {
+                    StringBuilder relative = new StringBuilder();
+                    for (Path segment : root.relativize(path)) {
+                        relative.append(relative.length() > 0 ? "/" : "").append(segment);
+                    }
+                    if (relative.toString().getBytes(StandardCharsets.UTF_8).length > Protocol.MAX_TREE_PATH) {
+                        throw new IOException("Chemin trop long : " + path);
+                    }
+                    return relative.toString();
+                }
+            });
+            if (entries.size() > Protocol.MAX_TREE_ENTRIES) {
+                throw new IOException("Trop d’entrées dans " + root + " : " + entries.size());
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Remplit les trames DATA d’un upload de dossier bout à bout, dans la limite du crédit : une trame part
+     * quand elle est pleine, quel que soit l’endroit où elle coupe l’entrée en cours.
+     */
+    private final class TreeSender {
+        private final Stream stream; // Le flux
+        private final ByteBuffer frame = ByteBuffer.allocate(Frame.HEADER_LENGTH + Frame.MAX_PAYLOAD); // Trame en cours
+        private boolean filling; // Crédit obtenu pour la trame en cours
+
+        TreeSender(Stream stream) {
+            this.stream = stream;
+        }
+
+        /**
+         * @param data Octets à ajouter (consommés)
+         * @throws IOException Si le flux ou la connexion est fermé
+         */
+        void put(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                room();
+                int count = Math.min(frame.remaining(), data.remaining());
+                frame.put(data.duplicate().limit(data.position() + count));
+                data.position(data.position() + count);
+            }
+        }
+
+        /**
+         * Ajoute le contenu d’un fichier, lu directement dans les trames.
+         * @param source Le fichier
+         * @param size Sa taille annoncée
+         * @param file Son chemin, pour les messages
+         * @throws IOException Si le fichier a raccourci, ne peut pas être lu, ou si la connexion est fermée
+         */
+        void copy(FileChannel source, long size, Path file) throws IOException {
+            long position = 0;
+            while (position < size) {
+                room();
+                int limit = frame.limit();
+                frame.limit(frame.position() + (int) Math.min(frame.remaining(), size - position));
+                while (frame.hasRemaining()) {
+                    int count = source.read(frame, position);
+                    if (count < 0) {
+                        throw new IOException("Fichier modifié pendant l’envoi : " + file);
+                    }
+                    position += count;
+                }
+                frame.limit(limit);
+            }
+        }
+
+        /**
+         * Envoie la trame en cours, compressée si elle y gagne, et rend le crédit non utilisé.
+         * @throws IOException Si la connexion est perdue
+         */
+        void flush() throws IOException {
+            if (!filling) {
+                return;
+            }
+            filling = false;
+            int granted = frame.limit() - Frame.HEADER_LENGTH;
+            int length = frame.position() - Frame.HEADER_LENGTH;
+            if (length == 0) {
+                stream.credit.grant(granted);
+                return;
+            }
+            int flags = 0;
+            ByteBuffer packed = stream.compressor.compress(frame.duplicate().flip().position(Frame.HEADER_LENGTH));
+            if (packed != null) { // Compressée : remplace les octets lus
+                frame.position(Frame.HEADER_LENGTH);
+                frame.put(packed);
+                length = frame.position() - Frame.HEADER_LENGTH;
+                flags = Frame.FLAG_COMPRESSED;
+            }
+            stream.credit.grant(granted - length);
+            frame.flip();
+            Frame.writeHeader(frame, Frame.Type.DATA, flags, stream.id, length);
+            frame.position(0);
+            sendEncoded(frame);
+        }
+
+        /**
+         * Garantit de la place dans la trame en cours, en envoyant la précédente et en attendant du crédit.
+         * @throws IOException Si le flux ou la connexion est fermé
+         */
+        private void room() throws IOException {
+            if (filling && frame.hasRemaining()) {
+                return;
+            }
+            flush();
+            int granted = stream.credit.acquire(4096, Frame.MAX_PAYLOAD); // Pas de trames minuscules
+            frame.clear().position(Frame.HEADER_LENGTH).limit(Frame.HEADER_LENGTH + granted);
+            filling = true;
+        }
+    }
+
+    /**
+     * Flux ouvert par le client.
+     */
+    private static final class Stream {
+        final int id; // Identifiant du flux
+        final StreamListener listener; // Observateur du flux
+        final StreamCredit credit = new StreamCredit(); // Crédit dans les deux sens
+        final CompletableFuture<Frame> ack = new CompletableFuture<>(); // Réponse ACK du serveur (upload reprenable)
+        final Compressor compressor; // Compression des trames DATA
+
+        Stream(int id, StreamListener listener, Compressor compressor) {
+            this.id = id;
+            this.listener = listener;
+            this.compressor = compressor;
+        }
+    }
+}
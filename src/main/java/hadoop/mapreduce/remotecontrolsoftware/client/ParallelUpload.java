@@ -0,0 +1,149 @@
+package hadoop.mapreduce.remotecontrolsoftware.client;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Checksums;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Envoi d’un gros fichier en bandes parallèles, chacune sur sa propre connexion authentifiée.
+ * Une seule connexion TLS plafonne le débit (chiffrement sur un seul cœur, fenêtre TCP unique) :
+ * avec N connexions, le chiffrement et le transport se répartissent sur N cœurs et N fenêtres.
+ * Le serveur réassemble les bandes dans un seul fichier {@code received_<nom>}, vérifié par SHA-256
+ * puis publié atomiquement une fois toutes les bandes reçues. Chaque bande est reprenable.
+ * <p>
+ * Le nombre de bandes par défaut se règle par la propriété système {@code rcs.upload.stripes}.
+ */
+public final class ParallelUpload {
+    public static final int DEFAULT_STRIPES = Math.max(1, Math.min(Protocol.MAX_STRIPES,
+            Integer.getInteger("rcs.upload.stripes", 4))); // Bandes par défaut
+    public static final long MIN_STRIPE_SIZE = 16L * 1024 * 1024; // En dessous, une connexion de plus ne rapporte rien
+
+    /**
+     * Ouvre une connexion supplémentaire, déjà authentifiée.
+     */
+    public interface ConnectionFactory {
+        FramedConnection open() throws IOException;
+    }
+
+    private ParallelUpload() {
+    }
+
+    /**
+     * @param size La taille du fichier
+     * @param maxStripes Le nombre de bandes souhaité
+     * @return Le nombre de bandes à utiliser : moins pour un petit fichier, 1 pour ne pas découper
+     */
+    public static int stripesFor(long size, int maxStripes) {
+        return (int) Math.max(1, Math.min(Math.min(maxStripes, Protocol.MAX_STRIPES), size / MIN_STRIPE_SIZE));
+    }
+
+    /**
+     * Envoie un fichier en bandes parallèles, dans le thread appelant, et attend sa vérification par le serveur.
+     * Les connexions ouvertes pour l’envoi sont fermées à la fin ; en cas d’échec, les bandes
+     * déjà reçues restent sur le serveur et un nouvel envoi reprend là où chacune s’était arrêtée.
+     * @param connections Ouvre les connexions, une par bande
+     * @param file Le fichier à envoyer
+     * @param stripes Le nombre de bandes (voir {@link #stripesFor(long, int)})
+     * @param progress Reçoit le nombre total d’octets présents sur le serveur (peut être null)
+     * @return Le bilan du serveur
+     * @throws IOException Si une bande échoue ou si le fichier ne peut pas être lu
+     */
+    public static String upload(ConnectionFactory connections, Path file, int stripes, Consumer<Long> progress)
+            throws IOException {
+        String sha256;
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            sha256 = Checksums.sha256(source); // Calculée une fois pour toutes les bandes
+        }
+        AtomicLongArray sent = new AtomicLongArray(stripes); // Octets de chaque bande présents sur le serveur
+        List<FramedConnection> opened = new ArrayList<>(); // Connexions à fermer
+        List<CompletableFuture<String>> results = new ArrayList<>(); // Bilan de chaque bande
+        try {
+            for (int i = 0; i < stripes; i++) {
+                opened.add(connections.open()); // Authentifiées avant le premier octet
+            }
+            for (int i = 0; i < stripes; i++) {
+                FramedConnection connection = opened.get(i);
+                int index = i;
+                CompletableFuture<String> result = new CompletableFuture<>();
+                results.add(result);
+                Thread sender = new Thread(() -> {
+                    try {
+                        connection.uploadStripe(file, sha256, stripes, index, new FramedConnection.StreamListener() {
+                            @Override
+                            public void onEnd(String[] fields) {
+                                result.complete(fields[0]);
+                            }
+
+                            @Override
+                            public void onError(String message) {
+                                result.completeExceptionally(new IOException(message));
+                            }
+                        }, bytes -> {
+                            sent.set(index, bytes);
+                            if (progress != null) {
+                                progress.accept(total(sent));
+                            }
+                        });
+                    } catch (IOException e) {
+                        result.completeExceptionally(e);
+                    }
+                }, "rcs-upload-stripe-" + i);
+                sender.setDaemon(true); // N’empêche pas la fermeture de l’application
+                sender.start();
+            }
+            CompletableFuture<Object> failure = new CompletableFuture<>(); // Première bande en échec
+            for (CompletableFuture<String> result : results) {
+                result.whenComplete((message, error) -> {
+                    if (error != null) {
+                        failure.completeExceptionally(error);
+                    }
+                });
+            }
+            // Les bandes reçues attendent la vérification finale : un échec ne doit pas les laisser attendre
+            await(CompletableFuture.anyOf(CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])), failure));
+            return results.get(0).join();
+        } finally {
+            for (FramedConnection connection : opened) {
+                connection.close(); // Les bandes encore en cours gardent leur point de reprise
+            }
+        }
+    }
+
+    /**
+     * @param sent Octets de chaque bande
+     * @return Le total
+     */
+    private static long total(AtomicLongArray sent) {
+        long total = 0;
+        for (int i = 0; i < sent.length(); i++) {
+            total += sent.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Attend la fin des bandes.
+     * @param result Terminé quand toutes les bandes ont réussi ou que l’une a échoué
+     * @throws IOException Si une bande a échoué ou si l’attente est interrompue
+     */
+    private static void await(CompletableFuture<Object> result) throws IOException {
+        try {
+            result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Envoi interrompu");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,870 @@
+package hadoop.mapreduce.remotecontrolsoftware.client;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Bibliothèque cliente sans interface graphique : chaque commande, upload ou téléchargement rend
+ * un {@link RemoteFuture}, terminé par le résultat de la requête et annulable.
+ * <p>
+ * Les requêtes sont pipelinées sur une seule connexion ({@link FramedConnection}) : on peut en soumettre
+ * autant que l’on veut sans attendre les réponses. Au plus {@link Protocol#MAX_STREAMS} flux sont ouverts
+ * à la fois (la limite du serveur) ; les suivantes attendent ici, dans l’ordre de soumission, et partent
+ * dès qu’un flux se termine. Un serveur occupé termine la requête par une {@link BusyException}.
+ * <p>
+ * Exemple : {@code RemoteClient.connect("localhost", 12345, "bouba", "passer").thenCompose(c -> c.execute("hostname"))}.
+ * Pour plusieurs serveurs, ou plus de flux qu’une connexion n’en porte, voir {@link ConnectionPool}.
+ */
+public class RemoteClient implements Closeable {
+    public static final int MAX_OUTPUT_BYTES = 16 * 1024 * 1024; // Sortie gardée par commande (au-delà : tronquée)
+    private static final ExecutorService TRANSFERS = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "rcs-client-transfer");
+        thread.setDaemon(true); // N’empêche pas la fermeture de l’application
+        return thread;
+    }); // Uploads et téléchargements, qui occupent un thread le temps de l’envoi
+
+    /**
+     * Reçoit la sortie d’une commande au fil de l’eau, depuis le thread de lecture de la connexion.
+     */
+    public interface OutputListener {
+
+        /**
+         * @param data Les octets reçus
+         * @param stderr true s’il s’agit de la sortie d’erreur
+         */
+        void onOutput(ByteBuffer data, boolean stderr);
+    }
+
+    /**
+     * Refus d’une requête par un serveur occupé : rien n’a été lancé, elle peut être renvoyée après le délai conseillé.
+     */
+    public static final class BusyException extends IOException {
+        private static final long serialVersionUID = 1L;
+        private final long retryAfterMillis; // Délai conseillé avant de réessayer
+
+        BusyException(String message, long retryAfterMillis) {
+            super(message);
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        /**
+         * @return Le délai conseillé avant de réessayer, en millisecondes
+         */
+        public long retryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+
+    /**
+     * Résultat d’une commande, immuable.
+     */
+    public static final class Result {
+        private final int exitCode; // Code de sortie
+        private final long firstByteMillis; // Délai avant le premier octet vu par le client (-1 : aucune sortie)
+        private final long serverFirstByteMillis; // Délai avant le premier octet mesuré par le serveur (-1 : inconnu)
+        private final byte[] stdout; // Sortie standard gardée
+        private final byte[] stderr; // Sortie d’erreur gardée
+        private final boolean truncated; // Une sortie a dépassé MAX_OUTPUT_BYTES
+
+        Result(int exitCode, long firstByteMillis, long serverFirstByteMillis, byte[] stdout, byte[] stderr,
+               boolean truncated) {
+            this.exitCode = exitCode;
+            this.firstByteMillis = firstByteMillis;
+            this.serverFirstByteMillis = serverFirstByteMillis;
+            this.stdout = stdout;
+            this.stderr = stderr;
+            this.truncated = truncated;
+        }
+
+        /**
+         * @return Le code de sortie de la commande
+         */
+        public int exitCode() {
+            return exitCode;
+        }
+
+        /**
+         * @return Le délai entre l’envoi et le premier octet reçu, en millisecondes (-1 si la commande n’a rien écrit)
+         */
+        public long firstByteMillis() {
+            return firstByteMillis;
+        }
+
+        /**
+         * @return Le délai avant le premier octet mesuré par le serveur, en millisecondes (-1 s’il ne l’a pas mesuré)
+         */
+        public long serverFirstByteMillis() {
+            return serverFirstByteMillis;
+        }
+
+        /**
+         * @return La sortie standard (vide si la sortie allait à un {@link OutputListener})
+         */
+        public byte[] stdoutBytes() {
+            return stdout.clone();
+        }
+
+        /**
+         * @return La sortie d’erreur (vide si la sortie allait à un {@link OutputListener})
+         */
+        public byte[] stderrBytes() {
+            return stderr.clone();
+        }
+
+        /**
+         * @return La sortie standard décodée en UTF-8
+         */
+        public String stdout() {
+            return new String(stdout, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return La sortie d’erreur décodée en UTF-8
+         */
+        public String stderr() {
+            return new String(stderr, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return true si une sortie a été tronquée à {@link #MAX_OUTPUT_BYTES}
+         */
+        public boolean truncated() {
+            return truncated;
+        }
+    }
+
+    /**
+     * Bilan d’un upload par différence, immuable.
+     */
+    public static final class DeltaResult {
+        private final String message; // Confirmation du serveur
+        private final long reused; // Octets déjà présents sur le serveur
+        private final long sent; // Octets du fichier envoyés
+
+        DeltaResult(String message, long reused, long sent) {
+            this.message = message;
+            this.reused = reused;
+            this.sent = sent;
+        }
+
+        /**
+         * @return Le message de confirmation du serveur
+         */
+        public String message() {
+            return message;
+        }
+
+        /**
+         * @return Les octets du fichier que le serveur avait déjà et n’a pas eu à recevoir
+         */
+        public long reused() {
+            return reused;
+        }
+
+        /**
+         * @return Les octets du fichier envoyés au serveur
+         */
+        public long sent() {
+            return sent;
+        }
+
+        @Override
+        public String toString() {
+            return message + " (" + reused + " octets déjà présents, " + sent + " octets envoyés)";
+        }
+    }
+
+    /**
+     * Bilan d’un upload de dossier, immuable.
+     */
+    public static final class TreeResult {
+        private final String message; // Confirmation du serveur
+        private final int entries; // Fichiers et dossiers reçus
+        private final long bytes; // Octets de contenu reçus
+
+        TreeResult(String message, int entries, long bytes) {
+            this.message = message;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return Le message de confirmation du serveur
+         */
+        public String message() {
+            return message;
+        }
+
+        /**
+         * @return Le nombre de fichiers et de dossiers reçus
+         */
+        public int entries() {
+            return entries;
+        }
+
+        /**
+         * @return Les octets de contenu reçus, tous fichiers confondus
+         */
+        public long bytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return message + " (" + entries + " entrées, " + bytes + " octets)";
+        }
+    }
+
+    /**
+     * Résultat à venir d’une requête. {@link #cancel(boolean)} arrête la requête : retirée de la file si elle
+     * n’est pas partie, sinon arrêtée sur le serveur (processus de la commande détruits, transfert interrompu).
+     * Les transferts publient leur avancement ({@link #transferred()}, {@link #onProgress(LongConsumer)}).
+     * @param <T> Le type du résultat
+     */
+    public static class RemoteFuture<T> extends CompletableFuture<T> {
+        private final List<LongConsumer> progressListeners = new CopyOnWriteArrayList<>(); // Avancement
+        private volatile long transferred; // Octets présents à destination (reprise comprise)
+        private volatile long resumedFrom; // Octet à partir duquel le transfert a repris
+        private volatile Runnable canceller; // Arrêt de la requête partie (null tant qu’elle attend)
+
+        RemoteFuture() {
+        }
+
+        /**
+         * @return Le nombre d’octets présents à destination (0 pour une commande)
+         */
+        public long transferred() {
+            return transferred;
+        }
+
+        /**
+         * @return L’octet à partir duquel le transfert a repris (0 pour un nouveau transfert ou une commande)
+         */
+        public long resumedFrom() {
+            return resumedFrom;
+        }
+
+        /**
+         * Ajoute un observateur de l’avancement, appelé depuis le thread du transfert après chaque trame.
+         * @param listener Reçoit le nombre d’octets présents à destination
+         * @return Ce résultat, pour chaîner
+         */
+        public RemoteFuture<T> onProgress(LongConsumer listener) {
+            progressListeners.add(listener);
+            return this;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Runnable stop = canceller;
+            if (cancelled && stop != null) {
+                stop.run();
+            }
+            return cancelled;
+        }
+
+        /**
+         * @param bytes Les octets présents à destination
+         */
+        void progress(long bytes) {
+            transferred = bytes;
+            for (LongConsumer listener : progressListeners) {
+                listener.accept(bytes);
+            }
+        }
+
+        /**
+         * @param offset L’octet de reprise
+         */
+        void resumed(long offset) {
+            resumedFrom = offset;
+        }
+
+        /**
+         * Enregistre l’arrêt de la requête partie, exécuté tout de suite si elle est déjà annulée.
+         * @param stop L’arrêt
+         */
+        void stoppedBy(Runnable stop) {
+            canceller = stop;
+            if (isCancelled()) { // Annulée pendant le départ
+                stop.run();
+            }
+        }
+    }
+
+    /**
+     * Requête soumise : son résultat, son départ et la libération de son flux.
+     */
+    private final class Pending {
+        private final RemoteFuture<?> future; // Résultat de la requête
+        private final BooleanSupplier start; // Ouvre le flux ; false s’il n’a pas pu l’être (résultat déjà en échec)
+        private final AtomicBoolean released = new AtomicBoolean(); // Flux déjà rendu
+
+        Pending(RemoteFuture<?> future, BooleanSupplier start) {
+            this.future = future;
+            this.start = start;
+        }
+
+        /**
+         * Rend le flux de la requête et lance la suivante. Sans effet après le premier appel.
+         */
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                dispatch(nextOrRelease());
+            }
+        }
+    }
+
+    private final FramedConnection connection; // Connexion au serveur
+    private final String host; // Adresse du serveur
+    private final int port; // Port du serveur
+    private final ReentrantLock lock = new ReentrantLock(); // Protège la file et le nombre de flux ouverts
+    private final ArrayDeque<Pending> waiting = new ArrayDeque<>(); // Requêtes en attente d’un flux
+    private int active; // Flux ouverts par ce client
+
+    /**
+     * Ouvre une connexion, sans l’authentifier.
+     * @param host Adresse du serveur
+     * @param port Port du serveur
+     * @param onDisconnect Prévenu (avec la cause) si la connexion est perdue sans appel à close()
+     * @throws IOException Si la connexion échoue
+     */
+    public RemoteClient(String host, int port, Consumer<String> onDisconnect) throws IOException {
+        this.host = host;
+        this.port = port;
+        this.connection = new FramedConnection(host, port, cause -> {
+            failWaiting(cause);
+            onDisconnect.accept(cause);
+        });
+    }
+
+    /**
+     * Ouvre une connexion authentifiée, en arrière-plan.
+     * @param host Adresse du serveur
+     * @param port Port du serveur
+     * @param login Le login
+     * @param password Le mot de passe
+     * @return Le client connecté, ou l’échec de la connexion ou de l’authentification
+     */
+    public static CompletableFuture<RemoteClient> connect(String host, int port, String login, String password) {
+        return connect(host, port, login, password, null);
+    }
+
+    /**
+     * Ouvre une connexion authentifiée, en arrière-plan, avec un jeton de session s’il est encore valable.
+     * @param host Adresse du serveur
+     * @param port Port du serveur
+     * @param login Le login, si le jeton est refusé
+     * @param password Le mot de passe, si le jeton est refusé
+     * @param token Un jeton de session d’une connexion précédente ({@link #sessionToken()}), ou null
+     * @return Le client connecté, ou l’échec de la connexion ou de l’authentification
+     */
+    public static CompletableFuture<RemoteClient> connect(String host, int port, String login, String password,
+                                                          String token) {
+        CompletableFuture<RemoteClient> result = new CompletableFuture<>();
+        TRANSFERS.execute(() -> {
+            try {
+                result.complete(open(host, port, login, password, token));
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Ouvre une connexion authentifiée, dans le thread appelant.
+     * @param host Adresse du serveur
+     * @param port Port du serveur
+     * @param login Le login
+     * @param password Le mot de passe
+     * @return Le client connecté
+     * @throws IOException Si la connexion ou l’authentification échoue
+     */
+    public static RemoteClient open(String host, int port, String login, String password) throws IOException {
+        return open(host, port, login, password, null);
+    }
+
+    /**
+     * Ouvre une connexion authentifiée, dans le thread appelant. Le jeton de session, s’il est accepté,
+     * évite l’envoi des identifiants ; sinon ils sont envoyés sur la même connexion.
+     * @param host Adresse du serveur
+     * @param port Port du serveur
+     * @param login Le login, si le jeton est refusé
+     * @param password Le mot de passe, si le jeton est refusé
+     * @param token Un jeton de session d’une connexion précédente ({@link #sessionToken()}), ou null
+     * @return Le client connecté
+     * @throws IOException Si la connexion ou l’authentification échoue
+     */
+    public static RemoteClient open(String host, int port, String login, String password, String token)
+            throws IOException {
+        RemoteClient client = new RemoteClient(host, port, cause -> { }); // Perte vue à la requête suivante
+        try {
+            if (token != null) {
+                try {
+                    client.resume(token);
+                    return client;
+                } catch (IOException e) {
+                    if (!client.isOpen()) {
+                        throw e;
+                    }
+                    // Jeton expiré ou serveur redémarré : identifiants
+                }
+            }
+            client.authenticate(login, password);
+        } catch (IOException e) {
+            client.close();
+            throw e;
+        }
+        return client;
+    }
+
+    /**
+     * Envoie les identifiants et attend la réponse du serveur.
+     * @param login Le login
+     * @param password Le mot de passe
+     * @return Le message du serveur si l’authentification a réussi
+     * @throws IOException Si l’authentification échoue (message du serveur) ou si la connexion est perdue
+     */
+    public String authenticate(String login, String password) throws IOException {
+        return connection.authenticate(login, password);
+    }
+
+    /**
+     * Se réauthentifie avec un jeton de session, sans identifiants (voir {@link FramedConnection#resume(String)}).
+     * @param token Le jeton d’une connexion précédente
+     * @return Le message du serveur si le jeton est accepté
+     * @throws IOException Si le jeton est refusé ou si la connexion est perdue
+     */
+    public String resume(String token) throws IOException {
+        return connection.resume(token);
+    }
+
+    /**
+     * @return Le jeton de session de cette connexion, pour se reconnecter sans identifiants, ou null
+     */
+    public String sessionToken() {
+        return connection.sessionToken();
+    }
+
+    /**
+     * Exécute une commande avec la durée maximale du serveur, en gardant sa sortie.
+     * @param command La commande
+     * @return Son résultat
+     */
+    public RemoteFuture<Result> execute(String command) {
+        return execute(command, 0, null);
+    }
+
+    /**
+     * Exécute une commande.
+     * @param command La commande
+     * @param timeoutMillis La durée maximale en millisecondes (0 : celle du serveur)
+     * @param output Reçoit la sortie au fil de l’eau, ou null pour la garder dans le résultat
+     * @return Son résultat ; en échec si la durée est dépassée, si la connexion est perdue ou si le serveur est occupé
+     */
+    public RemoteFuture<Result> execute(String command, long timeoutMillis, OutputListener output) {
+        RemoteFuture<Result> future = new RemoteFuture<>();
+        Pending[] pending = new Pending[1];
+        pending[0] = new Pending(future, () -> {
+            Capture capture = new Capture(output);
+            try {
+                int id = connection.exec(command, timeoutMillis, new FramedConnection.StreamListener() {
+                    @Override
+                    public void onData(ByteBuffer data, boolean stderr) {
+                        capture.add(data, stderr);
+                    }
+
+                    @Override
+                    public void onEnd(String[] fields) {
+                        pending[0].release();
+                        try {
+                            future.complete(capture.result(fields));
+                        } catch (NumberFormatException e) {
+                            future.completeExceptionally(new IOException("Bilan illisible : " + String.join(" ", fields)));
+                        }
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        pending[0].release();
+                        future.completeExceptionally(new IOException(message));
+                    }
+
+                    @Override
+                    public void onBusy(long retryAfterMillis, String reason) {
+                        pending[0].release();
+                        future.completeExceptionally(new BusyException(reason, retryAfterMillis));
+                    }
+                });
+                future.stoppedBy(() -> cancelStream(id));
+                return true;
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+                return false;
+            }
+        });
+        submit(pending[0]);
+        return future;
+    }
+
+    /**
+     * Envoie un fichier, de façon reprenable (voir {@link FramedConnection#uploadResumable}).
+     * @param file Le fichier
+     * @return Le message de confirmation du serveur, une fois le fichier vérifié ; l’avancement compte
+     * les octets présents sur le serveur
+     */
+    public RemoteFuture<String> upload(Path file) {
+        RemoteFuture<String> future = new RemoteFuture<>();
+        Pending[] pending = new Pending[1];
+        pending[0] = new Pending(future, () -> transfer(future, pending[0], () -> {
+            long resumed = connection.uploadResumable(file, new FramedConnection.StreamListener() {
+                @Override
+                public void onEnd(String[] fields) {
+                    pending[0].release();
+                    future.complete(fields[0]);
+                }
+
+                @Override
+                public void onError(String message) {
+                    pending[0].release();
+                    future.completeExceptionally(new IOException(message));
+                }
+            }, future::progress);
+            future.resumed(Math.max(0, resumed));
+            return false; // Le flux est rendu par le bilan du serveur
+        }));
+        submit(pending[0]);
+        return future;
+    }
+
+    /**
+     * Envoie un fichier par différence (voir {@link FramedConnection#uploadDelta}) : seuls les morceaux
+     * que le serveur n’a pas déjà sont envoyés.
+     * @param file Le fichier
+     * @return Le bilan, une fois le fichier vérifié par le serveur ; l’avancement compte les octets présents
+     * sur le serveur, morceaux repris compris
+     */
+    public RemoteFuture<DeltaResult> uploadDelta(Path file) {
+        RemoteFuture<DeltaResult> future = new RemoteFuture<>();
+        Pending[] pending = new Pending[1];
+        pending[0] = new Pending(future, () -> transfer(future, pending[0], () -> {
+            connection.uploadDelta(file, new FramedConnection.StreamListener() {
+                @Override
+                public void onEnd(String[] fields) {
+                    pending[0].release();
+                    future.complete(new DeltaResult(fields[0], Long.parseLong(fields[1].trim()),
+                            Long.parseLong(fields[2].trim())));
+                }
+
+                @Override
+                public void onError(String message) {
+                    pending[0].release();
+                    future.completeExceptionally(new IOException(message));
+                }
+            }, future::progress);
+            return false; // Le flux est rendu par le bilan du serveur
+        }));
+        submit(pending[0]);
+        return future;
+    }
+
+    /**
+     * Envoie un dossier et son arborescence dans un seul flux (voir {@link FramedConnection#uploadTree}).
+     * @param directory Le dossier
+     * @param written Reçoit le chemin relatif de chaque fichier écrit sur le serveur, dans le thread de lecture
+     *                de la connexion (peut être null)
+     * @return Le bilan, une fois l’arborescence publiée par le serveur ; l’avancement compte les octets de contenu
+     * écrits sur le disque du serveur
+     */
+    public RemoteFuture<TreeResult> uploadTree(Path directory, Consumer<String> written) {
+        RemoteFuture<TreeResult> future = new RemoteFuture<>();
+        Pending[] pending = new Pending[1];
+        pending[0] = new Pending(future, () -> transfer(future, pending[0], () -> {
+            connection.uploadTree(directory, new FramedConnection.StreamListener() {
+                @Override
+                public void onEnd(String[] fields) {
+                    pending[0].release();
+                    future.complete(new TreeResult(fields[0], Integer.parseInt(fields[1].trim()),
+                            Long.parseLong(fields[2].trim())));
+                }
+
+                @Override
+                public void onError(String message) {
+                    pending[0].release();
+                    future.completeExceptionally(new IOException(message));
+                }
+            }, future::progress, written);
+            return false; // Le flux est rendu par le bilan du serveur
+        }));
+        submit(pending[0]);
+        return future;
+    }
+
+    /**
+     * Télécharge un fichier, de façon reprenable (voir {@link FramedConnection#download}).
+     * @param remotePath Chemin du fichier sur le serveur
+     * @param target Fichier local à créer (remplacé s’il existe)
+     * @return La taille du fichier téléchargé ; l’avancement compte les octets présents sur le disque
+     */
+    public RemoteFuture<Long> download(String remotePath, Path target) {
+        RemoteFuture<Long> future = new RemoteFuture<>();
+        Pending[] pending = new Pending[1];
+        pending[0] = new Pending(future, () -> transfer(future, pending[0], () -> {
+            future.resumed(connection.download(remotePath, target, future::progress));
+            future.complete(Files.size(target));
+            return true;
+        }));
+        submit(pending[0]);
+        return future;
+    }
+
+    /**
+     * @return Le nombre de requêtes soumises et pas encore terminées (flux ouverts et file d’attente)
+     */
+    public int pending() {
+        lock.lock();
+        try {
+            return active + waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true tant que la connexion est ouverte
+     */
+    public boolean isOpen() {
+        return connection.isOpen();
+    }
+
+    /**
+     * @return L’adresse du serveur
+     */
+    public String host() {
+        return host;
+    }
+
+    /**
+     * @return Le port du serveur
+     */
+    public int port() {
+        return port;
+    }
+
+    /**
+     * @return La connexion sous-jacente, pour les usages qui gèrent eux-mêmes leurs flux
+     * ({@link CommandBatch}, {@link ParallelUpload}) ; ses flux ne sont pas comptés ici
+     */
+    public FramedConnection connection() {
+        return connection;
+    }
+
+    /**
+     * Ferme la connexion. Les requêtes en cours ou en attente se terminent en échec.
+     */
+    @Override
+    public void close() {
+        connection.close();
+        failWaiting("Connexion fermée.");
+    }
+
+    /**
+     * Transfert bloquant, à exécuter par un thread de {@link #TRANSFERS}.
+     */
+    private interface Transfer {
+
+        /**
+         * @return true si le flux peut être rendu dès la fin de la méthode
+         * @throws IOException Si le transfert échoue
+         */
+        boolean run() throws IOException;
+    }
+
+    /**
+     * Lance un transfert dans un thread de {@link #TRANSFERS}, interrompu si le résultat est annulé.
+     * @param future Le résultat du transfert
+     * @param pending La requête, dont le flux est rendu à la fin du transfert
+     * @param transfer Le transfert
+     * @return true : le flux est rendu par le transfert lui-même
+     */
+    private boolean transfer(RemoteFuture<?> future, Pending pending, Transfer transfer) {
+        TRANSFERS.execute(() -> {
+            Thread worker = Thread.currentThread();
+            AtomicBoolean running = new AtomicBoolean(true); // N’interrompt pas le thread une fois rendu au pool
+            future.stoppedBy(() -> {
+                if (running.get()) {
+                    worker.interrupt();
+                }
+            });
+            boolean done = false;
+            try {
+                done = transfer.run();
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+                done = true;
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                done = true;
+            } finally {
+                running.set(false);
+                Thread.interrupted(); // Interruption arrivée trop tard, sans effet sur la tâche suivante
+                if (done) {
+                    pending.release();
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Demande l’arrêt d’un flux, sans effet si la connexion est perdue (le flux échoue alors de lui-même).
+     * @param id L’identifiant du flux
+     */
+    private void cancelStream(int id) {
+        try {
+            connection.cancel(id);
+        } catch (IOException ignored) {
+            // La connexion est perdue : le flux échouera de lui-même
+        }
+    }
+
+    /**
+     * Lance une requête si un flux est libre, sinon la met en file.
+     * @param pending La requête
+     */
+    private void submit(Pending pending) {
+        lock.lock();
+        try {
+            if (!connection.isOpen()) {
+                pending.future.completeExceptionally(new IOException("Connexion fermée."));
+                return;
+            }
+            if (active >= Protocol.MAX_STREAMS) {
+                waiting.add(pending);
+                return;
+            }
+            active++;
+        } finally {
+            lock.unlock();
+        }
+        dispatch(pending);
+    }
+
+    /**
+     * Lance des requêtes sur un flux réservé, jusqu’à ce que l’une parte ou que la file soit vide
+     * (le flux est alors rendu). Les requêtes annulées pendant leur attente sont sautées.
+     * @param first La première requête à lancer, ou null
+     */
+    private void dispatch(Pending first) {
+        for (Pending next = first; next != null; next = nextOrRelease()) {
+            if (!next.future.isDone() && next.start.getAsBoolean()) {
+                return; // Le flux appartient désormais à cette requête
+            }
+            if (!next.released.compareAndSet(false, true)) {
+                return; // Déjà rendu par la requête elle-même, qui a lancé la suivante
+            }
+        }
+    }
+
+    /**
+     * @return La requête suivante, à qui passe le flux réservé, ou null si la file est vide (le flux est alors rendu)
+     */
+    private Pending nextOrRelease() {
+        lock.lock();
+        try {
+            Pending next = waiting.poll();
+            if (next == null) {
+                active--;
+            }
+            return next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Termine en échec les requêtes en attente d’un flux.
+     * @param cause La cause
+     */
+    private void failWaiting(String cause) {
+        List<Pending> failed;
+        lock.lock();
+        try {
+            failed = new ArrayList<>(waiting);
+            waiting.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (Pending pending : failed) {
+            pending.future.completeExceptionally(new IOException(cause));
+        }
+    }
+
+    /**
+     * Sortie d’une commande : transmise à l’observateur, ou gardée jusqu’à {@link #MAX_OUTPUT_BYTES}
+     * (thread de lecture de la connexion).
+     */
+    private static final class Capture {
+        private final OutputListener output; // Observateur, ou null pour garder la sortie
+        private final long sentNanos = System.nanoTime(); // Instant d’envoi
+        private final ByteArrayOutputStream stdout = new ByteArrayOutputStream(); // Sortie standard gardée
+        private final ByteArrayOutputStream stderr = new ByteArrayOutputStream(); // Sortie d’erreur gardée
+        private long firstByteNanos; // Réception du premier octet (0 tant que rien n’est arrivé)
+        private boolean truncated; // Octets ignorés au-delà de la limite
+
+        Capture(OutputListener output) {
+            this.output = output;
+        }
+
+        void add(ByteBuffer data, boolean fromStderr) {
+            if (firstByteNanos == 0) {
+                firstByteNanos = System.nanoTime();
+            }
+            if (output != null) {
+                output.onOutput(data, fromStderr);
+                return;
+            }
+            ByteArrayOutputStream bytes = fromStderr ? stderr : stdout;
+            int kept = Math.min(data.remaining(), MAX_OUTPUT_BYTES - bytes.size());
+            if (kept < data.remaining()) {
+                truncated = true;
+            }
+            byte[] chunk = new byte[kept];
+            data.get(chunk);
+            bytes.write(chunk, 0, kept);
+        }
+
+        /**
+         * @param fields Le bilan du serveur : code de sortie et délai avant le premier octet
+         * @return Le résultat de la commande
+         */
+        Result result(String[] fields) {
+            long serverDelay = fields.length > 1 && !String.valueOf(Protocol.NONE).equals(fields[1])
+                    ? Long.parseLong(fields[1].trim()) : -1;
+            return new Result(Integer.parseInt(fields[0].trim()),
+                    firstByteNanos == 0 ? -1 : (firstByteNanos - sentNanos) / 1_000_000, serverDelay,
+                    stdout.toByteArray(), stderr.toByteArray(), truncated);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package hadoop.mapreduce.remotecontrolsoftware.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+
+/**
+ * Sommes de contrôle des transferts de fichiers, calculées de la même façon par le client et le serveur.
+ */
+public final class Checksums {
+    private static final int READ_BUFFER = 1024 * 1024; // Taille des lectures pour l’empreinte
+
+    private Checksums() {
+    }
+
+    /**
+     * @param data Les octets (la position du buffer n’est pas modifiée)
+     * @return La somme CRC32C des octets
+     */
+    public static int crc32c(ByteBuffer data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Calcule l’empreinte SHA-256 d’un fichier, sans déplacer sa position courante.
+     * @param channel Le fichier, lu depuis le début
+     * @return L’empreinte en hexadécimal (minuscules)
+     * @throws IOException Si la lecture échoue
+     */
+    public static String sha256(FileChannel channel) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e); // Toujours disponible dans le JDK
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER);
+        long position = 0;
+        int count;
+        while ((count = channel.read(buffer, position)) > 0) {
+            position += count;
+            digest.update(buffer.flip());
+            buffer.clear();
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
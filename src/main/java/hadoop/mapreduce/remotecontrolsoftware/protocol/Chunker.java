@@ -0,0 +1,124 @@
+package hadoop.mapreduce.remotecontrolsoftware.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Découpage d’un fichier en morceaux définis par leur contenu, calculé de la même façon par le client
+ * et le serveur pour l’envoi par différence ({@link Protocol#SYNC}).
+ * <p>
+ * Une fin de morceau est placée là où une empreinte roulante (« gear ») des 64 derniers octets a ses
+ * {@value #BOUNDARY_BITS} bits de poids fort à zéro, entre {@link #MIN_CHUNK} et {@link #MAX_CHUNK}
+ * octets après le début du morceau (environ 80 Kio en moyenne). Les frontières ne dépendent que du
+ * contenu voisin : insérer ou retirer quelques octets ne change que les morceaux touchés, les suivants
+ * retrouvent les mêmes frontières et donc la même empreinte SHA-256 que dans la version précédente.
+ */
+public final class Chunker {
+    public static final int MIN_CHUNK = 16 * 1024; // Taille minimale d’un morceau (sauf le dernier)
+    public static final int MAX_CHUNK = 256 * 1024; // Taille maximale d’un morceau
+    public static final int BOUNDARY_BITS = 16; // Une position sur 2^16 est une frontière, au-delà du minimum
+    public static final int HASH_LENGTH = 32; // Empreinte SHA-256 d’un morceau
+    private static final long BOUNDARY_MASK = -1L << (64 - BOUNDARY_BITS); // Bits de poids fort testés
+    private static final int WINDOW = 64; // Octets qui influencent les bits de poids fort de l’empreinte roulante
+    private static final int READ_BUFFER = 1024 * 1024; // Taille des lectures
+    private static final long[] GEAR = gear(); // Valeur pseudo-aléatoire de chaque octet, identique partout
+
+    /**
+     * Reçoit les morceaux d’un fichier, dans l’ordre.
+     */
+    public interface ChunkConsumer {
+        /**
+         * @param offset La position du morceau dans le fichier
+         * @param length Sa taille
+         * @param sha256 Son empreinte SHA-256 ({@value #HASH_LENGTH} octets, à copier pour la garder)
+         * @throws IOException Pour interrompre le découpage
+         */
+        void chunk(long offset, int length, byte[] sha256) throws IOException;
+    }
+
+    private Chunker() {
+    }
+
+    /**
+     * Découpe un fichier, sans déplacer sa position courante.
+     * @param channel Le fichier, lu depuis le début
+     * @param consumer Reçoit chaque morceau
+     * @return La taille lue
+     * @throws IOException Si la lecture échoue
+     */
+    public static long scan(FileChannel channel, ChunkConsumer consumer) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER);
+        byte[] bytes = buffer.array();
+        long position = 0; // Octets lus
+        long start = 0; // Début du morceau en cours
+        int length = 0; // Taille du morceau en cours
+        long hash = 0; // Empreinte roulante
+        int count;
+        while ((count = channel.read(buffer.clear(), position)) > 0) {
+            int from = 0; // Premier octet du buffer pas encore ajouté à l’empreinte du morceau
+            for (int i = 0; i < count; i++) {
+                length++;
+                if (length <= MIN_CHUNK - WINDOW) { // Sans effet sur la première frontière possible
+                    continue;
+                }
+                hash = (hash << 1) + GEAR[bytes[i] & 0xFF];
+                if (length >= MIN_CHUNK && ((hash & BOUNDARY_MASK) == 0 || length == MAX_CHUNK)) {
+                    digest.update(bytes, from, i + 1 - from);
+                    consumer.chunk(start, length, digest.digest());
+                    from = i + 1;
+                    start += length;
+                    length = 0;
+                    hash = 0;
+                }
+            }
+            digest.update(bytes, from, count - from);
+            position += count;
+        }
+        if (length > 0) { // Dernier morceau, plus court
+            consumer.chunk(start, length, digest.digest());
+        }
+        return position;
+    }
+
+    /**
+     * @param data Les octets (consommés)
+     * @return Leur empreinte SHA-256
+     */
+    public static byte[] sha256(ByteBuffer data) {
+        MessageDigest digest = sha256();
+        digest.update(data);
+        return digest.digest();
+    }
+
+    /**
+     * @return Un calcul d’empreinte SHA-256
+     */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Toujours disponible dans le JDK
+        }
+    }
+
+    /**
+     * Tire la table de l’empreinte roulante d’un générateur fixé (splitmix64), pour que le client
+     * et le serveur placent les frontières aux mêmes endroits quelle que soit leur version de Java.
+     * @return Une valeur de 64 bits par octet
+     */
+    private static long[] gear() {
+        long[] table = new long[256];
+        long state = 0x5243532D47454152L; // "RCS-GEAR"
+        for (int i = 0; i < table.length; i++) {
+            long z = (state += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            table[i] = z ^ (z >>> 31);
+        }
+        return table;
+    }
+}
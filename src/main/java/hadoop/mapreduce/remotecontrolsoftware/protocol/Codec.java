@@ -0,0 +1,39 @@
+package hadoop.mapreduce.remotecontrolsoftware.protocol;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Algorithme de compression des trames DATA, négocié par session ({@link Codecs}).
+ * Chaque trame est compressée indépendamment des autres : une instance sert à un seul flux,
+ * depuis un seul thread à la fois, et peut garder ses tables internes d’une trame à l’autre.
+ */
+public interface Codec {
+
+    /**
+     * @return Le nom échangé lors de la négociation
+     */
+    String name();
+
+    /**
+     * Compresse des octets, seulement si le résultat tient dans la place disponible.
+     * @param source Les octets à compresser (consommés)
+     * @param target Le buffer de sortie, écrit de sa position à sa limite
+     * @return true si tout a été compressé dans target ; false si le résultat ne tient pas
+     * (octets incompressibles), target est alors dans un état quelconque
+     */
+    boolean compress(ByteBuffer source, ByteBuffer target);
+
+    /**
+     * Décompresse une trame.
+     * @param source Les octets compressés (consommés)
+     * @param target Le buffer de sortie, écrit de sa position à sa limite
+     * @throws ProtocolException Si les octets sont invalides ou plus grands que la place disponible
+     */
+    void decompress(ByteBuffer source, ByteBuffer target) throws ProtocolException;
+
+    /**
+     * Libère les ressources de l’algorithme.
+     */
+    void close();
+}
@@ -0,0 +1,62 @@
+package hadoop.mapreduce.remotecontrolsoftware.protocol;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Algorithmes de compression connus, par ordre de préférence.
+ * Le client propose sa liste dans une trame SETTINGS ; le serveur retient le premier
+ * algorithme proposé qu’il connaît, ou {@link Protocol#NO_COMPRESSION}.
+ * D’autres algorithmes peuvent être ajoutés par {@link #register(String, Supplier)}, des deux côtés.
+ */
+public final class Codecs {
+    private static final Map<String, Supplier<Codec>> CODECS = new LinkedHashMap<>(); // Algorithmes, par nom
+
+    static {
+        register(DeflateCodec.NAME, DeflateCodec::new);
+    }
+
+    private Codecs() {
+    }
+
+    /**
+     * Ajoute un algorithme, à la fin de l’ordre de préférence.
+     * @param name Son nom dans la négociation
+     * @param factory Crée une instance (une par flux)
+     */
+    public static synchronized void register(String name, Supplier<Codec> factory) {
+        CODECS.put(name, factory);
+    }
+
+    /**
+     * @return Les algorithmes connus, par ordre de préférence
+     */
+    public static synchronized List<String> names() {
+        return new ArrayList<>(CODECS.keySet());
+    }
+
+    /**
+     * @param name Un nom d’algorithme
+     * @return Sa fabrique, ou null si l’algorithme est inconnu (ou {@link Protocol#NO_COMPRESSION})
+     */
+    public static synchronized Supplier<Codec> factory(String name) {
+        return CODECS.get(name);
+    }
+
+    /**
+     * Choisit l’algorithme d’une session.
+     * @param offered Les algorithmes proposés, par ordre de préférence
+     * @return Le premier algorithme proposé et connu, ou {@link Protocol#NO_COMPRESSION}
+     */
+    public static String negotiate(String[] offered) {
+        for (String name : offered) {
+            if (factory(name.trim()) != null) {
+                return name.trim();
+            }
+        }
+        return Protocol.NO_COMPRESSION;
+    }
+}
@@ -0,0 +1,82 @@
+package hadoop.mapreduce.remotecontrolsoftware.protocol;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bilan de la compression d’une session : octets avant et après compression dans chaque sens,
+ * trames laissées telles quelles et temps CPU consacré à la compression.
+ */
+public final class CompressionStats {
+    private final String codec; // Algorithme négocié
+    private final LongAdder rawSent = new LongAdder(); // Octets à envoyer, avant compression
+    private final LongAdder wireSent = new LongAdder(); // Octets envoyés
+    private final LongAdder rawReceived = new LongAdder(); // Octets reçus, après décompression
+    private final LongAdder wireReceived = new LongAdder(); // Octets reçus
+    private final LongAdder skipped = new LongAdder(); // Trames envoyées sans compression
+    private final LongAdder cpuNanos = new LongAdder(); // Temps passé à compresser et décompresser
+
+    /**
+     * @param codec L’algorithme négocié
+     */
+    public CompressionStats(String codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * @return L’algorithme négocié
+     */
+    public String codec() {
+        return codec;
+    }
+
+    void sent(long raw, long wire, boolean compressed, long nanos) {
+        rawSent.add(raw);
+        wireSent.add(wire);
+        if (!compressed) {
+            skipped.increment();
+        }
+        cpuNanos.add(nanos);
+    }
+
+    void received(long raw, long wire, long nanos) {
+        rawReceived.add(raw);
+        wireReceived.add(wire);
+        cpuNanos.add(nanos);
+    }
+
+    /**
+     * @return true si au moins une trame est passée par la compression
+     */
+    public boolean isUsed() {
+        return rawSent.sum() + rawReceived.sum() > 0;
+    }
+
+    /**
+     * @return Le rapport octets avant / après compression, tous sens confondus
+     */
+    public double ratio() {
+        long wire = wireSent.sum() + wireReceived.sum();
+        return wire == 0 ? 1 : (double) (rawSent.sum() + rawReceived.sum()) / wire;
+    }
+
+    /**
+     * @return Le temps CPU consacré à la compression, en millisecondes
+     */
+    public long cpuMillis() {
+        return cpuNanos.sum() / 1_000_000;
+    }
+
+    /**
+     * @return Le bilan lisible, pour le journal
+     */
+    public String summary() {
+        return String.format(Locale.ROOT, "%s : envoyé %s → %s, reçu %s → %s (ratio %.2f, %d trames non compressées, %d ms CPU)",
+                codec, megabytes(rawSent.sum()), megabytes(wireSent.sum()), megabytes(wireReceived.sum()),
+                megabytes(rawReceived.sum()), ratio(), skipped.sum(), cpuMillis());
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f Mo", bytes / (1024.0 * 1024.0));
+    }
+}
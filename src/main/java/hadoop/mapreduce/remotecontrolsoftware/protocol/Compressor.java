@@ -0,0 +1,160 @@
+package hadoop.mapreduce.remotecontrolsoftware.protocol;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Compression adaptative des trames DATA d’un flux. Une trame n’est envoyée compressée
+ * ({@link Frame#FLAG_COMPRESSED}) que si elle y gagne ; après plusieurs trames incompressibles
+ * (fichier déjà compressé), les trames suivantes sont envoyées sans essai, avec un nouvel essai
+ * de plus en plus espacé, pour ne pas dépenser de CPU inutilement.
+ */
+public final class Compressor {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean(); // Temps CPU du thread courant
+    private static final int MIN_LENGTH = 256; // En dessous, la compression ne rapporte rien
+    private static final int MISSES_BEFORE_SKIP = 4; // Échecs consécutifs avant de sauter des trames
+    private static final int MAX_SKIP = 64; // Trames sautées au plus entre deux essais
+
+    private final Supplier<Codec> factory; // Algorithme négocié (null : pas de compression)
+    private final CompressionStats stats; // Bilan de la session
+    private final ReentrantLock lock = new ReentrantLock(); // L’envoi et la fermeture peuvent venir de threads différents
+    private Codec codec; // Instance du flux, créée au premier usage
+    private ByteBuffer packed; // Sortie de la compression, réutilisée
+    private ByteBuffer unpacked; // Sortie de la décompression, réutilisée
+    private int misses; // Échecs consécutifs
+    private int skip; // Trames restant à envoyer sans essai
+    private int nextSkip = 1; // Trames à sauter après le prochain échec
+    private boolean closed; // Flux terminé
+
+    /**
+     * @param factory L’algorithme négocié pour la session, ou null sans compression
+     * @param stats Le bilan de la session (ignoré sans compression)
+     */
+    public Compressor(Supplier<Codec> factory, CompressionStats stats) {
+        this.factory = factory;
+        this.stats = stats;
+    }
+
+    /**
+     * Essaie de compresser la charge utile d’une trame.
+     * @param raw Les octets à envoyer (non consommés)
+     * @return Les octets compressés (valables jusqu’au prochain appel), ou null s’il faut envoyer raw tel quel
+     */
+    public ByteBuffer compress(ByteBuffer raw) {
+        if (factory == null) {
+            return null;
+        }
+        lock.lock();
+        try {
+            int length = raw.remaining();
+            if (closed || length < MIN_LENGTH || skip > 0) {
+                if (skip > 0) {
+                    skip--;
+                }
+                if (!closed) {
+                    stats.sent(length, length, false, 0);
+                }
+                return null;
+            }
+            if (codec == null) {
+                codec = factory.get();
+                packed = ByteBuffer.allocate(Frame.MAX_PAYLOAD);
+            }
+            long start = cpuTime();
+            packed.clear().limit(length - 1); // Une trame compressée doit être plus petite
+            boolean compressed = codec.compress(raw.duplicate(), packed);
+            long nanos = cpuTime() - start;
+            if (compressed) {
+                misses = 0;
+                nextSkip = 1;
+                stats.sent(length, packed.position(), true, nanos);
+                return packed.flip();
+            }
+            stats.sent(length, length, false, nanos);
+            if (++misses >= MISSES_BEFORE_SKIP) { // Données incompressibles : espace les essais
+                skip = nextSkip;
+                nextSkip = Math.min(MAX_SKIP, nextSkip * 2);
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rend la charge utile d’origine d’une trame DATA reçue.
+     * @param payload La charge utile reçue (non consommée)
+     * @param flags Les drapeaux de la trame
+     * @return Les octets d’origine : payload, ou les octets décompressés (valables jusqu’au prochain appel)
+     * @throws ProtocolException Si la compression n’a pas été négociée ou si les octets sont invalides
+     */
+    public ByteBuffer unpack(ByteBuffer payload, int flags) throws ProtocolException {
+        if ((flags & Frame.FLAG_COMPRESSED) != 0) {
+            return decompress(payload);
+        }
+        if (factory != null) {
+            stats.received(payload.remaining(), payload.remaining(), 0); // Trame envoyée telle quelle
+        }
+        return payload;
+    }
+
+    /**
+     * Décompresse la charge utile d’une trame reçue avec {@link Frame#FLAG_COMPRESSED}.
+     * @param wire Les octets reçus (non consommés)
+     * @return Les octets décompressés (valables jusqu’au prochain appel)
+     * @throws ProtocolException Si la compression n’a pas été négociée ou si les octets sont invalides
+     */
+    public ByteBuffer decompress(ByteBuffer wire) throws ProtocolException {
+        if (factory == null) {
+            throw new ProtocolException("Trame compressée sans compression négociée");
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                throw new ProtocolException("Flux terminé");
+            }
+            if (codec == null) {
+                codec = factory.get();
+            }
+            if (unpacked == null) {
+                unpacked = ByteBuffer.allocate(Frame.MAX_PAYLOAD); // Une trame décompressée ne dépasse pas une trame
+            }
+            long start = cpuTime();
+            int length = wire.remaining();
+            unpacked.clear();
+            codec.decompress(wire.duplicate(), unpacked);
+            stats.received(unpacked.position(), length, cpuTime() - start);
+            return unpacked.flip();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Libère l’algorithme du flux.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            if (codec != null) {
+                codec.close();
+                codec = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Le temps CPU du thread courant, ou l’heure si la mesure n’est pas disponible (thread virtuel)
+     */
+    private static long cpuTime() {
+        long time = THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+        return time >= 0 ? time : System.nanoTime();
+    }
+}
@@ -0,0 +1,66 @@
+package hadoop.mapreduce.remotecontrolsoftware.protocol;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression Deflate brute (sans en-tête zlib), disponible dans tout JDK.
+ * Le niveau se règle par la propriété système {@code rcs.deflate.level} (1 à 9, 6 par défaut).
+ */
+public final class DeflateCodec implements Codec {
+    public static final String NAME = "deflate"; // Nom négocié
+    private static final int LEVEL = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION,
+            Integer.getInteger("rcs.deflate.level", 6))); // Niveau de compression
+
+    private Deflater deflater; // Créé au premier envoi
+    private Inflater inflater; // Créé à la première réception
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean compress(ByteBuffer source, ByteBuffer target) {
+        if (deflater == null) {
+            deflater = new Deflater(LEVEL, true);
+        } else {
+            deflater.reset(); // Chaque trame est indépendante
+        }
+        deflater.setInput(source);
+        deflater.finish();
+        deflater.deflate(target);
+        return deflater.finished(); // Sinon la sortie dépasserait la place donnée
+    }
+
+    @Override
+    public void decompress(ByteBuffer source, ByteBuffer target) throws ProtocolException {
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        } else {
+            inflater.reset();
+        }
+        inflater.setInput(source);
+        try {
+            inflater.inflate(target);
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Trame compressée invalide : " + e.getMessage());
+        }
+        if (!inflater.finished()) { // Trame tronquée, ou plus grande qu’une trame (bombe de décompression)
+            throw new ProtocolException("Trame compressée invalide ou trop grande");
+        }
+    }
+
+    @Override
+    public void close() {
+        if (deflater != null) {
+            deflater.end();
+        }
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package hadoop.mapreduce.remotecontrolsoftware.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Trame du protocole binaire, négocié par {@link Protocol#FRAMED_PREFACE}.
+ * <p>
+ * Format (octets, gros-boutiste) : type (1), drapeaux (1), identifiant de flux (4), longueur (4),
+ * puis la charge utile. Le flux 0 porte les échanges de la connexion (authentification) ;
+ * les autres flux sont ouverts par le client et vivent en parallèle sur la même connexion.
+ */
+public final class Frame {
+    public static final int HEADER_LENGTH = 10; // Taille de l’en-tête
+    public static final int MAX_PAYLOAD = 64 * 1024; // Charge utile maximale acceptée
+    public static final int CONNECTION_STREAM = 0; // Flux des échanges de connexion
+    public static final int FLAG_STDERR = 0x01; // DATA : octets de la sortie d’erreur
+    public static final int FLAG_COMPRESSED = 0x02; // DATA : charge utile compressée (algorithme négocié par SETTINGS)
+
+    /**
+     * Types de trames.
+     */
+    public enum Type {
+        AUTH(1), // Client : identifiants "login\nmot de passe" (flux 0)
+        AUTH_OK(2), // Serveur : authentification réussie, "message[\njeton de session]" (flux 0)
+        OPEN(3), // Client : ouvre un flux, "verbe\nargument..." (voir Protocol)
+        DATA(4), // Octets d’un flux, dans la limite du crédit accordé par le destinataire
+        END(5), // L’émetteur n’enverra plus rien sur ce flux (bilan en charge utile)
+        WINDOW(6), // Crédit supplémentaire accordé à l’émetteur du flux (entier de 4 octets)
+        CANCEL(7), // Client : abandonne le flux
+        ERROR(8), // Serveur : le flux (ou la connexion pour le flux 0) a échoué, message en charge utile
+        ACK(9), // Serveur : flux accepté, avec sa réponse (reprise d’un upload, taille d’un téléchargement)
+        SETTINGS(10), // Négociation sur le flux 0 : "compress\nalgorithmes proposés" puis l’algorithme retenu
+        RESUME(11); // Client : jeton de session reçu avec AUTH_OK, à la place des identifiants (flux 0)
+
+        private final int code; // Valeur transmise
+
+        Type(int code) {
+            this.code = code;
+        }
+
+        /**
+         * @return La valeur transmise dans l’en-tête
+         */
+        public int code() {
+            return code;
+        }
+
+        /**
+         * @param code Une valeur reçue
+         * @return Le type correspondant, ou null si inconnu
+         */
+        public static Type of(int code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Type type; // Type de la trame
+    private final int flags; // Drapeaux
+    private final int streamId; // Flux concerné
+    private final ByteBuffer payload; // Charge utile (lecture seule)
+
+    /**
+     * Constructeur d’une trame.
+     * @param type Le type
+     * @param flags Les drapeaux
+     * @param streamId Le flux concerné
+     * @param payload La charge utile, lue de sa position à sa limite
+     */
+    public Frame(Type type, int flags, int streamId, ByteBuffer payload) {
+        if (payload.remaining() > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Charge utile trop grande : " + payload.remaining());
+        }
+        this.type = type;
+        this.flags = flags;
+        this.streamId = streamId;
+        this.payload = payload.asReadOnlyBuffer();
+    }
+
+    /**
+     * Crée une trame dont la charge utile est du texte UTF-8.
+     * @param type Le type
+     * @param streamId Le flux concerné
+     * @param fields Les champs, séparés par des fins de ligne
+     * @return La trame
+     */
+    public static Frame text(Type type, int streamId, String... fields) {
+        return new Frame(type, 0, streamId, StandardCharsets.UTF_8.encode(String.join("\n", fields)));
+    }
+
+    /**
+     * Crée une trame de crédit.
+     * @param streamId Le flux concerné
+     * @param increment Le nombre d’octets supplémentaires autorisés
+     * @return La trame
+     */
+    public static Frame window(int streamId, int increment) {
+        ByteBuffer payload = ByteBuffer.allocate(4);
+        payload.putInt(0, increment);
+        return new Frame(Type.WINDOW, 0, streamId, payload);
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    public int flags() {
+        return flags;
+    }
+
+    public int streamId() {
+        return streamId;
+    }
+
+    /**
+     * @return Une vue de la charge utile, indépendante des autres lectures
+     */
+    public ByteBuffer payload() {
+        return payload.duplicate();
+    }
+
+    /**
+     * @return La longueur de la charge utile
+     */
+    public int length() {
+        return payload.remaining();
+    }
+
+    /**
+     * @return La charge utile décodée en UTF-8
+     */
+    public String text() {
+        return StandardCharsets.UTF_8.decode(payload()).toString();
+    }
+
+    /**
+     * @return Les champs de la charge utile texte, séparés par des fins de ligne
+     */
+    public String[] fields() {
+        return text().split("\n", -1);
+    }
+
+    /**
+     * @return Le crédit porté par une trame WINDOW
+     */
+    public int increment() {
+        return payload.getInt(payload.position());
+    }
+
+    /**
+     * Encode la trame en un seul buffer, pour qu’un envoi ne soit jamais entrelacé avec un autre.
+     * @return L’en-tête suivi de la charge utile, prêt à être lu
+     */
+    public ByteBuffer encode() {
+        ByteBuffer encoded = ByteBuffer.allocate(HEADER_LENGTH + length());
+        writeHeader(encoded, type, flags, streamId, length());
+        return encoded.put(payload()).flip();
+    }
+
+    /**
+     * Écrit un en-tête de trame, pour qui prépare la charge utile directement dans son buffer d’envoi.
+     * @param target Le buffer, écrit à sa position courante
+     * @param type Le type
+     * @param flags Les drapeaux
+     * @param streamId Le flux concerné
+     * @param length La longueur de la charge utile qui suit
+     */
+    public static void writeHeader(ByteBuffer target, Type type, int flags, int streamId, int length) {
+        if (length > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Charge utile trop grande : " + length);
+        }
+        target.put((byte) type.code).put((byte) flags).putInt(streamId).putInt(length);
+    }
+
+    @Override
+    public String toString() {
+        return type + "[flux " + streamId + ", " + length() + " octets]";
+    }
+}
@@ -0,0 +1,60 @@
+package hadoop.mapreduce.remotecontrolsoftware.protocol;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Décodeur incrémental de trames : reçoit les octets dans l’ordre, par morceaux de taille
+ * quelconque, et rend chaque trame dès qu’elle est complète.
+ * Utilisable par un lecteur bloquant comme par une boucle d’événements. Non thread-safe.
+ */
+public final class FrameDecoder {
+    private final ByteBuffer header = ByteBuffer.allocate(Frame.HEADER_LENGTH); // En-tête en cours de lecture
+    private ByteBuffer payload; // Charge utile en cours de lecture (null tant que l’en-tête est incomplet)
+
+    /**
+     * Consomme des octets et rend la trame suivante si elle est complète.
+     * À rappeler tant que la trame rendue n’est pas null et qu’il reste des octets.
+     * @param input Les octets reçus, consommés au fur et à mesure
+     * @return La trame complète, ou null s’il faut davantage d’octets
+     * @throws ProtocolException Si l’en-tête est invalide (type inconnu, longueur excessive)
+     */
+    public Frame next(ByteBuffer input) throws ProtocolException {
+        if (payload == null) {
+            transfer(input, header);
+            if (header.hasRemaining()) { // En-tête incomplet
+                return null;
+            }
+            int length = header.getInt(6); // Longueur annoncée
+            if (length < 0 || length > Frame.MAX_PAYLOAD) {
+                throw new ProtocolException("Longueur de trame invalide : " + length);
+            }
+            if (Frame.Type.of(header.get(0) & 0xFF) == null) {
+                throw new ProtocolException("Type de trame inconnu : " + (header.get(0) & 0xFF));
+            }
+            payload = ByteBuffer.allocate(length);
+        }
+        transfer(input, payload);
+        if (payload.hasRemaining()) { // Charge utile incomplète
+            return null;
+        }
+        Frame frame = new Frame(Frame.Type.of(header.get(0) & 0xFF), header.get(1) & 0xFF, header.getInt(2),
+                payload.flip());
+        header.clear(); // Prêt pour la trame suivante
+        payload = null;
+        return frame;
+    }
+
+    /**
+     * Copie autant d’octets que possible d’un buffer vers l’autre.
+     * @param from La source
+     * @param to La destination
+     */
+    private static void transfer(ByteBuffer from, ByteBuffer to) {
+        int count = Math.min(from.remaining(), to.remaining());
+        ByteBuffer slice = from.duplicate();
+        slice.limit(slice.position() + count);
+        to.put(slice);
+        from.position(from.position() + count);
+    }
+}
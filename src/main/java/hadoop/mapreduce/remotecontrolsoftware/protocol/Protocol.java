@@ -0,0 +1,237 @@
+package hadoop.mapreduce.remotecontrolsoftware.protocol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Messages du protocole texte partagés par le client et le serveur.
+ * <p>
+ * La sortie d’une commande est envoyée au fil de l’eau, une ligne de protocole par morceau :
+ * <ul>
+ *     <li>{@code OUT|texte} ou {@code ERR|texte} : fin d’une ligne de stdout ou de stderr ;</li>
+ *     <li>{@code OUT+texte} ou {@code ERR+texte} : morceau d’une ligne qui continue (ligne longue
+ *     ou sortie en attente de la suite) ;</li>
+ *     <li>{@code END|code|ms} : fin de la commande, avec son code de sortie et le délai
+ *     avant le premier octet mesuré par le serveur ({@value #NONE} si inconnu).</li>
+ * </ul>
+ * Chaque commande reçoit exactement une ligne {@code END}, même si elle est refusée.
+ * Quand le serveur a trop de commandes en attente, il refuse la commande sans la lancer :
+ * la ligne {@code BUSY|ms|raison} donne le délai conseillé avant de la renvoyer, suivie de {@code END|-1|-1}.
+ * En protocole binaire, la même ligne est le texte de la trame ERROR du flux.
+ * <p>
+ * Un lot de commandes s’envoie en une fois : la ligne {@code batch:N} suivie des N commandes, une par ligne.
+ * Le serveur en exécute plusieurs à la fois ; chaque ligne de sortie est précédée de l’indice de sa
+ * commande dans le lot ({@code 3:OUT|texte}, {@code 3:END|code|ms}), dans l’ordre où les commandes
+ * avancent. Une ligne {@code END|échecs|ms} sans indice termine le lot, avec le nombre de commandes
+ * dont le code de sortie n’est pas 0 et la durée totale du lot.
+ * <p>
+ * Une commande précédée de {@code timeout:ms } (par exemple {@code timeout:5000 make}) est arrêtée,
+ * avec tous ses processus, si elle dure plus de ms millisecondes ; le serveur applique de toute façon
+ * sa propre durée maximale.
+ * <p>
+ * Un client peut aussi passer au protocole binaire ({@link Frame}) : au lieu du login, il envoie
+ * la ligne {@link #FRAMED_PREFACE}, que le serveur renvoie telle quelle avant de passer aux trames.
+ * Plusieurs commandes et transferts partagent alors la connexion, chacun dans son flux, avec
+ * un crédit par flux ({@link #INITIAL_WINDOW}) que le destinataire renouvelle par des trames WINDOW.
+ * Une trame SETTINGS ({@link #COMPRESS}) négocie la compression des trames DATA ({@link Codecs}).
+ * <p>
+ * Un upload par différence ({@link #SYNC}) commence par le manifeste du fichier, découpé par {@link Chunker} :
+ * une entrée {@link #SYNC_ENTRY} par morceau, en trames DATA. Le serveur répond par la liste des morceaux
+ * qui lui manquent (un bit par morceau, en trames DATA, format de {@link java.util.BitSet#toByteArray()}),
+ * puis par ACK avec "morceaux à envoyer\noctets à envoyer\noctets repris". Le client n’envoie que ces
+ * morceaux, en trames DATA au format d’un {@link #PUT}, puis END. Chaque morceau, reçu ou recopié, est vérifié
+ * par son empreinte du manifeste : le fichier entier n’a pas à être relu.
+ * <p>
+ * Un upload de dossier ({@link #TREE}) envoie toute l’arborescence dans un seul flux, comme une archive lue
+ * au fil de l’eau : des enregistrements bout à bout, chacun formé d’un en-tête {@link #TREE_HEADER}
+ * (taille du chemin sur 2 octets, type {@link #TREE_FILE}, {@link #TREE_EXECUTABLE} ou {@link #TREE_DIRECTORY},
+ * taille du contenu et date de modification en ms sur 8 octets chacune), du chemin relatif en UTF-8
+ * (séparateur {@code /}) puis du contenu. Les enregistrements ne suivent pas les trames DATA : plusieurs petits
+ * fichiers partagent une trame, un gros fichier en occupe plusieurs. Le serveur renvoie en trames DATA
+ * l’indice de chaque entrée écrite sur son disque, une par ligne, puis END avec "message\nentrées\noctets".
+ */
+public final class Protocol {
+    public static final String SEND_FILE_NAME = "SEND_FILE_NAME"; // Upload : le serveur attend le nom du fichier
+    public static final String SEND_FILE_SIZE = "SEND_FILE_SIZE"; // Upload : le serveur attend la taille du fichier
+
+    public static final String BATCH = "batch:"; // Lot de commandes (argument : le nombre de lignes qui suivent)
+    public static final String TIMEOUT = "timeout:"; // Préfixe d’une commande : sa durée maximale en ms, puis un espace
+    public static final int MAX_BATCH = 1000; // Commandes au plus dans un lot
+    public static final char TAG_END = ':'; // Sépare l’indice d’une commande du lot de sa ligne de sortie
+
+    public static final String FRAMED_PREFACE = "#PROTO rcs-frame/1"; // Demande (et accord) du protocole binaire
+    public static final String EXEC = "exec"; // OPEN : exécute une commande (arguments : la commande[, durée maximale en ms])
+    public static final String UPLOAD = "upload"; // OPEN : reçoit un fichier (arguments : nom, taille)
+    public static final String GET = "get"; // OPEN : envoie un fichier au client (arguments : chemin, début, longueur ou -1)
+    public static final String PUT = "put"; // OPEN : upload reprenable (arguments : nom, taille, SHA-256[, bandes, bande])
+    public static final int MAX_STRIPES = 16; // Bandes envoyées en parallèle au plus pour un même fichier
+    public static final int PUT_HEADER = 12; // DATA d’un put : position (8 octets) et CRC32C (4 octets) du morceau
+    public static final int PUT_CHUNK = Frame.MAX_PAYLOAD - PUT_HEADER; // Octets de fichier par trame d’un put
+    public static final String SYNC = "sync"; // OPEN : upload par différence (arguments : nom, taille, nombre de morceaux)
+    public static final int SYNC_ENTRY = 4 + Chunker.HASH_LENGTH; // Manifeste d’un sync : taille (4 octets) et SHA-256 d’un morceau
+    public static final int MAX_SYNC_CHUNKS = 1 << 20; // Morceaux au plus dans un sync (environ 80 Gio)
+    public static final String TREE = "tree"; // OPEN : upload d’un dossier (arguments : nom, nombre d’entrées, octets de contenu)
+    public static final int TREE_HEADER = 19; // En-tête d’une entrée d’un tree : chemin (2), type (1), taille (8), date (8)
+    public static final byte TREE_FILE = 0; // Entrée d’un tree : fichier
+    public static final byte TREE_EXECUTABLE = 1; // Entrée d’un tree : fichier exécutable
+    public static final byte TREE_DIRECTORY = 2; // Entrée d’un tree : dossier (éventuellement vide), sans contenu
+    public static final int MAX_TREE_PATH = 4096; // Octets au plus du chemin d’une entrée
+    public static final int MAX_TREE_ENTRIES = 1 << 20; // Entrées au plus dans un tree
+    public static final String COMPRESS = "compress"; // SETTINGS : algorithmes de compression (séparés par des virgules)
+    public static final String NO_COMPRESSION = "none"; // SETTINGS : aucune compression
+    public static final int INITIAL_WINDOW = 256 * 1024; // Crédit initial de chaque flux, dans chaque sens
+    public static final int MAX_DATA = 16 * 1024; // Charge utile maximale d’une trame DATA
+    public static final int MAX_STREAMS = 16; // Flux ouverts simultanément par connexion
+    public static final String[] TLS_PROTOCOLS = {"TLSv1.3", "TLSv1.2"}; // Versions de TLS acceptées, par préférence
+
+    public static final String STDOUT = "OUT"; // Étiquette de la sortie standard
+    public static final String STDERR = "ERR"; // Étiquette de la sortie d’erreur
+    public static final char LINE_END = '|'; // Le morceau termine une ligne
+    public static final char LINE_PART = '+'; // Le morceau sera suivi de la suite de la ligne
+    public static final String END = "END"; // Fin de la sortie d’une commande
+    public static final String BUSY = "BUSY"; // Commande refusée, serveur occupé (arguments : délai conseillé, raison)
+    public static final int NONE = -1; // Valeur inconnue (code de sortie, délai)
+    public static final int MAX_CHUNK_CHARS = 4096; // Taille maximale du texte d’un morceau
+
+    private Protocol() {
+    }
+
+    /**
+     * Construit un morceau de sortie.
+     * @param stream {@link #STDOUT} ou {@link #STDERR}
+     * @param endOfLine true si le morceau termine une ligne
+     * @param text Le texte, sans fin de ligne
+     * @return La ligne de protocole
+     */
+    public static String output(String stream, boolean endOfLine, String text) {
+        return stream + (endOfLine ? LINE_END : LINE_PART) + text;
+    }
+
+    /**
+     * Construit la ligne de fin d’une commande.
+     * @param exitCode Code de sortie du processus, ou {@link #NONE}
+     * @param firstByteMillis Délai avant le premier octet en millisecondes, ou {@link #NONE}
+     * @return La ligne de protocole
+     */
+    public static String end(int exitCode, long firstByteMillis) {
+        return END + LINE_END + exitCode + LINE_END + firstByteMillis;
+    }
+
+    /**
+     * Construit le refus d’une commande par un serveur occupé.
+     * @param retryAfterMillis Le délai conseillé avant de renvoyer la commande
+     * @param reason La raison du refus
+     * @return La ligne de protocole
+     */
+    public static String busy(long retryAfterMillis, String reason) {
+        return BUSY + LINE_END + retryAfterMillis + LINE_END + reason;
+    }
+
+    /**
+     * @param line Une ligne reçue (ou le texte d’une trame ERROR)
+     * @return Le délai conseillé si la ligne est un refus {@link #BUSY}, {@link #NONE} sinon
+     */
+    public static long retryAfterMillis(String line) {
+        if (!line.startsWith(BUSY + LINE_END)) {
+            return NONE;
+        }
+        int end = line.indexOf(LINE_END, BUSY.length() + 1);
+        try {
+            return Long.parseLong(line.substring(BUSY.length() + 1, end < 0 ? line.length() : end));
+        } catch (NumberFormatException e) {
+            return NONE;
+        }
+    }
+
+    /**
+     * @param line Un refus {@link #BUSY}
+     * @return Sa raison
+     */
+    public static String busyReason(String line) {
+        int end = line.indexOf(LINE_END, BUSY.length() + 1);
+        return end < 0 ? "Serveur occupé" : line.substring(end + 1);
+    }
+
+    /**
+     * @param line La commande reçue, avec ou sans préfixe {@link #TIMEOUT}
+     * @return La durée maximale demandée en millisecondes, 0 sans préfixe
+     * @throws NumberFormatException Si la durée n’est pas un nombre positif
+     */
+    public static long timeoutMillis(String line) {
+        if (!line.startsWith(TIMEOUT)) {
+            return 0;
+        }
+        int space = line.indexOf(' ');
+        long millis = Long.parseLong(line.substring(TIMEOUT.length(), space < 0 ? line.length() : space));
+        if (millis <= 0) {
+            throw new NumberFormatException("Durée maximale invalide : " + millis);
+        }
+        return millis;
+    }
+
+    /**
+     * @param line La commande reçue, avec ou sans préfixe {@link #TIMEOUT}
+     * @return La commande sans son préfixe
+     */
+    public static String withoutTimeout(String line) {
+        if (!line.startsWith(TIMEOUT)) {
+            return line;
+        }
+        int space = line.indexOf(' ');
+        return space < 0 ? "" : line.substring(space + 1);
+    }
+
+    /**
+     * Préfixe une ligne de sortie par l’indice de sa commande dans un lot.
+     * @param index L’indice de la commande (à partir de 0)
+     * @return Le préfixe, par exemple "3:"
+     */
+    public static String tag(int index) {
+        return String.valueOf(index) + TAG_END;
+    }
+
+    /**
+     * @param supported Les versions de TLS disponibles (socket ou moteur)
+     * @return Les versions de {@link #TLS_PROTOCOLS} disponibles, toutes si aucune ne l’est
+     */
+    public static String[] tlsProtocols(String[] supported) {
+        List<String> available = Arrays.asList(supported);
+        List<String> enabled = new ArrayList<>();
+        for (String protocol : TLS_PROTOCOLS) {
+            if (available.contains(protocol)) {
+                enabled.add(protocol);
+            }
+        }
+        return enabled.isEmpty() ? supported : enabled.toArray(new String[0]);
+    }
+
+    /**
+     * Découpe un fichier en bandes contiguës de tailles égales (à un octet près), calculées de
+     * la même façon par le client et le serveur.
+     * @param size La taille du fichier
+     * @param stripes Le nombre de bandes
+     * @param index La bande (stripes pour la fin du fichier)
+     * @return Le premier octet de la bande
+     */
+    public static long stripeStart(long size, int stripes, int index) {
+        return size / stripes * index + size % stripes * index / stripes; // size * index / stripes, sans débordement
+    }
+
+    /**
+     * @param line Une ligne reçue
+     * @return true si la ligne est un morceau de sortie (stdout ou stderr)
+     */
+    public static boolean isOutput(String line) {
+        return line.length() >= 4 && (line.startsWith(STDOUT) || line.startsWith(STDERR))
+                && (line.charAt(3) == LINE_END || line.charAt(3) == LINE_PART);
+    }
+
+    /**
+     * @param line Une ligne reçue
+     * @return true si la ligne termine la sortie d’une commande
+     */
+    public static boolean isEnd(String line) {
+        return line.startsWith(END + LINE_END);
+    }
+}
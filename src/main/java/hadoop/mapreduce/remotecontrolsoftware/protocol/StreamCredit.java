@@ -0,0 +1,129 @@
+package hadoop.mapreduce.remotecontrolsoftware.protocol;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Contrôle de flux d’un flux multiplexé, dans les deux sens.
+ * <p>
+ * En émission, chaque trame DATA consomme du crédit ; l’émetteur attend quand il n’en a plus,
+ * sans bloquer les autres flux de la connexion. En réception, le destinataire compte les octets
+ * reçus et traités, et rend le crédit par une trame WINDOW dès que la moitié de la fenêtre est libre.
+ * Utilise un {@link ReentrantLock} pour ne pas bloquer le thread porteur d’un thread virtuel.
+ */
+public final class StreamCredit {
+    private final ReentrantLock lock = new ReentrantLock(); // Protège les compteurs
+    private final Condition available = lock.newCondition(); // Signalé quand du crédit arrive
+    private long sendCredit = Protocol.INITIAL_WINDOW; // Octets que l’on peut encore envoyer
+    private long receiveCredit = Protocol.INITIAL_WINDOW; // Octets que le pair peut encore envoyer
+    private int unacknowledged; // Octets traités dont le crédit n’a pas encore été rendu
+    private boolean closed; // Flux terminé : les émetteurs en attente abandonnent
+
+    /**
+     * Réserve du crédit d’émission, en attendant qu’il y en ait.
+     * @param wanted Le nombre d’octets à envoyer
+     * @return Le nombre d’octets autorisés, entre 1 et wanted
+     * @throws IOException Si le flux est fermé ou l’attente interrompue
+     */
+    public int acquire(int wanted) throws IOException {
+        return acquire(1, wanted);
+    }
+
+    /**
+     * Réserve du crédit d’émission, en attendant d’en avoir au moins minimum.
+     * minimum ne doit pas dépasser la moitié de {@link Protocol#INITIAL_WINDOW}, seuil auquel le
+     * destinataire rend le crédit, sans quoi l’attente pourrait ne jamais finir.
+     * @param minimum Le nombre d’octets en dessous duquel l’envoi n’a pas de sens (en-tête d’un morceau)
+     * @param wanted Le nombre d’octets à envoyer
+     * @return Le nombre d’octets autorisés, entre minimum et wanted
+     * @throws IOException Si le flux est fermé ou l’attente interrompue
+     */
+    public int acquire(int minimum, int wanted) throws IOException {
+        lock.lock();
+        try {
+            while (sendCredit < minimum && !closed) {
+                available.await(); // Attend une trame WINDOW du destinataire
+            }
+            if (closed) {
+                throw new IOException("Flux fermé");
+            }
+            int granted = (int) Math.min(wanted, sendCredit);
+            sendCredit -= granted;
+            return granted;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Conserve l’interruption
+            throw new InterruptedIOException("Attente de crédit interrompue");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ajoute le crédit reçu dans une trame WINDOW, ou rend la part réservée mais non utilisée
+     * (trame plus petite qu’annoncé une fois compressée).
+     * @param increment Le crédit supplémentaire
+     */
+    public void grant(int increment) {
+        lock.lock();
+        try {
+            sendCredit += increment;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Comptabilise une trame DATA reçue.
+     * @param length La taille de la charge utile
+     * @return false si le pair a dépassé le crédit accordé
+     */
+    public boolean receive(int length) {
+        lock.lock();
+        try {
+            if (length > receiveCredit) {
+                return false;
+            }
+            receiveCredit -= length;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Signale que des octets reçus ont été traités.
+     * @param length Le nombre d’octets traités
+     * @return Le crédit à rendre au pair par une trame WINDOW, ou 0 s’il est encore trop faible
+     */
+    public int consumed(int length) {
+        lock.lock();
+        try {
+            unacknowledged += length;
+            if (unacknowledged < Protocol.INITIAL_WINDOW / 2) { // Évite une trame WINDOW par trame DATA
+                return 0;
+            }
+            int increment = unacknowledged;
+            unacknowledged = 0;
+            receiveCredit += increment;
+            return increment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Termine le flux et libère les émetteurs en attente.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,517 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Journal asynchrone du serveur.
+ * Les threads des sessions déposent un événement (date et message) dans un anneau borné sans verrou
+ * et repartent aussitôt : le formatage, l’encodage UTF-8, l’écriture disque et la diffusion aux
+ * abonnés sont faits par un seul thread "rcs-logger", par lots.
+ * Quand l’anneau est plein, l’événement est perdu plutôt que de bloquer la session ; les pertes
+ * sont comptées et signalées dans le journal.
+ * <p>
+ * Le fichier courant (par exemple {@code server_log.txt}) est archivé en segment
+ * {@code server_log-aaaaMMjj-HHmmss-SSS.txt} quand il dépasse la taille ou l’âge configurés ;
+ * seuls les segments les plus récents sont conservés.
+ */
+public class AsyncLogger implements AutoCloseable {
+
+    /**
+     * Politique d’écriture sur disque.
+     */
+    public enum FlushPolicy {
+        IMMEDIATE, // Le lot est écrit dès qu’un événement arrive (cache du système, défaut)
+        INTERVAL, // Le lot est écrit à intervalle fixe ou quand l’anneau est à moitié plein
+        SYNC // Comme IMMEDIATE, puis force l’écriture physique (survit à une panne du système)
+    }
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"); // Horodatage des entrées
+    private static final DateTimeFormatter SEGMENT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS"); // Nom des segments
+    private static final int BATCH_CHARS = 32 * 1024; // Taille d’un lot avant écriture
+    private static final long REOPEN_NANOS = TimeUnit.SECONDS.toNanos(1); // Délai entre deux tentatives d’ouverture
+
+    /**
+     * Événement en attente d’écriture.
+     */
+    private static final class Event {
+        final long time; // Date de l’événement (ms depuis l’époque)
+        final long enqueued; // Date de dépôt (System.nanoTime), pour mesurer le délai d’écriture
+        final String message; // Message brut, formaté par le thread d’écriture
+
+        Event(long time, long enqueued, String message) {
+            this.time = time;
+            this.enqueued = enqueued;
+            this.message = message;
+        }
+    }
+
+    // Anneau multi-producteurs, un seul consommateur : chaque case porte un numéro de séquence
+    // qui indique si elle est libre (séquence == position) ou remplie (séquence == position + 1)
+    private final Event[] slots; // Événements déposés
+    private final AtomicLongArray sequences; // Séquence de chaque case
+    private final int mask; // Capacité - 1 (puissance de deux)
+    private final AtomicLong tail = new AtomicLong(); // Prochaine position à réserver (producteurs)
+    private long head; // Prochaine position à lire (thread d’écriture seul)
+
+    private final Path file; // Fichier courant
+    private final String prefix; // Nom du fichier sans extension
+    private final String suffix; // Extension du fichier (".txt")
+    private final FlushPolicy policy; // Politique d’écriture
+    private final long flushNanos; // Intervalle d’écriture (INTERVAL) et d’attente maximale
+    private final long segmentBytes; // Taille maximale d’un segment
+    private final long segmentNanos; // Âge maximal d’un segment
+    private final int keptSegments; // Segments archivés conservés
+    private final Consumer<String> sink; // Reçoit chaque entrée formatée (thread d’écriture)
+    private final Thread writer; // Thread d’écriture
+    private volatile boolean running = true; // Faux après close()
+    private volatile boolean waiting; // Vrai quand le thread d’écriture est endormi
+
+    private final LongAdder enqueued = new LongAdder(); // Événements déposés
+    private final LongAdder dropped = new LongAdder(); // Événements perdus (anneau plein)
+    private volatile long written; // Entrées écrites
+    private volatile long flushes; // Écritures sur disque
+    private volatile long flushNanosTotal; // Durée cumulée des écritures
+    private volatile long flushNanosMax; // Écriture la plus longue
+    private volatile long latencyNanosMax; // Plus long délai entre dépôt et écriture
+
+    // État du thread d’écriture
+    private final StringBuilder batch = new StringBuilder(BATCH_CHARS + 1024); // Lot en cours de formatage
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder(); // UTF-8 explicite
+    private final ByteBuffer encoded = ByteBuffer.allocateDirect(64 * 1024); // Octets à écrire
+    private FileChannel channel; // Segment courant (null si le fichier n’a pas pu être ouvert)
+    private long segmentSize; // Octets du segment courant
+    private long segmentStart; // Ouverture du segment courant (System.nanoTime)
+    private long lastOpenAttempt = System.nanoTime() - REOPEN_NANOS; // Dernière tentative d’ouverture
+    private long reportedDrops; // Pertes déjà signalées dans le journal
+    private long cachedSecond = Long.MIN_VALUE; // Seconde du dernier horodatage formaté
+    private String cachedTimestamp; // Dernier horodatage formaté
+
+    /**
+     * Constructeur du journal : ouvre le fichier et démarre le thread d’écriture.
+     * @param config Configuration du serveur (fichier, anneau, politique d’écriture, segments)
+     * @param sink Reçoit chaque entrée horodatée, dans le thread d’écriture
+     */
+    public AsyncLogger(ServerConfig config, Consumer<String> sink) {
+        int capacity = Integer.highestOneBit(Math.max(2, config.logBuffer() - 1)) << 1; // Puissance de deux supérieure
+        this.slots = new Event[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i); // Toutes les cases sont libres
+        }
+        this.mask = capacity - 1;
+        this.file = config.logFile();
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        this.prefix = dot > 0 ? name.substring(0, dot) : name;
+        this.suffix = dot > 0 ? name.substring(dot) : "";
+        this.policy = config.logFlush();
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(config.logFlushMillis());
+        this.segmentBytes = config.logSegmentBytes();
+        this.segmentNanos = TimeUnit.MINUTES.toNanos(config.logSegmentMinutes());
+        this.keptSegments = config.logKeptSegments();
+        this.sink = sink;
+        encoder.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.writer = new Thread(this::drainLoop, "rcs-logger");
+        writer.setDaemon(true); // N’empêche pas l’arrêt de la JVM (close() vide l’anneau)
+        writer.start();
+    }
+
+    /**
+     * Dépose un message dans l’anneau, sans verrou ni entrée/sortie.
+     * @param message Le message à journaliser
+     * @return false si le message est perdu (anneau plein ou journal fermé)
+     */
+    public boolean log(String message) {
+        if (!running) { // Journal fermé
+            return false;
+        }
+        Event event = new Event(System.currentTimeMillis(), System.nanoTime(), message);
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) { // Case libre : la réserver
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = event;
+                    sequences.lazySet(index, position + 1); // Publie l’événement au thread d’écriture
+                    break;
+                }
+                position = tail.get(); // Un autre producteur l’a prise
+            } else if (difference < 0) { // Le thread d’écriture n’a pas encore libéré cette case
+                dropped.increment();
+                return false;
+            } else { // Position déjà dépassée
+                position = tail.get();
+            }
+        }
+        enqueued.increment();
+        // En mode INTERVAL, réveil anticipé seulement si l’anneau se remplit (lecture approximative de head)
+        if (waiting && (policy != FlushPolicy.INTERVAL || position - head >= mask / 2)) {
+            LockSupport.unpark(writer); // Réveille le thread d’écriture
+        }
+        return true;
+    }
+
+    /**
+     * Vide l’anneau puis arrête le thread d’écriture et ferme le fichier.
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false; // Plus aucun dépôt accepté
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5)); // Laisse le temps d’écrire les dernières entrées
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Le nombre d’événements déposés
+     */
+    public long enqueued() {
+        return enqueued.sum();
+    }
+
+    /**
+     * @return Le nombre d’événements perdus parce que l’anneau était plein
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return Le nombre d’entrées écrites
+     */
+    public long written() {
+        return written;
+    }
+
+    /**
+     * @return Le nombre d’écritures sur disque (une par lot)
+     */
+    public long flushes() {
+        return flushes;
+    }
+
+    /**
+     * @return La durée moyenne d’une écriture, en nanosecondes
+     */
+    public long averageFlushNanos() {
+        long count = flushes;
+        return count == 0 ? 0 : flushNanosTotal / count;
+    }
+
+    /**
+     * @return La plus longue écriture, en nanosecondes
+     */
+    public long maxFlushNanos() {
+        return flushNanosMax;
+    }
+
+    /**
+     * @return Le plus long délai entre le dépôt d’un événement et son écriture, en nanosecondes
+     */
+    public long maxLatencyNanos() {
+        return latencyNanosMax;
+    }
+
+    /**
+     * @return Une ligne lisible pour le journal ou l’interface
+     */
+    public String stats() {
+        return "Journal " + policy.name().toLowerCase() + " : " + enqueued() + " entrées, " + dropped() + " perdues, "
+                + flushes() + " écritures (moy. " + TimeUnit.NANOSECONDS.toMicros(averageFlushNanos()) + " µs, max "
+                + TimeUnit.NANOSECONDS.toMicros(maxFlushNanos()) + " µs), délai max "
+                + TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos()) + " ms";
+    }
+
+    /**
+     * Boucle du thread d’écriture : vide l’anneau par lots puis s’endort jusqu’au prochain dépôt.
+     */
+    private void drainLoop() {
+        while (true) {
+            boolean open = running; // Lu avant de vider : rien ne peut plus arriver après un passage fermé
+            if (!drain() && !open) {
+                break;
+            }
+            waiting = true; // Annoncé avant le dernier contrôle : un dépôt concurrent réveillera le thread
+            if (running && isEmpty()) {
+                LockSupport.parkNanos(this, flushNanos);
+            }
+            waiting = false;
+        }
+        closeSegment();
+    }
+
+    /**
+     * Vide l’anneau : formate les événements, les écrit par lots et les transmet à l’abonné.
+     * @return true si au moins un événement a été traité
+     */
+    private boolean drain() {
+        long drops = dropped.sum();
+        if (drops > reportedDrops) { // Signale les pertes depuis le dernier passage
+            append(System.currentTimeMillis(), (drops - reportedDrops) + " entrées du journal perdues (tampon plein)");
+            reportedDrops = drops;
+        }
+        boolean any = false;
+        long oldest = Long.MAX_VALUE; // Dépôt le plus ancien du lot
+        Event event;
+        while ((event = poll()) != null) {
+            any = true;
+            oldest = Math.min(oldest, event.enqueued);
+            append(event.time, event.message);
+            written++;
+            if (batch.length() >= BATCH_CHARS) { // Lot plein : écriture intermédiaire
+                flush(oldest);
+                oldest = Long.MAX_VALUE;
+            }
+        }
+        flush(oldest);
+        return any;
+    }
+
+    /**
+     * Formate une entrée, l’ajoute au lot et la transmet à l’abonné.
+     * @param time Date de l’événement
+     * @param message Le message
+     */
+    private void append(long time, String message) {
+        String entry = "[" + timestamp(time) + "] " + message;
+        batch.append(entry).append('\n');
+        try {
+            sink.accept(entry);
+        } catch (RuntimeException e) { // Un abonné défaillant n’arrête pas le journal
+            System.err.println("Erreur d’un abonné au journal : " + e);
+        }
+    }
+
+    /**
+     * @param time Date en ms depuis l’époque
+     * @return L’horodatage, reformaté au plus une fois par seconde
+     */
+    private String timestamp(long time) {
+        long second = Math.floorDiv(time, 1000);
+        if (second != cachedSecond) {
+            cachedTimestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()).format(TIMESTAMP);
+            cachedSecond = second;
+        }
+        return cachedTimestamp;
+    }
+
+    /**
+     * Retire l’événement suivant de l’anneau (thread d’écriture seul).
+     * @return L’événement, ou null si l’anneau est vide
+     */
+    private Event poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) { // Case pas encore remplie
+            return null;
+        }
+        Event event = slots[index];
+        slots[index] = null;
+        sequences.lazySet(index, head + slots.length); // Libère la case pour le tour suivant
+        head++;
+        return event;
+    }
+
+    /**
+     * @return true si aucun événement n’attend
+     */
+    private boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    /**
+     * Écrit le lot en cours dans le segment courant, en UTF-8.
+     * @param oldest Dépôt le plus ancien du lot (Long.MAX_VALUE si inconnu)
+     */
+    private void flush(long oldest) {
+        if (batch.length() == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            if (ensureSegment(start)) {
+                CharBuffer chars = CharBuffer.wrap(batch);
+                encoder.reset();
+                boolean done = false;
+                while (!done) {
+                    done = !encoder.encode(chars, encoded, true).isOverflow() && !encoder.flush(encoded).isOverflow();
+                    encoded.flip();
+                    while (encoded.hasRemaining()) {
+                        segmentSize += channel.write(encoded);
+                    }
+                    encoded.clear();
+                }
+                if (policy == FlushPolicy.SYNC) {
+                    channel.force(false); // Écriture physique avant de continuer
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur d’écriture du journal " + file + " : " + e.getMessage());
+            closeSegment(); // Nouvelle tentative d’ouverture au prochain lot
+        }
+        batch.setLength(0); // Le lot est abandonné si le fichier est inaccessible (l’abonné l’a reçu)
+        long end = System.nanoTime();
+        long duration = end - start;
+        flushes++;
+        flushNanosTotal += duration;
+        flushNanosMax = Math.max(flushNanosMax, duration);
+        if (oldest != Long.MAX_VALUE) {
+            latencyNanosMax = Math.max(latencyNanosMax, end - oldest);
+        }
+    }
+
+    /**
+     * Ouvre le segment courant si besoin et l’archive s’il est trop gros ou trop vieux.
+     * @param now Date courante (System.nanoTime)
+     * @return true si un segment est ouvert
+     * @throws IOException Si l’archivage échoue
+     */
+    private boolean ensureSegment(long now) throws IOException {
+        if (channel != null && (segmentSize >= segmentBytes || now - segmentStart >= segmentNanos)) {
+            closeSegment();
+            roll();
+            lastOpenAttempt = now - REOPEN_NANOS; // Le nouveau segment s’ouvre tout de suite
+        }
+        if (channel == null && now - lastOpenAttempt >= REOPEN_NANOS) {
+            lastOpenAttempt = now;
+            openSegment(now);
+        }
+        return channel != null;
+    }
+
+    /**
+     * Ouvre le fichier courant en ajout. Un fichier existant trop gros, trop vieux ou qui n’est
+     * pas en UTF-8 (anciennes versions) est d’abord archivé.
+     * @param now Date courante (System.nanoTime)
+     * @throws IOException Si le fichier ne peut pas être ouvert
+     */
+    private void openSegment(long now) throws IOException {
+        long age = 0; // Âge du fichier existant
+        if (Files.exists(file)) {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            age = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - attributes.creationTime().toMillis());
+            if (attributes.size() >= segmentBytes || age >= segmentNanos || !isUtf8(file)) {
+                roll();
+                age = 0;
+            }
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentSize = channel.size();
+        segmentStart = now - Math.max(0, age);
+    }
+
+    /**
+     * Ferme le segment courant.
+     */
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Erreur de fermeture du journal " + file + " : " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    /**
+     * Archive le fichier courant sous un nom horodaté puis supprime les segments les plus anciens.
+     * @throws IOException Si le renommage échoue
+     */
+    private void roll() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        String stamp = LocalDateTime.now().format(SEGMENT);
+        Path target = file.resolveSibling(prefix + "-" + stamp + suffix);
+        for (int i = 1; Files.exists(target); i++) { // Plusieurs archivages dans la même milliseconde
+            target = file.resolveSibling(prefix + "-" + stamp + "-" + i + suffix);
+        }
+        Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(file.toAbsolutePath().getParent(),
+                prefix + "-*" + suffix)) {
+            stream.forEach(segments::add);
+        }
+        segments.sort(Comparator.comparing((Path segment) -> lastModified(segment)).thenComparing(Path::toString));
+        for (int i = 0; i < segments.size() - keptSegments; i++) {
+            Files.deleteIfExists(segments.get(i)); // Segments les plus anciens
+        }
+    }
+
+    /**
+     * @param segment Un segment archivé
+     * @return Sa date de dernière modification (0 s’il a disparu entre-temps)
+     */
+    private static long lastModified(Path segment) {
+        try {
+            return Files.getLastModifiedTime(segment).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param path Un fichier de journal existant
+     * @return true si son contenu est de l’UTF-8 valide
+     * @throws IOException Si la lecture échoue
+     */
+    private static boolean isUtf8(Path path) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+        CharBuffer chars = CharBuffer.allocate(64 * 1024);
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(bytes.array(), bytes.position(), bytes.remaining())) >= 0) {
+                bytes.position(bytes.position() + read);
+                bytes.flip();
+                if (decoder.decode(bytes, chars, false).isError()) {
+                    return false;
+                }
+                chars.clear();
+                bytes.compact(); // Garde un caractère coupé entre deux lectures
+            }
+            bytes.flip();
+            return !decoder.decode(bytes, chars, true).isError();
+        }
+    }
+}
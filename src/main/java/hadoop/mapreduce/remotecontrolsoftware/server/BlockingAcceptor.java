@@ -0,0 +1,73 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Accepteur historique : un socket SSL bloquant et un thread par client connecté.
+ * Le thread de chaque client est fourni par le {@link SessionExecutor} configuré
+ * (thread système dédié, pool borné ou thread virtuel).
+ */
+public class BlockingAcceptor implements ConnectionAcceptor {
+    private final SSLServerSocket serverSocket; // Socket sécurisé pour écouter les connexions
+    private final ServerContext server; // Services du serveur pour les sessions
+    private final SessionExecutor executor; // Threads des sessions clients
+    private final SessionExecutor workers; // Threads des flux et des lots de commandes
+
+    /**
+     * Ouvre le socket serveur SSL.
+     * @param config Configuration du serveur
+     * @param server Services du serveur pour les sessions
+     * @param sslContext Contexte TLS du serveur
+     * @throws IOException Si le port ne peut pas être ouvert
+     */
+    public BlockingAcceptor(ServerConfig config, ServerContext server, SSLContext sslContext) throws IOException {
+        // Crée le socket serveur avec le contexte TLS du serveur (keystore et cache des sessions)
+        this.serverSocket = (SSLServerSocket) sslContext.getServerSocketFactory().createServerSocket(config.port());
+        serverSocket.setEnabledProtocols(Protocol.tlsProtocols(serverSocket.getSupportedProtocols()));
+        this.server = server;
+        this.executor = new SessionExecutor(config, "rcs-session-"); // Stratégie d’exécution configurée
+        this.workers = new SessionExecutor(config, "rcs-worker-"); // Séparés des sessions, comme en mode NIO
+    }
+
+    @Override
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) { // Boucle tant que l’accepteur est ouvert
+            Socket clientSocket = serverSocket.accept(); // Accepte une connexion client
+            try {
+                clientSocket.setTcpNoDelay(true); // Réponses interactives sans délai, comme en mode NIO
+                ClientHandler clientHandler = new ClientHandler(clientSocket, server, workers); // Crée un gestionnaire pour le client
+                executor.execute(clientHandler); // Lance la session selon la stratégie configurée
+            } catch (RejectedExecutionException e) {
+                server.log("Connexion refusée pour " + clientSocket.getInetAddress().getHostAddress()
+                        + " : serveur saturé (" + executor.stats() + ")");
+                clientSocket.close();
+            } catch (IOException e) {
+                server.log("Erreur avec le client " + clientSocket.getInetAddress().getHostAddress() + " : " + e.getMessage());
+                clientSocket.close();
+            }
+        }
+    }
+
+    @Override
+    public SessionExecutor executor() {
+        return executor;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close(); // Débloque accept() et ferme le port
+        executor.shutdown(); // N’accepte plus de nouvelles sessions
+        workers.shutdown(); // Ni de nouveaux flux
+    }
+}
@@ -0,0 +1,310 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Chunker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Index des morceaux ({@link Chunker}) des fichiers déjà reçus, par empreinte SHA-256 : le fichier qui
+ * contient chaque morceau et sa position. Sert l’upload par différence ({@link DeltaUpload}) : un morceau
+ * déjà présent sur le serveur, dans n’importe quel fichier reçu, est recopié sur place au lieu d’être
+ * renvoyé par le client.
+ * <p>
+ * Le découpage de chaque fichier est gardé à côté de lui, dans {@code received_<nom>.chunks}, avec la taille
+ * et la date de modification du fichier : il est relu au premier envoi par différence après le démarrage,
+ * et ignoré si le fichier a changé depuis. Un fichier reçu autrement (upload simple ou reprenable) est découpé
+ * la première fois qu’un envoi par différence du même nom arrive. L’index peut donc être en retard sur le
+ * disque : chaque morceau est revérifié (SHA-256) avant d’être recopié.
+ */
+final class ChunkIndex {
+    static final String SUFFIX = ".chunks"; // Fichier compagnon du découpage
+    private static final int MAGIC = 0x52435343; // "RCSC", en tête du fichier compagnon
+
+    /**
+     * Fichier indexé, tel qu’il était quand il a été découpé.
+     */
+    static final class Indexed {
+        final Path path; // Le fichier
+        private final long size; // Sa taille au découpage
+        private final long modified; // Sa date de modification au découpage (ms)
+        private final ByteBuffer[] keys; // Empreintes de ses morceaux
+
+        private Indexed(Path path, long size, long modified, ByteBuffer[] keys) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Position d’un morceau dans un fichier indexé.
+     */
+    static final class Location {
+        final Indexed file; // Le fichier qui contient le morceau
+        final long offset; // Position du morceau
+        final int length; // Taille du morceau
+
+        private Location(Indexed file, long offset, int length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final Path directory; // Répertoire des fichiers reçus
+    private final Consumer<String> log; // Journal du serveur
+    private final ReentrantLock lock = new ReentrantLock(); // Protège l’index
+    private final Map<ByteBuffer, Location> chunks = new HashMap<>(); // Morceaux, par empreinte (contenu du buffer)
+    private final Map<Path, Indexed> files = new HashMap<>(); // Fichiers indexés
+    private boolean loaded; // Découpages déjà présents sur le disque relus
+
+    /**
+     * @param directory Le répertoire des fichiers reçus
+     * @param log Le journal du serveur
+     */
+    ChunkIndex(Path directory, Consumer<String> log) {
+        this.directory = directory;
+        this.log = log;
+    }
+
+    /**
+     * @param sha256 L’empreinte d’un morceau
+     * @return Sa position dans un fichier reçu, ou null s’il n’est pas connu
+     */
+    Location find(byte[] sha256) {
+        lock.lock();
+        try {
+            load();
+            return chunks.get(ByteBuffer.wrap(sha256));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retire un fichier de l’index, après un morceau qui ne correspondait plus à son empreinte.
+     * Sans effet si le fichier a été réindexé entre-temps.
+     * @param file Le fichier tel qu’il était indexé
+     */
+    void forget(Indexed file) {
+        lock.lock();
+        try {
+            if (files.remove(file.path, file)) {
+                remove(file);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Découpe un fichier reçu qui n’est pas (ou plus) indexé, typiquement la version précédente d’un fichier
+     * envoyé par différence. Lit tout le fichier : à appeler hors de la boucle d’événements.
+     * @param file Le fichier
+     * @throws IOException Si la lecture échoue
+     */
+    void indexIfMissing(Path file) throws IOException {
+        BasicFileAttributes before;
+        try {
+            before = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return; // Premier envoi de ce fichier
+        }
+        lock.lock();
+        try {
+            load();
+            Indexed current = files.get(file);
+            if (current != null && current.size == before.size() && current.modified == before.lastModifiedTime().toMillis()) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        List<Integer> lengths = new ArrayList<>();
+        ByteArrayOutputStream hashes = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Chunker.scan(channel, (offset, length, sha256) -> {
+                lengths.add(length);
+                hashes.write(sha256, 0, sha256.length);
+            });
+        }
+        int[] sizes = lengths.stream().mapToInt(Integer::intValue).toArray();
+        add(file, sizes, hashes.toByteArray(), before); // Écarté si le fichier a changé pendant la lecture
+    }
+
+    /**
+     * Indexe un fichier qui vient d’être reçu et garde son découpage sur le disque.
+     * @param file Le fichier, déjà publié
+     * @param lengths La taille de chaque morceau, dans l’ordre
+     * @param hashes Les empreintes des morceaux, bout à bout
+     * @throws IOException Si le fichier a disparu
+     */
+    void add(Path file, int[] lengths, byte[] hashes) throws IOException {
+        add(file, lengths, hashes, Files.readAttributes(file, BasicFileAttributes.class));
+    }
+
+    /**
+     * @return Le nombre de morceaux indexés
+     */
+    int size() {
+        lock.lock();
+        try {
+            return chunks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indexe un fichier et écrit son découpage, si le fichier n’a pas changé depuis {@code stamp}.
+     * @param file Le fichier
+     * @param lengths La taille de chaque morceau
+     * @param hashes Les empreintes des morceaux, bout à bout
+     * @param stamp Les attributs du fichier découpé
+     * @throws IOException Si le fichier a disparu
+     */
+    private void add(Path file, int[] lengths, byte[] hashes, BasicFileAttributes stamp) throws IOException {
+        BasicFileAttributes now = Files.readAttributes(file, BasicFileAttributes.class);
+        long modified = stamp.lastModifiedTime().toMillis();
+        if (now.size() != stamp.size() || now.lastModifiedTime().toMillis() != modified) {
+            return; // Remplacé pendant le découpage : le prochain envoi le découpera de nouveau
+        }
+        Indexed indexed = put(file, stamp.size(), modified, lengths, hashes);
+        Path sidecar = Paths.get(file + SUFFIX);
+        Path temporary = Paths.get(sidecar + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeLong(indexed.size);
+            output.writeLong(indexed.modified);
+            output.writeInt(lengths.length);
+            for (int i = 0; i < lengths.length; i++) {
+                output.writeInt(lengths[i]);
+                output.write(hashes, i * Chunker.HASH_LENGTH, Chunker.HASH_LENGTH);
+            }
+        }
+        Files.move(temporary, sidecar, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Remplace les morceaux d’un fichier dans l’index.
+     * @return Le fichier indexé
+     */
+    private Indexed put(Path file, long size, long modified, int[] lengths, byte[] hashes) {
+        ByteBuffer[] keys = new ByteBuffer[lengths.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ByteBuffer.wrap(Arrays.copyOfRange(hashes, i * Chunker.HASH_LENGTH, (i + 1) * Chunker.HASH_LENGTH));
+        }
+        Indexed indexed = new Indexed(file, size, modified, keys);
+        lock.lock();
+        try {
+            Indexed previous = files.put(file, indexed);
+            if (previous != null) {
+                remove(previous);
+            }
+            long offset = 0;
+            for (int i = 0; i < keys.length; i++) {
+                chunks.putIfAbsent(keys[i], new Location(indexed, offset, lengths[i])); // Un seul exemplaire suffit
+                offset += lengths[i];
+            }
+        } finally {
+            lock.unlock();
+        }
+        return indexed;
+    }
+
+    /**
+     * Retire les morceaux d’un fichier (verrou tenu).
+     * @param file Le fichier tel qu’il était indexé
+     */
+    private void remove(Indexed file) {
+        for (ByteBuffer key : file.keys) {
+            Location location = chunks.get(key);
+            if (location != null && location.file == file) {
+                chunks.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Relit les découpages gardés sur le disque, au premier appel (verrou tenu).
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        int count = 0;
+        try (DirectoryStream<Path> sidecars = Files.newDirectoryStream(directory, "received_*" + SUFFIX)) {
+            for (Path sidecar : sidecars) {
+                String name = sidecar.getFileName().toString();
+                Path file = directory.resolve(name.substring(0, name.length() - SUFFIX.length()));
+                if (read(file, sidecar)) {
+                    count++;
+                }
+            }
+        } catch (IOException e) {
+            log.accept("Lecture des découpages de fichiers impossible : " + e.getMessage());
+        }
+        if (count > 0) {
+            log.accept("Index des morceaux : " + count + " fichier(s), " + chunks.size() + " morceau(x).");
+        }
+    }
+
+    /**
+     * Relit le découpage d’un fichier, s’il correspond encore au fichier (verrou tenu).
+     * @param file Le fichier
+     * @param sidecar Son découpage
+     * @return true si le fichier a été indexé
+     */
+    private boolean read(Path file, Path sidecar) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (input.readInt() != MAGIC || input.readLong() != attributes.size()
+                    || input.readLong() != attributes.lastModifiedTime().toMillis()) {
+                return false; // Fichier remplacé depuis : découpé de nouveau au prochain envoi
+            }
+            int count = input.readInt();
+            if (count < 0 || count > attributes.size()) {
+                return false;
+            }
+            int[] lengths = new int[count];
+            byte[] hashes = new byte[count * Chunker.HASH_LENGTH];
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                lengths[i] = input.readInt();
+                input.readFully(hashes, i * Chunker.HASH_LENGTH, Chunker.HASH_LENGTH);
+                total += lengths[i];
+            }
+            if (total != attributes.size()) {
+                return false;
+            }
+            put(file, attributes.size(), attributes.lastModifiedTime().toMillis(), lengths, hashes);
+            return true;
+        } catch (IOException e) { // Fichier disparu ou découpage tronqué
+            return false;
+        }
+    }
+}
@@ -1,143 +1,798 @@
 package hadoop.mapreduce.remotecontrolsoftware.server;
 
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.net.ssl.SSLSocket;
 
 /**
  * Classe qui gère chaque client connecté au serveur.
- * Fonctionne dans un thread séparé pour permettre plusieurs connexions simultanées.
- * Authentifie le client, exécute ses commandes, et gère les uploads de fichiers.
+ * Le protocole est une machine à états alimentée par les octets reçus du client :
+ * en mode bloquant, run() lit le socket dans un thread dédié ; en mode NIO, une boucle
+ * d’événements appelle directement {@link #onInput(ByteBuffer)}.
+ * L’état est protégé par un {@link ReentrantLock} plutôt que par synchronized, afin qu’une
+ * session servie par un thread virtuel ne bloque pas son thread porteur pendant une commande.
+ * Authentifie le client, exécute ses commandes (sortie envoyée au fil de l’eau, voir
+ * {@link StreamingCommand}), et gère les uploads de fichiers.
+ * Un client qui envoie {@link Protocol#FRAMED_PREFACE} au lieu du login passe au protocole
+ * binaire multiplexé, traité par {@link FramedSession}.
  */
 public class ClientHandler implements Runnable {
-    private final Socket clientSocket; // Socket du client connecté
-    private final Server server; // Référence au serveur principal
+    private static final int MAX_LINE_LENGTH = 64 * 1024; // Taille maximale d’une ligne de protocole
+
+    /**
+     * États successifs d’une session client.
+     */
+    enum State {
+        AWAIT_LOGIN, // Attend le login
+        AWAIT_PASSWORD, // Attend le mot de passe
+        READY, // Authentifié, attend une commande
+        BUSY, // Une commande ou la vérification des identifiants est en cours
+        AWAIT_BATCH, // Lot : attend les commandes annoncées
+        AWAIT_FILE_NAME, // Upload : attend le nom du fichier
+        AWAIT_FILE_SIZE, // Upload : attend la taille du fichier
+        RECEIVING_FILE, // Upload : reçoit le contenu du fichier
+        FRAMED, // Protocole binaire négocié : les octets vont à FramedSession
+        CLOSED // Session terminée
+    }
+
+    private final Socket clientSocket; // Socket du client (mode bloquant uniquement, sinon null)
+    private final SessionChannel channel; // Canal de transport vers le client
+    private final ServerContext server; // Référence au serveur principal
     private final String clientAddress; // Adresse IP du client
+    private final Executor commandExecutor; // Exécuteur des commandes système (protocole texte)
+    private final Executor streamExecutor; // Exécuteur des flux du protocole binaire
+    private final ReentrantLock lock = new ReentrantLock(); // Protège l’état de la session
+
+    private State state = State.AWAIT_LOGIN; // État courant du protocole
+    private String pendingLogin; // Login reçu en attente du mot de passe
+    private ByteArrayOutputStream lineBuffer; // Ligne partiellement reçue (allouée à la demande)
+    private ByteBuffer pendingInput; // Données reçues pendant une commande, traitées ensuite
+    private List<String> batchCommands; // Commandes du lot en cours de réception (null si le lot est refusé)
+    private int batchRemaining; // Commandes du lot restant à recevoir
+    private String uploadFileName; // Nom du fichier en cours d’upload
+    private long uploadRemaining; // Octets restant à recevoir pour l’upload
+    private long uploadSize; // Taille annoncée de l’upload
+    private long uploadStartNanos; // Début de la réception de l’upload
+    private FileChannel uploadFile; // Fichier de destination de l’upload
+    private FramedSession framed; // Session en protocole binaire (null en protocole texte)
+    private volatile SessionRegistry.Session session; // Compteurs de la session authentifiée (null avant)
+    private SessionShell shell; // Interpréteur persistant des commandes texte (pris à la première commande)
+    private final Set<StreamingCommand> running = ConcurrentHashMap.newKeySet(); // Commandes texte en cours
+    private long acceptedNanos = System.nanoTime(); // Début de la négociation TLS
+    private boolean started; // Négociation terminée, protocole démarré
 
     /**
-     * Constructeur du gestionnaire de client.
+     * Constructeur du gestionnaire de client en mode bloquant (un thread par client).
      * @param clientSocket Socket du client connecté
      * @param server Référence au serveur
+     * @param streamExecutor Exécuteur des flux si le client passe au protocole binaire
+     * @throws IOException Si les flux du socket ne peuvent pas être ouverts
      */
-    public ClientHandler(Socket clientSocket, Server server) {
+    public ClientHandler(Socket clientSocket, ServerContext server, Executor streamExecutor) throws IOException {
         this.clientSocket = clientSocket; // Initialise le socket
+        this.channel = new CountingChannel(new SocketSessionChannel(clientSocket)); // Canal synchrone sur le socket
         this.server = server; // Initialise la référence au serveur
-        this.clientAddress = clientSocket.getInetAddress().getHostAddress(); // Récupère l’IP du client
+        this.clientAddress = channel.remoteAddress(); // Récupère l’IP du client
+        this.commandExecutor = Runnable::run; // Les commandes s’exécutent dans le thread du client
+        this.streamExecutor = streamExecutor; // Les flux binaires ne doivent pas bloquer la lecture du socket
     }
 
     /**
-     * Méthode principale exécutée dans un thread.
-     * Gère l’authentification et les interactions avec le client.
+     * Constructeur du gestionnaire de client piloté par une boucle d’événements.
+     * @param channel Canal de transport non bloquant
+     * @param server Référence au serveur
+     * @param commandExecutor Exécuteur des commandes, hors de la boucle d’événements
+     */
+    public ClientHandler(SessionChannel channel, ServerContext server, Executor commandExecutor) {
+        this.clientSocket = null; // Pas de socket bloquant
+        this.channel = new CountingChannel(channel); // Initialise le canal
+        this.server = server; // Initialise la référence au serveur
+        this.clientAddress = channel.remoteAddress(); // Récupère l’IP du client
+        this.commandExecutor = commandExecutor; // Initialise l’exécuteur
+        this.streamExecutor = commandExecutor; // Même exécuteur pour les flux binaires
+    }
+
+    /**
+     * Méthode principale exécutée dans un thread (mode bloquant).
+     * Lit le socket et alimente la machine à états jusqu’à la déconnexion.
      */
     @Override
     public void run() {
-        try (
-            // Initialise les flux de sortie (texte) et d’entrée (lecture) avec fermeture automatique
-            PrintWriter out = new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream(), "UTF-8"), true);
-            BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream(), "UTF-8"))
-        ) {
-            boolean authenticated = false; // Indicateur d’authentification
-            while (!authenticated) { // Boucle jusqu’à authentification réussie ou abandon
-                out.println("Entrez votre login (ou 'quit' pour quitter) :"); // Demande le login
-                String login = in.readLine(); // Lit le login envoyé par le client
-                if (login == null || "quit".equalsIgnoreCase(login)) { // Si connexion fermée ou "quit"
-                    out.println("Connexion abandonnée."); // Envoie un message au client
-                    server.log("Client " + clientAddress + " a abandonné l’authentification."); // Log l’abandon
-                    return; // Quitte la méthode
-                }
+        try (InputStream input = clientSocket.getInputStream()) { // Flux d’entrée avec fermeture automatique
+            if (clientSocket instanceof SSLSocket) { // Négocie ici plutôt qu’au premier envoi, pour la mesurer
+                acceptedNanos = System.nanoTime(); // Sans l’attente d’un thread libre
+                ((SSLSocket) clientSocket).startHandshake();
+            }
+            start(); // Envoie la première demande de login
+            byte[] buffer = new byte[8192]; // Buffer de 8KB pour la lecture
+            int count; // Nombre d’octets lus
+            while (!isClosed() && (count = input.read(buffer)) > 0) { // Tant que le client envoie des données
+                onInput(ByteBuffer.wrap(buffer, 0, count)); // Fait avancer le protocole
+            }
+            onEndOfInput(); // Le client a fermé la connexion
+        } catch (IOException e) {
+            if (!isClosed()) { // Ignore les erreurs dues à une fermeture volontaire
+                server.log("Erreur avec le client " + clientAddress + " : " + e.getMessage()); // Log une erreur
+            }
+        } finally {
+            close(); // Libère la session et ferme le socket
+        }
+    }
 
-                out.println("Entrez votre mot de passe :"); // Demande le mot de passe
-                String password = in.readLine(); // Lit le mot de passe
+    /**
+     * Démarre le protocole en demandant le login au client, une fois la négociation TLS terminée.
+     */
+    public void start() {
+        lock.lock();
+        try {
+            started = true;
+            server.metrics().handshake(System.nanoTime() - acceptedNanos); // Durée de la négociation
+            send("Entrez votre login (ou 'quit' pour quitter) :"); // Demande le login
+        } finally {
+            lock.unlock();
+        }
+    }
 
-                if (server.authenticate(login, password)) { // Vérifie les identifiants
-                    authenticated = true; // Marque comme authentifié
-                    server.addClient(clientAddress); // Ajoute le client à la liste
-                    server.log("Client authentifié et connecté : " + clientAddress); // Log la connexion
-                    out.println("Authentification réussie. Vous êtes connecté."); // Confirme au client
+    /**
+     * Traite des octets reçus du client.
+     * @param data Les octets reçus (consommés entièrement ou mis de côté)
+     */
+    public void onInput(ByteBuffer data) {
+        SessionRegistry.Session current = session;
+        if (current != null) { // Les octets de l’authentification ne sont pas comptés
+            current.received(data.remaining());
+        }
+        process(data);
+    }
+
+    /**
+     * Fait avancer le protocole avec des octets reçus (nouveaux ou mis de côté pendant une commande).
+     * @param data Les octets reçus (consommés entièrement ou mis de côté)
+     */
+    private void process(ByteBuffer data) {
+        lock.lock();
+        try {
+            while (data.hasRemaining() && state != State.CLOSED) { // Tant qu’il reste des octets à traiter
+                if (state == State.FRAMED) { // Protocole binaire : tout le reste est fait de trames
+                    framed.onInput(data);
+                    return;
+                }
+                if (state == State.BUSY) { // Une commande tourne : garde le reste pour plus tard
+                    stash(data);
+                    channel.suspendReads(); // Inutile de lire davantage pour l’instant
+                    return;
+                }
+                if (state == State.RECEIVING_FILE) { // Octets bruts du fichier en cours d’upload
+                    receiveFileData(data);
+                    continue;
+                }
+                byte b = data.get(); // Octet suivant d’une ligne de protocole
+                if (b == '\n') { // Fin de ligne : la ligne est complète
+                    onLine(takeLine());
                 } else {
-                    server.log("Échec de l’authentification pour " + clientAddress); // Log l’échec
-                    out.println("Authentification échouée. Veuillez réessayer."); // Demande de réessayer
+                    if (lineBuffer == null) {
+                        lineBuffer = new ByteArrayOutputStream(); // Alloue le buffer à la première ligne
+                    }
+                    if (lineBuffer.size() >= MAX_LINE_LENGTH) { // Protège la mémoire du serveur
+                        server.log("Ligne trop longue reçue de " + clientAddress + ", connexion fermée.");
+                        close();
+                        return;
+                    }
+                    lineBuffer.write(b); // Accumule l’octet
                 }
             }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Signale que le client a fermé la connexion.
+     */
+    public void onEndOfInput() {
+        lock.lock();
+        try {
+            if (state == State.AWAIT_LOGIN || state == State.AWAIT_PASSWORD) { // Déconnexion avant authentification
+                server.log("Client " + clientAddress + " a abandonné l’authentification."); // Log l’abandon
+            } else if (state == State.RECEIVING_FILE) { // Déconnexion pendant un upload
+                server.log("Upload du fichier " + uploadFileName + " interrompu par " + clientAddress);
+            }
+            close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true si la session est terminée
+     */
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return state == State.CLOSED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Termine la session : retire le client de la liste et ferme le canal.
+     * Peut être appelé plusieurs fois sans effet supplémentaire.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (state == State.CLOSED) { // Déjà fermée
+                return;
+            }
+            state = State.CLOSED; // Marque la session comme terminée
+            if (!started) { // Fermée pendant la négociation TLS
+                server.metrics().handshakeFailed();
+            }
+            closeUploadFile(); // Libère un éventuel fichier en cours d’écriture
+            if (framed != null) { // Annule les flux en cours
+                framed.close();
+            }
+            for (StreamingCommand command : running) { // Arrête les commandes et leurs processus
+                command.cancel();
+            }
+            if (shell != null) { // Détruit l’interpréteur de la session
+                shell.close();
+            }
+            SessionRegistry.Session current = session;
+            if (current != null) { // Seuls les clients authentifiés figurent dans le registre
+                current.close(); // Retire la session du registre
+            }
+            channel.close(); // Ferme la connexion
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            String command; // Variable pour stocker les commandes
-            while ((command = in.readLine()) != null) { // Lit les commandes tant que le client est connecté
-                server.log("Commande reçue de " + clientAddress + " : " + command); // Log la commande
-                if (command.startsWith("upload:")) { // Si c’est une commande d’upload
-                    receiveFile(clientSocket, out, in); // Gère l’upload du fichier
+    /**
+     * Traite une ligne complète selon l’état du protocole.
+     * @param line La ligne reçue, sans fin de ligne
+     */
+    private void onLine(String line) {
+        switch (state) {
+            case AWAIT_LOGIN:
+                if ("quit".equalsIgnoreCase(line)) { // Si le client abandonne
+                    send("Connexion abandonnée."); // Envoie un message au client
+                    server.log("Client " + clientAddress + " a abandonné l’authentification."); // Log l’abandon
+                    close();
+                    return;
+                }
+                if (Protocol.FRAMED_PREFACE.equals(line)) { // Le client demande le protocole binaire
+                    send(Protocol.FRAMED_PREFACE); // Accepte : la suite est faite de trames
+                    state = State.FRAMED;
+                    framed = new FramedSession(channel, server, streamExecutor, clientAddress, this::attach, this::close,
+                            lock);
+                    return;
+                }
+                pendingLogin = line; // Garde le login en attendant le mot de passe
+                state = State.AWAIT_PASSWORD;
+                send("Entrez votre mot de passe :"); // Demande le mot de passe
+                break;
+            case AWAIT_PASSWORD:
+                dispatchAuthentication(pendingLogin, line); // Vérifie les identifiants
+                pendingLogin = null; // Ne garde pas les identifiants en mémoire
+                break;
+            case READY:
+                server.log("Commande reçue de " + clientAddress + " : " + line); // Log la commande
+                if (line.startsWith("upload:")) { // Si c’est une commande d’upload
+                    state = State.AWAIT_FILE_NAME;
+                    send(Protocol.SEND_FILE_NAME); // Demande le nom du fichier
+                } else if (line.startsWith(Protocol.BATCH)) { // Lot : les commandes suivent
+                    startBatch(line.substring(Protocol.BATCH.length()));
                 } else {
-                    String result = executeCommand(command); // Exécute la commande système
-                    out.println(result); // Envoie le résultat au client
+                    dispatchCommand(line); // Exécute la commande système
+                }
+                break;
+            case AWAIT_BATCH:
+                if (batchCommands != null) {
+                    batchCommands.add(line);
                 }
+                if (--batchRemaining == 0) { // Lot complet
+                    if (batchCommands != null) {
+                        dispatchBatch(batchCommands);
+                    } else {
+                        state = State.READY; // Lot refusé : ses commandes sont ignorées
+                    }
+                    batchCommands = null;
+                }
+                break;
+            case AWAIT_FILE_NAME:
+                uploadFileName = line; // Garde le nom envoyé par le client
+                state = State.AWAIT_FILE_SIZE;
+                send(Protocol.SEND_FILE_SIZE); // Demande la taille du fichier
+                break;
+            case AWAIT_FILE_SIZE:
+                startFileReception(line);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Vérifie les identifiants sans bloquer la lecture du canal : le calcul de l’empreinte du mot de passe
+     * est lent, il ne doit pas arrêter une boucle d’événements. Les données reçues entre-temps attendent.
+     * @param login Login reçu
+     * @param password Mot de passe reçu
+     */
+    private void dispatchAuthentication(String login, String password) {
+        state = State.BUSY; // Les données suivantes attendront la réponse
+        try {
+            commandExecutor.execute(() -> authenticationCompleted(login,
+                    server.authenticate(login, password, clientAddress)));
+        } catch (RejectedExecutionException e) { // Pool borné saturé
+            state = State.AWAIT_LOGIN;
+            server.log("Authentification refusée pour " + clientAddress + " : serveur saturé.");
+            send("Serveur saturé, authentification refusée. Réessayez plus tard.");
+            send("Entrez votre login (ou 'quit' pour quitter) :"); // Redemande le login
+        }
+    }
+
+    /**
+     * Répond au client une fois ses identifiants vérifiés, puis reprend le traitement des données reçues.
+     * @param login Login reçu
+     * @param accepted true si les identifiants sont acceptés
+     */
+    private void authenticationCompleted(String login, boolean accepted) {
+        lock.lock();
+        try {
+            if (state != State.BUSY) { // Session fermée entre-temps
+                return;
             }
-        } catch (IOException e) {
-            server.log("Erreur avec le client " + clientAddress + " : " + e.getMessage()); // Log une erreur
+            if (accepted) {
+                state = State.READY;
+                attach(server.addClient(clientAddress, login, "texte")); // Ajoute la session au registre
+                server.log("Client authentifié et connecté : " + clientAddress); // Log la connexion
+                send("Authentification réussie. Vous êtes connecté."); // Confirme au client
+            } else {
+                state = State.AWAIT_LOGIN;
+                server.log("Échec de l’authentification pour " + clientAddress); // Log l’échec
+                send("Authentification échouée. Veuillez réessayer."); // Demande de réessayer
+                send("Entrez votre login (ou 'quit' pour quitter) :"); // Redemande le login
+            }
+            resumeInput();
         } finally {
-            server.removeClient(clientAddress); // Supprime le client de la liste
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lance l’exécution d’une commande sans bloquer la lecture du canal.
+     * @param command La commande à exécuter
+     */
+    private void dispatchCommand(String command) {
+        state = State.BUSY; // Les données suivantes attendront la fin de la commande
+        session.operationStarted();
+        try {
+            commandExecutor.execute(() -> runCommand(command));
+        } catch (RejectedExecutionException e) { // Pool borné saturé
+            state = State.READY;
+            session.operationFinished();
+            server.log("Commande refusée pour " + clientAddress + " : serveur saturé.");
+            send(Protocol.output(Protocol.STDERR, true, "Serveur saturé, commande refusée. Réessayez plus tard."));
+            send(Protocol.end(Protocol.NONE, Protocol.NONE)); // Le client attend une fin pour chaque commande
+        }
+    }
+
+    /**
+     * Lit l’annonce d’un lot et prépare la réception de ses commandes.
+     * @param countText Le nombre de commandes annoncé
+     */
+    private void startBatch(String countText) {
+        int count;
+        try {
+            count = Integer.parseInt(countText.trim());
+        } catch (NumberFormatException e) {
+            count = 0;
+        }
+        if (count < 1) { // Rien ne suit : refus immédiat
+            send(Protocol.output(Protocol.STDERR, true, "Lot invalide : " + countText));
+            send(Protocol.end(Protocol.NONE, Protocol.NONE));
+            return;
+        }
+        state = State.AWAIT_BATCH;
+        batchRemaining = count;
+        if (count > Protocol.MAX_BATCH) { // Les commandes sont lues puis ignorées
+            batchCommands = null;
+            server.log("Lot de " + count + " commandes refusé pour " + clientAddress + " : trop de commandes.");
+            send(Protocol.output(Protocol.STDERR, true, "Lot refusé : " + Protocol.MAX_BATCH + " commandes au plus."));
+            send(Protocol.end(Protocol.NONE, Protocol.NONE));
+        } else {
+            batchCommands = new ArrayList<>(count);
+        }
+    }
+
+    /**
+     * Lance un lot de commandes sans bloquer la lecture du canal.
+     * @param commands Les commandes du lot
+     */
+    private void dispatchBatch(List<String> commands) {
+        state = State.BUSY; // Les données suivantes attendront la fin du lot
+        server.log("Lot de " + commands.size() + " commandes reçu de " + clientAddress);
+        try {
+            commandExecutor.execute(() -> runBatch(commands));
+        } catch (RejectedExecutionException e) { // Pool borné saturé
+            state = State.READY;
+            server.log("Lot refusé pour " + clientAddress + " : serveur saturé.");
+            send(Protocol.output(Protocol.STDERR, true, "Serveur saturé, lot refusé. Réessayez plus tard."));
+            send(Protocol.end(Protocol.NONE, Protocol.NONE));
+        }
+    }
+
+    /**
+     * Exécute un lot : ce thread et jusqu’à {@link ServerContext#batchParallelism()} - 1 tâches de l’exécuteur
+     * des flux prennent tour à tour la commande suivante. Les sorties partent au fil de l’eau, étiquetées
+     * par l’indice de leur commande ; la ligne de fin du lot part quand toutes sont terminées.
+     * Les autres tâches ne prennent jamais le verrou de la session, que ce thread peut tenir (mode bloquant).
+     * @param commands Les commandes du lot
+     */
+    private void runBatch(List<String> commands) {
+        long start = System.nanoTime();
+        SessionShell shell = sessionShell(); // Libre pour une commande à la fois, les autres lancent un processus
+        AtomicInteger next = new AtomicInteger(); // Prochaine commande à lancer
+        AtomicInteger failures = new AtomicInteger(); // Commandes terminées avec un code non nul
+        AtomicReference<IOException> lost = new AtomicReference<>(); // Client déconnecté : le lot s’arrête
+        int helpers = Math.min(server.batchParallelism(), commands.size()) - 1; // Tâches en plus de ce thread
+        CountDownLatch done = new CountDownLatch(helpers);
+        Runnable worker = () -> {
+            int index;
+            while (lost.get() == null && (index = next.getAndIncrement()) < commands.size()) {
+                session.operationStarted();
+                try {
+                    if (executeCommand(commands.get(index), Protocol.tag(index), shell) != 0) {
+                        failures.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    lost.compareAndSet(null, e);
+                } finally {
+                    session.operationFinished();
+                }
+            }
+        };
+        for (int i = 0; i < helpers; i++) {
             try {
-                clientSocket.close(); // Ferme le socket du client
-            } catch (IOException e) {
-                server.log("Erreur lors de la fermeture du socket client : " + e.getMessage()); // Log une erreur
+                streamExecutor.execute(() -> {
+                    try {
+                        worker.run();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException e) { // Pool saturé : le lot avance avec moins de tâches
+                done.countDown();
+            }
+        }
+        worker.run(); // Ce thread participe aussi
+        try {
+            done.await(); // Attend les commandes encore en cours dans les autres tâches
+        } catch (InterruptedException e) { // Serveur en cours d’arrêt
+            Thread.currentThread().interrupt();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        server.log("Lot terminé pour " + clientAddress + " (" + commands.size() + " commandes, " + failures.get()
+                + " en échec, " + millis + " ms)");
+        if (lost.get() != null) {
+            server.log("Erreur avec le client " + clientAddress + " : " + lost.get().getMessage());
+            close();
+            return;
+        }
+        send(Protocol.end(failures.get(), millis)); // Fin du lot
+        commandCompleted();
+    }
+
+    /**
+     * @return L’interpréteur persistant de la session, créé à la première commande, ou null s’il est désactivé
+     */
+    private SessionShell sessionShell() {
+        lock.lock();
+        try {
+            if (shell == null && server.shells() != null && state != State.CLOSED) {
+                shell = new SessionShell(server.shells());
             }
+            return shell;
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
-     * Exécute une commande système sur le serveur.
+     * Exécute une commande en envoyant sa sortie au fil de l’eau, hors du verrou de la session.
      * @param command La commande à exécuter
-     * @return Le résultat de la commande (stdout ou stderr)
      */
-    private String executeCommand(String command) {
-        StringBuilder output = new StringBuilder(); // Construit la sortie de la commande
+    private void runCommand(String command) {
+        try {
+            executeCommand(command, "", sessionShell());
+        } catch (IOException e) {
+            server.log("Erreur avec le client " + clientAddress + " : " + e.getMessage());
+            close();
+        }
+        session.operationFinished();
+        commandCompleted();
+    }
+
+    /**
+     * Exécute une commande et envoie sa sortie puis sa ligne de fin.
+     * Ne prend pas le verrou de la session : peut tourner en même temps que le thread qui le tient.
+     * @param command La commande à exécuter
+     * @param tag Le préfixe des lignes envoyées (indice dans un lot, vide sinon)
+     * @param shell L’interpréteur persistant de la session, ou null
+     * @return Le code de sortie, ou {@link Protocol#NONE} si la commande a échoué
+     * @throws IOException Si le client est déconnecté
+     */
+    private int executeCommand(String command, String tag, SessionShell shell) throws IOException {
+        long requested; // Durée maximale demandée par le client (préfixe timeout:)
+        try {
+            requested = Protocol.timeoutMillis(command);
+        } catch (NumberFormatException e) {
+            write(tag + Protocol.output(Protocol.STDERR, true, "Durée maximale invalide : " + command));
+            write(tag + Protocol.end(Protocol.NONE, Protocol.NONE));
+            return Protocol.NONE;
+        }
+        StreamingCommand execution = new StreamingCommand(Protocol.withoutTimeout(command),
+                new TextCommandOutput(channel, tag), shell)
+                .admittedBy(server.scheduler(), session) // Attend une place parmi les commandes du serveur
+                .timeout(StreamingCommand.limit(requested, server.commandTimeoutMillis()))
+                .measuredBy(server.metrics());
+        int exitCode = Protocol.NONE; // Code de sortie, inconnu si la commande échoue
+        running.add(execution); // Arrêtée si la session se ferme entre-temps
+        try {
+            exitCode = execution.run(); // Exécute la commande système
+        } catch (ExecutionScheduler.BusyException e) { // File d’attente pleine : rien n’a été lancé
+            server.log("Commande refusée pour " + clientAddress + " : " + e.getMessage() + ".");
+            write(tag + Protocol.busy(e.retryAfterMillis(), e.getMessage()));
+            write(tag + Protocol.end(Protocol.NONE, Protocol.NONE));
+            return Protocol.NONE;
+        } catch (IOException e) { // Lancement impossible, ou client déconnecté (l’envoi suivant échouera)
+            if (execution.timedOut()) {
+                server.log("Commande arrêtée pour " + clientAddress + " : " + e.getMessage() + ".");
+            }
+            write(tag + Protocol.output(Protocol.STDERR, true, "Erreur lors de l'exécution : " + e.getMessage()));
+        } catch (InterruptedException e) { // Serveur en cours d’arrêt
+            Thread.currentThread().interrupt(); // Conserve l’interruption
+            write(tag + Protocol.output(Protocol.STDERR, true, "Exécution interrompue."));
+        } finally {
+            running.remove(execution);
+        }
+        long firstByteMillis = execution.firstByteMillis(); // Délai avant le premier octet de sortie
+        String position = tag.isEmpty() ? "" : "commande " + tag.substring(0, tag.length() - 1) + " du lot, ";
+        server.log("Commande terminée pour " + clientAddress + " (" + position + "code " + exitCode + ", premier octet "
+                + (firstByteMillis == Protocol.NONE ? "-" : firstByteMillis + " ms") + ")");
+        write(tag + Protocol.end(exitCode, firstByteMillis)); // Fin de la sortie, avec le délai mesuré
+        return exitCode;
+    }
+
+    /**
+     * Reprend le traitement des données reçues pendant l’exécution d’une commande.
+     */
+    private void commandCompleted() {
+        lock.lock();
+        try {
+            if (state != State.BUSY) { // Session fermée entre-temps
+                return;
+            }
+            state = State.READY; // Prêt pour la commande suivante
+            resumeInput();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Traite les données reçues pendant une commande ou une authentification, puis relit le client.
+     * Appelé sous le verrou, l’état suivant déjà fixé.
+     */
+    private void resumeInput() {
+        ByteBuffer pending = pendingInput; // Données reçues entre-temps
+        pendingInput = null;
+        if (pending != null) {
+            process(pending); // Traite les commandes déjà reçues
+        }
+        if (state != State.BUSY && state != State.CLOSED) { // Aucune nouvelle commande lancée
+            channel.resumeReads(); // Relit le client
+        }
+    }
+
+    /**
+     * Prépare la réception d’un fichier envoyé par le client.
+     * @param sizeLine La taille annoncée par le client
+     */
+    private void startFileReception(String sizeLine) {
+        try {
+            uploadRemaining = Long.parseLong(sizeLine.trim()); // Lit la taille et convertit en long
+            uploadSize = uploadRemaining;
+            uploadStartNanos = System.nanoTime();
+            // Log le début de la réception
+            server.log("Réception du fichier " + uploadFileName + " (" + uploadRemaining + " octets) depuis " + clientAddress);
+            uploadFile = FileChannel.open(Paths.get("received_" + uploadFileName), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING); // Ouvre le fichier de destination
+            state = State.RECEIVING_FILE;
+            session.operationStarted(); // Terminée à la fermeture du fichier
+            if (uploadRemaining == 0) { // Fichier vide : rien à recevoir
+                finishFileReception();
+            }
+        } catch (NumberFormatException | IOException e) {
+            server.log("Erreur lors de la réception du fichier " + uploadFileName + " : " + e.getMessage());
+            send("Erreur lors de la réception du fichier : " + e.getMessage()); // Informe le client
+            close(); // Le flux ne peut plus être interprété correctement
+        }
+    }
+
+    /**
+     * Écrit dans le fichier les octets d’upload disponibles.
+     * @param data Les octets reçus
+     */
+    private void receiveFileData(ByteBuffer data) {
+        int count = (int) Math.min(data.remaining(), uploadRemaining); // Ne lit pas au-delà du fichier
+        ByteBuffer slice = data.duplicate(); // Vue limitée aux octets du fichier
+        slice.limit(slice.position() + count);
         try {
-            // Crée un processus pour exécuter la commande via cmd.exe
-            Process process = new ProcessBuilder("cmd.exe", "/c", command).start();
-            // Lit la sortie standard (stdout) du processus
-            BufferedReader stdOut = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line; // Variable pour chaque ligne lue
-            while ((line = stdOut.readLine()) != null) { // Lit chaque ligne de stdout
-                output.append(line).append("\n"); // Ajoute la ligne au résultat
+            while (slice.hasRemaining()) {
+                uploadFile.write(slice); // Écrit les octets dans le fichier
             }
-            // Lit la sortie d’erreur (stderr) du processus
-            BufferedReader stdErr = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            while ((line = stdErr.readLine()) != null) { // Lit chaque ligne de stderr
-                output.append("ERREUR : ").append(line).append("\n"); // Ajoute l’erreur au résultat
+        } catch (IOException e) {
+            server.log("Erreur lors de l’écriture du fichier " + uploadFileName + " : " + e.getMessage());
+            close();
+            return;
+        }
+        data.position(data.position() + count); // Marque les octets comme consommés
+        uploadRemaining -= count; // Met à jour le compteur
+        if (uploadRemaining == 0) { // Tout le fichier est reçu
+            finishFileReception();
+        }
+    }
+
+    /**
+     * Termine la réception du fichier et confirme au client.
+     */
+    private void finishFileReception() {
+        closeUploadFile();
+        server.metrics().transfer(true, uploadSize, System.nanoTime() - uploadStartNanos);
+        server.log("Fichier " + uploadFileName + " reçu avec succès."); // Log la réussite
+        uploadFileName = null;
+        state = State.READY;
+        send("Fichier reçu et sauvegardé."); // Confirme au client
+    }
+
+    /**
+     * Ferme le fichier d’upload s’il est ouvert.
+     */
+    private void closeUploadFile() {
+        if (uploadFile != null) {
+            try {
+                uploadFile.close(); // Ferme le fichier
+            } catch (IOException e) {
+                server.log("Erreur lors de la fermeture du fichier " + uploadFileName + " : " + e.getMessage());
             }
-            process.waitFor(); // Attend la fin de l’exécution de la commande
-        } catch (IOException | InterruptedException e) {
-            output.append("Erreur lors de l'exécution : ").append(e.getMessage()); // Ajoute l’erreur au résultat
+            uploadFile = null;
+            session.operationFinished();
         }
-        return output.toString().trim(); // Retourne le résultat sans espaces inutiles
     }
 
     /**
-     * Reçoit un fichier envoyé par le client.
-     * @param clientSocket Socket du client
-     * @param out Flux de sortie vers le client
-     * @param in Flux d’entrée depuis le client
-     * @throws IOException En cas d’erreur d’entrée/sortie
+     * Envoie une ligne de texte au client.
+     * @param line La ligne à envoyer
      */
-    private void receiveFile(Socket clientSocket, PrintWriter out, BufferedReader in) throws IOException {
-        out.println("SEND_FILE_NAME"); // Demande le nom du fichier
-        String fileName = in.readLine(); // Lit le nom envoyé par le client
-        out.println("SEND_FILE_SIZE"); // Demande la taille du fichier
-        long fileSize = Long.parseLong(in.readLine()); // Lit la taille et convertit en long
+    private void send(String line) {
+        try {
+            write(line);
+        } catch (IOException e) {
+            server.log("Erreur avec le client " + clientAddress + " : " + e.getMessage()); // Log une erreur
+            close();
+        }
+    }
 
-        // Log le début de la réception
-        server.log("Réception du fichier " + fileName + " (" + fileSize + " octets) depuis " + clientAddress);
+    /**
+     * Écrit une ligne de texte sur le canal, sans prendre le verrou de la session.
+     * @param line La ligne à envoyer
+     * @throws IOException Si le client est déconnecté
+     */
+    private void write(String line) throws IOException {
+        channel.write(StandardCharsets.UTF_8.encode(line + "\n")); // Encode en UTF-8 avec fin de ligne
+    }
 
-        // Ouvre les flux pour recevoir et sauvegarder le fichier
-        try (BufferedInputStream fileInput = new BufferedInputStream(clientSocket.getInputStream());
-             FileOutputStream fileOutput = new FileOutputStream("received_" + fileName)) {
-            byte[] buffer = new byte[8192]; // Buffer de 8KB pour un transfert rapide
-            long bytesRead = 0; // Compteur d’octets lus
-            int count; // Nombre d’octets lus par itération
-            while (bytesRead < fileSize && (count = fileInput.read(buffer)) > 0) { // Tant que pas tout lu
-                fileOutput.write(buffer, 0, count); // Écrit les octets dans le fichier
-                bytesRead += count; // Met à jour le compteur
+    /**
+     * Associe la session authentifiée : ses compteurs reçoivent désormais les octets échangés.
+     * @param authenticated La session enregistrée
+     */
+    private void attach(SessionRegistry.Session authenticated) {
+        session = authenticated;
+    }
+
+    /**
+     * Met de côté les octets reçus pendant une commande.
+     * @param data Les octets à conserver
+     */
+    private void stash(ByteBuffer data) {
+        if (pendingInput == null) {
+            pendingInput = ByteBuffer.allocate(data.remaining()); // Copie exacte des octets
+        } else {
+            ByteBuffer grown = ByteBuffer.allocate(pendingInput.remaining() + data.remaining()); // Agrandit le tampon
+            grown.put(pendingInput);
+            pendingInput = grown;
+        }
+        pendingInput.put(data); // Consomme les octets reçus
+        pendingInput.flip(); // Prépare la relecture
+    }
+
+    /**
+     * Extrait la ligne accumulée et réinitialise le buffer.
+     * @return La ligne décodée en UTF-8, sans retour chariot final
+     */
+    private String takeLine() {
+        if (lineBuffer == null || lineBuffer.size() == 0) {
+            return ""; // Ligne vide
+        }
+        String line = new String(lineBuffer.toByteArray(), StandardCharsets.UTF_8); // Décode la ligne
+        lineBuffer = null; // Libère le buffer entre deux lignes
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line; // Accepte CRLF
+    }
+
+    /**
+     * Canal qui compte les octets envoyés au client dans la session authentifiée,
+     * quel que soit le protocole et le thread qui écrit.
+     */
+    private final class CountingChannel implements SessionChannel {
+        private final SessionChannel delegate; // Canal réel
+
+        CountingChannel(SessionChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String remoteAddress() {
+            return delegate.remoteAddress();
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            int length = data.remaining(); // Le canal consomme tout le tampon
+            delegate.write(data);
+            SessionRegistry.Session current = session;
+            if (current != null) {
+                current.sent(length);
             }
-            server.log("Fichier " + fileName + " reçu avec succès."); // Log la réussite
         }
 
-        out.println("Fichier reçu et sauvegardé."); // Confirme au client
+        @Override
+        public void awaitWritable() throws IOException {
+            delegate.awaitWritable();
+        }
+
+        @Override
+        public void suspendReads() {
+            delegate.suspendReads();
+        }
+
+        @Override
+        public void resumeReads() {
+            delegate.resumeReads();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
     }
 }
@@ -0,0 +1,58 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import hadoop.mapreduce.remotecontrolsoftware.server.nio.NioAcceptor;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Boucle d’acceptation des connexions clients.
+ * Le port est ouvert à la construction ; {@link #serve()} accepte les clients
+ * jusqu’à l’appel de {@link #close()}.
+ */
+public interface ConnectionAcceptor extends Closeable {
+
+    /**
+     * @return Le port sur lequel le serveur écoute
+     */
+    int port();
+
+    /**
+     * Accepte les connexions clients. Bloque jusqu’à la fermeture de l’accepteur.
+     * @throws IOException En cas d’erreur réseau ou lorsque l’accepteur est fermé
+     */
+    void serve() throws IOException;
+
+    /**
+     * @return L’exécuteur des sessions (mode bloquant) ou des commandes (mode NIO)
+     */
+    SessionExecutor executor();
+
+    /**
+     * Construit l’accepteur correspondant au mode d’entrées/sorties configuré, avec un contexte TLS
+     * construit pour lui à partir du keystore configuré.
+     * @param config Configuration du serveur
+     * @param server Services du serveur pour les sessions
+     * @return L’accepteur prêt à servir
+     * @throws IOException Si le keystore est illisible ou si le port ne peut pas être ouvert
+     */
+    static ConnectionAcceptor open(ServerConfig config, ServerContext server) throws IOException {
+        return open(config, server, ServerTls.create(config));
+    }
+
+    /**
+     * Construit l’accepteur correspondant au mode d’entrées/sorties configuré.
+     * @param config Configuration du serveur
+     * @param server Services du serveur pour les sessions
+     * @param sslContext Contexte TLS, partagé par toutes les connexions (cache des sessions TLS compris)
+     * @return L’accepteur prêt à servir
+     * @throws IOException Si le port ne peut pas être ouvert
+     */
+    static ConnectionAcceptor open(ServerConfig config, ServerContext server, SSLContext sslContext) throws IOException {
+        if (config.ioMode() == ServerConfig.IoMode.NIO) { // Boucles d’événements NIO
+            return new NioAcceptor(config, server, sslContext);
+        }
+        return new BlockingAcceptor(config, server, sslContext); // Un thread par client
+    }
+}
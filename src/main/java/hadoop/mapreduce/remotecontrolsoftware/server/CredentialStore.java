@@ -0,0 +1,374 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Comptes des opérateurs, lus dans un fichier texte à raison d’une ligne par compte :
+ * {@code login:pbkdf2-sha256:itérations:sel:empreinte} (sel et empreinte en base64, voir {@link #hash}).
+ * Les lignes vides et celles qui commencent par {@code #} sont ignorées.
+ * <p>
+ * L’empreinte PBKDF2 est volontairement lente à calculer (plusieurs centaines de millisecondes) :
+ * au plus {@code hashers} calculs tournent en même temps, les autres attendent, pour laisser le reste
+ * de la machine aux sessions. Une vérification réussie est gardée en mémoire ({@code cacheSize} logins
+ * au plus, les moins récents oubliés d’abord, dix minutes chacun) sous la forme d’un HMAC du mot de
+ * passe avec une clé propre au processus : tant que le compte ne change pas, les connexions suivantes
+ * avec le même mot de passe ne recalculent pas l’empreinte. Un login inconnu coûte un calcul complet,
+ * comme un mauvais mot de passe, pour ne pas révéler quels comptes existent.
+ * <p>
+ * {@link #reloadIfChanged()} relit le fichier quand sa date ou sa taille change ; un fichier illisible
+ * laisse les comptes précédents en place, un fichier absent n’en laisse aucun.
+ */
+public class CredentialStore {
+    public static final String SCHEME = "pbkdf2-sha256"; // Seul format d’empreinte reconnu
+    public static final int DEFAULT_ITERATIONS = 600_000; // Itérations des nouvelles empreintes
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256"; // Implémentation JDK de SCHEME
+    private static final String CACHE_ALGORITHM = "HmacSHA256"; // Empreinte rapide des mots de passe vérifiés
+    private static final int SALT_BYTES = 16; // Sel des nouvelles empreintes
+    private static final int HASH_BITS = 256; // Taille des empreintes
+    private static final long CACHE_MILLIS = TimeUnit.MINUTES.toMillis(10); // Durée d’une vérification gardée
+    private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+    /**
+     * Compte lu dans le fichier.
+     */
+    private static final class Account {
+        private final String line; // Ligne du fichier, pour reconnaître un compte inchangé au rechargement
+        private final int iterations; // Itérations de PBKDF2
+        private final byte[] salt; // Sel
+        private final byte[] hash; // Empreinte attendue
+
+        Account(String line, int iterations, byte[] salt, byte[] hash) {
+            this.line = line;
+            this.iterations = iterations;
+            this.salt = salt;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Vérification réussie gardée en mémoire.
+     */
+    private static final class Verified {
+        private final Account account; // Compte vérifié : une autre instance après rechargement invalide l’entrée
+        private final byte[] digest; // HMAC du mot de passe accepté
+        private final long expiresMillis; // Fin de validité
+
+        Verified(Account account, byte[] digest, long expiresMillis) {
+            this.account = account;
+            this.digest = digest;
+            this.expiresMillis = expiresMillis;
+        }
+    }
+
+    private final Path file; // Fichier des comptes
+    private final Consumer<String> log; // Journal du serveur
+    private final Semaphore hashers; // Calculs d’empreinte simultanés
+    private final int cacheSize; // Vérifications gardées au plus (0 : aucune)
+    private final SecretKeySpec cacheKey; // Clé des HMAC du cache, propre à ce processus
+    private final Account decoy; // Compte fictif vérifié à la place d’un login inconnu
+    private final ReentrantLock cacheLock = new ReentrantLock(); // Protège le cache
+    private final Map<String, Verified> cache; // Vérifications réussies, par login, de la moins récente à la plus récente
+    private final ReentrantLock reloadLock = new ReentrantLock(); // Un seul rechargement à la fois
+    private volatile Map<String, Account> accounts = Map.of(); // Comptes, remplacés en bloc au rechargement
+    private long loadedModified = Long.MIN_VALUE; // Date du fichier chargé (MIN_VALUE : absent)
+    private long loadedSize = -1; // Taille du fichier chargé
+
+    /**
+     * Charge les comptes.
+     * @param file Le fichier des comptes
+     * @param cacheSize Le nombre de vérifications réussies gardées en mémoire (0 : aucune)
+     * @param hashers Le nombre de calculs d’empreinte simultanés au plus
+     * @param log Le journal du serveur
+     */
+    public CredentialStore(Path file, int cacheSize, int hashers, Consumer<String> log) {
+        this.file = file;
+        this.log = log;
+        this.hashers = new Semaphore(hashers);
+        this.cacheSize = cacheSize;
+        byte[] secret = new byte[32];
+        SecureRandom random = new SecureRandom();
+        random.nextBytes(secret);
+        this.cacheKey = new SecretKeySpec(secret, CACHE_ALGORITHM);
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        this.decoy = new Account("", DEFAULT_ITERATIONS, salt, new byte[HASH_BITS / 8]);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) { // Ordre d’accès : la plus ancienne part d’abord
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Verified> eldest) {
+                return size() > CredentialStore.this.cacheSize;
+            }
+        };
+        reload();
+    }
+
+    /**
+     * Vérifie un mot de passe sans calculer son empreinte, d’après les vérifications réussies récentes.
+     * @param login Login saisi
+     * @param password Mot de passe saisi
+     * @return true si ce mot de passe a déjà été accepté pour ce compte, inchangé depuis
+     */
+    public boolean cached(String login, String password) {
+        Account account = accounts.get(login);
+        if (cacheSize == 0 || account == null) {
+            return false;
+        }
+        Verified verified;
+        cacheLock.lock();
+        try {
+            verified = cache.get(login);
+        } finally {
+            cacheLock.unlock();
+        }
+        return verified != null && verified.account == account && verified.expiresMillis > System.currentTimeMillis()
+                && MessageDigest.isEqual(verified.digest, digest(login, password));
+    }
+
+    /**
+     * Vérifie un mot de passe en calculant son empreinte, après avoir attendu un calcul libre.
+     * Un mot de passe accepté est gardé en mémoire pour {@link #cached(String, String)}.
+     * @param login Login saisi
+     * @param password Mot de passe saisi
+     * @return true si le compte existe et que le mot de passe correspond
+     */
+    public boolean verify(String login, String password) {
+        Account account = accounts.get(login);
+        Account checked = account != null ? account : decoy; // Même coût pour un login inconnu
+        char[] chars = password.toCharArray();
+        boolean match;
+        hashers.acquireUninterruptibly();
+        try {
+            match = MessageDigest.isEqual(derive(chars, checked.salt, checked.iterations), checked.hash);
+        } finally {
+            hashers.release();
+            Arrays.fill(chars, '\0');
+        }
+        if (!match || account == null) {
+            return false;
+        }
+        if (cacheSize > 0) {
+            Verified verified = new Verified(account, digest(login, password), System.currentTimeMillis() + CACHE_MILLIS);
+            cacheLock.lock();
+            try {
+                cache.put(login, verified);
+            } finally {
+                cacheLock.unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param login Un login
+     * @return Une valeur qui change avec le compte (nouveau mot de passe, nouvelle empreinte), ou null si le compte
+     * n’existe pas ; sert à lier les jetons de session ({@link SessionTokens}) au compte
+     */
+    public byte[] accountStamp(String login) {
+        Account account = accounts.get(login);
+        return account != null ? account.line.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * @return Le nombre de comptes chargés
+     */
+    public int size() {
+        return accounts.size();
+    }
+
+    /**
+     * Relit le fichier des comptes si sa date ou sa taille a changé depuis le dernier chargement.
+     * N’échoue jamais : les erreurs sont journalisées.
+     */
+    public void reloadIfChanged() {
+        long modified = Long.MIN_VALUE;
+        long size = -1;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            modified = attributes.lastModifiedTime().toMillis();
+            size = attributes.size();
+        } catch (IOException e) { // Absent ou illisible : reload() en décide
+        }
+        reloadLock.lock();
+        try {
+            if (modified != loadedModified || size != loadedSize) {
+                reload();
+            }
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    /**
+     * Relit le fichier des comptes. Les comptes dont la ligne n’a pas changé gardent leurs vérifications en mémoire.
+     */
+    public void reload() {
+        reloadLock.lock();
+        try {
+            List<String> lines;
+            long modified;
+            long size;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                modified = attributes.lastModifiedTime().toMillis();
+                size = attributes.size();
+                lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            } catch (NoSuchFileException e) {
+                log.accept("Fichier des comptes " + file + " introuvable : aucun compte, authentification impossible.");
+                loadedModified = Long.MIN_VALUE;
+                loadedSize = -1;
+                replace(Map.of());
+                return;
+            } catch (IOException e) {
+                log.accept("Fichier des comptes " + file + " illisible, comptes précédents conservés : " + e.getMessage());
+                return;
+            }
+            Map<String, Account> previous = accounts;
+            Map<String, Account> loaded = new HashMap<>();
+            int number = 0;
+            for (String line : lines) {
+                number++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                int colon = trimmed.indexOf(':');
+                String login = colon > 0 ? trimmed.substring(0, colon) : "";
+                Account old = previous.get(login);
+                try {
+                    Account account = old != null && old.line.equals(trimmed) ? old : parse(trimmed);
+                    if (loaded.put(login, account) != null) {
+                        log.accept("Fichier des comptes " + file + ", ligne " + number + " : login " + login
+                                + " en double, la dernière ligne l’emporte.");
+                    }
+                } catch (IllegalArgumentException e) {
+                    log.accept("Fichier des comptes " + file + ", ligne " + number + " ignorée : " + e.getMessage());
+                }
+            }
+            loadedModified = modified;
+            loadedSize = size;
+            replace(loaded);
+            log.accept("Comptes chargés depuis " + file + " : " + loaded.size() + " compte(s).");
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    /**
+     * Calcule la ligne d’un compte pour le fichier des comptes.
+     * @param login Le login (sans {@code :} ni espace)
+     * @param password Le mot de passe, effacé par l’appelant
+     * @param iterations Le nombre d’itérations de PBKDF2
+     * @return La ligne {@code login:pbkdf2-sha256:itérations:sel:empreinte}
+     */
+    public static String hash(String login, char[] password, int iterations) {
+        if (login.isEmpty() || login.contains(":") || !login.equals(login.trim())) {
+            throw new IllegalArgumentException("Login invalide : " + login);
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Nombre d’itérations invalide : " + iterations);
+        }
+        byte[] salt = new byte[SALT_BYTES];
+        new SecureRandom().nextBytes(salt);
+        return login + ":" + SCHEME + ":" + iterations + ":" + ENCODER.encodeToString(salt) + ":"
+                + ENCODER.encodeToString(derive(password, salt, iterations));
+    }
+
+    /**
+     * @param line Une ligne du fichier des comptes
+     * @return Le compte décrit
+     * @throws IllegalArgumentException Si la ligne est mal formée
+     */
+    private static Account parse(String line) {
+        String[] fields = line.split(":", -1);
+        if (fields.length != 5 || fields[0].isEmpty()) {
+            throw new IllegalArgumentException("5 champs attendus, login:" + SCHEME + ":itérations:sel:empreinte");
+        }
+        if (!SCHEME.equals(fields[1])) {
+            throw new IllegalArgumentException("format d’empreinte inconnu : " + fields[1]);
+        }
+        int iterations;
+        try {
+            iterations = Integer.parseInt(fields[2]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("nombre d’itérations invalide : " + fields[2]);
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("nombre d’itérations invalide : " + fields[2]);
+        }
+        byte[] hash = DECODER.decode(fields[4]); // IllegalArgumentException si ce n’est pas du base64
+        if (hash.length != HASH_BITS / 8) {
+            throw new IllegalArgumentException("empreinte de " + hash.length + " octets au lieu de " + HASH_BITS / 8);
+        }
+        return new Account(line, iterations, DECODER.decode(fields[3]), hash);
+    }
+
+    /**
+     * Remplace les comptes et oublie les vérifications des comptes modifiés ou supprimés.
+     * @param loaded Les nouveaux comptes
+     */
+    private void replace(Map<String, Account> loaded) {
+        accounts = Map.copyOf(loaded);
+        cacheLock.lock();
+        try {
+            cache.entrySet().removeIf(entry -> loaded.get(entry.getKey()) != entry.getValue().account);
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /**
+     * @param password Le mot de passe
+     * @param salt Le sel
+     * @param iterations Le nombre d’itérations
+     * @return L’empreinte PBKDF2 du mot de passe
+     */
+    private static byte[] derive(char[] password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " indisponible", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * @param login Le login
+     * @param password Le mot de passe
+     * @return L’empreinte rapide du mot de passe, gardée dans le cache
+     */
+    private byte[] digest(String login, String password) {
+        try {
+            Mac mac = Mac.getInstance(CACHE_ALGORITHM); // Un Mac par appel : les sessions vérifient en parallèle
+            mac.init(cacheKey);
+            mac.update(login.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(CACHE_ALGORITHM + " indisponible", e);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Checksums;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Chunker;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Upload par différence ({@link Protocol#SYNC}) : le client annonce le découpage du fichier ({@link Chunker}),
+ * le serveur recopie dans {@code received_<nom>.sync} les morceaux qu’il possède déjà ({@link ChunkIndex}),
+ * puis ne reçoit que les autres. Un morceau présent plusieurs fois dans le fichier n’est reçu qu’une fois.
+ * Chaque morceau, recopié ou reçu, est vérifié par son empreinte SHA-256 du manifeste : le fichier assemblé
+ * est donc celui du client sans être relu. Il est renommé atomiquement en {@code received_<nom>}, et son
+ * découpage rejoint l’index pour les envois suivants.
+ * <p>
+ * Les étapes se succèdent sur un même flux : {@link #manifest(ByteBuffer)} à la réception, {@link #prepare()}
+ * sur l’exécuteur (lecture des morceaux connus), {@link #write(long, int, ByteBuffer)} à la réception,
+ * puis {@link #commit()} sur l’exécuteur.
+ */
+final class DeltaUpload {
+    private static final Set<Path> ACTIVE = new HashSet<>(); // Fichiers en cours d’envoi par différence
+    private static final ReentrantLock REGISTRY = new ReentrantLock(); // Protège ACTIVE
+
+    private final Path target; // Fichier final
+    private final Path part; // Fichier en cours d’assemblage
+    private final long size; // Taille annoncée
+    private final ChunkIndex index; // Morceaux déjà présents sur le serveur
+    private final int chunks; // Nombre de morceaux annoncé
+    private int[] lengths; // Taille de chaque morceau (agrandi au fil du manifeste)
+    private long[] offsets; // Position de chaque morceau
+    private byte[] hashes; // Empreintes des morceaux, bout à bout
+    private final ByteBuffer entry = ByteBuffer.allocate(Protocol.SYNC_ENTRY); // Entrée du manifeste coupée entre deux trames
+    private final BitSet wanted = new BitSet(); // Morceaux à recevoir du client
+    private final Map<Integer, Integer> copies = new HashMap<>(); // Morceau en double -> premier exemplaire à recevoir
+    private int entries; // Entrées du manifeste reçues
+    private long total; // Somme des tailles annoncées
+    private volatile FileChannel file; // Fichier en cours d’assemblage
+    private volatile boolean aborted; // Envoi abandonné (le fichier peut être ouvert après coup par prepare())
+    private boolean released; // Fichier rendu à d’autres envois (sous REGISTRY)
+    private long reused; // Octets recopiés depuis les fichiers du serveur
+    private long expected; // Octets à recevoir du client
+    private int current = -1; // Morceau en cours de réception (-1 : tous reçus)
+    private long position; // Prochain octet attendu du morceau en cours
+    private final MessageDigest digest = Chunker.sha256(); // Empreinte du morceau en cours de réception
+
+    /**
+     * Constructeur, à travers {@link #open(String, long, int, ChunkIndex)}.
+     */
+    private DeltaUpload(Path target, long size, int chunks, ChunkIndex index) {
+        this.target = target;
+        this.part = Paths.get(target + ".sync");
+        this.size = size;
+        this.index = index;
+        this.chunks = chunks;
+        int capacity = Math.min(chunks, 1024); // Un manifeste annoncé n’est pas forcément envoyé
+        this.lengths = new int[capacity];
+        this.offsets = new long[capacity];
+        this.hashes = new byte[capacity * Chunker.HASH_LENGTH];
+    }
+
+    /**
+     * Ouvre l’envoi par différence d’un fichier.
+     * @param name Nom du fichier (le chemin éventuel est ignoré)
+     * @param size Taille annoncée
+     * @param chunks Nombre de morceaux du manifeste
+     * @param index Les morceaux déjà présents sur le serveur
+     * @return L’envoi, qui attend le manifeste
+     * @throws IOException Si la requête est invalide ou si le même fichier est déjà en cours d’envoi par différence
+     */
+    static DeltaUpload open(String name, long size, int chunks, ChunkIndex index) throws IOException {
+        Path fileName = Paths.get(name).getFileName(); // Reste dans le répertoire du serveur
+        if (fileName == null || fileName.toString().isEmpty() || size < 0 || chunks < 0 || chunks > Protocol.MAX_SYNC_CHUNKS
+                || chunks > size / Chunker.MIN_CHUNK + 1 || (chunks == 0) != (size == 0)) {
+            throw new IOException("Requête d’upload par différence invalide");
+        }
+        Path target = Paths.get("received_" + fileName);
+        REGISTRY.lock();
+        try {
+            if (!ACTIVE.add(target)) {
+                throw new IOException("Upload déjà en cours pour " + fileName);
+            }
+        } finally {
+            REGISTRY.unlock();
+        }
+        return new DeltaUpload(target, size, chunks, index);
+    }
+
+    /**
+     * @return Le nom du fichier final
+     */
+    Path target() {
+        return target;
+    }
+
+    /**
+     * @return La taille annoncée
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Lit une partie du manifeste.
+     * @param data Les octets reçus (consommés)
+     * @return true si le manifeste est complet
+     * @throws IOException Si le manifeste est invalide
+     */
+    boolean manifest(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            if (entries == chunks) {
+                throw new IOException("Manifeste plus long qu’annoncé");
+            }
+            int count = Math.min(entry.remaining(), data.remaining());
+            entry.put(data.duplicate().limit(data.position() + count));
+            data.position(data.position() + count);
+            if (entry.hasRemaining()) { // Suite de l’entrée dans la trame suivante
+                break;
+            }
+            entry.flip();
+            int length = entry.getInt();
+            if (length < 1 || length > Chunker.MAX_CHUNK || total + length > size) {
+                throw new IOException("Manifeste invalide au morceau " + entries);
+            }
+            if (entries == lengths.length) {
+                int capacity = Math.min(chunks, entries * 2);
+                lengths = Arrays.copyOf(lengths, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                hashes = Arrays.copyOf(hashes, capacity * Chunker.HASH_LENGTH);
+            }
+            entry.get(hashes, entries * Chunker.HASH_LENGTH, Chunker.HASH_LENGTH);
+            entry.clear();
+            lengths[entries] = length;
+            offsets[entries] = total;
+            total += length;
+            entries++;
+        }
+        if (entries == chunks && total != size) {
+            throw new IOException("Le manifeste ne couvre pas le fichier : " + total + " octets sur " + size);
+        }
+        return entries == chunks;
+    }
+
+    /**
+     * Prépare le fichier : recopie chaque morceau déjà présent sur le serveur après avoir vérifié son empreinte,
+     * et retient les autres. Lit les morceaux connus, et découpe la version précédente du fichier si elle n’est
+     * pas indexée : à appeler hors de la boucle d’événements.
+     * @return Les morceaux que le client doit envoyer
+     * @throws IOException Si le fichier ne peut pas être préparé
+     */
+    BitSet prepare() throws IOException {
+        index.indexIfMissing(target); // Version précédente reçue par un autre moyen
+        file = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if (aborted) { // Annulé pendant l’ouverture
+            abort();
+            throw new IOException("Envoi annulé");
+        }
+        if (size > 0) {
+            file.write(ByteBuffer.allocate(1), size - 1); // Préalloue : les écritures suivantes restent en place
+        }
+        Map<ByteBuffer, Integer> first = new HashMap<>(); // Premier exemplaire de chaque morceau à recevoir
+        Map<Path, FileChannel> sources = new HashMap<>(); // Fichiers du serveur ouverts pour la recopie
+        ByteBuffer buffer = ByteBuffer.allocate(Chunker.MAX_CHUNK);
+        try {
+            for (int i = 0; i < lengths.length; i++) {
+                byte[] hash = Arrays.copyOfRange(hashes, i * Chunker.HASH_LENGTH, (i + 1) * Chunker.HASH_LENGTH);
+                if (copy(i, hash, buffer, sources)) {
+                    reused += lengths[i];
+                    continue;
+                }
+                Integer earlier = first.putIfAbsent(ByteBuffer.wrap(hash), i);
+                if (earlier != null) { // Même contenu qu’un morceau déjà demandé
+                    copies.put(i, earlier);
+                } else {
+                    wanted.set(i);
+                    expected += lengths[i];
+                }
+            }
+        } finally {
+            for (FileChannel source : sources.values()) {
+                source.close();
+            }
+        }
+        current = wanted.nextSetBit(0);
+        position = current >= 0 ? offsets[current] : 0;
+        return wanted;
+    }
+
+    /**
+     * Recopie un morceau depuis un fichier du serveur, s’il y est et n’a pas changé.
+     * @param chunk Le morceau
+     * @param hash Son empreinte
+     * @param buffer Buffer de lecture, d’au moins un morceau
+     * @param sources Les fichiers déjà ouverts
+     * @return true si le morceau a été recopié
+     * @throws IOException Si l’écriture échoue
+     */
+    private boolean copy(int chunk, byte[] hash, ByteBuffer buffer, Map<Path, FileChannel> sources) throws IOException {
+        ChunkIndex.Location location = index.find(hash);
+        if (location == null || location.length != lengths[chunk]) {
+            return false;
+        }
+        buffer.clear().limit(location.length);
+        try {
+            FileChannel source = sources.get(location.file.path);
+            if (source == null) {
+                source = FileChannel.open(location.file.path, StandardOpenOption.READ);
+                sources.put(location.file.path, source);
+            }
+            while (buffer.hasRemaining()) {
+                if (source.read(buffer, location.offset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) { // Fichier supprimé ou illisible
+            index.forget(location.file);
+            return false;
+        }
+        buffer.flip();
+        if (buffer.remaining() != location.length || !Arrays.equals(Chunker.sha256(buffer.duplicate()), hash)) {
+            index.forget(location.file); // Fichier modifié depuis son découpage
+            return false;
+        }
+        long at = offsets[chunk];
+        while (buffer.hasRemaining()) {
+            at += file.write(buffer, at);
+        }
+        return true;
+    }
+
+    /**
+     * @return Les octets recopiés depuis les fichiers du serveur
+     */
+    long reused() {
+        return reused;
+    }
+
+    /**
+     * @return Les octets à recevoir du client
+     */
+    long expected() {
+        return expected;
+    }
+
+    /**
+     * Vérifie des octets reçus et les écrit à leur position. Les morceaux demandés arrivent dans l’ordre du fichier,
+     * une trame ne couvre jamais deux morceaux ; l’empreinte d’un morceau est vérifiée à son dernier octet.
+     * @param at La position des octets dans le fichier
+     * @param expectedCrc La somme CRC32C annoncée
+     * @param data Les octets (consommés)
+     * @throws IOException Si les octets sont corrompus, inattendus, ne correspondent pas au manifeste
+     * ou ne peuvent pas être écrits
+     */
+    void write(long at, int expectedCrc, ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        if (current < 0 || at != position || length == 0 || at + length > offsets[current] + lengths[current]) {
+            throw new IOException("Morceau inattendu à la position " + at + " (attendu " + position + ")");
+        }
+        if (Checksums.crc32c(data) != expectedCrc) {
+            throw new IOException("Somme de contrôle invalide à la position " + at);
+        }
+        digest.update(data.duplicate());
+        while (data.hasRemaining()) {
+            at += file.write(data, at); // Écriture positionnée
+        }
+        position = at;
+        if (position == offsets[current] + lengths[current]) { // Morceau complet : vérifié, puis le suivant
+            if (!MessageDigest.isEqual(digest.digest(),
+                    Arrays.copyOfRange(hashes, current * Chunker.HASH_LENGTH, (current + 1) * Chunker.HASH_LENGTH))) {
+                throw new IOException("Empreinte SHA-256 différente pour le morceau " + current);
+            }
+            current = wanted.nextSetBit(current + 1);
+            position = current >= 0 ? offsets[current] : 0;
+        }
+    }
+
+    /**
+     * Recopie les morceaux en double (depuis leur exemplaire reçu, déjà vérifié), publie le fichier puis l’indexe.
+     * Écrit sur le disque : à appeler hors de la boucle d’événements.
+     * @throws IOException Si des morceaux manquent ou si le renommage échoue
+     * (l’envoi est alors effacé)
+     */
+    void commit() throws IOException {
+        try {
+            if (current >= 0) {
+                throw new IOException("Fichier incomplet : morceau " + current + " non reçu.");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(Chunker.MAX_CHUNK);
+            for (Map.Entry<Integer, Integer> copy : copies.entrySet()) {
+                int chunk = copy.getKey();
+                buffer.clear().limit(lengths[chunk]);
+                long from = offsets[copy.getValue()];
+                while (buffer.hasRemaining()) {
+                    if (file.read(buffer, from + buffer.position()) < 0) {
+                        throw new IOException("Fichier tronqué pendant l’assemblage");
+                    }
+                }
+                buffer.flip();
+                long at = offsets[chunk];
+                while (buffer.hasRemaining()) {
+                    at += file.write(buffer, at);
+                }
+            }
+            file.force(false);
+            file.close();
+            try {
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            index.add(target, lengths, hashes); // Servira aux envois suivants
+        } catch (IOException e) {
+            abort();
+            throw e;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Abandonne l’envoi et efface le fichier en cours d’assemblage. Peut être appelé pendant
+     * {@link #prepare()} ou {@link #commit()} : ils échouent alors sur le fichier fermé.
+     */
+    void abort() {
+        aborted = true;
+        try {
+            if (file != null) {
+                file.close();
+            }
+            Files.deleteIfExists(part);
+        } catch (IOException ignored) {
+            // Fichier déjà supprimé
+        }
+        release();
+    }
+
+    /**
+     * Libère le fichier pour un autre envoi.
+     */
+    private void release() {
+        REGISTRY.lock();
+        try {
+            if (!released) { // Une seule fois : le nom est peut-être déjà repris par un autre envoi
+                released = true;
+                ACTIVE.remove(target);
+            }
+        } finally {
+            REGISTRY.unlock();
+        }
+    }
+}
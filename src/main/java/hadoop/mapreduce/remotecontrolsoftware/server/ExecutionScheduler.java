@@ -0,0 +1,353 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Contrôle d’admission des commandes système : toutes les commandes du serveur (protocole texte,
+ * lots, flux binaires) passent par ici avant de lancer un processus.
+ * <ul>
+ *     <li>au plus {@code maxRunning} commandes tournent en même temps sur la machine ;</li>
+ *     <li>au plus {@code sessionRunning} par session : un script qui enchaîne les commandes ne prend
+ *     pas toute la place ;</li>
+ *     <li>les commandes en trop attendent dans une file bornée ({@code queueCapacity} au total,
+ *     {@code sessionQueue} par session) ; une place libérée va à la session suivante dans un tourniquet,
+ *     pas à la plus bavarde ;</li>
+ *     <li>file pleine : refus immédiat ({@link BusyException}) avec un délai conseillé avant de réessayer.</li>
+ * </ul>
+ */
+public class ExecutionScheduler {
+
+    /**
+     * Refus d’une commande : la file d’attente est pleine.
+     */
+    public static final class BusyException extends IOException {
+        private static final long serialVersionUID = 1L;
+        private final long retryAfterMillis; // Délai conseillé avant de réessayer
+
+        BusyException(String message, long retryAfterMillis) {
+            super(message);
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        /**
+         * @return Le délai conseillé avant de réessayer, en millisecondes
+         */
+        public long retryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+
+    /**
+     * Place obtenue pour une commande, à rendre une fois le processus terminé.
+     */
+    public final class Ticket implements AutoCloseable {
+        private final Object owner; // Session qui a demandé la place
+        private final Condition ready; // Signalée quand la place est accordée ou la demande annulée
+        private final long queuedNanos = System.nanoTime(); // Entrée dans la file
+        private boolean granted; // Place accordée (verrou tenu)
+        private boolean cancelled; // Demande abandonnée (verrou tenu)
+        private boolean released; // Place rendue (verrou tenu)
+        private long grantedNanos; // Instant où la place a été accordée
+
+        private Ticket(Object owner) {
+            this.owner = owner;
+            this.ready = lock.newCondition();
+        }
+
+        /**
+         * Abandonne l’attente (commande annulée) : {@link ExecutionScheduler#acquire(Object, Consumer)}
+         * se termine en erreur. Sans effet une fois la place accordée.
+         */
+        public void cancel() {
+            lock.lock();
+            try {
+                if (!granted && !cancelled) {
+                    cancelled = true;
+                    dequeue(this);
+                    ready.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Rend la place. Peut être appelé plusieurs fois.
+         */
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (!granted || released) {
+                    return;
+                }
+                released = true;
+                long runNanos = System.nanoTime() - grantedNanos;
+                averageRunNanos += (runNanos - averageRunNanos) / 8; // Moyenne glissante pour le délai conseillé
+                running--;
+                Owner state = owners.get(owner);
+                state.running--;
+                forgetIfIdle(owner, state);
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Commandes d’une session : en cours et en attente (verrou tenu).
+     */
+    private static final class Owner {
+        private final ArrayDeque<Ticket> waiting = new ArrayDeque<>(); // Demandes en attente, dans l’ordre
+        private int running; // Commandes en cours
+    }
+
+    private final int maxRunning; // Commandes en cours sur la machine au plus
+    private final int sessionRunning; // Commandes en cours par session au plus
+    private final int queueCapacity; // Demandes en attente au plus, toutes sessions confondues
+    private final int sessionQueue; // Demandes en attente par session au plus
+    private final ReentrantLock lock = new ReentrantLock(); // Protège l’état ci-dessous
+    private final Map<Object, Owner> owners = new LinkedHashMap<>(); // Sessions actives, ordre du tourniquet
+    private int running; // Commandes en cours
+    private int queued; // Demandes en attente
+    private int peakQueued; // Plus longue file observée
+    private long admitted; // Commandes admises
+    private long rejected; // Commandes refusées (file pleine)
+    private long waited; // Commandes passées par la file
+    private long totalWaitNanos; // Attente cumulée des commandes passées par la file
+    private long maxWaitNanos; // Plus longue attente
+    private long averageRunNanos = TimeUnit.SECONDS.toNanos(1); // Durée moyenne d’une commande (estimation)
+
+    /**
+     * @param maxRunning Commandes en cours sur la machine au plus
+     * @param sessionRunning Commandes en cours par session au plus
+     * @param queueCapacity Demandes en attente au plus (0 : refus dès que tout est occupé)
+     * @param sessionQueue Demandes en attente par session au plus
+     */
+    public ExecutionScheduler(int maxRunning, int sessionRunning, int queueCapacity, int sessionQueue) {
+        if (maxRunning < 1 || sessionRunning < 1 || queueCapacity < 0 || sessionQueue < 0) {
+            throw new IllegalArgumentException("Limites d’exécution invalides : " + maxRunning + ", " + sessionRunning
+                    + ", " + queueCapacity + ", " + sessionQueue);
+        }
+        this.maxRunning = maxRunning;
+        this.sessionRunning = sessionRunning;
+        this.queueCapacity = queueCapacity;
+        this.sessionQueue = sessionQueue;
+    }
+
+    /**
+     * Obtient une place pour une commande, en attendant dans la file si besoin.
+     * @param owner La session qui lance la commande (clé des quotas)
+     * @param pending Reçoit la demande dès sa création, pour pouvoir l’annuler pendant l’attente (peut être null)
+     * @return La place, à rendre avec {@link Ticket#close()}
+     * @throws BusyException Si la file est pleine
+     * @throws IOException Si la demande a été annulée pendant l’attente
+     * @throws InterruptedException Si l’attente est interrompue
+     */
+    public Ticket acquire(Object owner, Consumer<Ticket> pending) throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            Ticket ticket = new Ticket(owner);
+            if (pending != null) {
+                pending.accept(ticket);
+                if (ticket.cancelled) { // Annulée dès sa publication
+                    throw new IOException("Commande annulée");
+                }
+            }
+            Owner state = owners.computeIfAbsent(owner, key -> new Owner());
+            if (state.waiting.isEmpty() && state.running < sessionRunning && running < maxRunning && queued == 0) {
+                grant(ticket, state); // Place libre et personne n’attend : pas de file
+                return ticket;
+            }
+            if (queued >= queueCapacity || state.waiting.size() >= sessionQueue) { // File pleine : refus explicite
+                rejected++;
+                forgetIfIdle(owner, state);
+                boolean sessionFull = queued < queueCapacity;
+                throw new BusyException(sessionFull ? "Trop de commandes en attente pour cette session"
+                        : "Serveur occupé", retryAfterMillis(sessionFull ? state.waiting.size() : queued));
+            }
+            state.waiting.add(ticket);
+            queued++;
+            peakQueued = Math.max(peakQueued, queued);
+            dispatch(); // Une place peut être libre pour une autre session que celle qui attend
+            while (!ticket.granted && !ticket.cancelled) {
+                try {
+                    ticket.ready.await();
+                } catch (InterruptedException e) {
+                    if (ticket.granted) { // Accordée juste avant l’interruption : la rend
+                        ticket.close();
+                    } else {
+                        ticket.cancelled = true;
+                        dequeue(ticket);
+                    }
+                    throw e;
+                }
+            }
+            if (ticket.cancelled) {
+                throw new IOException("Commande annulée");
+            }
+            long wait = ticket.grantedNanos - ticket.queuedNanos;
+            waited++;
+            totalWaitNanos += wait;
+            maxWaitNanos = Math.max(maxWaitNanos, wait);
+            return ticket;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Le nombre de commandes en cours
+     */
+    public int running() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Le nombre de commandes en attente
+     */
+    public int queued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Le nombre de commandes refusées depuis le démarrage
+     */
+    public long rejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return L’attente moyenne des commandes passées par la file, en millisecondes
+     */
+    public double averageWaitMillis() {
+        lock.lock();
+        try {
+            return waited == 0 ? 0 : totalWaitNanos / 1e6 / waited;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return La plus longue attente, en millisecondes
+     */
+    public long maxWaitMillis() {
+        lock.lock();
+        try {
+            return maxWaitNanos / 1_000_000;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Le résumé des places, de la file et des attentes
+     */
+    public String stats() {
+        lock.lock();
+        try {
+            return String.format("Commandes : %d/%d en cours, %d en attente (pic %d, max %d), %d admises, "
+                            + "%d passées par la file (attente moy. %.1f ms, max %d ms), %d refusées",
+                    running, maxRunning, queued, peakQueued, queueCapacity, admitted, waited,
+                    waited == 0 ? 0.0 : totalWaitNanos / 1e6 / waited, maxWaitNanos / 1_000_000, rejected);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Accorde les places libres aux sessions en attente, une à tour de rôle (verrou tenu).
+     */
+    private void dispatch() {
+        boolean progress = true;
+        while (running < maxRunning && queued > 0 && progress) {
+            progress = false;
+            Iterator<Map.Entry<Object, Owner>> sessions = owners.entrySet().iterator();
+            Object served = null; // Session servie pendant ce tour, replacée en fin de tourniquet
+            while (sessions.hasNext() && running < maxRunning) {
+                Owner state = sessions.next().getValue();
+                if (!state.waiting.isEmpty() && state.running < sessionRunning) {
+                    Ticket ticket = state.waiting.poll();
+                    queued--;
+                    grant(ticket, state);
+                    ticket.ready.signal();
+                    served = ticket.owner;
+                    progress = true;
+                    break;
+                }
+            }
+            if (served != null) { // Passe en fin de tourniquet : la session suivante sera servie d’abord
+                owners.put(served, owners.remove(served));
+            }
+        }
+    }
+
+    /**
+     * @param ticket La demande
+     * @param state Sa session (verrou tenu)
+     */
+    private void grant(Ticket ticket, Owner state) {
+        ticket.granted = true;
+        ticket.grantedNanos = System.nanoTime();
+        state.running++;
+        running++;
+        admitted++;
+    }
+
+    /**
+     * Retire une demande abandonnée de la file (verrou tenu).
+     * @param ticket La demande
+     */
+    private void dequeue(Ticket ticket) {
+        Owner state = owners.get(ticket.owner);
+        if (state != null && state.waiting.remove(ticket)) {
+            queued--;
+            forgetIfIdle(ticket.owner, state);
+        }
+    }
+
+    /**
+     * Oublie une session sans commande en cours ni en attente (verrou tenu).
+     * @param owner La session
+     * @param state Son état
+     */
+    private void forgetIfIdle(Object owner, Owner state) {
+        if (state.running == 0 && state.waiting.isEmpty()) {
+            owners.remove(owner);
+        }
+    }
+
+    /**
+     * @param ahead Les demandes devant celle qui est refusée
+     * @return Le délai conseillé : le temps d’écouler la file à la durée moyenne observée, entre 100 ms et 60 s
+     */
+    private long retryAfterMillis(int ahead) {
+        long nanos = averageRunNanos * (ahead + 1) / Math.max(1, Math.min(maxRunning, sessionRunning * Math.max(1, owners.size())));
+        return Math.max(100, Math.min(60_000, nanos / 1_000_000));
+    }
+}
@@ -0,0 +1,1295 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Codec;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Codecs;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.CompressionStats;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Compressor;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Frame;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.FrameDecoder;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.StreamCredit;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Session en protocole binaire (voir {@link Frame}), après la négociation faite par {@link ClientHandler}.
+ * Chaque flux ouvert par le client (commande ou upload) vit indépendamment des autres :
+ * les commandes tournent sur l’exécuteur du serveur, les uploads sont écrits à la réception
+ * (la vérification finale d’un upload reprenable ou par différence, et l’écriture des fichiers d’un dossier,
+ * passent par l’exécuteur),
+ * et chaque flux dispose de son propre crédit ({@link StreamCredit}).
+ * Si le client l’a négociée (trame SETTINGS), les trames DATA sont compressées quand elles y gagnent.
+ * Les trames reçues sont traitées par le thread qui lit le canal, sous le verrou de la session ;
+ * seule la vérification des identifiants (empreinte lente) passe par l’exécuteur, les trames suivantes
+ * attendant sa réponse.
+ */
+final class FramedSession {
+    private final SessionChannel channel; // Canal de transport vers le client
+    private final ServerContext server; // Référence au serveur principal
+    private final Executor executor; // Exécuteur des commandes
+    private final String clientAddress; // Adresse IP du client
+    private final Consumer<SessionRegistry.Session> attachSession; // Transmet la session authentifiée au gestionnaire
+    private final Runnable closeSession; // Ferme la session entière (erreur de protocole)
+    private final ReentrantLock sessionLock; // Verrou de la session, sous lequel les trames sont traitées
+    private final SessionShell shell; // Interpréteur persistant des commandes (null : un processus par commande)
+    private final FrameDecoder decoder = new FrameDecoder(); // Découpe les octets reçus en trames
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>(); // Flux ouverts, par identifiant
+    private volatile boolean authenticated; // Indicateur d’authentification
+    private volatile SessionRegistry.Session session; // Compteurs de la session authentifiée
+    private volatile boolean closed; // Session terminée
+    private int lastStreamId; // Dernier identifiant ouvert : les identifiants sont croissants
+    private volatile Supplier<Codec> codec; // Compression négociée (null : aucune)
+    private volatile CompressionStats compression; // Bilan de la compression négociée
+    private boolean authenticating; // Identifiants en cours de vérification : les trames suivantes attendent
+    private ByteBuffer heldInput; // Octets reçus pendant la vérification des identifiants
+
+    /**
+     * Constructeur de la session.
+     * @param channel Canal de transport vers le client
+     * @param server Référence au serveur
+     * @param executor Exécuteur des commandes (jamais le thread qui lit le canal)
+     * @param clientAddress Adresse IP du client
+     * @param attachSession Reçoit la session enregistrée après l’authentification
+     * @param closeSession Ferme la session entière
+     * @param sessionLock Le verrou de la session, tenu par le thread qui lit le canal
+     */
+    FramedSession(SessionChannel channel, ServerContext server, Executor executor, String clientAddress,
+                  Consumer<SessionRegistry.Session> attachSession, Runnable closeSession, ReentrantLock sessionLock) {
+        this.channel = channel;
+        this.server = server;
+        this.executor = executor;
+        this.clientAddress = clientAddress;
+        this.attachSession = attachSession;
+        this.closeSession = closeSession;
+        this.sessionLock = sessionLock;
+        this.shell = server.shells() != null ? new SessionShell(server.shells()) : null;
+    }
+
+    /**
+     * Traite des octets reçus du client.
+     * @param data Les octets reçus (consommés entièrement, ou mis de côté pendant la vérification des identifiants)
+     */
+    void onInput(ByteBuffer data) {
+        try {
+            Frame frame;
+            while (!closed && !authenticating && (frame = decoder.next(data)) != null) {
+                onFrame(frame);
+            }
+            if (authenticating && data.hasRemaining()) { // Trames envoyées sans attendre AUTH_OK
+                hold(data);
+            }
+        } catch (ProtocolException e) {
+            server.log("Erreur de protocole avec " + clientAddress + " : " + e.getMessage() + ", connexion fermée.");
+            send(Frame.text(Frame.Type.ERROR, Frame.CONNECTION_STREAM, e.getMessage())); // Explique la fermeture
+            closeSession.run();
+        }
+    }
+
+    /**
+     * Termine la session : annule les flux en cours. Le gestionnaire retire ensuite la session du registre.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Stream stream : streams.values()) {
+            stream.cancel(); // Arrête les commandes et supprime les uploads incomplets
+            stream.compressor.close();
+        }
+        streams.clear();
+        if (shell != null) { // Détruit l’interpréteur de la session
+            shell.close();
+        }
+        if (compression != null && compression.isUsed()) { // Bilan de la compression de la session
+            server.log("Compression pour " + clientAddress + " : " + compression.summary());
+        }
+    }
+
+    /**
+     * Traite une trame reçue.
+     * @param frame La trame
+     * @throws ProtocolException Si la trame viole le protocole
+     */
+    private void onFrame(Frame frame) throws ProtocolException {
+        switch (frame.type()) {
+            case AUTH:
+                authenticate(frame);
+                return;
+            case RESUME:
+                resume(frame);
+                return;
+            case SETTINGS:
+                negotiate(frame);
+                return;
+            case OPEN:
+                open(frame);
+                return;
+            case DATA:
+            case END:
+            case WINDOW:
+            case CANCEL:
+                Stream stream = streams.get(frame.streamId());
+                if (stream != null) { // Sinon le flux vient de se terminer : la trame est sans objet
+                    stream.onFrame(frame);
+                }
+                return;
+            default:
+                throw new ProtocolException("Trame inattendue : " + frame);
+        }
+    }
+
+    /**
+     * Vérifie les identifiants reçus dans une trame AUTH. La réponse AUTH_OK porte un jeton de session,
+     * si le serveur en émet, pour les reconnexions suivantes ({@link Frame.Type#RESUME}).
+     * @param frame La trame AUTH
+     * @throws ProtocolException Si la trame n’est pas sur le flux de connexion
+     */
+    private void authenticate(Frame frame) throws ProtocolException {
+        if (frame.streamId() != Frame.CONNECTION_STREAM || authenticated) {
+            throw new ProtocolException("Authentification inattendue");
+        }
+        String[] credentials = frame.fields(); // Login puis mot de passe
+        if (credentials.length != 2) {
+            authenticationCompleted(null, false);
+            return;
+        }
+        authenticating = true; // Les trames suivantes attendront la réponse
+        try {
+            executor.execute(() -> {
+                boolean accepted = server.authenticate(credentials[0], credentials[1], clientAddress);
+                sessionLock.lock();
+                try {
+                    authenticationCompleted(credentials[0], accepted);
+                } finally {
+                    sessionLock.unlock();
+                }
+            });
+        } catch (RejectedExecutionException e) { // Pool borné saturé
+            authenticating = false;
+            server.log("Authentification refusée pour " + clientAddress + " : serveur saturé.");
+            send(Frame.text(Frame.Type.ERROR, Frame.CONNECTION_STREAM,
+                    "Serveur saturé, authentification refusée. Réessayez plus tard."));
+        }
+    }
+
+    /**
+     * Répond à une trame AUTH, puis traite les trames reçues pendant la vérification. Appelé sous le verrou.
+     * @param login Le login vérifié (null si la trame était mal formée)
+     * @param accepted true si les identifiants sont acceptés
+     */
+    private void authenticationCompleted(String login, boolean accepted) {
+        if (closed) { // Client parti pendant la vérification
+            return;
+        }
+        if (accepted) {
+            attach(login, "");
+            String token = server.issueToken(login);
+            String message = "Authentification réussie. Vous êtes connecté.";
+            send(token != null ? Frame.text(Frame.Type.AUTH_OK, Frame.CONNECTION_STREAM, message, token)
+                    : Frame.text(Frame.Type.AUTH_OK, Frame.CONNECTION_STREAM, message));
+        } else {
+            server.log("Échec de l’authentification pour " + clientAddress); // Log l’échec
+            send(Frame.text(Frame.Type.ERROR, Frame.CONNECTION_STREAM, "Authentification échouée. Veuillez réessayer."));
+        }
+        if (authenticating) {
+            authenticating = false;
+            ByteBuffer held = heldInput;
+            heldInput = null;
+            if (held != null) { // Lecture suspendue par hold()
+                onInput(held);
+                if (!authenticating) { // Pas de nouvelle trame AUTH parmi les octets gardés
+                    channel.resumeReads();
+                }
+            }
+        }
+    }
+
+    /**
+     * Met de côté les octets reçus pendant la vérification des identifiants.
+     * @param data Les octets à conserver
+     */
+    private void hold(ByteBuffer data) {
+        ByteBuffer grown = ByteBuffer.allocate((heldInput != null ? heldInput.remaining() : 0) + data.remaining());
+        if (heldInput != null) {
+            grown.put(heldInput);
+        }
+        heldInput = grown.put(data).flip();
+        channel.suspendReads(); // Inutile de lire davantage pour l’instant
+    }
+
+    /**
+     * Vérifie le jeton de session reçu dans une trame RESUME, à la place des identifiants.
+     * @param frame La trame RESUME
+     * @throws ProtocolException Si la trame n’est pas sur le flux de connexion
+     */
+    private void resume(Frame frame) throws ProtocolException {
+        if (frame.streamId() != Frame.CONNECTION_STREAM || authenticated) {
+            throw new ProtocolException("Authentification inattendue");
+        }
+        String login = server.verifyToken(frame.text());
+        if (login != null) {
+            attach(login, ", jeton de session");
+            send(Frame.text(Frame.Type.AUTH_OK, Frame.CONNECTION_STREAM, "Reconnexion réussie. Vous êtes connecté."));
+        } else {
+            server.log("Jeton de session refusé pour " + clientAddress); // Log l’échec
+            send(Frame.text(Frame.Type.ERROR, Frame.CONNECTION_STREAM, "Jeton de session refusé ou expiré."));
+        }
+    }
+
+    /**
+     * Enregistre la session authentifiée.
+     * @param login L’utilisateur authentifié
+     * @param how Précision pour le journal (vide pour une authentification par identifiants)
+     */
+    private void attach(String login, String how) {
+        session = server.addClient(clientAddress, login, "binaire"); // Ajoute la session au registre
+        attachSession.accept(session); // Les octets échangés sont désormais comptés
+        authenticated = true; // Marque comme authentifié
+        server.log("Client authentifié et connecté : " + clientAddress + " (protocole binaire" + how + ")"); // Log la connexion
+    }
+
+    /**
+     * Retient l’algorithme de compression le mieux classé par le client parmi ceux connus du serveur.
+     * @param frame La trame SETTINGS, "compress\nalgorithme,algorithme..."
+     * @throws ProtocolException Si la trame n’est pas sur le flux de connexion ou arrive après l’ouverture d’un flux
+     */
+    private void negotiate(Frame frame) throws ProtocolException {
+        String[] fields = frame.fields();
+        if (frame.streamId() != Frame.CONNECTION_STREAM || lastStreamId != 0 || fields.length != 2
+                || !Protocol.COMPRESS.equals(fields[0])) {
+            throw new ProtocolException("Négociation inattendue");
+        }
+        String chosen = Codecs.negotiate(fields[1].split(","));
+        codec = Codecs.factory(chosen); // null pour "none"
+        compression = codec == null ? null : new CompressionStats(chosen);
+        send(Frame.text(Frame.Type.SETTINGS, Frame.CONNECTION_STREAM, Protocol.COMPRESS, chosen));
+    }
+
+    /**
+     * Ouvre un flux demandé par le client.
+     * @param frame La trame OPEN
+     * @throws ProtocolException Si le client n’est pas authentifié ou si l’identifiant est invalide
+     */
+    private void open(Frame frame) throws ProtocolException {
+        if (!authenticated) {
+            throw new ProtocolException("Flux ouvert avant l’authentification");
+        }
+        int id = frame.streamId();
+        if (id <= lastStreamId) { // Réutiliser un identifiant rendrait les trames ambiguës
+            throw new ProtocolException("Identifiant de flux invalide : " + id);
+        }
+        lastStreamId = id;
+        if (streams.size() >= Protocol.MAX_STREAMS) { // Protège le serveur d’un client trop gourmand
+            send(Frame.text(Frame.Type.ERROR, id, "Trop de flux ouverts, réessayez plus tard."));
+            return;
+        }
+        String[] fields = frame.fields(); // Verbe puis arguments
+        if (Protocol.EXEC.equals(fields[0]) && (fields.length == 2 || fields.length == 3)) {
+            server.log("Commande reçue de " + clientAddress + " : " + fields[1]); // Log la commande
+            long requested; // Durée maximale demandée par le client (0 : celle du serveur)
+            try {
+                requested = fields.length == 3 ? Long.parseLong(fields[2]) : 0;
+            } catch (NumberFormatException e) {
+                send(Frame.text(Frame.Type.ERROR, id, "Durée maximale invalide : " + fields[2]));
+                return;
+            }
+            ExecStream stream = new ExecStream(id, fields[1],
+                    StreamingCommand.limit(requested, server.commandTimeoutMillis()));
+            streams.put(id, stream);
+            stream.start();
+        } else if (Protocol.GET.equals(fields[0]) && fields.length == 4) {
+            GetStream stream = new GetStream(id);
+            streams.put(id, stream);
+            stream.start(fields[1], fields[2], fields[3]);
+        } else if (Protocol.UPLOAD.equals(fields[0]) && fields.length == 3) {
+            UploadStream stream = new UploadStream(id);
+            streams.put(id, stream);
+            stream.start(fields[1], fields[2]);
+        } else if (Protocol.PUT.equals(fields[0]) && (fields.length == 4 || fields.length == 6)) {
+            PutStream stream = new PutStream(id);
+            streams.put(id, stream);
+            if (fields.length == 4) { // Fichier entier, en une seule bande
+                stream.start(fields[1], fields[2], fields[3], "1", "0");
+            } else {
+                stream.start(fields[1], fields[2], fields[3], fields[4], fields[5]);
+            }
+        } else if (Protocol.SYNC.equals(fields[0]) && fields.length == 4) {
+            SyncStream stream = new SyncStream(id);
+            streams.put(id, stream);
+            stream.start(fields[1], fields[2], fields[3]);
+        } else if (Protocol.TREE.equals(fields[0]) && fields.length == 4) {
+            TreeStream stream = new TreeStream(id);
+            streams.put(id, stream);
+            stream.start(fields[1], fields[2], fields[3]);
+        } else {
+            send(Frame.text(Frame.Type.ERROR, id, "Requête inconnue : " + fields[0]));
+        }
+    }
+
+    /**
+     * Envoie une trame au client. En cas d’échec, la session est fermée.
+     * @param frame La trame à envoyer
+     */
+    private void send(Frame frame) {
+        try {
+            channel.write(frame.encode()); // Un seul envoi : jamais entrelacé avec une autre trame
+        } catch (IOException e) {
+            if (!closed) {
+                server.log("Erreur avec le client " + clientAddress + " : " + e.getMessage()); // Log une erreur
+                closeSession.run();
+            }
+        }
+    }
+
+    /**
+     * Flux ouvert par le client.
+     */
+    private abstract class Stream {
+        final int id; // Identifiant du flux
+        final StreamCredit credit = new StreamCredit(); // Crédit dans les deux sens
+        final Compressor compressor = new Compressor(codec, compression); // Compression des trames DATA
+        final ReentrantLock sending = new ReentrantLock(); // Sorties standard et d’erreur partagent le tampon compressé
+        final long openedNanos = System.nanoTime(); // Ouverture du flux (débit des transferts)
+
+        Stream(int id) {
+            this.id = id;
+            session.operationStarted(); // Les flux ne s’ouvrent qu’après l’authentification
+        }
+
+        /**
+         * @param payload Les octets d’une trame DATA reçue
+         * @param flags Les drapeaux de la trame
+         * @return Les octets d’origine (décompressés si nécessaire, valables jusqu’à la trame suivante)
+         * @throws ProtocolException Si la compression est invalide
+         */
+        ByteBuffer unpack(ByteBuffer payload, int flags) throws ProtocolException {
+            return compressor.unpack(payload, flags);
+        }
+
+        /**
+         * Traite une trame adressée à ce flux.
+         * @param frame La trame
+         * @throws ProtocolException Si la trame viole le protocole
+         */
+        void onFrame(Frame frame) throws ProtocolException {
+            switch (frame.type()) {
+                case WINDOW:
+                    credit.grant(frame.increment()); // Le client a traité des octets
+                    break;
+                case CANCEL:
+                    cancel();
+                    finish(Frame.text(Frame.Type.ERROR, id, "Annulé à la demande du client."));
+                    break;
+                default:
+                    throw new ProtocolException("Trame inattendue : " + frame);
+            }
+        }
+
+        /**
+         * Arrête le travail du flux (commande, fichier). Ne répond pas au client.
+         */
+        abstract void cancel();
+
+        /**
+         * Termine le flux par sa dernière trame (END ou ERROR). Sans effet si le flux est déjà terminé.
+         * @param last La dernière trame du flux
+         */
+        void finish(Frame last) {
+            if (streams.remove(id, this)) { // Une seule fin par flux
+                credit.close(); // Libère un envoi en attente de crédit
+                compressor.close();
+                session.operationFinished();
+                send(last);
+            }
+        }
+
+        /**
+         * Envoie des octets en trames DATA, dans la limite du crédit accordé par le client.
+         * @param data Les octets à envoyer
+         * @param flags Les drapeaux des trames
+         * @throws IOException Si le flux ou la connexion est fermé
+         */
+        void sendData(ByteBuffer data, int flags) throws IOException {
+            while (data.hasRemaining()) {
+                int length = credit.acquire(Math.min(data.remaining(), Protocol.MAX_DATA)); // Attend du crédit
+                ByteBuffer slice = data.duplicate();
+                slice.limit(slice.position() + length);
+                data.position(data.position() + length);
+                sending.lock(); // Le tampon compressé reste valable jusqu’à l’encodage de la trame
+                try {
+                    ByteBuffer packed = compressor.compress(slice);
+                    if (packed != null) { // Compressée : rend le crédit non utilisé
+                        credit.grant(length - packed.remaining());
+                        slice = packed;
+                        flags |= Frame.FLAG_COMPRESSED;
+                    } else {
+                        flags &= ~Frame.FLAG_COMPRESSED;
+                    }
+                    channel.awaitWritable(); // Contre-pression de la connexion, partagée par tous les flux
+                    channel.write(new Frame(Frame.Type.DATA, flags, id, slice).encode());
+                } finally {
+                    sending.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Flux d’une commande système : la sortie part en trames DATA (UTF-8),
+     * puis une trame END porte "code de sortie\ndélai avant le premier octet".
+     */
+    private final class ExecStream extends Stream implements StreamingCommand.Output {
+        private final StreamingCommand command; // Commande en cours
+
+        ExecStream(int id, String command, long timeoutMillis) {
+            super(id);
+            this.command = new StreamingCommand(command, this, shell)
+                    .admittedBy(server.scheduler(), session) // Attend une place parmi les commandes du serveur
+                    .timeout(timeoutMillis) // Arrêtée avec ses processus au-delà
+                    .measuredBy(server.metrics());
+        }
+
+        /**
+         * Lance la commande sur l’exécuteur.
+         */
+        void start() {
+            try {
+                executor.execute(this::run);
+            } catch (RejectedExecutionException e) { // Pool borné saturé
+                server.log("Commande refusée pour " + clientAddress + " : serveur saturé.");
+                finish(Frame.text(Frame.Type.ERROR, id, "Serveur saturé, commande refusée. Réessayez plus tard."));
+            }
+        }
+
+        /**
+         * Exécute la commande et termine le flux.
+         */
+        private void run() {
+            try {
+                int exitCode = command.run(); // Exécute la commande système
+                long firstByteMillis = command.firstByteMillis(); // Délai avant le premier octet de sortie
+                server.log("Commande terminée pour " + clientAddress + " (code " + exitCode + ", premier octet "
+                        + (firstByteMillis == Protocol.NONE ? "-" : firstByteMillis + " ms") + ")");
+                finish(Frame.text(Frame.Type.END, id, String.valueOf(exitCode), String.valueOf(firstByteMillis)));
+            } catch (ExecutionScheduler.BusyException e) { // File d’attente pleine : rien n’a été lancé
+                server.log("Commande refusée pour " + clientAddress + " : " + e.getMessage() + ".");
+                finish(Frame.text(Frame.Type.ERROR, id, Protocol.busy(e.retryAfterMillis(), e.getMessage())));
+            } catch (IOException e) { // Lancement impossible, annulation, durée dépassée ou client déconnecté
+                if (command.timedOut()) {
+                    server.log("Commande arrêtée pour " + clientAddress + " : " + e.getMessage() + ".");
+                }
+                finish(Frame.text(Frame.Type.ERROR, id, "Erreur lors de l'exécution : " + e.getMessage()));
+            } catch (InterruptedException e) { // Serveur en cours d’arrêt
+                Thread.currentThread().interrupt(); // Conserve l’interruption
+                command.cancel();
+                finish(Frame.text(Frame.Type.ERROR, id, "Exécution interrompue."));
+            }
+        }
+
+        @Override
+        public void drain(Reader source, String stream) throws IOException {
+            int flags = Protocol.STDERR.equals(stream) ? Frame.FLAG_STDERR : 0;
+            try (Reader input = source) {
+                char[] buffer = new char[Protocol.MAX_DATA / 3]; // Au plus une trame DATA une fois encodé
+                int start = 0; // Caractère gardé du tour précédent
+                int count; // Nombre de caractères lus
+                while ((count = input.read(buffer, start, buffer.length - start)) > 0) {
+                    int end = start + count;
+                    int keep = Character.isHighSurrogate(buffer[end - 1]) ? 1 : 0; // Ne coupe pas une paire
+                    sendData(StandardCharsets.UTF_8.encode(CharBuffer.wrap(buffer, 0, end - keep)), flags);
+                    if (keep == 1) {
+                        buffer[0] = buffer[end - 1];
+                    }
+                    start = keep;
+                }
+            }
+        }
+
+        @Override
+        void cancel() {
+            command.cancel(); // Détruit le processus : run() se termine en erreur
+        }
+    }
+
+    /**
+     * Flux d’un téléchargement : le serveur répond par ACK avec la taille du fichier, puis envoie
+     * la plage demandée en trames DATA lues directement depuis le fichier, et termine par END
+     * avec le nombre d’octets envoyés. Tourne sur l’exécuteur : l’attente du crédit ne bloque
+     * ni la lecture de la connexion ni les autres flux.
+     */
+    private final class GetStream extends Stream {
+
+        GetStream(int id) {
+            super(id);
+        }
+
+        /**
+         * Lance l’envoi sur l’exécuteur.
+         * @param path Chemin du fichier sur le serveur
+         * @param offset Premier octet demandé
+         * @param length Nombre d’octets demandés, ou {@value Protocol#NONE} jusqu’à la fin du fichier
+         */
+        void start(String path, String offset, String length) {
+            long start;
+            long count;
+            try {
+                start = Long.parseLong(offset.trim());
+                count = Long.parseLong(length.trim());
+            } catch (NumberFormatException e) {
+                finish(Frame.text(Frame.Type.ERROR, id, "Plage invalide : " + offset + " " + length));
+                return;
+            }
+            if (start < 0 || count < Protocol.NONE) {
+                finish(Frame.text(Frame.Type.ERROR, id, "Plage invalide : " + offset + " " + length));
+                return;
+            }
+            try {
+                executor.execute(() -> run(Paths.get(path), start, count));
+            } catch (RejectedExecutionException e) { // Pool borné saturé
+                server.log("Téléchargement refusé pour " + clientAddress + " : serveur saturé.");
+                finish(Frame.text(Frame.Type.ERROR, id, "Serveur saturé, téléchargement refusé. Réessayez plus tard."));
+            }
+        }
+
+        /**
+         * Envoie la plage demandée puis termine le flux.
+         * @param path Le fichier
+         * @param offset Premier octet demandé (ramené à la taille du fichier)
+         * @param length Nombre d’octets demandés, ou {@value Protocol#NONE}
+         */
+        private void run(Path path, long offset, long length) {
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = file.size();
+                long start = Math.min(offset, size); // Une plage au-delà de la fin est vide
+                long end = length == Protocol.NONE ? size : Math.min(size, start + length);
+                send(Frame.text(Frame.Type.ACK, id, String.valueOf(size))); // Taille du fichier complet
+                // Log le début de l’envoi
+                server.log("Envoi du fichier " + path + " (octets " + start + " à " + end + " sur " + size + ") à "
+                        + clientAddress);
+                ByteBuffer frame = ByteBuffer.allocate(Frame.HEADER_LENGTH + Frame.MAX_PAYLOAD); // Une trame, réutilisée
+                long position = start;
+                while (position < end) {
+                    int chunk = credit.acquire((int) Math.min(Frame.MAX_PAYLOAD, end - position)); // Attend du crédit
+                    frame.clear();
+                    frame.position(Frame.HEADER_LENGTH).limit(Frame.HEADER_LENGTH + chunk);
+                    while (frame.hasRemaining()) { // Lecture positionnée, directement à sa place dans la trame
+                        if (file.read(frame, position + frame.position() - Frame.HEADER_LENGTH) < 0) {
+                            throw new IOException("Fichier tronqué pendant l’envoi");
+                        }
+                    }
+                    int flags = 0;
+                    int wireLength = chunk; // Taille de la charge utile envoyée
+                    ByteBuffer packed = compressor.compress(frame.duplicate().position(Frame.HEADER_LENGTH));
+                    if (packed != null) { // Compressée : remplace les octets lus et rend le crédit non utilisé
+                        wireLength = packed.remaining();
+                        frame.position(Frame.HEADER_LENGTH);
+                        frame.put(packed).limit(frame.position());
+                        credit.grant(chunk - wireLength);
+                        flags = Frame.FLAG_COMPRESSED;
+                    }
+                    frame.position(0);
+                    Frame.writeHeader(frame, Frame.Type.DATA, flags, id, wireLength);
+                    frame.position(0);
+                    channel.awaitWritable(); // Contre-pression de la connexion, partagée par tous les flux
+                    channel.write(frame);
+                    position += chunk;
+                }
+                server.metrics().transfer(false, end - start, System.nanoTime() - openedNanos);
+                server.log("Fichier " + path + " envoyé à " + clientAddress + ".");
+                finish(Frame.text(Frame.Type.END, id, String.valueOf(end - start)));
+            } catch (NoSuchFileException e) {
+                finish(Frame.text(Frame.Type.ERROR, id, "Fichier introuvable : " + path));
+            } catch (IOException e) { // Fichier illisible, annulation ou client déconnecté
+                finish(Frame.text(Frame.Type.ERROR, id, "Erreur lors de l’envoi du fichier : " + e.getMessage()));
+            }
+        }
+
+        @Override
+        void cancel() {
+            // finish() ferme le crédit : l’envoi en attente s’arrête de lui-même
+        }
+    }
+
+    /**
+     * Flux d’un upload : les trames DATA sont écrites dans le fichier au fil de la réception,
+     * et le crédit est rendu une fois les octets écrits. END termine le fichier.
+     */
+    private final class UploadStream extends Stream {
+        private Path target; // Fichier de destination
+        private FileChannel file; // Fichier ouvert en écriture
+        private long expected; // Taille annoncée
+        private long received; // Octets écrits
+
+        UploadStream(int id) {
+            super(id);
+        }
+
+        /**
+         * Ouvre le fichier de destination.
+         * @param name Nom du fichier (le chemin éventuel est ignoré)
+         * @param size Taille annoncée
+         */
+        void start(String name, String size) {
+            try {
+                expected = Long.parseLong(size.trim()); // Lit la taille et convertit en long
+                Path fileName = Paths.get(name).getFileName(); // Reste dans le répertoire du serveur
+                if (fileName == null || fileName.toString().isEmpty()) {
+                    throw new IllegalArgumentException("nom de fichier vide");
+                }
+                target = Paths.get("received_" + fileName);
+                file = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING); // Ouvre le fichier de destination
+                // Log le début de la réception
+                server.log("Réception du fichier " + fileName + " (" + expected + " octets) depuis " + clientAddress);
+            } catch (RuntimeException | IOException e) { // Taille ou nom invalide, fichier inaccessible
+                fail("Erreur lors de la réception du fichier : " + e.getMessage());
+            }
+        }
+
+        @Override
+        void onFrame(Frame frame) throws ProtocolException {
+            switch (frame.type()) {
+                case DATA:
+                    if (!credit.receive(frame.length())) { // Le client n’a pas respecté le crédit
+                        throw new ProtocolException("Crédit dépassé sur le flux " + id);
+                    }
+                    write(unpack(frame.payload(), frame.flags()), frame.length());
+                    break;
+                case END:
+                    complete();
+                    break;
+                default:
+                    super.onFrame(frame);
+            }
+        }
+
+        /**
+         * Écrit des octets reçus puis rend le crédit correspondant.
+         * @param data Les octets reçus
+         * @param wireLength La taille de la trame reçue (compressée ou non), pour le crédit
+         */
+        private void write(ByteBuffer data, int wireLength) {
+            int length = data.remaining();
+            if (received + length > expected) {
+                fail("Le fichier dépasse la taille annoncée.");
+                return;
+            }
+            try {
+                while (data.hasRemaining()) {
+                    file.write(data); // Écrit les octets dans le fichier
+                }
+            } catch (IOException e) {
+                fail("Erreur lors de l’écriture du fichier : " + e.getMessage());
+                return;
+            }
+            received += length;
+            int increment = credit.consumed(wireLength);
+            if (increment > 0) {
+                send(Frame.window(id, increment)); // Autorise la suite
+            }
+        }
+
+        /**
+         * Termine l’upload à la fin annoncée par le client.
+         */
+        private void complete() {
+            if (received != expected) {
+                fail("Fichier incomplet : " + received + " octets reçus sur " + expected + ".");
+                return;
+            }
+            try {
+                file.close(); // Ferme le fichier
+                file = null;
+            } catch (IOException e) {
+                fail("Erreur lors de la fermeture du fichier : " + e.getMessage());
+                return;
+            }
+            server.metrics().transfer(true, received, System.nanoTime() - openedNanos);
+            server.log("Fichier " + target.getFileName() + " reçu avec succès."); // Log la réussite
+            finish(Frame.text(Frame.Type.END, id, "Fichier reçu et sauvegardé.")); // Confirme au client
+        }
+
+        /**
+         * Abandonne l’upload et prévient le client.
+         * @param message La cause
+         */
+        private void fail(String message) {
+            server.log(message + " (" + clientAddress + ")");
+            cancel();
+            finish(Frame.text(Frame.Type.ERROR, id, message));
+        }
+
+        @Override
+        void cancel() {
+            if (file == null) {
+                return;
+            }
+            try {
+                file.close();
+                Files.deleteIfExists(target); // Ne laisse pas de fichier tronqué
+            } catch (IOException e) {
+                server.log("Erreur lors de la suppression du fichier " + target + " : " + e.getMessage());
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * Flux d’un upload reprenable ({@link ResumableUpload}) : le serveur répond par ACK avec la position
+     * de reprise, puis chaque trame DATA porte sa position et son CRC32C avant les octets du fichier.
+     * Un fichier découpé en bandes est envoyé par plusieurs flux (souvent sur plusieurs connexions),
+     * un par bande ; chacun reçoit le bilan de la vérification finale.
+     */
+    private final class PutStream extends Stream {
+        private ResumableUpload.Stripe stripe; // Bande en cours (null une fois abandonnée)
+        private long written; // Octets écrits par ce flux (hors reprise)
+
+        PutStream(int id) {
+            super(id);
+        }
+
+        /**
+         * Ouvre ou reprend l’upload et indique au client où reprendre.
+         * @param name Nom du fichier
+         * @param size Taille annoncée
+         * @param sha256 Empreinte SHA-256 annoncée
+         * @param stripes Nombre de bandes du découpage
+         * @param index Bande envoyée par ce flux
+         */
+        void start(String name, String size, String sha256, String stripes, String index) {
+            try {
+                stripe = ResumableUpload.open(name, Long.parseLong(size.trim()), sha256,
+                        Integer.parseInt(stripes.trim()), Integer.parseInt(index.trim()));
+            } catch (NumberFormatException | IOException e) {
+                fail("Erreur lors de la réception du fichier : " + e.getMessage());
+                return;
+            }
+            ResumableUpload upload = stripe.upload();
+            long resumed = stripe.offset() - stripe.start(); // Octets de la bande déjà reçus
+            // Log le début (ou la reprise) de la réception
+            server.log("Réception du fichier " + upload.target().getFileName() + " (" + upload.size() + " octets"
+                    + (upload.stripeCount() > 1 ? ", bande " + (stripe.index() + 1) + "/" + upload.stripeCount() : "")
+                    + ") depuis " + clientAddress + (resumed > 0 ? ", reprise à l’octet " + stripe.offset() : ""));
+            send(Frame.text(Frame.Type.ACK, id, String.valueOf(stripe.offset()))); // Position de reprise
+        }
+
+        @Override
+        void onFrame(Frame frame) throws ProtocolException {
+            switch (frame.type()) {
+                case DATA:
+                    if (!credit.receive(frame.length())) { // Le client n’a pas respecté le crédit
+                        throw new ProtocolException("Crédit dépassé sur le flux " + id);
+                    }
+                    if (frame.length() < Protocol.PUT_HEADER || stripe == null) {
+                        throw new ProtocolException("Morceau invalide sur le flux " + id);
+                    }
+                    ByteBuffer chunk = frame.payload();
+                    long position = chunk.getLong(); // Position du morceau dans le fichier
+                    int crc = chunk.getInt(); // Somme de contrôle du morceau
+                    chunk = unpack(chunk.slice(), frame.flags()); // Seuls les octets du fichier sont compressés
+                    int length = chunk.remaining();
+                    try {
+                        stripe.write(position, crc, chunk); // Vérifie puis écrit à la position
+                        written += length;
+                    } catch (IOException e) {
+                        fail(e.getMessage()); // Le point de reprise permet de recommencer plus tard
+                        return;
+                    }
+                    int increment = credit.consumed(frame.length());
+                    if (increment > 0) {
+                        send(Frame.window(id, increment)); // Autorise la suite
+                    }
+                    break;
+                case END:
+                    complete();
+                    break;
+                default:
+                    super.onFrame(frame);
+            }
+        }
+
+        /**
+         * Termine la bande. La dernière bande lance la vérification de l’empreinte et la publication
+         * du fichier hors du thread de lecture : la relecture d’un gros fichier ne doit pas retarder
+         * les autres flux ni les autres sessions. Chaque flux répond au client une fois le fichier vérifié.
+         */
+        private void complete() {
+            if (stripe == null) {
+                fail("Fichier incomplet, l’envoi pourra reprendre.");
+                return;
+            }
+            ResumableUpload upload = stripe.upload();
+            long bytes = written;
+            boolean last;
+            try {
+                last = stripe.complete();
+            } catch (IOException e) {
+                fail(e.getMessage());
+                return;
+            }
+            upload.completion().whenComplete((ignored, failure) -> {
+                if (failure == null) {
+                    server.metrics().transfer(true, bytes, System.nanoTime() - openedNanos); // Vérification comprise
+                    finish(Frame.text(Frame.Type.END, id, "Fichier reçu, vérifié (SHA-256) et sauvegardé."));
+                } else {
+                    finish(Frame.text(Frame.Type.ERROR, id, "Erreur lors de la vérification du fichier : "
+                            + failure.getMessage()));
+                }
+            });
+            if (!last) { // Les autres bandes sont encore en cours
+                return;
+            }
+            Runnable commit = () -> {
+                try {
+                    upload.commit(); // SHA-256 puis renommage atomique, prévient toutes les bandes
+                    server.log("Fichier " + upload.target().getFileName() + " reçu et vérifié avec succès.");
+                } catch (IOException e) {
+                    server.log("Erreur lors de la vérification du fichier " + upload.target().getFileName() + " : "
+                            + e.getMessage());
+                }
+            };
+            try {
+                executor.execute(commit);
+            } catch (RejectedExecutionException e) { // Pool saturé : vérifie ici plutôt que de perdre l’upload
+                commit.run();
+            }
+        }
+
+        /**
+         * Abandonne la bande (en gardant son point de reprise) et prévient le client.
+         * @param message La cause
+         */
+        private void fail(String message) {
+            server.log(message + " (" + clientAddress + ")");
+            cancel();
+            finish(Frame.text(Frame.Type.ERROR, id, message));
+        }
+
+        @Override
+        void cancel() {
+            if (stripe != null) {
+                stripe.suspend(); // Garde un point de reprise sur les octets vérifiés (sans effet après la dernière bande)
+                stripe = null;
+            }
+        }
+    }
+
+    /**
+     * Flux d’un upload par différence ({@link DeltaUpload}) : le client envoie le manifeste du fichier,
+     * le serveur recopie sur l’exécuteur les morceaux qu’il possède déjà puis répond par la liste des
+     * morceaux manquants (trames DATA) et un ACK ; le client n’envoie que ceux-là, au format d’un put.
+     * END lance la vérification du fichier sur l’exécuteur ; le bilan porte les octets repris et reçus.
+     */
+    private final class SyncStream extends Stream {
+        private volatile DeltaUpload upload; // Envoi en cours (null une fois abandonné)
+        private volatile boolean receiving; // Manifeste traité : les trames DATA portent les morceaux manquants
+        private boolean manifestDone; // Manifeste complet, en cours de traitement ou traité
+        private long received; // Octets de fichier reçus du client
+
+        SyncStream(int id) {
+            super(id);
+        }
+
+        /**
+         * Ouvre l’envoi et attend le manifeste.
+         * @param name Nom du fichier
+         * @param size Taille annoncée
+         * @param chunks Nombre de morceaux du manifeste
+         */
+        void start(String name, String size, String chunks) {
+            if (server.chunks() == null) {
+                finish(Frame.text(Frame.Type.ERROR, id, "Upload par différence non disponible sur ce serveur."));
+                return;
+            }
+            try {
+                upload = DeltaUpload.open(name, Long.parseLong(size.trim()), Integer.parseInt(chunks.trim()),
+                        server.chunks());
+            } catch (NumberFormatException | IOException e) {
+                fail("Erreur lors de la réception du fichier : " + e.getMessage());
+                return;
+            }
+            // Log le début de la réception
+            server.log("Réception par différence du fichier " + upload.target().getFileName() + " (" + upload.size()
+                    + " octets, " + chunks.trim() + " morceaux) depuis " + clientAddress);
+            if (upload.size() == 0) { // Manifeste vide
+                prepare();
+            }
+        }
+
+        @Override
+        void onFrame(Frame frame) throws ProtocolException {
+            switch (frame.type()) {
+                case DATA:
+                    if (!credit.receive(frame.length())) { // Le client n’a pas respecté le crédit
+                        throw new ProtocolException("Crédit dépassé sur le flux " + id);
+                    }
+                    DeltaUpload current = upload;
+                    if (current == null) { // Abandonné : la trame est sans objet
+                        return;
+                    }
+                    if (receiving) {
+                        if (!receive(current, frame)) {
+                            return;
+                        }
+                    } else if (!manifestDone) {
+                        try {
+                            manifestDone = current.manifest(unpack(frame.payload(), frame.flags()));
+                        } catch (IOException e) {
+                            fail(e.getMessage());
+                            return;
+                        }
+                        if (manifestDone) {
+                            prepare();
+                        }
+                    } else { // Morceaux envoyés avant la liste des manquants
+                        throw new ProtocolException("Morceau inattendu sur le flux " + id);
+                    }
+                    int increment = credit.consumed(frame.length());
+                    if (increment > 0) {
+                        send(Frame.window(id, increment)); // Autorise la suite
+                    }
+                    break;
+                case END:
+                    complete();
+                    break;
+                default:
+                    super.onFrame(frame);
+            }
+        }
+
+        /**
+         * Écrit un morceau manquant reçu du client.
+         * @param current L’envoi
+         * @param frame La trame DATA, au format d’un put
+         * @return false si le morceau est refusé (le flux est alors terminé)
+         * @throws ProtocolException Si la trame est trop courte
+         */
+        private boolean receive(DeltaUpload current, Frame frame) throws ProtocolException {
+            if (frame.length() < Protocol.PUT_HEADER) {
+                throw new ProtocolException("Morceau invalide sur le flux " + id);
+            }
+            ByteBuffer chunk = frame.payload();
+            long position = chunk.getLong(); // Position des octets dans le fichier
+            int crc = chunk.getInt(); // Somme de contrôle des octets
+            chunk = unpack(chunk.slice(), frame.flags()); // Seuls les octets du fichier sont compressés
+            int length = chunk.remaining();
+            try {
+                current.write(position, crc, chunk);
+                received += length;
+                return true;
+            } catch (IOException e) {
+                fail(e.getMessage());
+                return false;
+            }
+        }
+
+        /**
+         * Recopie sur l’exécuteur les morceaux déjà présents, puis envoie la liste des morceaux manquants et l’ACK.
+         */
+        private void prepare() {
+            manifestDone = true;
+            DeltaUpload current = upload;
+            Runnable task = () -> {
+                try {
+                    BitSet wanted = current.prepare();
+                    sendData(ByteBuffer.wrap(wanted.toByteArray()), 0); // Un bit par morceau
+                    receiving = true; // Avant l’ACK : les morceaux suivent aussitôt
+                    server.log("Fichier " + current.target().getFileName() + " : " + wanted.cardinality()
+                            + " morceaux à recevoir (" + current.expected() + " octets), " + current.reused()
+                            + " octets déjà présents sur le serveur.");
+                    send(Frame.text(Frame.Type.ACK, id, String.valueOf(wanted.cardinality()),
+                            String.valueOf(current.expected()), String.valueOf(current.reused())));
+                } catch (IOException e) { // Disque, annulation ou client déconnecté
+                    fail("Erreur lors de la préparation du fichier : " + e.getMessage());
+                }
+            };
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) { // Pool borné saturé
+                fail("Serveur saturé, upload refusé. Réessayez plus tard.");
+            }
+        }
+
+        /**
+         * Lance la vérification et la publication du fichier hors du thread de lecture.
+         */
+        private void complete() {
+            DeltaUpload current = upload;
+            if (current == null || !receiving) {
+                fail("Fichier incomplet : le manifeste n’a pas été traité.");
+                return;
+            }
+            long bytes = received;
+            Runnable commit = () -> {
+                try {
+                    current.commit(); // Morceaux en double, renommage atomique et indexation
+                    upload = null;
+                    server.metrics().transfer(true, bytes, System.nanoTime() - openedNanos); // Vérification comprise
+                    server.metrics().reused(current.reused());
+                    server.log("Fichier " + current.target().getFileName() + " reçu par différence et vérifié ("
+                            + current.reused() + " octets repris, " + bytes + " octets reçus).");
+                    finish(Frame.text(Frame.Type.END, id, "Fichier reçu, vérifié (SHA-256) et sauvegardé.",
+                            String.valueOf(current.reused()), String.valueOf(bytes)));
+                } catch (IOException e) {
+                    upload = null;
+                    fail("Erreur lors de la vérification du fichier : " + e.getMessage());
+                }
+            };
+            try {
+                executor.execute(commit);
+            } catch (RejectedExecutionException e) { // Pool saturé : vérifie ici plutôt que de perdre l’upload
+                commit.run();
+            }
+        }
+
+        /**
+         * Abandonne l’envoi et prévient le client.
+         * @param message La cause
+         */
+        private void fail(String message) {
+            server.log(message + " (" + clientAddress + ")");
+            cancel();
+            finish(Frame.text(Frame.Type.ERROR, id, message));
+        }
+
+        @Override
+        void cancel() {
+            DeltaUpload current = upload;
+            upload = null;
+            if (current != null) {
+                current.abort(); // Efface le fichier en cours d’assemblage, interrompt la préparation
+            }
+        }
+    }
+
+    /**
+     * Flux d’un upload de dossier ({@link TreeUpload}) : une fois le dossier d’assemblage prêt, le serveur répond
+     * par ACK ; les trames DATA portent ensuite les entrées bout à bout, écrites en parallèle par les files
+     * d’écriture. Le serveur renvoie en trames DATA l’indice de chaque entrée écrite (une ligne chacune), puis END
+     * une fois l’arborescence publiée. Le crédit n’est rendu que tant que les octets reçus en attente d’écriture
+     * restent sous {@link TreeUpload#MAX_BUFFERED} : un disque lent ralentit le client au lieu de remplir la mémoire.
+     */
+    private final class TreeStream extends Stream implements TreeUpload.Listener {
+        private volatile TreeUpload upload; // Envoi en cours (null une fois abandonné)
+        private volatile boolean ready; // Dossier d’assemblage prêt, ACK envoyé
+        private final ReentrantLock flow = new ReentrantLock(); // Protège buffered et held
+        private long buffered; // Octets reçus en attente d’écriture
+        private int held; // Crédit retenu tant que buffered dépasse la limite
+        private final ReentrantLock reporting = new ReentrantLock(); // Un seul envoi de l’avancement à la fois
+        private final StringBuilder written = new StringBuilder(); // Indices des entrées écrites, pas encore envoyés
+        private int entries; // Entrées annoncées
+        private long size; // Octets de contenu annoncés
+
+        TreeStream(int id) {
+            super(id);
+        }
+
+        /**
+         * Ouvre l’envoi, prépare le dossier d’assemblage sur l’exécuteur puis répond par ACK.
+         * @param name Nom du dossier
+         * @param count Nombre d’entrées annoncé
+         * @param bytes Octets de contenu annoncés
+         */
+        void start(String name, String count, String bytes) {
+            TreeUpload opened;
+            try {
+                entries = Integer.parseInt(count.trim());
+                size = Long.parseLong(bytes.trim());
+                opened = TreeUpload.open(name, entries, size, server.uploadWriters(), executor, this);
+            } catch (NumberFormatException | IOException e) {
+                fail("Erreur lors de la réception du dossier : " + e.getMessage());
+                return;
+            }
+            upload = opened;
+            // Log le début de la réception
+            server.log("Réception du dossier " + opened.target().getFileName() + " (" + entries + " entrées, " + size
+                    + " octets) depuis " + clientAddress);
+            Runnable task = () -> {
+                try {
+                    opened.prepare();
+                    ready = true; // Avant l’ACK : les entrées suivent aussitôt
+                    send(Frame.text(Frame.Type.ACK, id, "0"));
+                } catch (IOException e) {
+                    fail("Erreur lors de la préparation du dossier : " + e.getMessage());
+                }
+            };
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) { // Pool borné saturé
+                fail("Serveur saturé, upload refusé. Réessayez plus tard.");
+            }
+        }
+
+        @Override
+        void onFrame(Frame frame) throws ProtocolException {
+            switch (frame.type()) {
+                case DATA:
+                    if (!credit.receive(frame.length())) { // Le client n’a pas respecté le crédit
+                        throw new ProtocolException("Crédit dépassé sur le flux " + id);
+                    }
+                    TreeUpload current = upload;
+                    if (current == null) { // Abandonné : la trame est sans objet
+                        return;
+                    }
+                    if (!ready) {
+                        throw new ProtocolException("Entrées envoyées avant l’ACK sur le flux " + id);
+                    }
+                    long copied;
+                    try {
+                        copied = current.receive(unpack(frame.payload(), frame.flags()));
+                    } catch (IOException e) {
+                        fail(e.getMessage());
+                        return;
+                    }
+                    int increment = 0;
+                    flow.lock();
+                    try {
+                        buffered += copied;
+                        if (buffered > TreeUpload.MAX_BUFFERED) { // Disque en retard : le client attendra
+                            held += frame.length();
+                        } else {
+                            increment = credit.consumed(frame.length());
+                        }
+                    } finally {
+                        flow.unlock();
+                    }
+                    if (increment > 0) {
+                        send(Frame.window(id, increment)); // Autorise la suite
+                    }
+                    break;
+                case END:
+                    TreeUpload completed = upload;
+                    if (completed == null) { // Abandonné : l’erreur part une fois le dossier d’assemblage effacé
+                        return;
+                    }
+                    if (!ready) {
+                        fail("Dossier incomplet : le dossier d’assemblage n’était pas prêt.");
+                        return;
+                    }
+                    try {
+                        completed.complete(); // Publication une fois les files d’écriture vidées
+                    } catch (IOException e) {
+                        fail(e.getMessage());
+                    }
+                    break;
+                default:
+                    super.onFrame(frame);
+            }
+        }
+
+        @Override
+        public void stored(int[] done, int count, long bytes) {
+            int increment = 0;
+            flow.lock();
+            try {
+                buffered -= bytes;
+                if (held > 0 && buffered <= TreeUpload.MAX_BUFFERED) { // Rend le crédit retenu
+                    increment = credit.consumed(held);
+                    held = 0;
+                }
+            } finally {
+                flow.unlock();
+            }
+            if (increment > 0) {
+                send(Frame.window(id, increment));
+            }
+            if (count > 0) {
+                reporting.lock();
+                try {
+                    for (int i = 0; i < count; i++) {
+                        written.append(done[i]).append('\n');
+                    }
+                } finally {
+                    reporting.unlock();
+                }
+                report();
+            }
+        }
+
+        /**
+         * Envoie au client les indices des entrées écrites depuis le dernier envoi.
+         */
+        private void report() {
+            reporting.lock(); // Les autres files ajoutent leurs indices après cet envoi
+            try {
+                if (written.length() == 0) {
+                    return;
+                }
+                ByteBuffer lines = ByteBuffer.wrap(written.toString().getBytes(StandardCharsets.US_ASCII));
+                written.setLength(0);
+                sendData(lines, 0);
+            } catch (IOException e) {
+                // Flux terminé ou client déconnecté : l’envoi échoue de lui-même
+            } finally {
+                reporting.unlock();
+            }
+        }
+
+        @Override
+        public void failed(IOException e) {
+            fail("Erreur lors de l’écriture du dossier : " + e.getMessage());
+        }
+
+        @Override
+        public void published() {
+            TreeUpload current = upload;
+            upload = null;
+            if (current == null) { // Abandonné pendant la publication
+                return;
+            }
+            report(); // Les dernières entrées écrites, avant le bilan
+            server.metrics().transfer(true, size, System.nanoTime() - openedNanos);
+            server.metrics().treeEntries(entries);
+            server.log("Dossier " + current.target().getFileName() + " reçu avec succès (" + entries + " entrées, "
+                    + size + " octets).");
+            finish(Frame.text(Frame.Type.END, id, "Dossier reçu et sauvegardé.", String.valueOf(entries),
+                    String.valueOf(size)));
+        }
+
+        /**
+         * Abandonne l’envoi et prévient le client une fois le dossier d’assemblage effacé : un nouvel essai
+         * du même dossier n’est pas refusé comme déjà en cours.
+         * @param message La cause
+         */
+        private void fail(String message) {
+            server.log(message + " (" + clientAddress + ")");
+            Frame error = Frame.text(Frame.Type.ERROR, id, message);
+            TreeUpload current = upload;
+            upload = null;
+            if (current == null) {
+                finish(error);
+            } else {
+                current.abort(() -> finish(error));
+            }
+        }
+
+        @Override
+        void cancel() {
+            TreeUpload current = upload;
+            upload = null;
+            if (current != null) {
+                current.abort(() -> { }); // Efface le dossier d’assemblage une fois les files arrêtées
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Journal affiché par l’interface du serveur : les dernières entrées, en nombre borné, dans un anneau.
+ * Indépendant de JavaFX : l’ajout d’une entrée et le filtrage (client, niveau) se font dans le thread
+ * appelant (thread du journal, tâche de fond) ; l’interface récupère une fois par image les changements
+ * déjà filtrés avec {@link #drain(List)}.
+ */
+public class LogModel {
+
+    /**
+     * Gravité d’une entrée, déduite de son message.
+     */
+    public enum Level {
+        INFO("Tout"),
+        AVERTISSEMENT("Avertissements et erreurs"),
+        ERREUR("Erreurs");
+
+        private final String label; // Libellé du filtre
+
+        Level(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @param message Le message d’une entrée (sans horodatage)
+         * @return Sa gravité : erreur, refus ou échec, sinon information
+         */
+        static Level of(String message) {
+            if (message.startsWith("Erreur") || message.startsWith("Impossible")) {
+                return ERREUR;
+            }
+            String lower = message.toLowerCase(Locale.ROOT);
+            if (message.startsWith("Échec") || lower.contains("refusé") || lower.contains("perdues")
+                    || lower.contains("trop longue") || lower.contains("indisponible") || lower.contains("saturé")) {
+                return AVERTISSEMENT;
+            }
+            return INFO;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Entrée du journal, immuable.
+     */
+    public static final class Entry {
+        private final String text; // Entrée horodatée
+        private final Level level; // Gravité
+        private final String client; // Adresse du client concerné, ou null
+
+        Entry(String text, Level level, String client) {
+            this.text = text;
+            this.level = level;
+            this.client = client;
+        }
+
+        /**
+         * @return L’entrée horodatée
+         */
+        public String text() {
+            return text;
+        }
+
+        /**
+         * @return La gravité de l’entrée
+         */
+        public Level level() {
+            return level;
+        }
+
+        /**
+         * @return L’adresse du client concerné, ou null
+         */
+        public String client() {
+            return client;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    // Adresse IPv4 ou IPv6 citée dans un message ("pour 127.0.0.1", "de ::1"...)
+    private static final Pattern CLIENT = Pattern.compile("(\\d{1,3}(?:\\.\\d{1,3}){3}|[0-9a-fA-F]*:[0-9a-fA-F:]*:[0-9a-fA-F]+)");
+
+    private final Entry[] ring; // Dernières entrées
+    private final ReentrantLock lock = new ReentrantLock(); // Ajouts (thread du journal) et filtrages (tâche de fond)
+    private final Queue<Object> updates = new ConcurrentLinkedQueue<>(); // Entrées à ajouter, ou liste à substituer
+    private int first; // Position de l’entrée la plus ancienne
+    private int size; // Entrées présentes
+    private Level minimum = Level.INFO; // Gravité minimale affichée
+    private String client = ""; // Client affiché (vide : tous)
+
+    /**
+     * @param capacity Nombre maximal d’entrées conservées
+     */
+    public LogModel(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacité du journal invalide : " + capacity);
+        }
+        this.ring = new Entry[capacity];
+    }
+
+    /**
+     * @return Le nombre maximal d’entrées conservées
+     */
+    public int capacity() {
+        return ring.length;
+    }
+
+    /**
+     * Ajoute une entrée ; la plus ancienne est oubliée si l’anneau est plein.
+     * @param logEntry L’entrée horodatée, "[date] message"
+     * @return true si l’entrée passe le filtre courant (l’interface a un changement à afficher)
+     */
+    public boolean add(String logEntry) {
+        int end = logEntry.indexOf("] ");
+        String message = end >= 0 ? logEntry.substring(end + 2) : logEntry;
+        Matcher matcher = CLIENT.matcher(message);
+        Entry entry = new Entry(logEntry, Level.of(message), matcher.find() ? matcher.group(1) : null);
+        lock.lock();
+        try {
+            ring[(first + size) % ring.length] = entry;
+            if (size < ring.length) {
+                size++;
+            } else {
+                first = (first + 1) % ring.length; // Oublie la plus ancienne
+            }
+            if (!accepts(entry)) {
+                return false;
+            }
+            updates.add(entry);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Change le filtre et prépare la liste filtrée, à appeler hors du thread JavaFX.
+     * @param minimum Gravité minimale affichée
+     * @param client Adresse (ou début d’adresse) du client affiché, vide pour tous
+     */
+    public void filter(Level minimum, String client) {
+        lock.lock();
+        try {
+            this.minimum = minimum;
+            this.client = client.trim();
+            List<Entry> filtered = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                Entry entry = ring[(first + i) % ring.length];
+                if (accepts(entry)) {
+                    filtered.add(entry);
+                }
+            }
+            updates.clear(); // Les ajouts en attente sont déjà dans la liste filtrée
+            updates.add(filtered);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Récupère les changements depuis le dernier appel (thread JavaFX).
+     * @param appended Reçoit les entrées à ajouter en fin de liste (après la substitution éventuelle)
+     * @return La liste à substituer à celle affichée (filtre changé), ou null
+     */
+    @SuppressWarnings("unchecked")
+    public List<Entry> drain(List<Entry> appended) {
+        List<Entry> replacement = null;
+        Object update;
+        while ((update = updates.poll()) != null) {
+            if (update instanceof List) { // Nouveau filtre : repart de la liste filtrée
+                replacement = (List<Entry>) update;
+                appended.clear();
+            } else {
+                appended.add((Entry) update);
+            }
+        }
+        return replacement;
+    }
+
+    /**
+     * @return true si des changements attendent {@link #drain(List)}
+     */
+    public boolean hasUpdates() {
+        return !updates.isEmpty();
+    }
+
+    /**
+     * @param entry Une entrée
+     * @return true si elle passe le filtre courant (verrou tenu)
+     */
+    private boolean accepts(Entry entry) {
+        return entry.level.compareTo(minimum) >= 0
+                && (client.isEmpty() || (entry.client != null && entry.client.startsWith(client)));
+    }
+}
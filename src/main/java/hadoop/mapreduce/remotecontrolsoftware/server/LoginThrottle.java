@@ -0,0 +1,167 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ralentit les authentifications qui échouent, par adresse du client et par login : au-delà de
+ * {@code freeFailures} échecs, chaque nouvel échec bloque l’adresse (ou le login) une seconde, puis deux,
+ * quatre… jusqu’à une minute. Une tentative bloquée est refusée sans calcul d’empreinte : une rafale de
+ * mots de passe ne coûte presque rien au serveur. Une vérification réussie efface les échecs de son adresse
+ * et de son login ; une adresse ou un login sans échec depuis un quart d’heure est oublié.
+ * <p>
+ * Le blocage d’une adresse s’applique à toutes ses tentatives, même avec un mot de passe dans le cache de
+ * {@link CredentialStore} : sinon une adresse bloquée pourrait continuer à essayer des mots de passe tant que
+ * celui d’un opérateur y est. Le blocage d’un login ne concerne que les mots de passe à vérifier : un opérateur
+ * dont le mot de passe est dans le cache entre toujours depuis une adresse sans échec, même pendant une attaque
+ * sur son compte.
+ */
+final class LoginThrottle {
+    private static final long FIRST_DELAY_MILLIS = 1000; // Premier blocage
+    private static final long MAX_DELAY_MILLIS = 60_000; // Blocage le plus long
+    private static final long QUIET_MILLIS = TimeUnit.MINUTES.toMillis(15); // Oubli des échecs
+    private static final int MAX_KEYS = 100_000; // Adresses et logins suivis au plus, les plus anciens oubliés d’abord
+
+    /**
+     * Échecs récents d’une adresse ou d’un login.
+     */
+    private static final class Failures {
+        private int count; // Échecs consécutifs
+        private long lastMillis; // Dernier échec
+        private long blockedUntilMillis; // Fin du blocage en cours
+    }
+
+    private final int freeFailures; // Échecs tolérés avant le premier blocage
+    private final ReentrantLock lock = new ReentrantLock(); // Protège les échecs
+    private final Map<String, Failures> failures = new LinkedHashMap<>(16, 0.75f, true) { // Du moins récent au plus récent
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Failures> eldest) {
+            return size() > MAX_KEYS;
+        }
+    };
+
+    /**
+     * @param freeFailures Le nombre d’échecs tolérés avant le premier blocage
+     */
+    LoginThrottle(int freeFailures) {
+        this.freeFailures = freeFailures;
+    }
+
+    /**
+     * @param address L’adresse du client (null si inconnue)
+     * @return Le temps restant avant qu’une tentative de cette adresse soit de nouveau vérifiée, en millisecondes
+     * (0 : pas de blocage)
+     */
+    long addressBlockedMillis(String address) {
+        return blockedMillis(addressKey(address));
+    }
+
+    /**
+     * @param login Le login tenté
+     * @return Le temps restant avant qu’un mot de passe de ce login soit de nouveau vérifié, en millisecondes
+     * (0 : pas de blocage)
+     */
+    long loginBlockedMillis(String login) {
+        return blockedMillis(loginKey(login));
+    }
+
+    /**
+     * Compte un échec pour l’adresse et le login.
+     * @param address L’adresse du client (null si inconnue)
+     * @param login Le login tenté
+     */
+    void failed(String address, String login) {
+        long now = now();
+        lock.lock();
+        try {
+            fail(addressKey(address), now);
+            fail(loginKey(login), now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Efface les échecs de l’adresse et du login après une vérification réussie.
+     * @param address L’adresse du client (null si inconnue)
+     * @param login Le login accepté
+     */
+    void succeeded(String address, String login) {
+        lock.lock();
+        try {
+            failures.remove(addressKey(address));
+            failures.remove(loginKey(login));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param key La clé suivie (null : rien)
+     * @return Le temps de blocage restant de la clé
+     */
+    private long blockedMillis(String key) {
+        long now = now();
+        lock.lock();
+        try {
+            return remaining(key, now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param key La clé suivie (null : rien)
+     * @param now L’instant présent
+     * @return Le temps de blocage restant de la clé (verrou tenu)
+     */
+    private long remaining(String key, long now) {
+        Failures entry = key != null ? failures.get(key) : null;
+        return entry != null ? Math.max(0, entry.blockedUntilMillis - now) : 0;
+    }
+
+    /**
+     * @param key La clé suivie (null : rien)
+     * @param now L’instant présent
+     */
+    private void fail(String key, long now) {
+        if (key == null) {
+            return;
+        }
+        Failures entry = failures.computeIfAbsent(key, k -> new Failures());
+        if (now - entry.lastMillis > QUIET_MILLIS) { // Échecs anciens oubliés
+            entry.count = 0;
+        }
+        entry.count++;
+        entry.lastMillis = now;
+        int over = entry.count - freeFailures;
+        if (over > 0) { // 1 s, 2 s, 4 s… plafonné
+            entry.blockedUntilMillis = now + Math.min(MAX_DELAY_MILLIS, FIRST_DELAY_MILLIS << Math.min(over - 1, 16));
+        }
+    }
+
+    /**
+     * @param address L’adresse du client
+     * @return Sa clé, ou null si l’adresse est inconnue
+     */
+    private static String addressKey(String address) {
+        return address != null ? "@" + address : null;
+    }
+
+    /**
+     * @param login Le login
+     * @return Sa clé, distincte de celle de toute adresse
+     */
+    private static String loginKey(String login) {
+        return "#" + login;
+    }
+
+    /**
+     * @return L’instant présent en millisecondes, insensible aux changements d’heure
+     */
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
@@ -0,0 +1,329 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Interpréteur de commandes ({@code cmd.exe} sous Windows, {@code /bin/sh} ailleurs) lancé une fois
+ * et réutilisé pour toutes les commandes d’une session : le coût de lancement d’un processus disparaît
+ * pour les commandes courtes, et le répertoire courant ({@code cd}) et les variables d’environnement
+ * sont conservés d’une commande à l’autre.
+ * <p>
+ * Chaque commande est écrite sur l’entrée de l’interpréteur, suivie de l’affichage d’un marqueur
+ * aléatoire propre à ce processus, sur stdout (avec le code de sortie) puis sur stderr :
+ * {@link Execution#stdout()} et {@link Execution#stderr()} s’arrêtent à ce marqueur.
+ * Une instance n’exécute qu’une commande à la fois (voir {@link SessionShell}).
+ */
+public final class PersistentShell {
+    private static final boolean WINDOWS = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+    private static final SecureRandom RANDOM = new SecureRandom(); // Marqueurs imprévisibles
+
+    private final Process process; // Interpréteur
+    private final Writer stdin; // Entrée de l’interpréteur : les commandes
+    private final Reader stdout; // Sortie standard, partagée par toutes les commandes
+    private final Reader stderr; // Sortie d’erreur, partagée par toutes les commandes
+    private final String marker; // Fin de la sortie d’une commande
+    private boolean broken; // Sortie dans un état inconnu (commande interrompue) : à ne plus utiliser
+
+    /**
+     * @param process L’interpréteur lancé
+     */
+    private PersistentShell(Process process) {
+        this.process = process;
+        this.stdin = new OutputStreamWriter(process.getOutputStream());
+        this.stdout = new InputStreamReader(process.getInputStream());
+        this.stderr = new InputStreamReader(process.getErrorStream());
+        byte[] token = new byte[12];
+        RANDOM.nextBytes(token);
+        StringBuilder hex = new StringBuilder("#RCS-");
+        for (byte b : token) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        this.marker = hex.append('#').toString();
+    }
+
+    /**
+     * Lance un interpréteur et attend qu’il soit prêt (bannière éventuelle lue et ignorée).
+     * @return L’interpréteur prêt à exécuter une commande
+     * @throws IOException Si l’interpréteur ne peut pas être lancé ou s’arrête aussitôt
+     */
+    public static PersistentShell spawn() throws IOException {
+        List<String> command = WINDOWS ? Arrays.asList("cmd.exe", "/Q", "/D", "/K") // Sans écho ni AutoRun
+                : Arrays.asList("/bin/sh", "-s");
+        PersistentShell shell = new PersistentShell(new ProcessBuilder(command).start());
+        try {
+            Execution warmUp = shell.start(WINDOWS ? "rem" : ":"); // Commande vide : consomme la bannière
+            warmUp.stdout().skipAll();
+            warmUp.stderr().skipAll();
+            if (!warmUp.completed()) {
+                throw new IOException("Interpréteur arrêté au lancement (code " + shell.process.exitValue() + ")");
+            }
+            return shell;
+        } catch (IOException e) {
+            shell.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Ligne de commande d’un processus dédié à une commande (mode sans interpréteur persistant).
+     * @param command La commande
+     * @return {@code cmd.exe /c commande} sous Windows, {@code /bin/sh -c commande} ailleurs
+     */
+    public static List<String> forkCommand(String command) {
+        return WINDOWS ? Arrays.asList("cmd.exe", "/c", command) : Arrays.asList("/bin/sh", "-c", command);
+    }
+
+    /**
+     * Envoie une commande à l’interpréteur.
+     * @param command La commande (sous Windows, une seule ligne)
+     * @return Les sorties de la commande, à lire jusqu’au marqueur
+     * @throws IOException Si l’interpréteur est arrêté
+     */
+    public Execution start(String command) throws IOException {
+        String script;
+        if (WINDOWS) {
+            // %ERRORLEVEL% est développé ligne par ligne : l’écho suit donc bien la commande
+            script = command + " <NUL\r\necho " + marker + " %ERRORLEVEL%\r\necho " + marker + " 1>&2\r\n";
+        } else {
+            // "command eval" : une erreur de syntaxe n’arrête pas l’interpréteur ; stdin reste réservé aux commandes
+            script = "command eval '" + command.replace("'", "'\\''") + "' </dev/null\n"
+                    + "printf '%s %d\\n' '" + marker + "' \"$?\"\nprintf '%s\\n' '" + marker + "' >&2\n";
+        }
+        stdin.write(script);
+        stdin.flush();
+        return new Execution();
+    }
+
+    /**
+     * Interrompt la commande en cours. La suite du script ne doit pas s’exécuter : comme en mode
+     * un processus par commande, l’interpréteur entier est détruit, et la session en reprend un neuf
+     * (répertoire courant et variables perdus).
+     */
+    public void cancel() {
+        close();
+    }
+
+    /**
+     * @return true si l’interpréteur peut exécuter une nouvelle commande
+     */
+    public boolean isUsable() {
+        return !broken && process.isAlive();
+    }
+
+    /**
+     * Détruit l’interpréteur et ses processus.
+     */
+    public void close() {
+        broken = true;
+        StreamingCommand.destroyTree(process);
+    }
+
+    /**
+     * Sorties d’une commande en cours.
+     */
+    public final class Execution {
+        private final MarkedReader out = new MarkedReader(stdout); // stdout jusqu’au marqueur
+        private final MarkedReader err = new MarkedReader(stderr); // stderr jusqu’au marqueur
+
+        private Execution() {
+        }
+
+        /**
+         * @return La sortie standard de la commande, terminée par le marqueur
+         */
+        public MarkedReader stdout() {
+            return out;
+        }
+
+        /**
+         * @return La sortie d’erreur de la commande, terminée par le marqueur
+         */
+        public MarkedReader stderr() {
+            return err;
+        }
+
+        /**
+         * @return true si les deux marqueurs ont été lus : l’interpréteur est prêt pour la commande suivante
+         */
+        public boolean completed() {
+            boolean completed = out.reachedMarker && err.reachedMarker;
+            if (!completed) {
+                broken = true; // Une partie de la sortie n’a pas été lue
+            }
+            return completed;
+        }
+
+        /**
+         * Attend le code de sortie, une fois les deux sorties lues.
+         * @return Le code de sortie de la commande, ou celui de l’interpréteur s’il s’est arrêté ({@code exit})
+         * @throws InterruptedException Si l’attente est interrompue
+         */
+        public int exitCode() throws InterruptedException {
+            if (completed()) {
+                return out.exitCode;
+            }
+            return process.waitFor(); // Le marqueur manque : l’interpréteur s’est arrêté
+        }
+    }
+
+    /**
+     * Lecteur d’une sortie de l’interpréteur, qui s’arrête au marqueur de fin de commande.
+     * Les caractères qui pourraient être le début du marqueur sont retenus jusqu’à ce que la suite
+     * tranche ; fermer ce lecteur ne ferme pas la sortie de l’interpréteur.
+     */
+    public final class MarkedReader extends Reader {
+        private final Reader source; // Sortie de l’interpréteur
+        private final char[] buffer = new char[Protocol.MAX_CHUNK_CHARS + 64]; // Caractères lus, pas encore rendus
+        private int start; // Premier caractère à rendre
+        private int end; // Fin des caractères lus
+        private boolean reachedMarker; // Marqueur lu : fin de la sortie de la commande
+        private boolean endOfStream; // L’interpréteur s’est arrêté
+        private int exitCode = Protocol.NONE; // Code de sortie écrit après le marqueur (stdout)
+
+        private MarkedReader(Reader source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read(char[] target, int offset, int length) throws IOException {
+            while (true) {
+                if (reachedMarker || (endOfStream && start == end)) {
+                    return -1;
+                }
+                int safe = safeLength(); // Caractères qui ne peuvent pas appartenir au marqueur
+                if (safe > 0) {
+                    int count = Math.min(safe, length);
+                    System.arraycopy(buffer, start, target, offset, count);
+                    start += count;
+                    return count;
+                }
+                if (reachedMarker) { // Marqueur trouvé juste au début du tampon
+                    return -1;
+                }
+                fill(); // Rien de rendable : lit la suite
+            }
+        }
+
+        @Override
+        public boolean ready() throws IOException {
+            return !reachedMarker && (safeLength() > 0 || (!endOfStream && source.ready()));
+        }
+
+        /**
+         * Lit la sortie jusqu’au marqueur en ignorant son contenu.
+         * @throws IOException Si la lecture échoue
+         */
+        void skipAll() throws IOException {
+            char[] sink = new char[1024];
+            while (read(sink, 0, sink.length) >= 0) {
+                // Ignoré
+            }
+        }
+
+        @Override
+        public void close() {
+            // La sortie de l’interpréteur sert aux commandes suivantes
+        }
+
+        /**
+         * Cherche le marqueur dans le tampon.
+         * @return Le nombre de caractères rendables depuis start (0 si le marqueur est au début ou s’il faut lire)
+         * @throws IOException Si la lecture de la fin de ligne du marqueur échoue
+         */
+        private int safeLength() throws IOException {
+            int found = indexOfMarker();
+            if (found >= 0) {
+                if (found > start) {
+                    return found - start; // Rend d’abord ce qui précède le marqueur
+                }
+                consumeMarker(); // Marqueur en tête : lit le code de sortie
+                return 0;
+            }
+            if (endOfStream) { // Plus de marqueur possible : tout est rendable
+                return end - start;
+            }
+            // Garde la fin du tampon si elle peut être le début du marqueur
+            int keep = 0;
+            for (int length = Math.min(marker.length() - 1, end - start); length > 0; length--) {
+                if (marker.regionMatches(0, new String(buffer, end - length, length), 0, length)) {
+                    keep = length;
+                    break;
+                }
+            }
+            return end - start - keep;
+        }
+
+        /**
+         * @return La position du marqueur dans le tampon, ou -1
+         */
+        private int indexOfMarker() {
+            outer:
+            for (int i = start; i <= end - marker.length(); i++) {
+                for (int j = 0; j < marker.length(); j++) {
+                    if (buffer[i + j] != marker.charAt(j)) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        /**
+         * Lit le marqueur et la fin de sa ligne (code de sortie sur stdout).
+         * @throws IOException Si la lecture échoue
+         */
+        private void consumeMarker() throws IOException {
+            start += marker.length();
+            StringBuilder rest = new StringBuilder(); // " code" puis la fin de ligne
+            while (true) {
+                while (start < end) {
+                    char c = buffer[start++];
+                    if (c == '\n') {
+                        reachedMarker = true;
+                        try {
+                            exitCode = Integer.parseInt(rest.toString().trim());
+                        } catch (NumberFormatException e) {
+                            exitCode = Protocol.NONE; // Marqueur de stderr, sans code
+                        }
+                        return;
+                    }
+                    rest.append(c);
+                }
+                if (!fill()) { // Arrêt de l’interpréteur au milieu de la ligne
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Lit la suite de la sortie dans le tampon.
+         * @return false si l’interpréteur s’est arrêté
+         * @throws IOException Si la lecture échoue
+         */
+        private boolean fill() throws IOException {
+            if (start > 0) { // Ramène les caractères retenus au début du tampon
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            int count = source.read(buffer, end, buffer.length - end);
+            if (count < 0) {
+                endOfStream = true;
+                return false;
+            }
+            end += count;
+            return true;
+        }
+    }
+}
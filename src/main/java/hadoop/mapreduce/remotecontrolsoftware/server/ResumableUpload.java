@@ -0,0 +1,412 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Checksums;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Upload reprenable d’un fichier : les octets sont écrits à leur position dans un fichier
+ * {@code received_<nom>.part} préalloué, chaque morceau étant vérifié par CRC32C.
+ * <p>
+ * Le fichier peut être découpé en bandes ({@link Protocol#stripeStart(long, int, int)}) envoyées en
+ * parallèle, depuis des connexions différentes : chaque bande est réclamée par un seul écrivain
+ * ({@link Stripe}) et progresse indépendamment des autres.
+ * <p>
+ * Un fichier compagnon {@code .part.meta} retient régulièrement la taille, l’empreinte SHA-256
+ * attendue et, pour chaque bande, la position jusqu’à laquelle les octets sont vérifiés et écrits
+ * sur disque : après une coupure, un nouvel upload du même fichier reprend à ces positions.
+ * Une fois toutes les bandes complètes, le fichier est vérifié par SHA-256 puis renommé
+ * atomiquement en {@code received_<nom>}.
+ */
+public class ResumableUpload {
+    private static final long CHECKPOINT_INTERVAL = 32L * 1024 * 1024; // Octets entre deux points de reprise
+    private static final Map<Path, ResumableUpload> ACTIVE = new HashMap<>(); // Uploads en cours, par fichier
+    private static final ReentrantLock REGISTRY = new ReentrantLock(); // Protège ACTIVE (pris avant lock)
+
+    private final Path target; // Fichier final
+    private final Path part; // Fichier en cours de réception
+    private final Path meta; // Point de reprise
+    private final long size; // Taille annoncée
+    private final String sha256; // Empreinte SHA-256 annoncée (hexadécimal)
+    private final int stripeCount; // Nombre de bandes
+    private final long[] verified; // Position atteinte par chaque bande (octets vérifiés et écrits)
+    private final boolean[] claimed; // Bandes ayant un écrivain
+    private final boolean[] done; // Bandes complètes dont l’écrivain attend la vérification finale
+    private final ReentrantLock lock = new ReentrantLock(); // Protège l’état partagé par les écrivains
+    private final CompletableFuture<Void> completion = new CompletableFuture<>(); // Vérification finale
+    private FileChannel file; // Fichier .part ouvert
+    private int writers; // Bandes réclamées
+    private int completed; // Bandes complètes
+    private boolean committing; // Vérification finale commencée
+    private long unsaved; // Octets écrits depuis le dernier point de reprise
+
+    /**
+     * Constructeur, à travers {@link #open(String, long, String, int, int)}.
+     */
+    private ResumableUpload(Path target, long size, String sha256, int stripeCount) {
+        this.target = target;
+        this.part = Paths.get(target + ".part");
+        this.meta = Paths.get(target + ".part.meta");
+        this.size = size;
+        this.sha256 = sha256;
+        this.stripeCount = stripeCount;
+        this.verified = new long[stripeCount];
+        this.claimed = new boolean[stripeCount];
+        this.done = new boolean[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            verified[i] = Protocol.stripeStart(size, stripeCount, i); // Rien de reçu
+        }
+    }
+
+    /**
+     * Ouvre (ou reprend) l’upload d’un fichier et réclame l’une de ses bandes.
+     * Les autres bandes du même fichier peuvent être réclamées depuis d’autres connexions,
+     * avec la même taille, la même empreinte et le même découpage.
+     * @param name Nom du fichier (le chemin éventuel est ignoré)
+     * @param size Taille annoncée
+     * @param sha256 Empreinte SHA-256 annoncée, en hexadécimal
+     * @param stripes Nombre de bandes du découpage
+     * @param index La bande réclamée
+     * @return La bande, positionnée à l’octet où le client doit reprendre ({@link Stripe#offset()})
+     * @throws IOException Si la requête est invalide, si le fichier ne peut pas être préparé
+     * ou si la bande a déjà un écrivain
+     */
+    public static Stripe open(String name, long size, String sha256, int stripes, int index) throws IOException {
+        Path fileName = Paths.get(name).getFileName(); // Reste dans le répertoire du serveur
+        if (fileName == null || fileName.toString().isEmpty() || size < 0 || sha256.length() != 64
+                || stripes < 1 || stripes > Protocol.MAX_STRIPES || index < 0 || index >= stripes) {
+            throw new IOException("Requête d’upload invalide");
+        }
+        Path target = Paths.get("received_" + fileName);
+        REGISTRY.lock();
+        try {
+            ResumableUpload upload = ACTIVE.get(target);
+            if (upload == null) { // Premier écrivain : reprend ou crée le fichier
+                upload = new ResumableUpload(target, size, sha256.toLowerCase(), stripes);
+                upload.prepare();
+                ACTIVE.put(target, upload);
+            } else if (upload.size != size || !upload.sha256.equalsIgnoreCase(sha256) || upload.stripeCount != stripes) {
+                throw new IOException("Upload déjà en cours pour " + fileName);
+            }
+            return upload.claim(index);
+        } finally {
+            REGISTRY.unlock();
+        }
+    }
+
+    /**
+     * Reprend le point de reprise s’il correspond au même fichier et au même découpage,
+     * sinon repart de zéro, puis préalloue le fichier .part.
+     * @throws IOException Si le fichier ne peut pas être ouvert
+     */
+    private void prepare() throws IOException {
+        Properties checkpoint = new Properties();
+        if (Files.exists(meta) && Files.exists(part)) {
+            try (InputStream input = Files.newInputStream(meta)) {
+                checkpoint.load(input);
+            }
+        }
+        boolean resume = String.valueOf(size).equals(checkpoint.getProperty("size"))
+                && sha256.equals(checkpoint.getProperty("sha256"))
+                && String.valueOf(stripeCount).equals(checkpoint.getProperty("stripes"));
+        if (resume) { // Même fichier, même découpage : reprise de chaque bande
+            for (int i = 0; i < stripeCount; i++) {
+                long position = Long.parseLong(checkpoint.getProperty("verified." + i, "-1"));
+                if (position >= verified[i] && position <= Protocol.stripeStart(size, stripeCount, i + 1)) {
+                    verified[i] = position;
+                }
+            }
+        }
+        file = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (!resume) {
+            file.truncate(0); // Contenu d’un autre fichier
+        }
+        if (size > 0 && file.size() < size) {
+            file.write(ByteBuffer.allocate(1), size - 1); // Préalloue : les écritures suivantes restent en place
+        }
+        writeCheckpoint();
+    }
+
+    /**
+     * Réserve une bande pour un écrivain.
+     * @param index La bande
+     * @return La bande
+     * @throws IOException Si la bande a déjà un écrivain
+     */
+    private Stripe claim(int index) throws IOException {
+        lock.lock();
+        try {
+            if (claimed[index] || committing) {
+                throw new IOException("Bande " + index + " de " + target.getFileName() + " déjà en cours d’envoi");
+            }
+            claimed[index] = true;
+            writers++;
+            return new Stripe(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return La taille annoncée
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return Le nombre de bandes du découpage
+     */
+    public int stripeCount() {
+        return stripeCount;
+    }
+
+    /**
+     * @return Le nom du fichier final
+     */
+    public Path target() {
+        return target;
+    }
+
+    /**
+     * @return Terminé quand le fichier complet a été vérifié et publié (ou a échoué)
+     */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    /**
+     * Vérifie l’empreinte du fichier complet puis le renomme en fichier final.
+     * Appelé une seule fois, par l’écrivain qui a terminé la dernière bande ({@link Stripe#complete()}).
+     * Long pour un gros fichier : à appeler hors de la boucle d’événements.
+     * @throws IOException Si l’empreinte ne correspond pas (l’upload est alors effacé) ou si le renommage échoue
+     */
+    public void commit() throws IOException {
+        try {
+            file.force(false);
+            String actual = Checksums.sha256(file);
+            file.close();
+            if (!sha256.equals(actual)) {
+                Files.deleteIfExists(part); // Inutile de reprendre un fichier faux
+                Files.deleteIfExists(meta);
+                throw new IOException("Empreinte SHA-256 différente : " + actual);
+            }
+            try {
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.deleteIfExists(meta);
+            completion.complete(null);
+        } catch (IOException e) {
+            completion.completeExceptionally(e); // Prévient les écrivains des autres bandes
+            throw e;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Écrit les octets vérifiés sur disque puis retient leur position (verrou tenu).
+     * @throws IOException Si l’écriture échoue
+     */
+    private void checkpoint() throws IOException {
+        file.force(false); // Un point de reprise ne doit désigner que des octets sur disque
+        unsaved = 0;
+        writeCheckpoint();
+    }
+
+    /**
+     * Remplace atomiquement le fichier de reprise.
+     * @throws IOException Si l’écriture échoue
+     */
+    private void writeCheckpoint() throws IOException {
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("size", String.valueOf(size));
+        checkpoint.setProperty("sha256", sha256);
+        checkpoint.setProperty("stripes", String.valueOf(stripeCount));
+        for (int i = 0; i < stripeCount; i++) {
+            checkpoint.setProperty("verified." + i, String.valueOf(verified[i]));
+        }
+        Path temporary = Paths.get(meta + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temporary)) {
+            checkpoint.store(output, "Point de reprise de " + target.getFileName());
+        }
+        Files.move(temporary, meta, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Libère le fichier pour un autre upload.
+     */
+    private void release() {
+        REGISTRY.lock();
+        try {
+            ACTIVE.remove(target, this);
+        } finally {
+            REGISTRY.unlock();
+        }
+    }
+
+    /**
+     * Bande d’un upload, réservée à un écrivain : les octets de {@link #start()} à {@link #end()}.
+     */
+    public final class Stripe {
+        private final int index; // Numéro de la bande
+        private final long start; // Premier octet de la bande
+        private final long end; // Octet suivant le dernier de la bande
+        private boolean released; // Écrivain parti (bande terminée ou suspendue)
+
+        private Stripe(int index) {
+            this.index = index;
+            this.start = Protocol.stripeStart(size, stripeCount, index);
+            this.end = Protocol.stripeStart(size, stripeCount, index + 1);
+        }
+
+        /**
+         * @return L’upload auquel appartient la bande
+         */
+        public ResumableUpload upload() {
+            return ResumableUpload.this;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public long start() {
+            return start;
+        }
+
+        public long end() {
+            return end;
+        }
+
+        /**
+         * @return L’octet à partir duquel le client doit envoyer la bande
+         */
+        public long offset() {
+            lock.lock();
+            try {
+                return verified[index];
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Vérifie un morceau et l’écrit à sa position. Les bandes d’un même fichier peuvent écrire en même temps.
+         * @param position La position du morceau dans le fichier
+         * @param expectedCrc La somme CRC32C annoncée pour le morceau
+         * @param data Les octets du morceau (consommés)
+         * @throws IOException Si le morceau est corrompu, hors séquence, ou ne peut pas être écrit
+         */
+        public void write(long position, int expectedCrc, ByteBuffer data) throws IOException {
+            int length = data.remaining();
+            long expected = offset();
+            if (position != expected || position + length > end) {
+                throw new IOException("Morceau inattendu à la position " + position + " (attendu " + expected + ")");
+            }
+            if (Checksums.crc32c(data) != expectedCrc) {
+                throw new IOException("Somme de contrôle invalide à la position " + position);
+            }
+            while (data.hasRemaining()) {
+                position += file.write(data, position); // Écriture positionnée, sans déplacer le curseur du fichier
+            }
+            lock.lock();
+            try {
+                verified[index] += length;
+                unsaved += length;
+                if (unsaved >= CHECKPOINT_INTERVAL) {
+                    checkpoint();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return true si tous les octets de la bande ont été reçus
+         */
+        public boolean isComplete() {
+            return offset() == end;
+        }
+
+        /**
+         * Déclare la bande complète. L’écrivain attend ensuite {@link ResumableUpload#completion()}.
+         * @return true si c’était la dernière bande : l’appelant doit alors lancer {@link ResumableUpload#commit()}
+         * @throws IOException Si la bande n’est pas complète
+         */
+        public boolean complete() throws IOException {
+            lock.lock();
+            try {
+                if (verified[index] != end) {
+                    throw new IOException("Fichier incomplet, l’envoi pourra reprendre.");
+                }
+                if (!done[index]) {
+                    done[index] = true;
+                    completed++;
+                }
+                if (completed == stripeCount && !committing) {
+                    committing = true; // Plus aucune bande ne peut être réclamée ni suspendue
+                    return true;
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Interrompt la bande en gardant un point de reprise sur ce qui est déjà vérifié.
+         * Le dernier écrivain à partir ferme le fichier ; sans effet une fois la vérification finale commencée.
+         */
+        public void suspend() {
+            REGISTRY.lock();
+            lock.lock();
+            try {
+                if (released || committing) {
+                    return;
+                }
+                released = true;
+                claimed[index] = false;
+                if (done[index]) { // La bande devra être confirmée par son prochain écrivain
+                    done[index] = false;
+                    completed--;
+                }
+                writers--;
+                try {
+                    checkpoint();
+                } catch (IOException ignored) {
+                    // Le point de reprise précédent reste valable
+                }
+                if (writers == 0) { // Plus personne : le fichier attend une reprise
+                    try {
+                        file.close();
+                    } catch (IOException ignored) {
+                        // Rien à sauver de plus
+                    }
+                    ACTIVE.remove(target, ResumableUpload.this);
+                }
+            } finally {
+                lock.unlock();
+                REGISTRY.unlock();
+            }
+        }
+    }
+}
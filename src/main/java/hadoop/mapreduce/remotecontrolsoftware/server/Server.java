@@ -1,44 +1,81 @@
 package hadoop.mapreduce.remotecontrolsoftware.server;
 
+import javafx.animation.AnimationTimer;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
-import javafx.scene.control.TextArea;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
-import javax.net.ssl.SSLServerSocket;
-import javax.net.ssl.SSLServerSocketFactory;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.Socket;
-import java.time.LocalDateTime;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.io.OutputStreamWriter;
-import java.io.FileOutputStream;
+import java.util.function.Function;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
  * Classe principale du serveur pour le logiciel de contrôle à distance.
- * Gère une interface graphique JavaFX, écoute les connexions clients via SSL,
- * et journalise les événements dans une interface et un fichier.
+ * Interface graphique JavaFX au-dessus de {@link ServerCore} : démarre et arrête le serveur,
+ * affiche le journal et les sessions authentifiées en s’abonnant à ses événements.
  */
-public class Server extends Application {
-    private TextArea logArea; // Zone de texte pour afficher les logs dans l'interface
-    private ListView<String> clientListView; // Liste graphique des clients connectés
-    private SSLServerSocket serverSocket; // Socket sécurisé pour écouter les connexions
-    private boolean running = false; // Indicateur d'état du serveur (démarré ou arrêté)
-    private final Set<String> connectedClients = new HashSet<>(); // Ensemble des adresses IP des clients connectés
-    private ObservableList<String> clientObservableList; // Liste observable pour l'interface graphique
-    private PrintWriter logFileWriter; // Writer pour sauvegarder les logs dans un fichier
+public class Server extends Application implements ServerListener {
+    private static final int LOG_LINES = Math.max(100, Integer.getInteger("rcs.ui.log.lines", 10000)); // Entrées affichées au plus
+    private static final DateTimeFormatter ACTIVITY = DateTimeFormatter.ofPattern("HH:mm:ss"); // Heure de dernière activité
+
+    private final LogModel logModel = new LogModel(LOG_LINES); // Dernières entrées du journal, filtrées hors du thread JavaFX
+    private ListView<LogModel.Entry> logView; // Liste virtualisée : seules les lignes visibles sont dessinées
+    private ObservableList<LogModel.Entry> logItems; // Entrées affichées (filtrées)
+    private CheckBox autoScroll; // Suit les dernières entrées
+    private ServerCore core; // Cœur du serveur (connexions, authentification, journal)
+    private ObservableList<SessionRegistry.Snapshot> sessionItems; // Sessions authentifiées affichées, une ligne par session
+    private Label statsLabel; // Résumé des sessions actives et des threads
+    private Button startButton; // Bouton pour démarrer le serveur
+    private Button stopButton; // Bouton pour arrêter le serveur
+    private final AtomicBoolean logUpdateScheduled = new AtomicBoolean(); // Minuteur d’affichage démarré
+    private final ExecutorService logFilter = Executors.newSingleThreadExecutor(task -> { // Filtrage hors du thread JavaFX
+        Thread thread = new Thread(task, "rcs-log-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Applique les changements du journal au plus une fois par image, puis s’arrête quand il n’y en a plus
+    private final AnimationTimer logTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (!applyLogUpdates()) {
+                stop();
+                logUpdateScheduled.set(false);
+                if (logModel.hasUpdates()) { // Entrée arrivée pendant l’arrêt
+                    scheduleLogUpdate();
+                }
+            }
+        }
+    };
 
     /**
      * Méthode principale de lancement de l'application JavaFX.
@@ -46,13 +83,8 @@ public class Server extends Application {
      */
     @Override
     public void start(Stage primaryStage) {
-        try {
-            // Forcer UTF-8 pour le fichier de logs
-            logFileWriter = new PrintWriter(new OutputStreamWriter(new FileOutputStream("server_log.txt", true), "UTF-8"), true);
-        } catch (IOException e) {
-            // Affiche une erreur en console si le fichier ne peut pas être créé
-            System.err.println("Erreur lors de l’initialisation du fichier de log : " + e.getMessage());
-        }
+        core = new ServerCore(ServerConfig.fromSystemProperties()); // Cœur configuré par les propriétés système
+        core.addListener(this); // Reçoit les événements pour l’affichage
 
         // Crée un label pour le titre de l'interface
         Label titleLabel = new Label("Serveur de Contrôle à Distance");
@@ -60,26 +92,24 @@ public class Server extends Application {
         titleLabel.setStyle("-fx-font-size: 20px; -fx-text-fill: #4a90e2;");
 
         // Crée le bouton pour démarrer le serveur
-        Button startButton = new Button("Démarrer");
+        startButton = new Button("Démarrer");
         // Crée le bouton pour arrêter le serveur, désactivé par défaut
-        Button stopButton = new Button("Arrêter");
+        stopButton = new Button("Arrêter");
         stopButton.setDisable(true); // Désactive le bouton "Arrêter" au démarrage
 
         // Définit l’action du bouton "Démarrer"
         startButton.setOnAction(event -> {
-            if (!running) { // Vérifie si le serveur n’est pas déjà en marche
-                new Thread(this::startServer).start(); // Lance le serveur dans un thread séparé
+            if (!core.isRunning()) { // Vérifie si le serveur n’est pas déjà en marche
                 startButton.setDisable(true); // Désactive "Démarrer" après clic
                 stopButton.setDisable(false); // Active "Arrêter"
+                new Thread(core::start).start(); // Ouvre le port dans un thread séparé
             }
         });
 
         // Définit l’action du bouton "Arrêter"
         stopButton.setOnAction(event -> {
-            if (running) { // Vérifie si le serveur est en marche
-                stopServer(); // Arrête le serveur
-                startButton.setDisable(false); // Réactive "Démarrer"
-                stopButton.setDisable(true); // Désactive "Arrêter"
+            if (core.isRunning()) { // Vérifie si le serveur est en marche
+                core.stop(); // Arrête le serveur
             }
         });
 
@@ -89,34 +119,72 @@ public class Server extends Application {
         // Applique un style CSS à la barre (fond blanc, bordure inférieure)
         controlBar.setStyle("-fx-background-color: #ffffff; -fx-border-color: #d3d3d3; -fx-border-width: 0 0 1 0;");
 
-        // Crée un label pour la liste des clients
+        // Crée un label pour la table des sessions
         Label clientsLabel = new Label("Clients Connectés");
-        clientListView = new ListView<>(); // Crée la liste graphique des clients
-        clientObservableList = FXCollections.observableArrayList(); // Liste observable liée à l’interface
-        clientListView.setItems(clientObservableList); // Associe la liste observable à la ListView
-        clientListView.setPrefWidth(200); // Définit une largeur fixe de 200px
-        // Crée un conteneur vertical pour le label et la liste avec un espacement de 10px
-        VBox clientsPane = new VBox(10, clientsLabel, clientListView);
+        sessionItems = FXCollections.observableArrayList(); // Mise à jour par différences (ajouts, changements, retraits)
+        TableView<SessionRegistry.Snapshot> sessionTable = new TableView<>(sessionItems); // Lignes virtualisées
+        sessionTable.getColumns().add(column("Client", 110, SessionRegistry.Snapshot::address));
+        sessionTable.getColumns().add(column("Utilisateur", 80, SessionRegistry.Snapshot::login));
+        sessionTable.getColumns().add(column("Protocole", 70, SessionRegistry.Snapshot::protocol));
+        sessionTable.getColumns().add(column("Opérations", 75, SessionRegistry.Snapshot::commands));
+        sessionTable.getColumns().add(column("En cours", 60, SessionRegistry.Snapshot::inFlight));
+        sessionTable.getColumns().add(column("Reçu", 70, snapshot -> formatBytes(snapshot.bytesIn())));
+        sessionTable.getColumns().add(column("Envoyé", 70, snapshot -> formatBytes(snapshot.bytesOut())));
+        sessionTable.getColumns().add(column("Activité", 70, snapshot -> LocalTime.ofInstant(
+                Instant.ofEpochMilli(snapshot.lastActivity()), ZoneId.systemDefault()).format(ACTIVITY)));
+        sessionTable.setPlaceholder(new Label("Aucun client connecté"));
+        sessionTable.setPrefWidth(620); // Assez large pour toutes les colonnes
+        // Crée un conteneur vertical pour le label et la table avec un espacement de 10px
+        VBox clientsPane = new VBox(10, clientsLabel, sessionTable);
         clientsPane.setPadding(new Insets(10)); // Ajoute un padding de 10px
 
         // Crée un label pour la zone de logs
         Label logLabel = new Label("Journal des Événements");
-        logArea = new TextArea(); // Crée la zone de texte pour les logs
-        logArea.setEditable(false); // Rend la zone non éditable
-        logArea.setPrefHeight(300); // Définit une hauteur fixe de 300px
-        // Crée un conteneur vertical pour le label et la zone de logs avec un espacement de 10px
-        VBox logPane = new VBox(10, logLabel, logArea);
+        logItems = FXCollections.observableArrayList(); // Au plus LOG_LINES entrées
+        logView = new ListView<>(logItems); // Seules les cellules visibles existent
+        logView.setPrefHeight(300); // Définit une hauteur fixe de 300px
+        logView.setCellFactory(view -> new LogCell()); // Couleur selon la gravité
+        // Filtres : gravité minimale et client, appliqués par une tâche de fond
+        ComboBox<LogModel.Level> levelFilter = new ComboBox<>(FXCollections.observableArrayList(LogModel.Level.values()));
+        levelFilter.setValue(LogModel.Level.INFO);
+        TextField clientFilter = new TextField();
+        clientFilter.setPromptText("Client (IP)");
+        clientFilter.setPrefWidth(120);
+        Runnable refilter = () -> {
+            LogModel.Level level = levelFilter.getValue();
+            String client = clientFilter.getText();
+            logFilter.execute(() -> {
+                logModel.filter(level, client); // Parcourt l’anneau hors du thread JavaFX
+                scheduleLogUpdate();
+            });
+        };
+        levelFilter.setOnAction(event -> refilter.run());
+        clientFilter.textProperty().addListener((observable, before, after) -> refilter.run());
+        autoScroll = new CheckBox("Suivre");
+        autoScroll.setSelected(true);
+        HBox logFilters = new HBox(10, levelFilter, clientFilter, autoScroll);
+        // Crée un conteneur vertical pour le label, les filtres et la liste de logs avec un espacement de 10px
+        VBox logPane = new VBox(10, logLabel, logFilters, logView);
         logPane.setPadding(new Insets(10)); // Ajoute un padding de 10px
         logPane.setPrefWidth(400); // Définit une largeur fixe de 400px
 
         // Crée une mise en page horizontale pour les logs et la liste des clients
         HBox mainLayout = new HBox(15, logPane, clientsPane);
         mainLayout.setPadding(new Insets(15)); // Ajoute un padding de 15px
-        // Crée une mise en page verticale globale avec titre, barre et contenu principal
-        VBox root = new VBox(15, titleLabel, controlBar, mainLayout);
+        // Crée un label pour les statistiques d’exécution (sessions et threads)
+        statsLabel = new Label("Serveur arrêté.");
+        statsLabel.setStyle("-fx-font-size: 12px; -fx-font-weight: normal;");
+        statsLabel.setPadding(new Insets(0, 15, 0, 15)); // Aligne le label avec le contenu
+        // Rafraîchit les statistiques chaque seconde
+        Timeline statsRefresh = new Timeline(new KeyFrame(Duration.seconds(1), event -> refreshStats()));
+        statsRefresh.setCycleCount(Timeline.INDEFINITE);
+        statsRefresh.play();
+
+        // Crée une mise en page verticale globale avec titre, barre, contenu principal et statistiques
+        VBox root = new VBox(15, titleLabel, controlBar, mainLayout, statsLabel);
 
-        // Crée la scène principale avec une taille de 700x500px
-        Scene scene = new Scene(root, 700, 500);
+        // Crée la scène principale avec une taille de 1100x560px (journal et table des sessions)
+        Scene scene = new Scene(root, 1100, 560);
         // Charge le fichier CSS pour styliser l’interface
         scene.getStylesheets().add(getClass().getResource("/styles.css").toExternalForm());
         primaryStage.setTitle("Serveur de Contrôle à Distance"); // Définit le titre de la fenêtre
@@ -125,108 +193,173 @@ public class Server extends Application {
     }
 
     /**
-     * Démarre le serveur SSL pour écouter les connexions clients.
-     * Fonctionne dans un thread séparé pour ne pas bloquer l’interface.
+     * Met à jour le label des statistiques d’exécution (thread JavaFX).
      */
-    private void startServer() {
-        try {
-            // Définit le keystore SSL pour sécuriser les connexions
-            System.setProperty("javax.net.ssl.keyStore", "server.keystore");
-            System.setProperty("javax.net.ssl.keyStorePassword", "password");
-            // Récupère une factory pour créer des sockets SSL
-            SSLServerSocketFactory factory = (SSLServerSocketFactory) SSLServerSocketFactory.getDefault();
-            // Crée un socket serveur SSL sur le port 12345
-            serverSocket = (SSLServerSocket) factory.createServerSocket(12345);
-
-            running = true; // Indique que le serveur est actif
-            log("Serveur SSL démarré sur le port 12345. En attente de connexions sécurisées...");
-
-            while (running) { // Boucle tant que le serveur est actif
-                Socket clientSocket = serverSocket.accept(); // Accepte une connexion client
-                ClientHandler clientHandler = new ClientHandler(clientSocket, this); // Crée un gestionnaire pour le client
-                new Thread(clientHandler).start(); // Lance un thread pour gérer ce client
-            }
-        } catch (IOException e) {
-            if (running) { // Si erreur et serveur actif, log l’erreur
-                log("Erreur serveur SSL : " + e.getMessage());
-            }
+    private void refreshStats() {
+        statsLabel.setText(core.stats());
+    }
+
+    /**
+     * Ajoute une entrée au journal graphique (thread du journal).
+     * Le filtre est appliqué ici ; l’affichage se fait au plus une fois par image.
+     * @param logEntry L’entrée horodatée
+     */
+    @Override
+    public void onLog(String logEntry) {
+        if (logModel.add(logEntry)) { // L’entrée passe le filtre courant
+            scheduleLogUpdate();
+        }
+    }
+
+    /**
+     * Démarre le minuteur d’affichage s’il est arrêté.
+     */
+    private void scheduleLogUpdate() {
+        if (logUpdateScheduled.compareAndSet(false, true)) { // Un seul démarrage pour une rafale
+            Platform.runLater(logTimer::start);
         }
     }
 
     /**
-     * Arrête le serveur et ferme les connexions.
+     * Affiche les changements du journal depuis l’image précédente (thread JavaFX).
+     * @return false s’il n’y avait rien à afficher
      */
-    private void stopServer() {
-        running = false; // Indique que le serveur doit s’arrêter
-        try {
-            if (serverSocket != null && !serverSocket.isClosed()) { // Vérifie si le socket existe et est ouvert
-                serverSocket.close(); // Ferme le socket serveur
+    private boolean applyLogUpdates() {
+        List<LogModel.Entry> appended = new ArrayList<>();
+        List<LogModel.Entry> replacement = logModel.drain(appended);
+        if (replacement == null && appended.isEmpty()) {
+            return false;
+        }
+        if (replacement != null) { // Filtre changé
+            logItems.setAll(replacement);
+        }
+        if (appended.size() >= LOG_LINES) { // Rafale plus longue que la liste : seules les dernières restent
+            logItems.setAll(appended.subList(appended.size() - LOG_LINES, appended.size()));
+        } else {
+            int overflow = logItems.size() + appended.size() - LOG_LINES;
+            if (overflow > 0) {
+                logItems.remove(0, overflow); // Oublie les plus anciennes
             }
-            log("Serveur arrêté."); // Log l’arrêt
-            clearClients(); // Vide la liste des clients
-        } catch (IOException e) {
-            log("Erreur lors de la fermeture : " + e.getMessage()); // Log une éventuelle erreur
+            logItems.addAll(appended); // Une seule notification pour toute l’image
         }
+        if (autoScroll.isSelected() && !logItems.isEmpty()) {
+            logView.scrollTo(logItems.size() - 1);
+        }
+        return true;
     }
 
     /**
-     * Ajoute un message au journal graphique et au fichier de logs.
-     * @param message Le message à journaliser
+     * Cellule du journal, colorée selon la gravité de l’entrée.
      */
-    public void log(String message) {
-        // Crée un timestamp au format "année-mois-jour heure:minute:seconde"
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-        String logEntry = "[" + timestamp + "] " + message; // Formate le message avec timestamp
-        // Ajoute le message à l’interface graphique (thread-safe via Platform.runLater)
-        javafx.application.Platform.runLater(() -> logArea.appendText(logEntry + "\n"));
-        if (logFileWriter != null) { // Si le writer existe
-            logFileWriter.println(logEntry); // Écrit dans le fichier de logs
+    private static final class LogCell extends ListCell<LogModel.Entry> {
+        LogCell() {
+            getStyleClass().add("log-cell"); // Lignes compactes
+        }
+
+        @Override
+        protected void updateItem(LogModel.Entry entry, boolean empty) {
+            super.updateItem(entry, empty);
+            getStyleClass().removeAll("log-warning", "log-error");
+            if (empty || entry == null) {
+                setText(null);
+                return;
+            }
+            setText(entry.text());
+            if (entry.level() == LogModel.Level.ERREUR) {
+                getStyleClass().add("log-error");
+            } else if (entry.level() == LogModel.Level.AVERTISSEMENT) {
+                getStyleClass().add("log-warning");
+            }
         }
     }
 
     /**
-     * Ajoute un client à la liste des connectés.
-     * @param clientAddress L’adresse IP du client
+     * Applique les changements des sessions, reçus au plus une fois par intervalle de bilan.
+     * @param changes Les ajouts, mises à jour et retraits depuis le bilan précédent
      */
-    public void addClient(String clientAddress) {
-        // Met à jour la liste dans le thread JavaFX pour éviter les conflits
-        javafx.application.Platform.runLater(() -> {
-            connectedClients.add(clientAddress); // Ajoute l’IP à l’ensemble
-            clientObservableList.setAll(connectedClients); // Met à jour la liste graphique
-        });
+    @Override
+    public void onSessionsChanged(SessionRegistry.Changes changes) {
+        Platform.runLater(() -> applySessionChanges(changes)); // Un seul passage JavaFX par bilan
     }
 
     /**
-     * Supprime un client de la liste des connectés.
-     * @param clientAddress L’adresse IP du client
+     * Met à jour la table des sessions sans la reconstruire (thread JavaFX).
+     * @param changes Les changements à appliquer
      */
-    public void removeClient(String clientAddress) {
-        // Met à jour la liste dans le thread JavaFX
-        javafx.application.Platform.runLater(() -> {
-            connectedClients.remove(clientAddress); // Supprime l’IP de l’ensemble
-            clientObservableList.setAll(connectedClients); // Met à jour la liste graphique
-        });
+    private void applySessionChanges(SessionRegistry.Changes changes) {
+        if (!changes.removed().isEmpty()) {
+            Set<Long> removed = new HashSet<>(changes.removed());
+            sessionItems.removeIf(snapshot -> removed.contains(snapshot.id())); // Une seule notification
+        }
+        if (!changes.updated().isEmpty()) {
+            Map<Long, Integer> rows = new HashMap<>(); // Ligne de chaque session affichée
+            for (int i = 0; i < sessionItems.size(); i++) {
+                rows.put(sessionItems.get(i).id(), i);
+            }
+            if (changes.updated().size() > sessionItems.size() / 4) { // Beaucoup de changements : un seul remplacement
+                List<SessionRegistry.Snapshot> replaced = new ArrayList<>(sessionItems);
+                for (SessionRegistry.Snapshot snapshot : changes.updated()) {
+                    Integer row = rows.get(snapshot.id());
+                    if (row != null) { // Sinon la session a déjà disparu de la table
+                        replaced.set(row, snapshot);
+                    }
+                }
+                sessionItems.setAll(replaced);
+            } else {
+                for (SessionRegistry.Snapshot snapshot : changes.updated()) {
+                    Integer row = rows.get(snapshot.id());
+                    if (row != null) {
+                        sessionItems.set(row, snapshot); // Seule cette ligne est redessinée
+                    }
+                }
+            }
+        }
+        sessionItems.addAll(changes.added());
     }
 
     /**
-     * Vide la liste des clients connectés.
+     * Crée une colonne de la table des sessions.
+     * @param title Le titre de la colonne
+     * @param width La largeur souhaitée
+     * @param value Extrait la valeur affichée d’une session
+     * @return La colonne
      */
-    private void clearClients() {
-        // Vide la liste dans le thread JavaFX
-        javafx.application.Platform.runLater(() -> {
-            connectedClients.clear(); // Supprime tous les clients de l’ensemble
-            clientObservableList.clear(); // Vide la liste graphique
-        });
+    private static TableColumn<SessionRegistry.Snapshot, Object> column(String title, double width,
+                                                                       Function<SessionRegistry.Snapshot, Object> value) {
+        TableColumn<SessionRegistry.Snapshot, Object> column = new TableColumn<>(title);
+        column.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(value.apply(cell.getValue())));
+        column.setPrefWidth(width);
+        return column;
+    }
+
+    /**
+     * @param bytes Un nombre d’octets
+     * @return Le nombre lisible, en o, Ko, Mo ou Go
+     */
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " o";
+        }
+        String[] units = {"Ko", "Mo", "Go", "To"};
+        double value = bytes / 1024.0;
+        int unit = 0;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format("%.1f %s", value, units[unit]);
     }
 
     /**
-     * Vérifie les identifiants d’authentification.
-     * @param login Login saisi
-     * @param password Mot de passe saisi
-     * @return true si authentification réussie, false sinon
+     * Réactive "Démarrer" quand le serveur s’arrête.
+     * Les sessions encore ouvertes restent affichées jusqu’à leur fermeture.
      */
-    public boolean authenticate(String login, String password) {
-        return "bouba".equals(login) && "passer".equals(password); // Vérifie login/password fixes
+    @Override
+    public void onServerStopped() {
+        Platform.runLater(() -> {
+            startButton.setDisable(false); // Réactive "Démarrer"
+            stopButton.setDisable(true); // Désactive "Arrêter"
+        });
     }
 
     /**
@@ -235,14 +368,15 @@ public class Server extends Application {
      */
     @Override
     public void stop() {
-        stopServer(); // Arrête le serveur
-        if (logFileWriter != null) { // Si le writer existe
-            logFileWriter.close(); // Ferme le fichier de logs
-        }
+        core.removeListener(this); // La fenêtre est fermée : plus rien à afficher
+        logTimer.stop();
+        logFilter.shutdownNow();
+        core.close(); // Arrête le serveur et ferme le fichier de logs
     }
 
     /**
      * Point d’entrée de l’application JavaFX.
+     * Pour un serveur sans interface graphique, utiliser {@link ServerCore#main(String[])}.
      * @param args Arguments de la ligne de commande
      */
     public static void main(String[] args) {
@@ -0,0 +1,745 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Paramètres de démarrage du serveur.
+ * Lus depuis les propriétés système (par exemple {@code -Drcs.io=nio}) pour pouvoir
+ * être choisis au lancement sans modifier l’interface graphique.
+ * Les valeurs par défaut reproduisent le comportement historique.
+ */
+public class ServerConfig {
+
+    /**
+     * Modèle d’entrées/sorties utilisé pour servir les clients.
+     */
+    public enum IoMode {
+        BLOCKING, // Un thread et un socket bloquant par client (historique)
+        NIO // Quelques boucles d’événements NIO + SSLEngine pour tous les clients
+    }
+
+    /**
+     * Exécution des commandes système.
+     */
+    public enum ShellMode {
+        FORK, // Un processus cmd.exe (ou /bin/sh) par commande (historique)
+        PERSISTENT // Un interpréteur par session, alimenté par son entrée standard
+    }
+
+    private int port = 12345; // Port d’écoute du serveur
+    private IoMode ioMode = IoMode.BLOCKING; // Modèle d’entrées/sorties
+    private int eventLoops = Runtime.getRuntime().availableProcessors(); // Nombre de boucles d’événements en mode NIO
+    private SessionExecutor.Mode executionMode = SessionExecutor.Mode.PLATFORM; // Stratégie d’exécution des sessions
+    private int executionThreads = 200; // Threads du pool borné
+    private int executionQueue = 1000; // File d’attente du pool borné
+    private Path logFile = Paths.get("server_log.txt"); // Fichier courant du journal
+    private int logBuffer = 8192; // Entrées en attente d’écriture avant perte
+    private AsyncLogger.FlushPolicy logFlush = AsyncLogger.FlushPolicy.IMMEDIATE; // Politique d’écriture du journal
+    private long logFlushMillis = 200; // Intervalle d’écriture du journal (politique INTERVAL)
+    private long logSegmentBytes = 10L * 1024 * 1024; // Taille maximale d’un segment du journal
+    private long logSegmentMinutes = 24 * 60; // Âge maximal d’un segment du journal
+    private int logKeptSegments = 10; // Segments archivés conservés
+    private long sessionUpdateMillis = 250; // Intervalle entre deux bilans des sessions pour les abonnés
+    private ShellMode shellMode = ShellMode.FORK; // Exécution des commandes système
+    private int shellPool = 2; // Interpréteurs lancés à l’avance (mode PERSISTENT)
+    private int batchParallelism = 4; // Commandes d’un lot exécutées en même temps par une session
+    private int uploadWriters = 4; // Fichiers d’un upload de dossier écrits en même temps
+    private int maxCommands = 32; // Commandes système en cours sur la machine au plus
+    private int sessionCommands = 4; // Commandes système en cours par session au plus
+    private int commandQueue = 256; // Commandes en attente d’une place au plus
+    private int sessionQueue = 64; // Commandes en attente d’une place par session au plus
+    private long commandTimeoutMillis = 10 * 60 * 1000; // Durée maximale d’une commande système (0 : illimitée)
+    private int metricsPort = 12346; // Port local du point d’accès aux mesures (0 : désactivé)
+    private Path keystore = Paths.get("server.keystore"); // Certificat et clé privée du serveur
+    private String keystorePassword = "password"; // Mot de passe du keystore
+    private int tlsSessionCache = 20_000; // Sessions TLS gardées pour la reprise
+    private int tlsSessionSeconds = 24 * 60 * 60; // Durée de validité d’une session TLS pour la reprise
+    private long tokenTtlSeconds = 15 * 60; // Durée de validité d’un jeton de session (0 : pas de jetons)
+    private Path credentials = Paths.get("credentials.txt"); // Comptes des opérateurs, mots de passe hachés
+    private int authCache = 1024; // Vérifications réussies gardées en mémoire (0 : aucune)
+    private int authFailures = 5; // Échecs tolérés par adresse et par login avant de ralentir
+    private int authHashers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2); // Hachages simultanés
+
+    /**
+     * Construit la configuration à partir des propriétés système.
+     * <ul>
+     *     <li>{@code rcs.port} : port d’écoute (12345 par défaut)</li>
+     *     <li>{@code rcs.io} : {@code blocking} (défaut) ou {@code nio}</li>
+     *     <li>{@code rcs.nio.loops} : nombre de boucles NIO (nombre de cœurs par défaut)</li>
+     *     <li>{@code rcs.exec} : {@code platform} (défaut), {@code bounded} ou {@code virtual}</li>
+     *     <li>{@code rcs.exec.threads} : threads du pool borné (200 par défaut)</li>
+     *     <li>{@code rcs.exec.queue} : connexions en attente du pool borné (1000 par défaut)</li>
+     *     <li>{@code rcs.log.file} : fichier courant du journal ({@code server_log.txt} par défaut)</li>
+     *     <li>{@code rcs.log.buffer} : entrées en attente d’écriture avant perte (8192 par défaut)</li>
+     *     <li>{@code rcs.log.flush} : {@code immediate} (défaut), {@code interval} ou {@code sync}</li>
+     *     <li>{@code rcs.log.flush.ms} : intervalle d’écriture en mode {@code interval} (200 par défaut)</li>
+     *     <li>{@code rcs.log.segment.mb} : taille maximale d’un segment du journal (10 par défaut)</li>
+     *     <li>{@code rcs.log.segment.minutes} : âge maximal d’un segment du journal (1440 par défaut)</li>
+     *     <li>{@code rcs.log.segments} : segments archivés conservés (10 par défaut)</li>
+     *     <li>{@code rcs.sessions.ms} : intervalle entre deux bilans des sessions pour l’interface (250 par défaut)</li>
+     *     <li>{@code rcs.shell} : {@code fork} (défaut) ou {@code persistent}</li>
+     *     <li>{@code rcs.shell.pool} : interpréteurs lancés à l’avance en mode {@code persistent} (2 par défaut)</li>
+     *     <li>{@code rcs.batch.parallel} : commandes d’un lot exécutées en même temps par session (4 par défaut)</li>
+     *     <li>{@code rcs.upload.writers} : files d’écriture d’un upload de dossier (4 par défaut)</li>
+     *     <li>{@code rcs.sched.max} : commandes système en cours sur la machine (32 par défaut)</li>
+     *     <li>{@code rcs.sched.session} : commandes système en cours par session (4 par défaut)</li>
+     *     <li>{@code rcs.sched.queue} : commandes en attente d’une place avant refus (256 par défaut)</li>
+     *     <li>{@code rcs.sched.session.queue} : commandes en attente par session avant refus (64 par défaut)</li>
+     *     <li>{@code rcs.cmd.timeout} : durée maximale d’une commande en secondes, 0 pour illimitée (600 par défaut)</li>
+     *     <li>{@code rcs.metrics.port} : port local des mesures en texte, 0 pour le désactiver (12346 par défaut)</li>
+     *     <li>{@code rcs.tls.keystore} : keystore du serveur ({@code server.keystore} par défaut)</li>
+     *     <li>{@code rcs.tls.keystore.password} : mot de passe du keystore ({@code password} par défaut)</li>
+     *     <li>{@code rcs.tls.cache} : sessions TLS gardées pour la reprise (20000 par défaut)</li>
+     *     <li>{@code rcs.tls.session.seconds} : validité d’une session TLS pour la reprise (86400 par défaut)</li>
+     *     <li>{@code rcs.token.ttl} : validité d’un jeton de session en secondes, 0 pour ne pas en émettre (900 par défaut)</li>
+     *     <li>{@code rcs.auth.credentials} : fichier des comptes ({@code credentials.txt} par défaut)</li>
+     *     <li>{@code rcs.auth.cache} : vérifications réussies gardées en mémoire, 0 pour aucune (1024 par défaut)</li>
+     *     <li>{@code rcs.auth.failures} : échecs tolérés par adresse et par login avant de ralentir (5 par défaut)</li>
+     *     <li>{@code rcs.auth.hashers} : mots de passe hachés en même temps (moitié des cœurs par défaut)</li>
+     * </ul>
+     * @return La configuration lue
+     */
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig(); // Valeurs par défaut
+        config.port(Integer.getInteger("rcs.port", config.port));
+        config.ioMode(IoMode.valueOf(System.getProperty("rcs.io", config.ioMode.name()).trim().toUpperCase()));
+        config.eventLoops(Integer.getInteger("rcs.nio.loops", config.eventLoops));
+        config.executionMode(SessionExecutor.Mode.valueOf(
+                System.getProperty("rcs.exec", config.executionMode.name()).trim().toUpperCase()));
+        config.executionThreads(Integer.getInteger("rcs.exec.threads", config.executionThreads));
+        config.executionQueue(Integer.getInteger("rcs.exec.queue", config.executionQueue));
+        config.logFile(Paths.get(System.getProperty("rcs.log.file", config.logFile.toString())));
+        config.logBuffer(Integer.getInteger("rcs.log.buffer", config.logBuffer));
+        config.logFlush(AsyncLogger.FlushPolicy.valueOf(
+                System.getProperty("rcs.log.flush", config.logFlush.name()).trim().toUpperCase()));
+        config.logFlushMillis(Long.getLong("rcs.log.flush.ms", config.logFlushMillis));
+        config.logSegmentBytes(Long.getLong("rcs.log.segment.mb", config.logSegmentBytes / (1024 * 1024)) * 1024 * 1024);
+        config.logSegmentMinutes(Long.getLong("rcs.log.segment.minutes", config.logSegmentMinutes));
+        config.logKeptSegments(Integer.getInteger("rcs.log.segments", config.logKeptSegments));
+        config.sessionUpdateMillis(Long.getLong("rcs.sessions.ms", config.sessionUpdateMillis));
+        config.shellMode(ShellMode.valueOf(System.getProperty("rcs.shell", config.shellMode.name()).trim().toUpperCase()));
+        config.shellPool(Integer.getInteger("rcs.shell.pool", config.shellPool));
+        config.batchParallelism(Integer.getInteger("rcs.batch.parallel", config.batchParallelism));
+        config.uploadWriters(Integer.getInteger("rcs.upload.writers", config.uploadWriters));
+        config.maxCommands(Integer.getInteger("rcs.sched.max", config.maxCommands));
+        config.sessionCommands(Integer.getInteger("rcs.sched.session", config.sessionCommands));
+        config.commandQueue(Integer.getInteger("rcs.sched.queue", config.commandQueue));
+        config.sessionQueue(Integer.getInteger("rcs.sched.session.queue", config.sessionQueue));
+        config.commandTimeoutMillis(Long.getLong("rcs.cmd.timeout", config.commandTimeoutMillis / 1000) * 1000);
+        config.metricsPort(Integer.getInteger("rcs.metrics.port", config.metricsPort));
+        config.keystore(Paths.get(System.getProperty("rcs.tls.keystore", config.keystore.toString())));
+        config.keystorePassword(System.getProperty("rcs.tls.keystore.password", config.keystorePassword));
+        config.tlsSessionCache(Integer.getInteger("rcs.tls.cache", config.tlsSessionCache));
+        config.tlsSessionSeconds(Integer.getInteger("rcs.tls.session.seconds", config.tlsSessionSeconds));
+        config.tokenTtlSeconds(Long.getLong("rcs.token.ttl", config.tokenTtlSeconds));
+        config.credentials(Paths.get(System.getProperty("rcs.auth.credentials", config.credentials.toString())));
+        config.authCache(Integer.getInteger("rcs.auth.cache", config.authCache));
+        config.authFailures(Integer.getInteger("rcs.auth.failures", config.authFailures));
+        config.authHashers(Integer.getInteger("rcs.auth.hashers", config.authHashers));
+        return config;
+    }
+
+    /**
+     * @return Le port d’écoute
+     */
+    public int port() {
+        return port;
+    }
+
+    /**
+     * @param port Port d’écoute (0 pour un port libre choisi par le système)
+     * @return Cette configuration
+     */
+    public ServerConfig port(int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * @return Le modèle d’entrées/sorties
+     */
+    public IoMode ioMode() {
+        return ioMode;
+    }
+
+    /**
+     * @param ioMode Modèle d’entrées/sorties
+     * @return Cette configuration
+     */
+    public ServerConfig ioMode(IoMode ioMode) {
+        this.ioMode = ioMode;
+        return this;
+    }
+
+    /**
+     * @return Le nombre de boucles d’événements en mode NIO
+     */
+    public int eventLoops() {
+        return eventLoops;
+    }
+
+    /**
+     * @param eventLoops Nombre de boucles d’événements en mode NIO
+     * @return Cette configuration
+     */
+    public ServerConfig eventLoops(int eventLoops) {
+        if (eventLoops < 1) { // Au moins une boucle est nécessaire
+            throw new IllegalArgumentException("Nombre de boucles d’événements invalide : " + eventLoops);
+        }
+        this.eventLoops = eventLoops;
+        return this;
+    }
+
+    /**
+     * @return La stratégie d’exécution des sessions (mode bloquant) et des commandes (mode NIO)
+     */
+    public SessionExecutor.Mode executionMode() {
+        return executionMode;
+    }
+
+    /**
+     * @param executionMode Stratégie d’exécution
+     * @return Cette configuration
+     */
+    public ServerConfig executionMode(SessionExecutor.Mode executionMode) {
+        this.executionMode = executionMode;
+        return this;
+    }
+
+    /**
+     * @return Le nombre de threads du pool borné
+     */
+    public int executionThreads() {
+        return executionThreads;
+    }
+
+    /**
+     * @param executionThreads Nombre de threads du pool borné
+     * @return Cette configuration
+     */
+    public ServerConfig executionThreads(int executionThreads) {
+        if (executionThreads < 1) { // Au moins un thread est nécessaire
+            throw new IllegalArgumentException("Nombre de threads invalide : " + executionThreads);
+        }
+        this.executionThreads = executionThreads;
+        return this;
+    }
+
+    /**
+     * @return La taille de la file d’attente du pool borné
+     */
+    public int executionQueue() {
+        return executionQueue;
+    }
+
+    /**
+     * @param executionQueue Taille de la file d’attente du pool borné
+     * @return Cette configuration
+     */
+    public ServerConfig executionQueue(int executionQueue) {
+        if (executionQueue < 1) { // ArrayBlockingQueue exige une capacité positive
+            throw new IllegalArgumentException("Taille de file invalide : " + executionQueue);
+        }
+        this.executionQueue = executionQueue;
+        return this;
+    }
+
+    /**
+     * @return Le fichier courant du journal
+     */
+    public Path logFile() {
+        return logFile;
+    }
+
+    /**
+     * @param logFile Fichier courant du journal (les segments archivés sont créés à côté)
+     * @return Cette configuration
+     */
+    public ServerConfig logFile(Path logFile) {
+        if (logFile.getFileName() == null) { // Une racine ne peut pas servir de fichier
+            throw new IllegalArgumentException("Fichier de journal invalide : " + logFile);
+        }
+        this.logFile = logFile;
+        return this;
+    }
+
+    /**
+     * @return Le nombre d’entrées en attente d’écriture avant perte
+     */
+    public int logBuffer() {
+        return logBuffer;
+    }
+
+    /**
+     * @param logBuffer Nombre d’entrées en attente d’écriture avant perte (arrondi à une puissance de deux)
+     * @return Cette configuration
+     */
+    public ServerConfig logBuffer(int logBuffer) {
+        if (logBuffer < 2 || logBuffer > 1 << 24) { // L’anneau doit rester raisonnable en mémoire
+            throw new IllegalArgumentException("Taille du tampon de journal invalide : " + logBuffer);
+        }
+        this.logBuffer = logBuffer;
+        return this;
+    }
+
+    /**
+     * @return La politique d’écriture du journal
+     */
+    public AsyncLogger.FlushPolicy logFlush() {
+        return logFlush;
+    }
+
+    /**
+     * @param logFlush Politique d’écriture du journal
+     * @return Cette configuration
+     */
+    public ServerConfig logFlush(AsyncLogger.FlushPolicy logFlush) {
+        this.logFlush = logFlush;
+        return this;
+    }
+
+    /**
+     * @return L’intervalle d’écriture du journal en millisecondes
+     */
+    public long logFlushMillis() {
+        return logFlushMillis;
+    }
+
+    /**
+     * @param logFlushMillis Intervalle d’écriture du journal en millisecondes (politique INTERVAL)
+     * @return Cette configuration
+     */
+    public ServerConfig logFlushMillis(long logFlushMillis) {
+        if (logFlushMillis < 1) {
+            throw new IllegalArgumentException("Intervalle d’écriture du journal invalide : " + logFlushMillis);
+        }
+        this.logFlushMillis = logFlushMillis;
+        return this;
+    }
+
+    /**
+     * @return La taille maximale d’un segment du journal en octets
+     */
+    public long logSegmentBytes() {
+        return logSegmentBytes;
+    }
+
+    /**
+     * @param logSegmentBytes Taille maximale d’un segment du journal en octets
+     * @return Cette configuration
+     */
+    public ServerConfig logSegmentBytes(long logSegmentBytes) {
+        if (logSegmentBytes < 1) {
+            throw new IllegalArgumentException("Taille de segment de journal invalide : " + logSegmentBytes);
+        }
+        this.logSegmentBytes = logSegmentBytes;
+        return this;
+    }
+
+    /**
+     * @return L’âge maximal d’un segment du journal en minutes
+     */
+    public long logSegmentMinutes() {
+        return logSegmentMinutes;
+    }
+
+    /**
+     * @param logSegmentMinutes Âge maximal d’un segment du journal en minutes
+     * @return Cette configuration
+     */
+    public ServerConfig logSegmentMinutes(long logSegmentMinutes) {
+        if (logSegmentMinutes < 1) {
+            throw new IllegalArgumentException("Âge de segment de journal invalide : " + logSegmentMinutes);
+        }
+        this.logSegmentMinutes = logSegmentMinutes;
+        return this;
+    }
+
+    /**
+     * @return Le nombre de segments archivés conservés
+     */
+    public int logKeptSegments() {
+        return logKeptSegments;
+    }
+
+    /**
+     * @param logKeptSegments Nombre de segments archivés conservés (0 pour n’en garder aucun)
+     * @return Cette configuration
+     */
+    public ServerConfig logKeptSegments(int logKeptSegments) {
+        if (logKeptSegments < 0) {
+            throw new IllegalArgumentException("Nombre de segments de journal invalide : " + logKeptSegments);
+        }
+        this.logKeptSegments = logKeptSegments;
+        return this;
+    }
+
+    /**
+     * @return L’intervalle entre deux bilans des sessions, en millisecondes
+     */
+    public long sessionUpdateMillis() {
+        return sessionUpdateMillis;
+    }
+
+    /**
+     * @param sessionUpdateMillis Intervalle entre deux bilans des sessions envoyés aux abonnés, en millisecondes
+     * @return Cette configuration
+     */
+    public ServerConfig sessionUpdateMillis(long sessionUpdateMillis) {
+        if (sessionUpdateMillis < 1) {
+            throw new IllegalArgumentException("Intervalle de bilan des sessions invalide : " + sessionUpdateMillis);
+        }
+        this.sessionUpdateMillis = sessionUpdateMillis;
+        return this;
+    }
+
+    /**
+     * @return Le mode d’exécution des commandes système
+     */
+    public ShellMode shellMode() {
+        return shellMode;
+    }
+
+    /**
+     * @param shellMode Mode d’exécution des commandes système
+     * @return Cette configuration
+     */
+    public ServerConfig shellMode(ShellMode shellMode) {
+        this.shellMode = shellMode;
+        return this;
+    }
+
+    /**
+     * @return Le nombre d’interpréteurs lancés à l’avance
+     */
+    public int shellPool() {
+        return shellPool;
+    }
+
+    /**
+     * @param shellPool Nombre d’interpréteurs lancés à l’avance en mode PERSISTENT (0 : à la demande)
+     * @return Cette configuration
+     */
+    public ServerConfig shellPool(int shellPool) {
+        if (shellPool < 0) {
+            throw new IllegalArgumentException("Taille de la réserve d’interpréteurs invalide : " + shellPool);
+        }
+        this.shellPool = shellPool;
+        return this;
+    }
+
+    /**
+     * @return Le nombre de commandes d’un lot exécutées en même temps par une session
+     */
+    public int batchParallelism() {
+        return batchParallelism;
+    }
+
+    /**
+     * @param batchParallelism Nombre de commandes d’un lot exécutées en même temps par une session
+     * @return Cette configuration
+     */
+    public ServerConfig batchParallelism(int batchParallelism) {
+        if (batchParallelism < 1) {
+            throw new IllegalArgumentException("Parallélisme des lots invalide : " + batchParallelism);
+        }
+        this.batchParallelism = batchParallelism;
+        return this;
+    }
+
+    /**
+     * @return Le nombre de files d’écriture d’un upload de dossier
+     */
+    public int uploadWriters() {
+        return uploadWriters;
+    }
+
+    /**
+     * @param uploadWriters Nombre de fichiers d’un upload de dossier écrits en même temps
+     * @return Cette configuration
+     */
+    public ServerConfig uploadWriters(int uploadWriters) {
+        if (uploadWriters < 1 || uploadWriters > 64) {
+            throw new IllegalArgumentException("Nombre de files d’écriture invalide : " + uploadWriters);
+        }
+        this.uploadWriters = uploadWriters;
+        return this;
+    }
+
+    /**
+     * @return Le nombre de commandes système en cours sur la machine au plus
+     */
+    public int maxCommands() {
+        return maxCommands;
+    }
+
+    /**
+     * @param maxCommands Nombre de commandes système en cours sur la machine au plus
+     * @return Cette configuration
+     */
+    public ServerConfig maxCommands(int maxCommands) {
+        if (maxCommands < 1) {
+            throw new IllegalArgumentException("Nombre de commandes en cours invalide : " + maxCommands);
+        }
+        this.maxCommands = maxCommands;
+        return this;
+    }
+
+    /**
+     * @return Le nombre de commandes système en cours par session au plus
+     */
+    public int sessionCommands() {
+        return sessionCommands;
+    }
+
+    /**
+     * @param sessionCommands Nombre de commandes système en cours par session au plus
+     * @return Cette configuration
+     */
+    public ServerConfig sessionCommands(int sessionCommands) {
+        if (sessionCommands < 1) {
+            throw new IllegalArgumentException("Nombre de commandes en cours par session invalide : " + sessionCommands);
+        }
+        this.sessionCommands = sessionCommands;
+        return this;
+    }
+
+    /**
+     * @return Le nombre de commandes en attente d’une place au plus
+     */
+    public int commandQueue() {
+        return commandQueue;
+    }
+
+    /**
+     * @param commandQueue Nombre de commandes en attente d’une place au plus (0 : refus dès que tout est occupé)
+     * @return Cette configuration
+     */
+    public ServerConfig commandQueue(int commandQueue) {
+        if (commandQueue < 0) {
+            throw new IllegalArgumentException("Taille de la file des commandes invalide : " + commandQueue);
+        }
+        this.commandQueue = commandQueue;
+        return this;
+    }
+
+    /**
+     * @return Le nombre de commandes en attente d’une place par session au plus
+     */
+    public int sessionQueue() {
+        return sessionQueue;
+    }
+
+    /**
+     * @param sessionQueue Nombre de commandes en attente d’une place par session au plus
+     * @return Cette configuration
+     */
+    public ServerConfig sessionQueue(int sessionQueue) {
+        if (sessionQueue < 0) {
+            throw new IllegalArgumentException("Taille de la file des commandes par session invalide : " + sessionQueue);
+        }
+        this.sessionQueue = sessionQueue;
+        return this;
+    }
+
+    /**
+     * @return La durée maximale d’une commande système en millisecondes (0 : illimitée)
+     */
+    public long commandTimeoutMillis() {
+        return commandTimeoutMillis;
+    }
+
+    /**
+     * @param commandTimeoutMillis Durée maximale d’une commande système en millisecondes (0 : illimitée)
+     * @return Cette configuration
+     */
+    public ServerConfig commandTimeoutMillis(long commandTimeoutMillis) {
+        if (commandTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Durée maximale des commandes invalide : " + commandTimeoutMillis);
+        }
+        this.commandTimeoutMillis = commandTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @return Le port local du point d’accès aux mesures (0 : désactivé)
+     */
+    public int metricsPort() {
+        return metricsPort;
+    }
+
+    /**
+     * @param metricsPort Port local du point d’accès aux mesures (0 : désactivé)
+     * @return Cette configuration
+     */
+    public ServerConfig metricsPort(int metricsPort) {
+        if (metricsPort < 0 || metricsPort > 65535) {
+            throw new IllegalArgumentException("Port des mesures invalide : " + metricsPort);
+        }
+        this.metricsPort = metricsPort;
+        return this;
+    }
+
+    /**
+     * @return Le keystore du serveur (certificat et clé privée)
+     */
+    public Path keystore() {
+        return keystore;
+    }
+
+    /**
+     * @param keystore Keystore du serveur (certificat et clé privée)
+     * @return Cette configuration
+     */
+    public ServerConfig keystore(Path keystore) {
+        this.keystore = keystore;
+        return this;
+    }
+
+    /**
+     * @return Le mot de passe du keystore
+     */
+    public String keystorePassword() {
+        return keystorePassword;
+    }
+
+    /**
+     * @param keystorePassword Mot de passe du keystore
+     * @return Cette configuration
+     */
+    public ServerConfig keystorePassword(String keystorePassword) {
+        this.keystorePassword = keystorePassword;
+        return this;
+    }
+
+    /**
+     * @return Le nombre de sessions TLS gardées pour la reprise
+     */
+    public int tlsSessionCache() {
+        return tlsSessionCache;
+    }
+
+    /**
+     * @param tlsSessionCache Sessions TLS gardées pour la reprise (0 : sans limite)
+     * @return Cette configuration
+     */
+    public ServerConfig tlsSessionCache(int tlsSessionCache) {
+        if (tlsSessionCache < 0) {
+            throw new IllegalArgumentException("Taille du cache TLS invalide : " + tlsSessionCache);
+        }
+        this.tlsSessionCache = tlsSessionCache;
+        return this;
+    }
+
+    /**
+     * @return La durée de validité d’une session TLS pour la reprise, en secondes
+     */
+    public int tlsSessionSeconds() {
+        return tlsSessionSeconds;
+    }
+
+    /**
+     * @param tlsSessionSeconds Durée de validité d’une session TLS pour la reprise, en secondes
+     * @return Cette configuration
+     */
+    public ServerConfig tlsSessionSeconds(int tlsSessionSeconds) {
+        if (tlsSessionSeconds < 0) {
+            throw new IllegalArgumentException("Durée des sessions TLS invalide : " + tlsSessionSeconds);
+        }
+        this.tlsSessionSeconds = tlsSessionSeconds;
+        return this;
+    }
+
+    /**
+     * @return La durée de validité d’un jeton de session en secondes (0 : pas de jetons)
+     */
+    public long tokenTtlSeconds() {
+        return tokenTtlSeconds;
+    }
+
+    /**
+     * @param tokenTtlSeconds Durée de validité d’un jeton de session en secondes (0 : pas de jetons)
+     * @return Cette configuration
+     */
+    public ServerConfig tokenTtlSeconds(long tokenTtlSeconds) {
+        if (tokenTtlSeconds < 0) {
+            throw new IllegalArgumentException("Durée des jetons invalide : " + tokenTtlSeconds);
+        }
+        this.tokenTtlSeconds = tokenTtlSeconds;
+        return this;
+    }
+
+    /**
+     * @return Le fichier des comptes (login et mot de passe haché)
+     */
+    public Path credentials() {
+        return credentials;
+    }
+
+    /**
+     * @param credentials Fichier des comptes, relu à chaque modification
+     * @return Cette configuration
+     */
+    public ServerConfig credentials(Path credentials) {
+        this.credentials = credentials;
+        return this;
+    }
+
+    /**
+     * @return Le nombre de vérifications réussies gardées en mémoire
+     */
+    public int authCache() {
+        return authCache;
+    }
+
+    /**
+     * @param authCache Nombre de vérifications réussies gardées en mémoire (0 : chaque connexion hache le mot de passe)
+     * @return Cette configuration
+     */
+    public ServerConfig authCache(int authCache) {
+        if (authCache < 0) {
+            throw new IllegalArgumentException("Taille du cache d’authentification invalide : " + authCache);
+        }
+        this.authCache = authCache;
+        return this;
+    }
+
+    /**
+     * @return Le nombre d’échecs tolérés par adresse et par login avant de ralentir les tentatives
+     */
+    public int authFailures() {
+        return authFailures;
+    }
+
+    /**
+     * @param authFailures Nombre d’échecs tolérés par adresse et par login avant de ralentir les tentatives
+     * @return Cette configuration
+     */
+    public ServerConfig authFailures(int authFailures) {
+        if (authFailures < 1) {
+            throw new IllegalArgumentException("Nombre d’échecs tolérés invalide : " + authFailures);
+        }
+        this.authFailures = authFailures;
+        return this;
+    }
+
+    /**
+     * @return Le nombre de mots de passe hachés en même temps au plus
+     */
+    public int authHashers() {
+        return authHashers;
+    }
+
+    /**
+     * @param authHashers Nombre de mots de passe hachés en même temps au plus
+     * @return Cette configuration
+     */
+    public ServerConfig authHashers(int authHashers) {
+        if (authHashers < 1) {
+            throw new IllegalArgumentException("Nombre de hachages simultanés invalide : " + authHashers);
+        }
+        this.authHashers = authHashers;
+        return this;
+    }
+}
@@ -0,0 +1,112 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import hadoop.mapreduce.remotecontrolsoftware.server.metrics.ServerMetrics;
+
+/**
+ * Services du serveur utilisés par les sessions clients.
+ * Permet de piloter le protocole de {@link ClientHandler} sans dépendre de l’interface JavaFX.
+ */
+public interface ServerContext {
+
+    /**
+     * Journalise un message.
+     * @param message Le message à journaliser
+     */
+    void log(String message);
+
+    /**
+     * Vérifie les identifiants d’authentification.
+     * @param login Login saisi
+     * @param password Mot de passe saisi
+     * @return true si authentification réussie, false sinon
+     */
+    boolean authenticate(String login, String password);
+
+    /**
+     * Vérifie les identifiants d’authentification d’un client. Peut être lent (empreinte du mot de passe) :
+     * n’est jamais appelé par une boucle d’événements.
+     * @param login Login saisi
+     * @param password Mot de passe saisi
+     * @param clientAddress L’adresse IP du client, pour ralentir les tentatives répétées
+     * @return true si authentification réussie, false sinon
+     */
+    default boolean authenticate(String login, String password, String clientAddress) {
+        return authenticate(login, password);
+    }
+
+    /**
+     * @param login L’utilisateur qui vient de s’authentifier par identifiants
+     * @return Un jeton de session qui lui évitera de renvoyer ses identifiants, ou null si le serveur n’en émet pas
+     */
+    default String issueToken(String login) {
+        return null;
+    }
+
+    /**
+     * Vérifie un jeton de session présenté à la place des identifiants.
+     * @param token Le jeton
+     * @return L’utilisateur du jeton, ou null s’il est refusé (expiré, falsifié, jetons désactivés)
+     */
+    default String verifyToken(String token) {
+        return null;
+    }
+
+    /**
+     * Enregistre un client authentifié.
+     * @param clientAddress L’adresse IP du client
+     * @param login L’utilisateur authentifié
+     * @param protocol "texte" ou "binaire"
+     * @return La session, qui porte ses compteurs et doit être fermée à la déconnexion
+     */
+    SessionRegistry.Session addClient(String clientAddress, String login, String protocol);
+
+    /**
+     * @return La réserve d’interpréteurs persistants, ou null si chaque commande lance son propre processus
+     */
+    default ShellPool shells() {
+        return null;
+    }
+
+    /**
+     * @return L’index des morceaux des fichiers reçus, pour l’upload par différence, ou null s’il n’est pas proposé
+     */
+    default ChunkIndex chunks() {
+        return null;
+    }
+
+    /**
+     * @return Le nombre de commandes d’un lot exécutées en même temps par une session
+     */
+    default int batchParallelism() {
+        return 4;
+    }
+
+    /**
+     * @return Le nombre de files d’écriture d’un upload de dossier
+     */
+    default int uploadWriters() {
+        return 4;
+    }
+
+    /**
+     * @return Le contrôle d’admission des commandes système, ou null pour les exécuter sans limite
+     */
+    default ExecutionScheduler scheduler() {
+        return null;
+    }
+
+    /**
+     * @return La durée maximale d’une commande système en millisecondes, 0 pour illimitée
+     * (un client peut demander moins, pas plus)
+     */
+    default long commandTimeoutMillis() {
+        return 0;
+    }
+
+    /**
+     * @return Les mesures du serveur, alimentées par les sessions
+     */
+    default ServerMetrics metrics() {
+        return ServerMetrics.UNUSED;
+    }
+}
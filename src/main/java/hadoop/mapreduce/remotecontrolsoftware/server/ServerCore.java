@@ -0,0 +1,466 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import hadoop.mapreduce.remotecontrolsoftware.server.metrics.MetricsEndpoint;
+import hadoop.mapreduce.remotecontrolsoftware.server.metrics.MetricsMBean;
+import hadoop.mapreduce.remotecontrolsoftware.server.metrics.ServerMetrics;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cœur du serveur, sans interface graphique : accepte les connexions SSL, authentifie
+ * les clients et journalise les événements dans un fichier ({@link AsyncLogger}).
+ * Les interfaces (fenêtre JavaFX, console) s’abonnent via {@link ServerListener} ;
+ * sans abonné, aucun événement n’est propagé.
+ * Les mesures ({@link ServerMetrics}) sont publiées par JMX et, serveur démarré, en texte sur un port local.
+ */
+public class ServerCore implements ServerContext {
+    private static final long CREDENTIALS_CHECK_SECONDS = 5; // Intervalle de vérification du fichier des comptes
+    private final ServerConfig config; // Paramètres de démarrage (port, modes E/S et exécution)
+    private final List<ServerListener> listeners = new CopyOnWriteArrayList<>(); // Abonnés aux événements
+    private final AsyncLogger logger; // Journal asynchrone (fichier et abonnés)
+    private final SessionRegistry sessions = new SessionRegistry(); // Sessions authentifiées, par identifiant
+    private final ScheduledExecutorService sessionUpdates; // Envoie périodiquement les changements des sessions
+    private final ShellPool shells; // Interpréteurs persistants prêts (null : un processus par commande)
+    private final ExecutionScheduler scheduler; // Places des commandes système, file d’attente et refus
+    private final ServerMetrics metrics = new ServerMetrics(); // Mesures des sessions, des commandes et des transferts
+    private final SessionTokens tokens; // Jetons de session (null : désactivés)
+    private final CredentialStore credentials; // Comptes des opérateurs, relus quand le fichier change
+    private final LoginThrottle throttle; // Ralentit les tentatives qui échouent, par adresse et par login
+    private final ChunkIndex chunks; // Morceaux des fichiers reçus, pour l’upload par différence
+    private SSLContext sslContext; // Contexte TLS, construit au premier démarrage et gardé pour les suivants
+    private MetricsMBean metricsBean; // Publication JMX des mesures (null si refusée)
+    private MetricsEndpoint metricsEndpoint; // Publication en texte des mesures (null serveur arrêté ou port pris)
+    private volatile ConnectionAcceptor acceptor; // Accepteur des connexions sécurisées (bloquant ou NIO)
+    private volatile boolean running = false; // Indicateur d'état du serveur (démarré ou arrêté)
+
+    /**
+     * Constructeur du cœur du serveur. Démarre le journal.
+     * @param config Paramètres de démarrage
+     */
+    public ServerCore(ServerConfig config) {
+        this.config = config;
+        this.logger = new AsyncLogger(config, this::publish); // Les abonnés sont servis par le thread du journal
+        this.sessionUpdates = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "rcs-sessions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Un seul bilan par intervalle, quel que soit le nombre de connexions et d’octets échangés
+        sessionUpdates.scheduleWithFixedDelay(this::publishSessions, config.sessionUpdateMillis(),
+                config.sessionUpdateMillis(), TimeUnit.MILLISECONDS);
+        this.shells = config.shellMode() == ServerConfig.ShellMode.PERSISTENT
+                ? new ShellPool(config.shellPool(), this::log) : null; // Lancés dès maintenant, prêts au premier client
+        this.tokens = config.tokenTtlSeconds() > 0 ? new SessionTokens(config.tokenTtlSeconds() * 1000) : null;
+        this.credentials = new CredentialStore(config.credentials(), config.authCache(), config.authHashers(), this::log);
+        this.throttle = new LoginThrottle(config.authFailures());
+        this.chunks = new ChunkIndex(Paths.get(""), this::log); // Les fichiers reçus sont dans le répertoire courant
+        // Comptes ajoutés, modifiés ou supprimés pris en compte sans redémarrage
+        sessionUpdates.scheduleWithFixedDelay(credentials::reloadIfChanged, CREDENTIALS_CHECK_SECONDS,
+                CREDENTIALS_CHECK_SECONDS, TimeUnit.SECONDS);
+        this.scheduler = new ExecutionScheduler(config.maxCommands(), config.sessionCommands(),
+                config.commandQueue(), config.sessionQueue());
+        registerGauges();
+        try {
+            this.metricsBean = new MetricsMBean(metrics); // Visible dans jconsole dès le lancement
+        } catch (Exception e) {
+            log("Mesures non publiées par JMX : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Publie les valeurs instantanées du serveur, lues à chaque consultation des mesures.
+     */
+    private void registerGauges() {
+        metrics.gauge("rcs_sessions_active", "Sessions authentifiées", sessions::size);
+        metrics.gauge("rcs_connections_active", "Connexions servies (authentifiées ou non)", () -> {
+            ConnectionAcceptor current = acceptor;
+            return running && current != null ? current.executor().active() : 0;
+        });
+        metrics.gauge("rcs_commands_running", "Commandes système en cours", scheduler::running);
+        metrics.gauge("rcs_commands_queued", "Commandes en attente d’une place", scheduler::queued);
+        metrics.gauge("rcs_commands_rejected_total", "Commandes refusées, file pleine", scheduler::rejected);
+        metrics.gauge("rcs_log_dropped_total", "Entrées du journal perdues", logger::dropped);
+        metrics.gauge("rcs_accounts", "Comptes chargés", credentials::size);
+        metrics.gauge("rcs_chunks_indexed", "Morceaux de fichiers reçus connus de l’upload par différence", chunks::size);
+        if (shells != null) {
+            metrics.gauge("rcs_shells_ready", "Interpréteurs persistants prêts", shells::available);
+        }
+    }
+
+    /**
+     * Abonne un observateur aux événements du serveur.
+     * @param listener L’observateur
+     */
+    public void addListener(ServerListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Désabonne un observateur.
+     * @param listener L’observateur
+     */
+    public void removeListener(ServerListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Démarre le serveur SSL : ouvre le port puis accepte les connexions dans un thread dédié.
+     * @return true si le serveur écoute, false s’il était déjà démarré ou si le port n’a pas pu être ouvert
+     */
+    public synchronized boolean start() {
+        if (running) { // Déjà démarré
+            return false;
+        }
+        try {
+            if (sslContext == null) { // Keystore lu une fois : le cache des sessions TLS survit aux redémarrages
+                sslContext = ServerTls.create(config);
+            }
+            // Ouvre le port selon le mode configuré (thread par client ou boucles NIO)
+            ConnectionAcceptor opened = ConnectionAcceptor.open(config, this, sslContext);
+            acceptor = opened;
+
+            running = true; // Indique que le serveur est actif
+            log("Serveur SSL démarré sur le port " + opened.port() + " (mode " + config.ioMode().name().toLowerCase()
+                    + "). En attente de connexions sécurisées...");
+
+            if (opened.executor().mode() != config.executionMode()) { // Threads virtuels absents de ce JDK
+                log("Mode d’exécution " + config.executionMode().name().toLowerCase() + " indisponible, repli sur "
+                        + opened.executor().mode().name().toLowerCase() + ".");
+            }
+            openMetricsEndpoint();
+            for (ServerListener listener : listeners) {
+                listener.onServerStarted(opened.port());
+            }
+
+            // Accepte les connexions dans un thread séparé jusqu’à l’arrêt
+            new Thread(() -> serve(opened), "rcs-acceptor").start();
+            return true;
+        } catch (IOException e) {
+            log("Erreur serveur SSL : " + e.getMessage());
+            for (ServerListener listener : listeners) {
+                listener.onServerStopped();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Boucle d’acceptation, exécutée dans le thread "rcs-acceptor".
+     * @param current L’accepteur ouvert par start()
+     */
+    private void serve(ConnectionAcceptor current) {
+        try {
+            current.serve(); // Accepte les connexions jusqu’à la fermeture
+        } catch (IOException e) {
+            if (running && acceptor == current) { // Si erreur et serveur actif, log l’erreur
+                log("Erreur serveur SSL : " + e.getMessage());
+                stop();
+            }
+        }
+    }
+
+    /**
+     * Arrête le serveur et ferme le port d’écoute.
+     */
+    public synchronized void stop() {
+        if (!running) { // Déjà arrêté
+            return;
+        }
+        running = false; // Indique que le serveur doit s’arrêter
+        try {
+            log(acceptor.executor().stats()); // Garde une trace des pics de sessions et de threads
+            log(scheduler.stats()); // Des files d’attente et des refus de commandes
+            log(logger.stats()); // Et des pertes et délais du journal
+            acceptor.close(); // Ferme le port d’écoute
+            if (metricsEndpoint != null) {
+                metricsEndpoint.close(); // Et celui des mesures
+                metricsEndpoint = null;
+            }
+        } catch (IOException e) {
+            log("Erreur lors de la fermeture : " + e.getMessage()); // Log une éventuelle erreur
+        }
+        log("Serveur arrêté."); // Log l’arrêt
+        for (ServerListener listener : listeners) {
+            listener.onServerStopped();
+        }
+    }
+
+    /**
+     * Arrête le serveur, écrit les dernières entrées et ferme le fichier de logs.
+     */
+    public synchronized void close() {
+        stop(); // Arrête le serveur
+        sessionUpdates.shutdownNow();
+        if (shells != null) {
+            shells.close(); // Détruit les interpréteurs prêts
+        }
+        if (metricsBean != null) {
+            metricsBean.unregister();
+        }
+        logger.close(); // Vide le journal puis ferme le fichier
+    }
+
+    /**
+     * Ouvre le point d’accès aux mesures en texte, si un port est configuré. Un port déjà pris
+     * n’empêche pas le serveur de démarrer : les mesures restent lisibles par JMX.
+     */
+    private void openMetricsEndpoint() {
+        if (config.metricsPort() == 0) {
+            return;
+        }
+        try {
+            metricsEndpoint = new MetricsEndpoint(config.metricsPort(), metrics);
+            log("Mesures disponibles sur http://127.0.0.1:" + metricsEndpoint.port() + MetricsEndpoint.PATH);
+        } catch (IOException e) {
+            log("Mesures non publiées sur le port " + config.metricsPort() + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return true si le serveur écoute
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return Le résumé des sessions et des threads, ou "Serveur arrêté.", suivi de ceux des commandes et du journal
+     */
+    public String stats() {
+        ConnectionAcceptor current = acceptor; // Copie locale, l’accepteur change au redémarrage
+        return (running && current != null ? current.executor().stats() + " ; " + sessions.size() + " sessions authentifiées"
+                : "Serveur arrêté.") + "\n" + scheduler.stats() + "\n" + logger.stats();
+    }
+
+    /**
+     * @return Le registre des sessions authentifiées
+     */
+    public SessionRegistry sessions() {
+        return sessions;
+    }
+
+    /**
+     * @return La réserve d’interpréteurs persistants, ou null en mode un processus par commande
+     */
+    @Override
+    public ShellPool shells() {
+        return shells;
+    }
+
+    /**
+     * @return L’index des morceaux des fichiers reçus
+     */
+    @Override
+    public ChunkIndex chunks() {
+        return chunks;
+    }
+
+    /**
+     * @return Le nombre de commandes d’un lot exécutées en même temps par une session
+     */
+    @Override
+    public int batchParallelism() {
+        return config.batchParallelism();
+    }
+
+    /**
+     * @return Le nombre de files d’écriture d’un upload de dossier
+     */
+    @Override
+    public int uploadWriters() {
+        return config.uploadWriters();
+    }
+
+    /**
+     * @return Le contrôle d’admission des commandes système
+     */
+    @Override
+    public ExecutionScheduler scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return La durée maximale d’une commande système en millisecondes (0 : illimitée)
+     */
+    @Override
+    public long commandTimeoutMillis() {
+        return config.commandTimeoutMillis();
+    }
+
+    /**
+     * @return Les mesures du serveur
+     */
+    @Override
+    public ServerMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @return Le journal du serveur (compteurs d’entrées, de pertes et de délais)
+     */
+    public AsyncLogger logger() {
+        return logger;
+    }
+
+    /**
+     * Dépose un message dans le journal, sans attendre son écriture : le fichier et les abonnés
+     * le reçoivent depuis le thread du journal.
+     * @param message Le message à journaliser
+     */
+    @Override
+    public void log(String message) {
+        logger.log(message);
+    }
+
+    /**
+     * Transmet une entrée écrite aux abonnés (thread du journal).
+     * @param logEntry L’entrée horodatée
+     */
+    private void publish(String logEntry) {
+        for (ServerListener listener : listeners) { // Aucun coût supplémentaire sans abonné
+            listener.onLog(logEntry);
+        }
+    }
+
+    /**
+     * Enregistre un client authentifié ; les abonnés l’apprennent au prochain bilan des sessions.
+     * @param clientAddress L’adresse IP du client
+     * @param login L’utilisateur authentifié
+     * @param protocol "texte" ou "binaire"
+     * @return La session, à fermer à la déconnexion
+     */
+    @Override
+    public SessionRegistry.Session addClient(String clientAddress, String login, String protocol) {
+        return sessions.open(clientAddress, login, protocol);
+    }
+
+    /**
+     * Transmet aux abonnés les changements des sessions depuis le bilan précédent (thread "rcs-sessions").
+     */
+    private void publishSessions() {
+        SessionRegistry.Changes changes = sessions.drainChanges(); // Vidé même sans abonné
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (ServerListener listener : listeners) {
+            try {
+                listener.onSessionsChanged(changes);
+            } catch (RuntimeException e) { // Un abonné défaillant n’arrête pas les bilans suivants
+                log("Erreur d’un abonné aux sessions : " + e);
+            }
+        }
+    }
+
+    /**
+     * Vérifie les identifiants d’authentification, sans suivi de l’adresse du client.
+     * @param login Login saisi
+     * @param password Mot de passe saisi
+     * @return true si authentification réussie, false sinon
+     */
+    @Override
+    public boolean authenticate(String login, String password) {
+        return authenticate(login, password, null);
+    }
+
+    /**
+     * Vérifie les identifiants d’authentification auprès des comptes ({@link CredentialStore}).
+     * Une adresse bloquée après trop d’échecs ({@link LoginThrottle}) est refusée sans vérification, même avec
+     * un mot de passe accepté récemment. Sinon, un mot de passe accepté récemment l’est sans calcul d’empreinte,
+     * même si son login est bloqué ; les autres sont refusés sans vérification tant que le login est bloqué.
+     * @param login Login saisi
+     * @param password Mot de passe saisi
+     * @param clientAddress L’adresse IP du client (null si inconnue)
+     * @return true si authentification réussie, false sinon
+     */
+    @Override
+    public boolean authenticate(String login, String password, String clientAddress) {
+        long start = System.nanoTime();
+        boolean accepted;
+        long blockedMillis;
+        if ((blockedMillis = throttle.addressBlockedMillis(clientAddress)) > 0) { // Adresse en rafale d’échecs
+            accepted = false;
+            throttled(login, clientAddress, blockedMillis);
+        } else if (credentials.cached(login, password)) { // Vérification récente : pas de calcul d’empreinte
+            accepted = true;
+            metrics.authCached();
+        } else if ((blockedMillis = throttle.loginBlockedMillis(login)) > 0) { // Login attaqué
+            accepted = false;
+            throttled(login, clientAddress, blockedMillis);
+        } else {
+            accepted = credentials.verify(login, password);
+            if (accepted) {
+                throttle.succeeded(clientAddress, login);
+            } else {
+                throttle.failed(clientAddress, login);
+            }
+        }
+        metrics.authenticated(System.nanoTime() - start, accepted);
+        return accepted;
+    }
+
+    /**
+     * Compte et journalise une tentative refusée sans vérification.
+     * @param login Login saisi
+     * @param clientAddress L’adresse IP du client (null si inconnue)
+     * @param blockedMillis Le temps de blocage restant
+     */
+    private void throttled(String login, String clientAddress, long blockedMillis) {
+        metrics.authThrottled();
+        log("Tentative d’authentification ignorée pour " + clientAddress + " (login " + login
+                + ") : trop d’échecs, vérification reprise dans " + (blockedMillis + 999) / 1000 + " s");
+    }
+
+    /**
+     * @param login L’utilisateur qui vient de s’authentifier par identifiants
+     * @return Un jeton de session signé, lié à l’état actuel du compte, ou null si les jetons sont désactivés
+     * ({@code rcs.token.ttl=0}) ou si le compte vient de disparaître
+     */
+    @Override
+    public String issueToken(String login) {
+        byte[] account = tokens != null ? credentials.accountStamp(login) : null;
+        return account != null ? tokens.issue(login, account) : null;
+    }
+
+    /**
+     * @param token Un jeton de session présenté à la place des identifiants
+     * @return L’utilisateur du jeton, ou null s’il est refusé (y compris si son compte a été supprimé
+     * ou son mot de passe changé depuis l’émission)
+     */
+    @Override
+    public String verifyToken(String token) {
+        String login = tokens != null ? tokens.verify(token, credentials::accountStamp) : null;
+        metrics.resumed(login != null);
+        return login;
+    }
+
+    /**
+     * Point d’entrée du serveur sans interface graphique (le toolkit JavaFX n’est pas chargé).
+     * La configuration est lue depuis les propriétés système ({@link ServerConfig#fromSystemProperties()}).
+     * @param args {@code --console} pour recopier le journal sur la sortie standard
+     */
+    public static void main(String[] args) {
+        ServerCore core = new ServerCore(ServerConfig.fromSystemProperties());
+        if (Arrays.asList(args).contains("--console")) { // Recopie le journal sur la console
+            core.addListener(new ServerListener() {
+                @Override
+                public void onLog(String logEntry) {
+                    System.out.println(logEntry);
+                }
+            });
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(core::close)); // Arrêt propre sur Ctrl+C ou SIGTERM
+        if (!core.start()) { // Port indisponible
+            System.err.println("Impossible de démarrer le serveur, voir " + core.config.logFile());
+            core.close();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+/**
+ * Observateur des événements de {@link ServerCore}.
+ * Toutes les méthodes sont appelées depuis les threads du serveur (acceptation, sessions) :
+ * une interface graphique doit elle-même repasser dans son thread d’affichage.
+ */
+public interface ServerListener {
+
+    /**
+     * Appelé pour chaque entrée ajoutée au journal, depuis le thread du journal.
+     * @param logEntry L’entrée horodatée
+     */
+    default void onLog(String logEntry) {
+    }
+
+    /**
+     * Appelé quand le serveur écoute sur son port.
+     * @param port Le port d’écoute
+     */
+    default void onServerStarted(int port) {
+    }
+
+    /**
+     * Appelé quand le serveur a cessé d’écouter (arrêt demandé ou erreur).
+     */
+    default void onServerStopped() {
+    }
+
+    /**
+     * Appelé périodiquement (voir {@link ServerConfig#sessionUpdateMillis()}) quand des sessions
+     * ont été ouvertes, fermées ou ont changé, depuis le thread "rcs-sessions".
+     * @param changes Les ajouts, mises à jour et retraits depuis l’appel précédent
+     */
+    default void onSessionsChanged(SessionRegistry.Changes changes) {
+    }
+}
@@ -0,0 +1,49 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+
+/**
+ * Contexte TLS du serveur, construit explicitement à partir du keystore configuré, sans passer par
+ * les propriétés système {@code javax.net.ssl.*}. Le même contexte sert à toutes les connexions, et
+ * à tous les démarrages d’un même {@link ServerCore} : son cache de sessions permet aux clients qui
+ * reviennent de reprendre leur session TLS (négociation abrégée, sans échange de certificat).
+ */
+public final class ServerTls {
+
+    private ServerTls() {
+    }
+
+    /**
+     * Construit le contexte TLS du serveur.
+     * @param config Configuration du serveur (keystore, cache des sessions TLS)
+     * @return Le contexte, prêt pour les accepteurs
+     * @throws IOException Si le keystore est illisible ou si TLS est indisponible
+     */
+    public static SSLContext create(ServerConfig config) throws IOException {
+        char[] password = config.keystorePassword().toCharArray();
+        try (InputStream input = Files.newInputStream(config.keystore())) {
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(input, password);
+            KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keys.init(keyStore, password);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keys.getKeyManagers(), null, null);
+            SSLSessionContext sessions = context.getServerSessionContext(); // Sessions reprises par les clients
+            sessions.setSessionCacheSize(config.tlsSessionCache());
+            sessions.setSessionTimeout(config.tlsSessionSeconds());
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Keystore " + config.keystore() + " inutilisable : " + e.getMessage(), e);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Canal de transport d’une session client, vu depuis le protocole.
+ * Implémenté par un socket bloquant (un thread par client) ou par une connexion NIO
+ * pilotée par une boucle d’événements.
+ */
+public interface SessionChannel {
+
+    /**
+     * @return L’adresse IP du client
+     */
+    String remoteAddress();
+
+    /**
+     * Envoie des octets au client. N’attend jamais que le client les ait lus :
+     * les gros envois doivent appeler {@link #awaitWritable()} au préalable.
+     * @param data Les octets à envoyer (consommés entièrement)
+     * @throws IOException Si le canal est fermé
+     */
+    void write(ByteBuffer data) throws IOException;
+
+    /**
+     * Bloque tant que trop d’octets sont en attente d’envoi (contre-pression).
+     * Ne doit pas être appelé depuis le thread qui lit le canal.
+     * @throws IOException Si le canal est fermé pendant l’attente
+     */
+    void awaitWritable() throws IOException;
+
+    /**
+     * Suspend la lecture des données du client (par exemple pendant une commande).
+     */
+    void suspendReads();
+
+    /**
+     * Reprend la lecture des données du client.
+     */
+    void resumeReads();
+
+    /**
+     * Ferme le canal après l’envoi des données en attente.
+     */
+    void close();
+}
@@ -0,0 +1,172 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stratégie d’exécution des tâches longues du serveur : la méthode run() de chaque
+ * {@link ClientHandler} en mode bloquant, les commandes système en mode NIO.
+ * Compte les tâches actives et leur pic pour suivre les rafales de connexions.
+ */
+public class SessionExecutor implements Executor {
+
+    /**
+     * Stratégies disponibles.
+     */
+    public enum Mode {
+        PLATFORM, // Un nouveau thread système par tâche, sans limite (historique)
+        BOUNDED, // Pool de threads système borné avec file d’attente bornée
+        VIRTUAL // Un thread virtuel par tâche (JDK 21 et plus)
+    }
+
+    private final Mode mode; // Stratégie effective
+    private final String threadPrefix; // Préfixe du nom des threads
+    private final ExecutorService pool; // Pool sous-jacent (null en mode PLATFORM)
+    private final AtomicInteger threadIds = new AtomicInteger(); // Numérotation des threads créés
+    private final AtomicInteger active = new AtomicInteger(); // Tâches en cours d’exécution
+    private final AtomicInteger peak = new AtomicInteger(); // Pic de tâches simultanées
+    private final AtomicLong rejected = new AtomicLong(); // Tâches refusées (pool saturé)
+
+    /**
+     * Constructeur de l’exécuteur.
+     * @param config Configuration du serveur (mode et tailles du pool)
+     * @param threadPrefix Préfixe du nom des threads
+     */
+    public SessionExecutor(ServerConfig config, String threadPrefix) {
+        this.threadPrefix = threadPrefix;
+        ExecutorService virtual = config.executionMode() == Mode.VIRTUAL ? newVirtualExecutor() : null;
+        if (virtual != null) { // Threads virtuels disponibles
+            this.mode = Mode.VIRTUAL;
+            this.pool = virtual;
+        } else if (config.executionMode() == Mode.BOUNDED) {
+            this.mode = Mode.BOUNDED;
+            this.pool = new ThreadPoolExecutor(config.executionThreads(), config.executionThreads(),
+                    60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(config.executionQueue()), this::newThread);
+            ((ThreadPoolExecutor) pool).allowCoreThreadTimeOut(true); // Libère les threads inactifs
+        } else { // Mode historique, ou JDK sans threads virtuels
+            this.mode = Mode.PLATFORM;
+            this.pool = null;
+        }
+    }
+
+    /**
+     * Exécute une tâche selon la stratégie configurée.
+     * @param task La tâche à exécuter
+     * @throws RejectedExecutionException Si le pool borné et sa file sont pleins
+     */
+    @Override
+    public void execute(Runnable task) {
+        Runnable tracked = () -> {
+            peak.accumulateAndGet(active.incrementAndGet(), Math::max); // Met à jour le pic
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        };
+        if (pool == null) { // Mode historique : un thread par tâche
+            newThread(tracked).start();
+            return;
+        }
+        try {
+            pool.execute(tracked);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet(); // Comptabilise le refus
+            throw e;
+        }
+    }
+
+    /**
+     * @return La stratégie effectivement utilisée (PLATFORM si les threads virtuels sont indisponibles)
+     */
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * @return Le nombre de tâches en cours d’exécution
+     */
+    public int active() {
+        return active.get();
+    }
+
+    /**
+     * @return Le pic de tâches simultanées
+     */
+    public int peak() {
+        return peak.get();
+    }
+
+    /**
+     * @return Le nombre de tâches en file d’attente (pool borné uniquement)
+     */
+    public int queued() {
+        return pool instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) pool).getQueue().size() : 0;
+    }
+
+    /**
+     * @return Le nombre de tâches refusées faute de place
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Résume l’activité de l’exécuteur et les threads de la JVM.
+     * Les threads virtuels n’apparaissent pas dans le décompte des threads de la JVM.
+     * @return Une ligne lisible pour le journal ou l’interface
+     */
+    public String stats() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return "Exécution " + mode.name().toLowerCase() + " : " + active() + " actives (pic " + peak() + "), "
+                + queued() + " en file, " + rejected() + " refusées ; threads JVM " + threads.getThreadCount()
+                + " (pic " + threads.getPeakThreadCount() + ")";
+    }
+
+    /**
+     * Arrête le pool : plus aucune tâche n’est acceptée, celles déjà acceptées se terminent.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Crée un thread système nommé.
+     * @param task La tâche du thread
+     * @return Le thread, non démarré
+     */
+    private Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, threadPrefix + threadIds.incrementAndGet());
+        thread.setDaemon(true); // N’empêche pas l’arrêt de l’application
+        return thread;
+    }
+
+    /**
+     * Crée un exécuteur à threads virtuels par réflexion, le projet compilant en Java 17.
+     * @return L’exécuteur, ou null si le JDK ne fournit pas les threads virtuels
+     */
+    private ExecutorService newVirtualExecutor() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null); // Thread.ofVirtual()
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, threadPrefix, 1L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory); // Un thread virtuel par tâche
+        } catch (ReflectiveOperationException e) {
+            return null; // JDK antérieur à 21
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Registre des sessions authentifiées, indexé par identifiant de session : deux clients derrière
+ * la même adresse IP (NAT) restent deux sessions distinctes.
+ * Chaque session tient ses compteurs (commandes, octets, activité, opérations en cours) sans verrou ;
+ * une session modifiée se signale une seule fois dans une file, que {@link #drainChanges()} vide
+ * en ajouts, mises à jour et retraits : le coût d’un bilan dépend des sessions actives, pas du total.
+ */
+public class SessionRegistry {
+
+    /**
+     * Session authentifiée. Les compteurs sont mis à jour par les threads de la session.
+     */
+    public final class Session {
+        private final long id; // Identifiant unique dans le registre
+        private final String address; // Adresse IP du client
+        private final String login; // Utilisateur authentifié
+        private final String protocol; // "texte" ou "binaire"
+        private final long connectedAt = System.currentTimeMillis(); // Date d’authentification
+        private final LongAdder commands = new LongAdder(); // Commandes, envois et téléchargements lancés
+        private final LongAdder bytesIn = new LongAdder(); // Octets reçus du client
+        private final LongAdder bytesOut = new LongAdder(); // Octets envoyés au client
+        private final AtomicInteger inFlight = new AtomicInteger(); // Opérations en cours
+        private final AtomicBoolean dirty = new AtomicBoolean(); // Déjà dans la file des changements
+        private volatile long lastActivity = connectedAt; // Dernier octet reçu ou envoyé
+        private volatile boolean closed; // Session terminée
+        private boolean reported; // Connue des abonnés (thread de drainChanges() seul)
+
+        private Session(long id, String address, String login, String protocol) {
+            this.id = id;
+            this.address = address;
+            this.login = login;
+            this.protocol = protocol;
+        }
+
+        /**
+         * @return L’identifiant de la session
+         */
+        public long id() {
+            return id;
+        }
+
+        /**
+         * @return L’adresse IP du client
+         */
+        public String address() {
+            return address;
+        }
+
+        /**
+         * Compte des octets reçus du client.
+         * @param bytes Le nombre d’octets
+         */
+        public void received(long bytes) {
+            bytesIn.add(bytes);
+            touch();
+        }
+
+        /**
+         * Compte des octets envoyés au client.
+         * @param bytes Le nombre d’octets
+         */
+        public void sent(long bytes) {
+            bytesOut.add(bytes);
+            touch();
+        }
+
+        /**
+         * Compte une opération lancée (commande, envoi ou téléchargement de fichier).
+         */
+        public void operationStarted() {
+            commands.increment();
+            inFlight.incrementAndGet();
+            touch();
+        }
+
+        /**
+         * Signale la fin d’une opération lancée par {@link #operationStarted()}.
+         */
+        public void operationFinished() {
+            inFlight.decrementAndGet();
+            touch();
+        }
+
+        /**
+         * Retire la session du registre. Peut être appelé plusieurs fois.
+         */
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            sessions.remove(id);
+            changed.add(this); // Toujours signalé, même si une mise à jour est déjà en file
+        }
+
+        /**
+         * @return Une photographie immuable des compteurs
+         */
+        public Snapshot snapshot() {
+            return new Snapshot(id, address, login, protocol, connectedAt, lastActivity, commands.sum(),
+                    bytesIn.sum(), bytesOut.sum(), inFlight.get());
+        }
+
+        /**
+         * Note l’activité et signale la session une seule fois jusqu’au prochain bilan.
+         */
+        private void touch() {
+            lastActivity = System.currentTimeMillis();
+            if (!dirty.get() && dirty.compareAndSet(false, true)) { // Lecture simple d’abord : pas de contention
+                changed.add(this);
+            }
+        }
+    }
+
+    /**
+     * État d’une session à un instant donné, immuable.
+     */
+    public static final class Snapshot {
+        private final long id; // Identifiant de la session
+        private final String address; // Adresse IP du client
+        private final String login; // Utilisateur authentifié
+        private final String protocol; // "texte" ou "binaire"
+        private final long connectedAt; // Date d’authentification
+        private final long lastActivity; // Dernier octet échangé
+        private final long commands; // Opérations lancées
+        private final long bytesIn; // Octets reçus du client
+        private final long bytesOut; // Octets envoyés au client
+        private final int inFlight; // Opérations en cours
+
+        Snapshot(long id, String address, String login, String protocol, long connectedAt, long lastActivity,
+                 long commands, long bytesIn, long bytesOut, int inFlight) {
+            this.id = id;
+            this.address = address;
+            this.login = login;
+            this.protocol = protocol;
+            this.connectedAt = connectedAt;
+            this.lastActivity = lastActivity;
+            this.commands = commands;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.inFlight = inFlight;
+        }
+
+        /**
+         * @return L’identifiant de la session
+         */
+        public long id() {
+            return id;
+        }
+
+        /**
+         * @return L’adresse IP du client
+         */
+        public String address() {
+            return address;
+        }
+
+        /**
+         * @return L’utilisateur authentifié
+         */
+        public String login() {
+            return login;
+        }
+
+        /**
+         * @return Le protocole de la session ("texte" ou "binaire")
+         */
+        public String protocol() {
+            return protocol;
+        }
+
+        /**
+         * @return La date d’authentification (ms depuis l’époque)
+         */
+        public long connectedAt() {
+            return connectedAt;
+        }
+
+        /**
+         * @return La date du dernier octet échangé (ms depuis l’époque)
+         */
+        public long lastActivity() {
+            return lastActivity;
+        }
+
+        /**
+         * @return Le nombre d’opérations lancées
+         */
+        public long commands() {
+            return commands;
+        }
+
+        /**
+         * @return Les octets reçus du client
+         */
+        public long bytesIn() {
+            return bytesIn;
+        }
+
+        /**
+         * @return Les octets envoyés au client
+         */
+        public long bytesOut() {
+            return bytesOut;
+        }
+
+        /**
+         * @return Le nombre d’opérations en cours
+         */
+        public int inFlight() {
+            return inFlight;
+        }
+    }
+
+    /**
+     * Changements du registre depuis le bilan précédent.
+     */
+    public static final class Changes {
+        private final List<Snapshot> added; // Sessions ouvertes
+        private final List<Snapshot> updated; // Sessions dont les compteurs ont changé
+        private final List<Long> removed; // Identifiants des sessions fermées
+
+        Changes(List<Snapshot> added, List<Snapshot> updated, List<Long> removed) {
+            this.added = Collections.unmodifiableList(added);
+            this.updated = Collections.unmodifiableList(updated);
+            this.removed = Collections.unmodifiableList(removed);
+        }
+
+        /**
+         * @return Les sessions ouvertes depuis le bilan précédent
+         */
+        public List<Snapshot> added() {
+            return added;
+        }
+
+        /**
+         * @return Les sessions déjà connues dont les compteurs ont changé
+         */
+        public List<Snapshot> updated() {
+            return updated;
+        }
+
+        /**
+         * @return Les identifiants des sessions connues qui ont été fermées
+         */
+        public List<Long> removed() {
+            return removed;
+        }
+
+        /**
+         * @return true s’il n’y a aucun changement
+         */
+        public boolean isEmpty() {
+            return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>(); // Sessions ouvertes
+    private final Queue<Session> changed = new ConcurrentLinkedQueue<>(); // Sessions modifiées depuis le dernier bilan
+    private final AtomicLong ids = new AtomicLong(); // Identifiants des sessions
+    private final ReentrantLock drainLock = new ReentrantLock(); // Protège les bilans
+
+    /**
+     * Enregistre une session authentifiée.
+     * @param address Adresse IP du client
+     * @param login Utilisateur authentifié
+     * @param protocol "texte" ou "binaire"
+     * @return La session, à fermer à la déconnexion
+     */
+    public Session open(String address, String login, String protocol) {
+        Session session = new Session(ids.incrementAndGet(), address, login, protocol);
+        sessions.put(session.id, session);
+        session.touch(); // Signalée comme ajout au prochain bilan
+        return session;
+    }
+
+    /**
+     * @return Le nombre de sessions ouvertes
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * @return Les sessions ouvertes (vue concurrente)
+     */
+    public Collection<Session> sessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /**
+     * Vide la file des changements.
+     * @return Les ajouts, mises à jour et retraits depuis l’appel précédent
+     */
+    public Changes drainChanges() {
+        drainLock.lock(); // Un seul bilan à la fois : l’état "connue des abonnés" n’est pas partagé
+        try {
+            return collectChanges();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * @return Les changements en file (verrou des bilans tenu)
+     */
+    private Changes collectChanges() {
+        Map<Long, Snapshot> added = new LinkedHashMap<>();
+        Map<Long, Snapshot> updated = new LinkedHashMap<>();
+        List<Long> removed = new ArrayList<>();
+        Session session;
+        while ((session = changed.poll()) != null) {
+            session.dirty.set(false); // Les changements suivants la remettront en file
+            if (session.closed) {
+                if (added.remove(session.id) != null) { // Ouverte puis fermée pendant ce bilan : rien à signaler
+                    session.reported = false;
+                } else if (session.reported) {
+                    removed.add(session.id);
+                    session.reported = false;
+                    updated.remove(session.id);
+                }
+            } else if (!session.reported) {
+                added.put(session.id, session.snapshot());
+                session.reported = true;
+            } else if (!added.containsKey(session.id)) {
+                updated.put(session.id, session.snapshot());
+            } else {
+                added.put(session.id, session.snapshot()); // Ajout le plus récent
+            }
+        }
+        return new Changes(new ArrayList<>(added.values()), new ArrayList<>(updated.values()), removed);
+    }
+}
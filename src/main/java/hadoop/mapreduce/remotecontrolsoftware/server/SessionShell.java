@@ -0,0 +1,73 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Interpréteur persistant d’une session. Une seule commande l’utilise à la fois : une commande
+ * lancée pendant qu’une autre tourne (flux parallèles du protocole binaire) prend un processus dédié.
+ * Un interpréteur arrêté ({@code exit}) ou interrompu est remplacé à la commande suivante.
+ */
+public class SessionShell {
+    private final ShellPool pool; // Réserve d’interpréteurs du serveur
+    private final ReentrantLock busy = new ReentrantLock(); // Tenu pendant une commande
+    private volatile PersistentShell shell; // Interpréteur courant, pris à la première commande
+    private volatile boolean closed; // Session terminée
+
+    /**
+     * @param pool Réserve d’interpréteurs du serveur
+     */
+    public SessionShell(ShellPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Réserve l’interpréteur de la session pour une commande.
+     * @return L’interpréteur, à rendre avec {@link #release(PersistentShell)}, ou null s’il est occupé
+     * @throws IOException Si aucun interpréteur ne peut être lancé
+     */
+    public PersistentShell acquire() throws IOException {
+        if (closed || !busy.tryLock()) {
+            return null;
+        }
+        try {
+            if (shell == null || !shell.isUsable()) {
+                if (shell != null) {
+                    shell.close();
+                }
+                shell = pool.take();
+            }
+            if (closed) { // Session fermée pendant le lancement
+                shell.close();
+                busy.unlock();
+                return null;
+            }
+            return shell;
+        } catch (IOException | RuntimeException e) {
+            busy.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Rend l’interpréteur après une commande.
+     * @param used L’interpréteur donné par {@link #acquire()}
+     */
+    public void release(PersistentShell used) {
+        if (closed) {
+            used.close();
+        }
+        busy.unlock();
+    }
+
+    /**
+     * Détruit l’interpréteur de la session, y compris s’il exécute une commande.
+     */
+    public void close() {
+        closed = true;
+        PersistentShell current = shell; // Lecture sans verrou : la commande en cours est interrompue
+        if (current != null) {
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * Jetons de session signés : remis au client après une authentification par identifiants, ils lui
+ * permettent de se reconnecter sans renvoyer login et mot de passe tant qu’ils n’ont pas expiré.
+ * <p>
+ * Un jeton est {@code base64url(login \n expiration) . base64url(HMAC-SHA256)}. Rien n’est gardé côté
+ * serveur : la clé de signature est tirée au hasard à la construction, si bien qu’un redémarrage
+ * du processus invalide tous les jetons émis. Un jeton reste utilisable jusqu’à son expiration,
+ * autant de fois que nécessaire ; il n’est pas prolongé par les reconnexions.
+ * <p>
+ * La signature couvre aussi l’état du compte au moment de l’émission (voir {@link CredentialStore#accountStamp}),
+ * sans qu’il figure dans le jeton : supprimer le compte ou changer son mot de passe révoque ses jetons.
+ */
+public class SessionTokens {
+    private static final String ALGORITHM = "HmacSHA256"; // Signature des jetons
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding(); // Jeton sur une ligne
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key; // Clé de signature, propre à ce processus
+    private final long ttlMillis; // Durée de validité d’un jeton
+
+    /**
+     * @param ttlMillis Durée de validité d’un jeton en millisecondes
+     */
+    public SessionTokens(long ttlMillis) {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param login L’utilisateur authentifié
+     * @param account L’état actuel de son compte
+     * @return Un jeton signé pour cet utilisateur, valable {@code ttlMillis} tant que son compte ne change pas
+     */
+    public String issue(String login, byte[] account) {
+        String payload = login + "\n" + (System.currentTimeMillis() + ttlMillis);
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        return ENCODER.encodeToString(bytes) + "." + ENCODER.encodeToString(sign(bytes, account));
+    }
+
+    /**
+     * @param token Un jeton présenté par un client
+     * @param accounts Donne l’état actuel du compte d’un login, ou null si le compte n’existe plus
+     * @return L’utilisateur du jeton, ou null si le jeton est mal formé, falsifié, expiré, ou si son compte
+     * a été supprimé ou modifié depuis l’émission
+     */
+    public String verify(String token, Function<String, byte[]> accounts) {
+        int dot = token.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(token.substring(0, dot));
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) { // Pas du base64
+            return null;
+        }
+        String[] fields = new String(payload, StandardCharsets.UTF_8).split("\n", -1);
+        if (fields.length != 2) {
+            return null;
+        }
+        byte[] account = accounts.apply(fields[0]);
+        if (account == null || !MessageDigest.isEqual(sign(payload, account), signature)) { // Temps constant
+            return null;
+        }
+        try {
+            return Long.parseLong(fields[1]) > System.currentTimeMillis() ? fields[0] : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param payload Les octets du jeton
+     * @param account L’état du compte, signé avec eux
+     * @return Leur signature
+     */
+    private byte[] sign(byte[] payload, byte[] account) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM); // Un Mac par appel : les sessions vérifient en parallèle
+            mac.init(key);
+            mac.update(payload);
+            mac.update((byte) 0); // Sépare le jeton de l’état du compte
+            return mac.doFinal(account);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " indisponible", e);
+        }
+    }
+}
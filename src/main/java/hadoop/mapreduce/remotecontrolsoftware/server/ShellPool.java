@@ -0,0 +1,112 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Réserve d’interpréteurs lancés à l’avance : une nouvelle session reçoit un interpréteur déjà prêt
+ * au lieu d’attendre son lancement, et la réserve est complétée en tâche de fond.
+ * Un interpréteur pris n’est jamais rendu : il garde l’état de sa session (répertoire, variables)
+ * et est détruit avec elle.
+ */
+public class ShellPool {
+    private final int size; // Interpréteurs prêts visés
+    private final BlockingQueue<PersistentShell> ready; // Interpréteurs prêts
+    private final AtomicInteger pending = new AtomicInteger(); // Lancements en cours en tâche de fond
+    private final ExecutorService spawner; // Lance les interpréteurs de la réserve
+    private final Consumer<String> log; // Journal du serveur
+    private volatile boolean closed; // Réserve fermée
+
+    /**
+     * @param size Nombre d’interpréteurs gardés prêts (0 : lancement à la demande)
+     * @param log Journal du serveur
+     */
+    public ShellPool(int size, Consumer<String> log) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Taille de la réserve d’interpréteurs invalide : " + size);
+        }
+        this.size = size;
+        this.ready = new LinkedBlockingQueue<>();
+        this.log = log;
+        this.spawner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rcs-shell-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refill();
+    }
+
+    /**
+     * Donne un interpréteur prêt, ou en lance un si la réserve est vide.
+     * @return Un interpréteur, à détruire par l’appelant
+     * @throws IOException Si l’interpréteur ne peut pas être lancé
+     */
+    public PersistentShell take() throws IOException {
+        PersistentShell shell;
+        while ((shell = ready.poll()) != null) {
+            if (shell.isUsable()) {
+                refill();
+                return shell;
+            }
+        }
+        refill();
+        return PersistentShell.spawn(); // Réserve vide : lancement dans le thread de la commande
+    }
+
+    /**
+     * @return Le nombre d’interpréteurs prêts
+     */
+    public int available() {
+        return ready.size();
+    }
+
+    /**
+     * Détruit les interpréteurs prêts et arrête la réserve.
+     */
+    public void close() {
+        closed = true;
+        spawner.shutdownNow();
+        PersistentShell shell;
+        while ((shell = ready.poll()) != null) {
+            shell.close();
+        }
+    }
+
+    /**
+     * Lance en tâche de fond les interpréteurs manquants.
+     */
+    private void refill() {
+        while (!closed && ready.size() + pending.get() < size) {
+            pending.incrementAndGet();
+            try {
+                spawner.execute(this::spawnOne);
+            } catch (RuntimeException e) { // Réserve fermée entre-temps
+                pending.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Lance un interpréteur pour la réserve (thread de la réserve).
+     */
+    private void spawnOne() {
+        try {
+            PersistentShell shell = PersistentShell.spawn();
+            if (closed) {
+                shell.close();
+            } else {
+                ready.add(shell);
+            }
+        } catch (IOException e) {
+            log.accept("Impossible de lancer un interpréteur de commandes : " + e.getMessage());
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+}
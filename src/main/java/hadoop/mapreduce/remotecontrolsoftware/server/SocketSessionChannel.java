@@ -0,0 +1,76 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Canal de session au-dessus d’un socket bloquant classique.
+ * Les écritures sont synchrones : la contre-pression est assurée par TCP lui-même.
+ */
+public class SocketSessionChannel implements SessionChannel {
+    private final Socket socket; // Socket du client connecté
+    private final OutputStream output; // Flux de sortie vers le client
+    private final String remoteAddress; // Adresse IP du client
+    private final ReentrantLock writeLock = new ReentrantLock(); // Sérialise les écritures (compatible threads virtuels)
+
+    /**
+     * Constructeur du canal.
+     * @param socket Socket du client connecté
+     * @throws IOException Si le flux de sortie ne peut pas être ouvert
+     */
+    public SocketSessionChannel(Socket socket) throws IOException {
+        this.socket = socket; // Initialise le socket
+        this.output = socket.getOutputStream(); // Récupère le flux de sortie
+        this.remoteAddress = socket.getInetAddress().getHostAddress(); // Récupère l’IP du client
+    }
+
+    @Override
+    public String remoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        writeLock.lock(); // Sérialise les écritures concurrentes
+        try {
+            if (data.hasArray()) { // Écrit directement depuis le tableau sous-jacent
+                output.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                data.position(data.limit()); // Marque les octets comme consommés
+            } else {
+                byte[] copy = new byte[data.remaining()]; // Copie un buffer direct
+                data.get(copy);
+                output.write(copy);
+            }
+            output.flush(); // Garantit l’envoi immédiat
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void awaitWritable() {
+        // Rien à faire : write() bloque déjà tant que TCP n’a pas accepté les octets
+    }
+
+    @Override
+    public void suspendReads() {
+        // Rien à faire : le thread de lecture exécute lui-même les commandes
+    }
+
+    @Override
+    public void resumeReads() {
+        // Rien à faire en mode bloquant
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close(); // Ferme le socket du client
+        } catch (IOException ignored) {
+            // Le socket est déjà inutilisable, rien de plus à faire
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+import hadoop.mapreduce.remotecontrolsoftware.server.metrics.ServerMetrics;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Exécute une commande système et transmet sa sortie au client au fil de l’eau.
+ * stdout est lu par le thread appelant et stderr par un thread dédié : les deux tubes sont
+ * vidés en parallèle, un processus bavard sur stderr ne peut donc plus se bloquer.
+ * La mise en forme dépend du protocole de la session ({@link Output}) ; dans tous les cas,
+ * chaque envoi attend que le client ait de la place, si bien qu’un client lent ralentit
+ * le processus au lieu de faire grossir la mémoire du serveur.
+ * Si la session a un interpréteur persistant ({@link SessionShell}) libre, la commande y est exécutée ;
+ * sinon un processus est lancé pour elle seule.
+ * Avec un contrôle d’admission ({@link #admittedBy(ExecutionScheduler, Object)}), la commande attend
+ * une place avant de lancer quoi que ce soit, et la rend à sa fin.
+ * Une commande qui dépasse sa durée maximale ({@link #timeout(long)}) est arrêtée comme une commande
+ * annulée : le processus et tous ses descendants encore en vie sont détruits.
+ * Chaque commande alimente les mesures du serveur ({@link #measuredBy(ServerMetrics)}) : attente d’une place,
+ * exécution, et temps passé à attendre le client pendant l’envoi (durée des envois moins celle des lectures).
+ */
+public class StreamingCommand {
+    private static final AtomicInteger PUMP_IDS = new AtomicInteger(); // Numérotation des threads de lecture
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "rcs-cmd-timeout");
+        thread.setDaemon(true); // N’empêche pas l’arrêt de l’application
+        return thread;
+    }); // Arrête les commandes qui dépassent leur durée maximale
+
+    /**
+     * Destination de la sortie du processus.
+     */
+    public interface Output {
+
+        /**
+         * Lit un flux du processus jusqu’à sa fin et l’envoie au client.
+         * Peut être appelé en même temps pour stdout et stderr, depuis deux threads.
+         * @param source Le flux à lire
+         * @param stream L’étiquette du flux ({@link Protocol#STDOUT} ou {@link Protocol#STDERR})
+         * @throws IOException Si le client est déconnecté
+         */
+        void drain(Reader source, String stream) throws IOException;
+    }
+
+    private final String command; // Commande à exécuter
+    private final Output output; // Destination de la sortie
+    private final SessionShell sessionShell; // Interpréteur de la session, ou null (un processus par commande)
+    private ExecutionScheduler scheduler; // Contrôle d’admission, ou null (lancement immédiat)
+    private Object owner; // Session au nom de laquelle la place est demandée
+    private volatile ExecutionScheduler.Ticket ticket; // Demande de place en cours (null avant la demande)
+    private long startNanos; // Instant de lancement du processus
+    private volatile long firstByteNanos; // Instant du premier octet produit (0 tant que rien n’est sorti)
+    private volatile Process process; // Processus lancé (null avant le lancement)
+    private volatile PersistentShell shell; // Interpréteur utilisé (null sans interpréteur persistant)
+    private long timeoutMillis; // Durée maximale de la commande une fois admise (0 : illimitée)
+    private ServerMetrics metrics = ServerMetrics.UNUSED; // Mesures alimentées par la commande
+    private long queueNanos; // Attente d’une place
+    private final LongAdder drainNanos = new LongAdder(); // Temps passé dans Output.drain (stdout et stderr)
+    private final LongAdder readNanos = new LongAdder(); // Dont temps passé à attendre le processus
+    private volatile boolean cancelled; // Annulation demandée par le client
+    private volatile boolean timedOut; // Arrêtée pour dépassement de sa durée maximale
+
+    /**
+     * Constructeur de la commande.
+     * @param command La commande à exécuter
+     * @param output La destination de la sortie
+     */
+    public StreamingCommand(String command, Output output) {
+        this(command, output, null);
+    }
+
+    /**
+     * Constructeur de la commande, exécutée si possible dans l’interpréteur de la session.
+     * @param command La commande à exécuter
+     * @param output La destination de la sortie
+     * @param sessionShell L’interpréteur persistant de la session, ou null
+     */
+    public StreamingCommand(String command, Output output, SessionShell sessionShell) {
+        this.command = command;
+        this.output = output;
+        this.sessionShell = sessionShell;
+    }
+
+    /**
+     * Soumet la commande au contrôle d’admission du serveur.
+     * @param scheduler Le contrôle d’admission, ou null pour lancer sans attendre
+     * @param owner La session qui lance la commande (clé des quotas)
+     * @return Cette commande
+     */
+    public StreamingCommand admittedBy(ExecutionScheduler scheduler, Object owner) {
+        this.scheduler = scheduler;
+        this.owner = owner;
+        return this;
+    }
+
+    /**
+     * Limite la durée de la commande, comptée à partir de son admission (l’attente d’une place n’est pas comptée).
+     * @param timeoutMillis La durée maximale en millisecondes (0 : illimitée)
+     * @return Cette commande
+     */
+    public StreamingCommand timeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * @param metrics Les mesures du serveur, alimentées à la fin de la commande
+     * @return Cette commande
+     */
+    public StreamingCommand measuredBy(ServerMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Calcule la durée maximale d’une commande : celle demandée par le client, sans dépasser celle du serveur.
+     * @param requested La durée demandée par le client (0 : aucune)
+     * @param serverMax La durée maximale du serveur (0 : illimitée)
+     * @return La durée retenue (0 : illimitée)
+     */
+    public static long limit(long requested, long serverMax) {
+        if (requested <= 0) {
+            return serverMax;
+        }
+        return serverMax <= 0 ? requested : Math.min(requested, serverMax);
+    }
+
+    /**
+     * Exécute la commande et envoie sa sortie, sans la ligne de fin.
+     * @return Le code de sortie du processus
+     * @throws ExecutionScheduler.BusyException Si le serveur refuse la commande (file d’attente pleine)
+     * @throws IOException Si le processus ne peut pas être lancé, si le client est déconnecté,
+     * si la commande a été annulée ou si elle a dépassé sa durée maximale
+     * @throws InterruptedException Si l’attente du processus est interrompue
+     */
+    public int run() throws IOException, InterruptedException {
+        if (scheduler == null) {
+            return watched();
+        }
+        long requested = System.nanoTime();
+        ExecutionScheduler.Ticket admitted = scheduler.acquire(owner, pending -> ticket = pending); // Attend une place
+        try {
+            queueNanos = System.nanoTime() - requested;
+            if (cancelled) { // Annulée au moment où la place était accordée
+                throw new IOException("Commande annulée");
+            }
+            return watched();
+        } finally {
+            admitted.close(); // Rend la place
+        }
+    }
+
+    /**
+     * Exécute la commande admise sous la surveillance de sa durée maximale.
+     * @return Le code de sortie du processus
+     * @throws IOException Voir {@link #run()}
+     * @throws InterruptedException Si l’attente du processus est interrompue
+     */
+    private int watched() throws IOException, InterruptedException {
+        ScheduledFuture<?> watchdog = timeoutMillis > 0 ? TIMEOUTS.schedule(() -> {
+            timedOut = true;
+            cancel();
+        }, timeoutMillis, TimeUnit.MILLISECONDS) : null;
+        long admitted = System.nanoTime();
+        boolean failed = true; // Jusqu’au code de sortie
+        try {
+            int exitCode = execute();
+            failed = false;
+            return exitCode;
+        } catch (IOException e) {
+            if (timedOut) { // L’erreur vient de l’arrêt : donne la vraie cause
+                metrics.commandTimedOut();
+                throw new IOException("Durée maximale dépassée (" + timeoutMillis + " ms), commande arrêtée");
+            }
+            throw e;
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            metrics.command(queueNanos, System.nanoTime() - admitted, drainNanos.sum() - readNanos.sum(), failed);
+        }
+    }
+
+    /**
+     * Lance la commande, une fois admise.
+     * @return Le code de sortie du processus
+     * @throws IOException Si le processus ne peut pas être lancé, si le client est déconnecté
+     * ou si la commande a été annulée
+     * @throws InterruptedException Si l’attente du processus est interrompue
+     */
+    private int execute() throws IOException, InterruptedException {
+        startNanos = System.nanoTime();
+        PersistentShell persistent;
+        try {
+            persistent = sessionShell != null ? sessionShell.acquire() : null;
+        } catch (IOException e) { // Interpréteur impossible à lancer
+            metrics.spawnFailed();
+            throw e;
+        }
+        if (persistent != null) {
+            try {
+                return runInShell(persistent);
+            } finally {
+                sessionShell.release(persistent);
+            }
+        }
+        // Crée un processus pour exécuter la commande via l’interpréteur du système
+        try {
+            process = new ProcessBuilder(PersistentShell.forkCommand(command)).start();
+        } catch (IOException e) {
+            metrics.spawnFailed();
+            throw e;
+        }
+        if (cancelled) { // Annulée pendant le lancement
+            destroyTree(process);
+        }
+        process.getOutputStream().close(); // La commande ne lit rien : évite qu’elle attende une saisie
+        Process started = process;
+        StderrPump stderr = new StderrPump(new InputStreamReader(process.getErrorStream()), () -> destroyTree(started));
+        stderr.start(); // Vide stderr en parallèle
+        try {
+            drain(new InputStreamReader(process.getInputStream()), Protocol.STDOUT); // stdout ici
+            stderr.join(); // Attend la fin de stderr (ou son erreur d’envoi)
+            if (stderr.failure != null) {
+                throw stderr.failure;
+            }
+            int exitCode = process.waitFor(); // Attend la fin de l’exécution de la commande
+            if (cancelled) {
+                throw new IOException("Commande annulée");
+            }
+            return exitCode;
+        } finally {
+            if (process.isAlive()) { // Client parti ou attente interrompue
+                destroyTree(process); // Libère le processus, ses descendants et ses tubes
+            }
+        }
+    }
+
+    /**
+     * Exécute la commande dans l’interpréteur de la session, réservé par l’appelant.
+     * @param persistent L’interpréteur
+     * @return Le code de sortie de la commande
+     * @throws IOException Si le client est déconnecté ou si la commande a été annulée
+     * @throws InterruptedException Si l’attente est interrompue
+     */
+    private int runInShell(PersistentShell persistent) throws IOException, InterruptedException {
+        shell = persistent;
+        PersistentShell.Execution execution = persistent.start(command);
+        if (cancelled) { // Annulée pendant l’envoi
+            persistent.cancel();
+        }
+        StderrPump stderr = new StderrPump(execution.stderr(), persistent::close); // Vide stderr en parallèle
+        stderr.start();
+        try {
+            drain(execution.stdout(), Protocol.STDOUT); // stdout jusqu’au marqueur
+            stderr.join();
+            if (stderr.failure != null) {
+                throw stderr.failure;
+            }
+            int exitCode = execution.exitCode(); // Code lu après le marqueur, ou code de l’interpréteur arrêté
+            if (cancelled) {
+                throw new IOException("Commande annulée");
+            }
+            return exitCode;
+        } finally {
+            if (!execution.completed()) { // Sortie pas lue jusqu’au bout : l’interpréteur est inutilisable
+                persistent.close();
+            }
+        }
+    }
+
+    /**
+     * Interrompt la commande : le processus et ses descendants sont détruits et run() se termine en erreur.
+     */
+    public void cancel() {
+        cancelled = true;
+        ExecutionScheduler.Ticket waiting = ticket;
+        if (waiting != null) {
+            waiting.cancel(); // Quitte la file d’attente (sans effet une fois admise)
+        }
+        Process running = process;
+        if (running != null) {
+            destroyTree(running);
+        }
+        PersistentShell persistent = shell;
+        if (persistent != null) {
+            persistent.cancel(); // Détruit l’interpréteur et les processus de la commande
+        }
+    }
+
+    /**
+     * Détruit un processus et tous ses descendants encore en vie : une commande comme
+     * {@code sh -c "a | b"} ne laisse pas ses processus enfants tourner (et tenir ses tubes) après elle.
+     * Les descendants sont relevés avant de détruire le processus, tant qu’ils lui sont encore rattachés ;
+     * le processus est détruit en premier pour qu’un interpréteur ne passe pas à la suite de son script.
+     * @param root Le processus lancé pour la commande
+     */
+    static void destroyTree(Process root) {
+        List<ProcessHandle> descendants = root.descendants().collect(Collectors.toList());
+        root.destroyForcibly();
+        descendants.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    /**
+     * @return true si la commande a été arrêtée pour dépassement de sa durée maximale
+     */
+    public boolean timedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return Le délai entre le lancement et le premier octet produit en millisecondes, ou {@link Protocol#NONE}
+     */
+    public long firstByteMillis() {
+        long first = firstByteNanos;
+        return first == 0 ? Protocol.NONE : (first - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Envoie un flux du processus au client en mesurant le temps passé.
+     * @param reader Le flux du processus
+     * @param stream L’étiquette du flux
+     * @throws IOException Si le client est déconnecté
+     */
+    private void drain(Reader reader, String stream) throws IOException {
+        long start = System.nanoTime();
+        try {
+            output.drain(watch(reader), stream);
+        } finally {
+            drainNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Enveloppe un flux du processus pour dater son premier caractère et mesurer l’attente du processus.
+     * @param reader Le flux du processus
+     * @return Le flux observé
+     */
+    private Reader watch(Reader reader) {
+        return new FilterReader(reader) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                long start = System.nanoTime();
+                int count = super.read(buffer, offset, length);
+                long end = System.nanoTime();
+                readNanos.add(end - start);
+                if (count > 0 && firstByteNanos == 0) {
+                    firstByteNanos = end; // Premier octet de sortie
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Thread qui vide la sortie d’erreur de la commande.
+     */
+    private class StderrPump extends Thread {
+        private final Reader source; // Sortie d’erreur lue
+        private final Runnable abort; // Détruit le processus si l’envoi échoue
+        private volatile IOException failure; // Erreur d’envoi au client, relancée par run()
+
+        StderrPump(Reader source, Runnable abort) {
+            super("rcs-stderr-" + PUMP_IDS.incrementAndGet());
+            setDaemon(true); // N’empêche pas l’arrêt de l’application
+            this.source = source;
+            this.abort = abort;
+        }
+
+        @Override
+        public void run() {
+            try {
+                drain(source, Protocol.STDERR);
+            } catch (IOException e) {
+                failure = e;
+                abort.run(); // Débloque la lecture de stdout
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sortie d’une commande pour le protocole texte : lignes étiquetées OUT/ERR
+ * (voir {@link Protocol}), écrites directement sur le canal de la session.
+ */
+public class TextCommandOutput implements StreamingCommand.Output {
+    private final SessionChannel channel; // Canal vers le client
+    private final String tag; // Préfixe de chaque ligne (indice dans un lot, vide sinon)
+
+    /**
+     * Constructeur de la sortie.
+     * @param channel Le canal vers le client
+     */
+    public TextCommandOutput(SessionChannel channel) {
+        this(channel, "");
+    }
+
+    /**
+     * Constructeur de la sortie d’une commande d’un lot.
+     * @param channel Le canal vers le client
+     * @param tag Le préfixe de chaque ligne ({@link Protocol#tag(int)}), vide hors lot
+     */
+    public TextCommandOutput(SessionChannel channel, String tag) {
+        this.channel = channel;
+        this.tag = tag;
+    }
+
+    /**
+     * Lit un flux du processus et l’envoie au client. Les lignes sont regroupées en envois d’environ
+     * {@link Protocol#MAX_CHUNK_CHARS} caractères, et une ligne plus longue est découpée en morceaux de
+     * cette taille : la mémoire utilisée ne dépend pas de la taille de la sortie.
+     * Ce qui a été lu part dès que le processus n’a plus rien écrit, pour l’afficher sans attendre.
+     * @param source Le flux à lire
+     * @param stream L’étiquette du flux ({@link Protocol#STDOUT} ou {@link Protocol#STDERR})
+     * @throws IOException Si le client est déconnecté
+     */
+    @Override
+    public void drain(Reader source, String stream) throws IOException {
+        try (Reader input = source) {
+            char[] buffer = new char[Protocol.MAX_CHUNK_CHARS]; // Buffer de lecture
+            StringBuilder line = new StringBuilder(); // Ligne en cours, jamais plus longue qu’un morceau
+            StringBuilder batch = new StringBuilder(); // Lignes de protocole en attente d’envoi
+            int count; // Nombre de caractères lus
+            while ((count = input.read(buffer)) > 0) {
+                for (int i = 0; i < count; i++) {
+                    char c = buffer[i];
+                    if (c == '\n') { // Fin de ligne : ajoute la ligne complète
+                        int length = line.length();
+                        if (length > 0 && line.charAt(length - 1) == '\r') { // Accepte CRLF
+                            line.setLength(length - 1);
+                        }
+                        addChunk(batch, stream, true, line);
+                    } else {
+                        line.append(c);
+                        if (line.length() == Protocol.MAX_CHUNK_CHARS) { // Ligne trop longue : ajoute un morceau
+                            addChunk(batch, stream, false, line);
+                        }
+                    }
+                    if (batch.length() >= Protocol.MAX_CHUNK_CHARS) { // Envoi complet
+                        send(batch);
+                    }
+                }
+                if (!input.ready()) { // Le processus attend : envoie ce qui a été lu, ligne commencée comprise
+                    if (line.length() > 0) {
+                        addChunk(batch, stream, false, line);
+                    }
+                    send(batch);
+                }
+            }
+            if (line.length() > 0) { // Dernière ligne sans fin de ligne
+                addChunk(batch, stream, true, line);
+            }
+            send(batch);
+        }
+    }
+
+    /**
+     * Ajoute un morceau de sortie à l’envoi en cours et vide la ligne.
+     * @param batch Les lignes de protocole en attente d’envoi
+     * @param stream L’étiquette du flux
+     * @param endOfLine true si le morceau termine une ligne
+     * @param line Le texte du morceau
+     */
+    private void addChunk(StringBuilder batch, String stream, boolean endOfLine, StringBuilder line) {
+        batch.append(tag).append(stream).append(endOfLine ? Protocol.LINE_END : Protocol.LINE_PART).append(line).append('\n');
+        line.setLength(0);
+    }
+
+    /**
+     * Envoie les lignes de protocole en attente au client.
+     * @param batch Les lignes à envoyer, vidées après l’envoi
+     * @throws IOException Si le client est déconnecté
+     */
+    private void send(StringBuilder batch) throws IOException {
+        if (batch.length() == 0) {
+            return;
+        }
+        channel.awaitWritable(); // Contre-pression : attend que le client ait lu les envois précédents
+        channel.write(StandardCharsets.UTF_8.encode(CharBuffer.wrap(batch))); // Un seul envoi pour plusieurs lignes
+        batch.setLength(0);
+    }
+}
@@ -0,0 +1,689 @@
+package hadoop.mapreduce.remotecontrolsoftware.server;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Upload d’un dossier ({@link Protocol#TREE}) : décode au fil de la réception les entrées envoyées bout à bout
+ * par le client et répartit leur écriture entre plusieurs files d’écriture, qui avancent en parallèle sur
+ * l’exécuteur du serveur. Les tâches d’une même file s’exécutent dans l’ordre : un gros fichier reste dans sa
+ * file de l’ouverture à la fermeture. Un petit fichier (jusqu’à {@link #SMALL_FILE} octets) est gardé en mémoire
+ * puis créé, écrit et fermé d’un coup, avec les autres petits fichiers arrivés dans la même trame : une seule
+ * tâche pour des dizaines de fichiers, et aucun fichier ouvert entre deux trames.
+ * <p>
+ * L’arborescence est assemblée dans {@code received_<nom>.tree}, puis renommée en {@code received_<nom>} une fois
+ * toutes les entrées écrites (une arborescence précédente du même nom est remplacée). Chaque chemin reçu est
+ * relatif et confiné à ce dossier : ni chemin absolu, ni {@code ..}, ni {@code .}, ni segment vide. Les fichiers
+ * gardent leur date de modification et leur droit d’exécution.
+ * <p>
+ * Les entrées sont décodées par le thread qui lit le canal ({@link #receive(ByteBuffer)}, {@link #complete()}) ;
+ * l’avancement et les erreurs arrivent dans le {@link Listener}, depuis les files d’écriture.
+ */
+final class TreeUpload {
+    static final int SMALL_FILE = 64 * 1024; // Fichiers gardés en mémoire puis écrits d’un coup
+    static final long MAX_BUFFERED = 8L * 1024 * 1024; // Octets reçus en attente d’écriture au-delà desquels le crédit est retenu
+    private static final int LARGE_BUFFER = 256 * 1024; // Octets d’un gros fichier par tâche d’écriture
+    private static final int BATCH_BYTES = 256 * 1024; // Octets de petits fichiers au plus par tâche d’écriture
+    private static final int BATCH_ENTRIES = 256; // Entrées au plus par tâche d’écriture
+    private static final Set<PosixFilePermission> EXECUTABLE = PosixFilePermissions.fromString("rwxr-xr-x");
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    private static final Set<Path> ACTIVE = new HashSet<>(); // Dossiers en cours d’envoi
+    private static final ReentrantLock REGISTRY = new ReentrantLock(); // Protège ACTIVE
+
+    /**
+     * Reçoit l’avancement de l’écriture, depuis les files d’écriture (plusieurs threads à la fois).
+     */
+    interface Listener {
+
+        /**
+         * @param entries Indices des entrées désormais sur le disque (tableau valable pendant l’appel)
+         * @param count Nombre d’indices dans entries
+         * @param bytes Octets de contenu écrits depuis le dernier appel de cette file, qui ne sont plus en mémoire
+         */
+        void stored(int[] entries, int count, long bytes);
+
+        /**
+         * Appelé une seule fois, à la première écriture qui échoue : l’envoi doit être abandonné.
+         * @param e La cause
+         */
+        void failed(IOException e);
+
+        /**
+         * Appelé une fois l’arborescence complète renommée en {@code received_<nom>}.
+         */
+        void published();
+    }
+
+    /**
+     * Tâche d’une file d’écriture.
+     */
+    private interface WriteTask {
+
+        /**
+         * @throws IOException Si l’écriture échoue
+         */
+        void run() throws IOException;
+
+        /**
+         * @return true si la tâche s’exécute même après un échec ou un abandon (fermeture, fin de l’envoi)
+         */
+        default boolean always() {
+            return false;
+        }
+    }
+
+    /**
+     * Entrée décodée : dossier, ou fichier avec son contenu.
+     */
+    private static final class Entry {
+        final int index; // Rang de l’entrée dans l’envoi
+        final Path path; // Destination, dans le dossier en cours d’assemblage
+        final byte type; // Protocol.TREE_FILE, TREE_EXECUTABLE ou TREE_DIRECTORY
+        final long size; // Taille du contenu
+        final long modified; // Date de modification (ms)
+        byte[] data; // Contenu d’un petit fichier
+        FileChannel channel; // Gros fichier ouvert (file d’écriture)
+
+        Entry(int index, Path path, byte type, long size, long modified) {
+            this.index = index;
+            this.path = path;
+            this.type = type;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * File d’écriture : exécute ses tâches dans l’ordre, une à la fois, sur l’exécuteur du serveur.
+     */
+    private final class Lane implements Runnable {
+        private final Queue<WriteTask> tasks = new ConcurrentLinkedQueue<>(); // Tâches en attente
+        private final AtomicBoolean scheduled = new AtomicBoolean(); // Un seul passage sur l’exécuteur à la fois
+        private int[] done = new int[64]; // Entrées écrites par la tâche en cours (thread de la file)
+        private int doneCount;
+        private long doneBytes; // Octets de contenu écrits par la tâche en cours
+
+        /**
+         * @param task La tâche, exécutée après les précédentes de la file
+         */
+        void submit(WriteTask task) {
+            tasks.add(task);
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) { // Pool saturé : écrit ici plutôt que de perdre l’envoi
+                    run();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            do {
+                WriteTask task;
+                while ((task = tasks.poll()) != null) {
+                    if ((aborted.get() || failed.get()) && !task.always()) {
+                        continue;
+                    }
+                    try {
+                        task.run();
+                    } catch (IOException | RuntimeException e) {
+                        fail(e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e));
+                    }
+                    if (doneCount > 0 || doneBytes > 0) {
+                        listener.stored(done, doneCount, doneBytes);
+                        doneCount = 0;
+                        doneBytes = 0;
+                    }
+                }
+                scheduled.set(false);
+            } while (!tasks.isEmpty() && scheduled.compareAndSet(false, true)); // Tâche ajoutée entre-temps
+        }
+
+        /**
+         * Note une entrée écrite (thread de la file).
+         * @param entry L’entrée
+         * @param bytes Les octets de contenu écrits par la tâche
+         */
+        void stored(Entry entry, long bytes) {
+            if (entry != null) {
+                if (doneCount == done.length) {
+                    done = Arrays.copyOf(done, doneCount * 2);
+                }
+                done[doneCount++] = entry.index;
+            }
+            doneBytes += bytes;
+        }
+    }
+
+    private final Path target; // Dossier final
+    private final Path staging; // Dossier en cours d’assemblage
+    private final int entries; // Nombre d’entrées annoncé
+    private final long total; // Octets de contenu annoncés
+    private final Executor executor; // Exécuteur des files d’écriture
+    private final Listener listener; // Avancement et erreurs
+    private final Lane[] lanes; // Files d’écriture
+    private final Set<Path> directories = ConcurrentHashMap.newKeySet(); // Dossiers déjà créés
+    private final Set<Entry> open = ConcurrentHashMap.newKeySet(); // Gros fichiers ouverts, fermés à l’abandon
+    private final AtomicBoolean failed = new AtomicBoolean(); // Une écriture a échoué
+    private final AtomicBoolean aborted = new AtomicBoolean(); // Envoi abandonné : les tâches restantes sont ignorées
+    private boolean released; // Nom rendu à d’autres envois (sous REGISTRY)
+    private final ByteBuffer header = ByteBuffer.allocate(Protocol.TREE_HEADER); // En-tête en cours de lecture
+    private ByteBuffer name; // Chemin en cours de lecture (null : en-tête)
+    private byte type; // Type de l’entrée en cours de lecture
+    private long size; // Taille de l’entrée en cours de lecture
+    private long modified; // Date de l’entrée en cours de lecture
+    private Entry current; // Entrée dont le contenu arrive (null : entre deux entrées)
+    private long remaining; // Octets de contenu de l’entrée en cours encore attendus
+    private Lane large; // File du gros fichier en cours
+    private byte[] buffer; // Contenu d’un gros fichier en attente d’écriture
+    private int buffered; // Octets dans buffer
+    private List<Entry> batch = new ArrayList<>(); // Petits fichiers et dossiers complets, pas encore confiés à une file
+    private long batchBytes; // Octets de contenu dans batch
+    private int decoded; // Entrées décodées
+    private long content; // Octets de contenu décodés
+    private int nextLane; // File de la prochaine tâche (tour à tour)
+
+    /**
+     * Constructeur, à travers {@link #open(String, int, long, int, Executor, Listener)}.
+     */
+    private TreeUpload(Path target, int entries, long total, int writers, Executor executor, Listener listener) {
+        this.target = target;
+        this.staging = Paths.get(target + ".tree");
+        this.entries = entries;
+        this.total = total;
+        this.executor = executor;
+        this.listener = listener;
+        this.lanes = new Lane[writers];
+        for (int i = 0; i < writers; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * Ouvre l’envoi d’un dossier.
+     * @param name Nom du dossier (le chemin éventuel est ignoré)
+     * @param entries Nombre d’entrées annoncé
+     * @param total Octets de contenu annoncés
+     * @param writers Nombre de files d’écriture
+     * @param executor Exécuteur des files d’écriture
+     * @param listener Reçoit l’avancement et les erreurs
+     * @return L’envoi, à préparer par {@link #prepare()}
+     * @throws IOException Si la requête est invalide ou si le même dossier est déjà en cours d’envoi
+     */
+    static TreeUpload open(String name, int entries, long total, int writers, Executor executor, Listener listener)
+            throws IOException {
+        Path fileName = Paths.get(name).getFileName(); // Reste dans le répertoire du serveur
+        if (fileName == null || fileName.toString().isEmpty() || entries < 0 || entries > Protocol.MAX_TREE_ENTRIES
+                || total < 0 || writers < 1) {
+            throw new IOException("Requête d’upload de dossier invalide");
+        }
+        Path target = Paths.get("received_" + fileName);
+        REGISTRY.lock();
+        try {
+            if (!ACTIVE.add(target)) {
+                throw new IOException("Upload déjà en cours pour " + fileName);
+            }
+        } finally {
+            REGISTRY.unlock();
+        }
+        return new TreeUpload(target, entries, total, writers, executor, listener);
+    }
+
+    /**
+     * @return Le nom du dossier final
+     */
+    Path target() {
+        return target;
+    }
+
+    /**
+     * Crée le dossier d’assemblage, après avoir effacé celui d’un envoi interrompu par un arrêt du serveur.
+     * Peut parcourir une grosse arborescence : à appeler hors de la boucle d’événements.
+     * @throws IOException Si le dossier ne peut pas être créé
+     */
+    void prepare() throws IOException {
+        try {
+            delete(staging);
+            Files.createDirectories(staging);
+            directories.add(staging);
+        } catch (IOException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * Décode des octets reçus et confie les entrées complètes (ou les morceaux de gros fichiers) aux files d’écriture.
+     * @param data Les octets reçus (consommés, valables jusqu’à la trame suivante : le contenu est recopié)
+     * @return Les octets de contenu recopiés, en mémoire jusqu’à leur écriture ({@link Listener#stored})
+     * @throws IOException Si une entrée est invalide (chemin refusé, tailles incohérentes, entrées en trop)
+     */
+    long receive(ByteBuffer data) throws IOException {
+        long copied = 0;
+        while (data.hasRemaining()) {
+            if (current == null) {
+                if (!entry(data)) { // Suite de l’en-tête ou du chemin dans la trame suivante
+                    break;
+                }
+                continue;
+            }
+            int count = (int) Math.min(remaining, data.remaining());
+            if (current.data != null) { // Petit fichier : recopié en entier avant d’être écrit
+                data.get(current.data, (int) (current.size - remaining), count);
+            } else { // Gros fichier : par morceaux de LARGE_BUFFER
+                count = Math.min(count, buffer.length - buffered);
+                data.get(buffer, buffered, count);
+                buffered += count;
+            }
+            remaining -= count;
+            copied += count;
+            if (current.data == null && (buffered == buffer.length || remaining == 0)) {
+                flushLarge();
+            }
+            if (remaining == 0) {
+                completeEntry();
+            }
+        }
+        flushBatch(); // Les petits fichiers de la trame partent ensemble
+        return copied;
+    }
+
+    /**
+     * Vérifie que toutes les entrées annoncées sont arrivées, puis publie l’arborescence une fois toutes les files
+     * d’écriture vidées ({@link Listener#published()} ou {@link Listener#failed}).
+     * @throws IOException Si des entrées manquent
+     */
+    void complete() throws IOException {
+        if (current != null || name != null || header.position() > 0 || decoded != entries || content != total) {
+            throw new IOException("Dossier incomplet : " + decoded + " entrées sur " + entries + ", " + content
+                    + " octets sur " + total + ".");
+        }
+        barrier(() -> {
+            if (aborted.get() || failed.get()) {
+                return;
+            }
+            try {
+                publish();
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            release();
+            listener.published();
+        });
+    }
+
+    /**
+     * Abandonne l’envoi : les tâches restantes sont ignorées, puis les fichiers ouverts sont fermés et le dossier
+     * d’assemblage effacé, une fois toutes les files arrêtées. Peut être appelé depuis n’importe quel thread.
+     * @param done Appelé une fois le dossier d’assemblage effacé et le nom libéré (pas appelé si l’envoi
+     *             était déjà abandonné)
+     */
+    void abort(Runnable done) {
+        if (!aborted.compareAndSet(false, true)) { // Un seul nettoyage : le nom est peut-être déjà repris
+            return;
+        }
+        barrier(() -> {
+            for (Entry entry : open) {
+                try {
+                    entry.channel.close();
+                } catch (IOException ignored) {
+                    // Fichier effacé juste après
+                }
+            }
+            open.clear();
+            try {
+                delete(staging);
+            } catch (IOException ignored) {
+                // Effacé au prochain envoi du même dossier
+            }
+            release();
+            done.run();
+        });
+    }
+
+    /**
+     * Lit l’en-tête et le chemin d’une entrée, puis la prépare.
+     * @param data Les octets reçus
+     * @return false si l’en-tête ou le chemin continue dans la trame suivante
+     * @throws IOException Si l’entrée est invalide
+     */
+    private boolean entry(ByteBuffer data) throws IOException {
+        if (name == null) {
+            int count = Math.min(header.remaining(), data.remaining());
+            header.put(data.duplicate().limit(data.position() + count));
+            data.position(data.position() + count);
+            if (header.hasRemaining()) {
+                return false;
+            }
+            header.flip();
+            int length = header.getShort() & 0xFFFF;
+            type = header.get();
+            size = header.getLong();
+            modified = header.getLong();
+            header.clear();
+            if (decoded == entries) {
+                throw new IOException("Plus d’entrées qu’annoncé (" + entries + ")");
+            }
+            if (length == 0 || length > Protocol.MAX_TREE_PATH || size < 0 || size > total - content
+                    || (type != Protocol.TREE_FILE && type != Protocol.TREE_EXECUTABLE && type != Protocol.TREE_DIRECTORY)
+                    || (type == Protocol.TREE_DIRECTORY && size != 0)) {
+                throw new IOException("Entrée invalide : " + decoded);
+            }
+            name = ByteBuffer.allocate(length);
+        }
+        int count = Math.min(name.remaining(), data.remaining());
+        name.put(data.duplicate().limit(data.position() + count));
+        data.position(data.position() + count);
+        if (name.hasRemaining()) {
+            return false;
+        }
+        String relative = StandardCharsets.UTF_8.newDecoder().decode(name.flip()).toString(); // UTF-8 invalide refusé
+        name = null;
+        current = new Entry(decoded++, resolve(relative), type, size, modified);
+        content += size;
+        remaining = size;
+        if (type != Protocol.TREE_DIRECTORY && size > SMALL_FILE) { // Gros fichier : ouvert dans sa file
+            Entry entry = current;
+            large = lane();
+            large.submit(() -> {
+                directory(entry.path.getParent());
+                entry.channel = FileChannel.open(entry.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                open.add(entry);
+            });
+            buffer = new byte[(int) Math.min(LARGE_BUFFER, size)];
+            buffered = 0;
+        } else if (type != Protocol.TREE_DIRECTORY) {
+            current.data = new byte[(int) size];
+        }
+        if (remaining == 0) { // Dossier ou fichier vide
+            completeEntry();
+        }
+        return true;
+    }
+
+    /**
+     * Résout un chemin reçu dans le dossier d’assemblage, segment par segment.
+     * @param relative Le chemin, segments séparés par {@code /}
+     * @return La destination
+     * @throws IOException Si le chemin sortirait du dossier ou contient un segment invalide
+     */
+    private Path resolve(String relative) throws IOException {
+        Path path = staging;
+        try {
+            for (String segment : relative.split("/", -1)) {
+                if (segment.isEmpty() || ".".equals(segment) || "..".equals(segment) || segment.indexOf('\\') >= 0) {
+                    throw new IOException("Chemin refusé : " + relative);
+                }
+                Path child = path.resolve(segment);
+                if (!path.equals(child.getParent())) { // Segment absolu ou lecteur (C:) : sortirait du dossier
+                    throw new IOException("Chemin refusé : " + relative);
+                }
+                path = child;
+            }
+        } catch (InvalidPathException e) { // Caractère interdit par le système de fichiers
+            throw new IOException("Chemin refusé : " + relative);
+        }
+        return path;
+    }
+
+    /**
+     * Termine l’entrée en cours : un petit fichier ou un dossier rejoint le lot, un gros fichier est fermé dans sa file.
+     */
+    private void completeEntry() {
+        Entry entry = current;
+        current = null;
+        if (entry.data != null || entry.type == Protocol.TREE_DIRECTORY) {
+            batch.add(entry);
+            batchBytes += entry.size;
+            if (batch.size() >= BATCH_ENTRIES || batchBytes >= BATCH_BYTES) {
+                flushBatch();
+            }
+            return;
+        }
+        Lane lane = large; // Contenu déjà confié à la file qui a ouvert le fichier
+        large = null;
+        lane.submit(new WriteTask() {
+            @Override
+            public void run() throws IOException {
+                FileChannel channel = entry.channel;
+                if (channel == null) { // Ouverture ignorée après un échec
+                    return;
+                }
+                open.remove(entry);
+                channel.close();
+                if (!aborted.get() && !failed.get()) {
+                    attributes(entry);
+                    lane.stored(entry, 0);
+                }
+            }
+
+            @Override
+            public boolean always() {
+                return true; // Ne laisse pas le fichier ouvert
+            }
+        });
+    }
+
+    /**
+     * Confie le contenu en attente d’un gros fichier à sa file.
+     */
+    private void flushLarge() {
+        Entry entry = current;
+        byte[] bytes = buffer;
+        int length = buffered;
+        Lane lane = large;
+        lane.submit(() -> {
+            ByteBuffer data = ByteBuffer.wrap(bytes, 0, length);
+            while (data.hasRemaining()) {
+                entry.channel.write(data);
+            }
+            lane.stored(null, length);
+        });
+        buffer = remaining > 0 ? new byte[(int) Math.min(LARGE_BUFFER, remaining)] : null; // L’ancien appartient à la file
+        buffered = 0;
+    }
+
+    /**
+     * Confie le lot de petits fichiers et de dossiers à la file suivante.
+     */
+    private void flushBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Entry> entries = batch;
+        batch = new ArrayList<>();
+        batchBytes = 0;
+        Lane lane = lane();
+        lane.submit(() -> {
+            for (Entry entry : entries) {
+                write(entry);
+                lane.stored(entry, entry.size);
+                entry.data = null; // Libère la mémoire au fil du lot
+            }
+        });
+    }
+
+    /**
+     * @return La file de la prochaine tâche, tour à tour
+     */
+    private Lane lane() {
+        Lane lane = lanes[nextLane];
+        nextLane = (nextLane + 1) % lanes.length;
+        return lane;
+    }
+
+    /**
+     * Écrit un petit fichier ou crée un dossier (thread d’une file).
+     * @param entry L’entrée
+     * @throws IOException Si l’écriture échoue
+     */
+    private void write(Entry entry) throws IOException {
+        if (entry.type == Protocol.TREE_DIRECTORY) {
+            directory(entry.path);
+            return;
+        }
+        directory(entry.path.getParent());
+        try (FileChannel file = FileChannel.open(entry.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer data = ByteBuffer.wrap(entry.data);
+            while (data.hasRemaining()) {
+                file.write(data);
+            }
+        }
+        attributes(entry);
+    }
+
+    /**
+     * Crée un dossier et ses parents, une seule fois par envoi.
+     * @param directory Le dossier
+     * @throws IOException Si un fichier porte déjà ce nom
+     */
+    private void directory(Path directory) throws IOException {
+        if (directories.contains(directory)) {
+            return;
+        }
+        Files.createDirectories(directory); // Sans effet si une autre file vient de le créer
+        directories.add(directory);
+    }
+
+    /**
+     * Applique la date de modification et le droit d’exécution d’un fichier écrit.
+     * @param entry L’entrée
+     * @throws IOException Si les attributs ne peuvent pas être modifiés
+     */
+    private static void attributes(Entry entry) throws IOException {
+        Files.setLastModifiedTime(entry.path, FileTime.fromMillis(entry.modified));
+        if (entry.type == Protocol.TREE_EXECUTABLE && POSIX) {
+            Files.setPosixFilePermissions(entry.path, EXECUTABLE);
+        }
+    }
+
+    /**
+     * Exécute une tâche une fois toutes les files vidées de leurs tâches actuelles.
+     * @param last La tâche, exécutée par la dernière file à l’atteindre
+     */
+    private void barrier(Runnable last) {
+        AtomicInteger pending = new AtomicInteger(lanes.length);
+        for (Lane lane : lanes) {
+            lane.submit(new WriteTask() {
+                @Override
+                public void run() {
+                    if (pending.decrementAndGet() == 0) {
+                        last.run();
+                    }
+                }
+
+                @Override
+                public boolean always() {
+                    return true;
+                }
+            });
+        }
+    }
+
+    /**
+     * Renomme le dossier assemblé en dossier final, en remplaçant l’arborescence précédente du même nom.
+     * @throws IOException Si le renommage échoue
+     */
+    private void publish() throws IOException {
+        if (Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+            Path previous = Paths.get(target + ".old");
+            delete(previous);
+            Files.move(target, previous); // Écarte l’ancienne version le temps du renommage
+            Files.move(staging, target);
+            delete(previous);
+        } else {
+            Files.move(staging, target, StandardCopyOption.REPLACE_EXISTING); // Remplace un fichier du même nom
+        }
+    }
+
+    /**
+     * Note le premier échec d’écriture et prévient le listener.
+     * @param e La cause
+     */
+    private void fail(IOException e) {
+        if (failed.compareAndSet(false, true) && !aborted.get()) {
+            listener.failed(e);
+        }
+    }
+
+    /**
+     * Libère le nom du dossier pour un autre envoi.
+     */
+    private void release() {
+        REGISTRY.lock();
+        try {
+            if (!released) { // Une seule fois : le nom est peut-être déjà repris par un autre envoi
+                released = true;
+                ACTIVE.remove(target);
+            }
+        } finally {
+            REGISTRY.unlock();
+        }
+    }
+
+    /**
+     * Efface une arborescence, sans suivre les liens.
+     * @param root La racine (sans effet si elle n’existe pas)
+     * @throws IOException Si un fichier ne peut pas être effacé
+     */
+    private static void delete(Path root) throws IOException {
+        if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                Files.deleteIfExists(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,152 @@
+package hadoop.mapreduce.remotecontrolsoftware.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme log-linéaire sans verrou, dans l’esprit de HdrHistogram : chaque puissance de deux est
+ * découpée en {@value #SUB_BUCKETS} cases égales, soit une erreur relative d’au plus 1/{@value #SUB_BUCKETS}
+ * sur n’importe quel centile, de 0 à {@link Long#MAX_VALUE}, dans un tableau de taille fixe (15 Ko).
+ * Un enregistrement coûte un incrément atomique et deux additions : assez peu pour rester actif en production.
+ */
+public final class Histogram {
+    private static final int SUB_BITS = 5; // Bits de précision sous chaque puissance de deux
+    static final int SUB_BUCKETS = 1 << SUB_BITS; // Cases par puissance de deux
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS; // De 0 à Long.MAX_VALUE
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS); // Valeurs par case
+    private final LongAdder count = new LongAdder(); // Nombre de valeurs
+    private final LongAdder sum = new LongAdder(); // Somme des valeurs
+    private final AtomicLong max = new AtomicLong(); // Plus grande valeur
+
+    /**
+     * Enregistre une valeur (les valeurs négatives comptent pour 0).
+     * @param value La valeur, dans l’unité choisie par l’appelant
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+        long current;
+        while (v > (current = max.get()) && !max.compareAndSet(current, v)) {
+            // Une autre valeur plus grande a pu arriver entre-temps : recommence
+        }
+    }
+
+    /**
+     * @return Une copie cohérente à peu près (les enregistrements concurrents peuvent manquer)
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.sum(), max.get());
+    }
+
+    /**
+     * @param value Une valeur positive ou nulle
+     * @return Sa case : la valeur elle-même en dessous de {@value #SUB_BUCKETS}, puis SUB_BUCKETS cases
+     * par puissance de deux
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // Puissance de deux, au moins SUB_BITS
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1); // Bits qui suivent le premier 1
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @param index Une case
+     * @return La plus petite valeur de la case
+     */
+    static long lowest(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * @param index Une case
+     * @return La plus grande valeur de la case
+     */
+    static long highest(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        return lowest(index) + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Copie figée d’un histogramme.
+     */
+    public static final class Snapshot {
+        private final long[] counts; // Valeurs par case
+        private final long count; // Nombre de valeurs
+        private final long sum; // Somme des valeurs
+        private final long max; // Plus grande valeur
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @return Le nombre de valeurs
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * @return La somme des valeurs
+         */
+        public long sum() {
+            return sum;
+        }
+
+        /**
+         * @return La plus grande valeur (exacte)
+         */
+        public long max() {
+            return max;
+        }
+
+        /**
+         * @return La moyenne, 0 sans valeur
+         */
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param quantile Le centile voulu, entre 0 et 1 (0,99 pour p99)
+         * @return La plus grande valeur de la case qui contient ce centile (bornée par le maximum), 0 sans valeur
+         */
+        public long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count)); // Rang de la valeur cherchée
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highest(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package hadoop.mapreduce.remotecontrolsoftware.server.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Point d’accès HTTP en texte brut aux mesures, pour un collecteur de type Prometheus :
+ * {@code GET /metrics} renvoie {@link ServerMetrics#scrape()}. Il écoute uniquement sur l’interface
+ * locale (127.0.0.1) : les mesures ne sortent de la machine que par un relais choisi par l’administrateur.
+ * Un seul thread sert les requêtes, une lecture ne coûte qu’une copie des compteurs.
+ */
+public final class MetricsEndpoint implements AutoCloseable {
+    public static final String PATH = "/metrics"; // Chemin des mesures
+
+    private final HttpServer http; // Serveur HTTP du JDK
+    private final ExecutorService executor; // Thread qui sert les requêtes
+
+    /**
+     * Ouvre le point d’accès.
+     * @param port Le port local (0 : choisi par le système)
+     * @param metrics Les mesures publiées
+     * @throws IOException Si le port est déjà pris
+     */
+    public MetricsEndpoint(int port, ServerMetrics metrics) throws IOException {
+        this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "rcs-metrics");
+            thread.setDaemon(true); // N’empêche pas l’arrêt de l’application
+            return thread;
+        });
+        http.createContext(PATH, exchange -> reply(exchange, metrics));
+        http.setExecutor(executor);
+        http.start();
+    }
+
+    /**
+     * @return Le port d’écoute
+     */
+    public int port() {
+        return http.getAddress().getPort();
+    }
+
+    /**
+     * Répond à une requête.
+     * @param exchange La requête
+     * @param metrics Les mesures publiées
+     * @throws IOException Si le client est parti
+     */
+    private static void reply(HttpExchange exchange, ServerMetrics metrics) throws IOException {
+        try (HttpExchange request = exchange) {
+            if (!"GET".equals(request.getRequestMethod())) {
+                request.sendResponseHeaders(405, -1); // Méthode non autorisée, sans corps
+                return;
+            }
+            byte[] body = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            request.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            request.sendResponseHeaders(200, body.length);
+            try (OutputStream output = request.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+
+    /**
+     * Ferme le port et arrête le thread.
+     */
+    @Override
+    public void close() {
+        http.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,104 @@
+package hadoop.mapreduce.remotecontrolsoftware.server.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Publication des mesures par JMX (jconsole, VisualVM, agents de supervision), sous le nom
+ * {@value #NAME} : un attribut en lecture seule par valeur de {@link ServerMetrics#snapshot()},
+ * avec le même nom (sans le préfixe {@code rcs_}). Les durées sont en secondes.
+ * <p>
+ * Bean dynamique : la liste des attributs suit celle des mesures sans interface à tenir à jour.
+ */
+public final class MetricsMBean implements DynamicMBean {
+    public static final String NAME = "hadoop.mapreduce.remotecontrolsoftware:type=ServerMetrics"; // Nom JMX
+    private static final String PREFIX = "rcs_"; // Préfixe retiré des noms d’attributs
+
+    private final ServerMetrics metrics; // Mesures publiées
+    private final ObjectName name; // Nom d’enregistrement
+
+    /**
+     * Enregistre les mesures auprès du serveur JMX de la plateforme (remplace un enregistrement précédent).
+     * @param metrics Les mesures à publier
+     * @throws Exception Si l’enregistrement est refusé
+     */
+    public MetricsMBean(ServerMetrics metrics) throws Exception {
+        this.metrics = metrics;
+        this.name = new ObjectName(NAME);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(name)) { // Serveur redémarré dans la même JVM
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+
+    /**
+     * Retire les mesures du serveur JMX.
+     */
+    public void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (Exception e) {
+            // Déjà retiré
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = metrics.snapshot().get(PREFIX + attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> values = metrics.snapshot(); // Une seule copie pour tous les attributs demandés
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Number value = values.get(PREFIX + attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Attribut en lecture seule : " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList(); // Aucun attribut modifiable
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException("Aucune opération : " + actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Number> values = metrics.snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+        int i = 0;
+        for (Map.Entry<String, Number> value : values.entrySet()) {
+            attributes[i++] = new MBeanAttributeInfo(value.getKey().substring(PREFIX.length()),
+                    value.getValue().getClass().getName(), value.getKey(), true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "Mesures du serveur de contrôle à distance", attributes,
+                null, new MBeanOperationInfo[0], null);
+    }
+}
@@ -0,0 +1,299 @@
+package hadoop.mapreduce.remotecontrolsoftware.server.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Mesures du serveur, enregistrées sur les chemins chauds des sessions : négociation TLS, authentification,
+ * attente / exécution / envoi de chaque commande, transferts de fichiers, échecs de lancement de processus.
+ * Les durées sont enregistrées en microsecondes dans des {@link Histogram} ; les compteurs sont des
+ * {@link LongAdder}, sans contention entre sessions. Les valeurs instantanées (sessions actives, file
+ * d’attente…) sont lues à la demande auprès de leur propriétaire ({@link #gauge(String, String, LongSupplier)}).
+ * <p>
+ * Deux vues du même état : {@link #snapshot()} pour JMX ({@link MetricsMBean}) et {@link #scrape()},
+ * au format texte de Prometheus, pour {@link MetricsEndpoint}.
+ */
+public final class ServerMetrics {
+    /**
+     * Mesures d’un contexte sans serveur (outils, tests) : enregistrées mais jamais publiées.
+     */
+    public static final ServerMetrics UNUSED = new ServerMetrics();
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999}; // Centiles publiés
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p999"}; // Leurs noms dans les attributs JMX
+
+    private final Histogram handshake = new Histogram(); // Négociation TLS (µs)
+    private final Histogram auth = new Histogram(); // Vérification des identifiants (µs)
+    private final Histogram commandQueue = new Histogram(); // Attente d’une place (µs)
+    private final Histogram commandExec = new Histogram(); // Exécution, de l’admission à la fin (µs)
+    private final Histogram commandSend = new Histogram(); // Attente du client pendant l’envoi de la sortie (µs)
+    private final Histogram uploadRate = new Histogram(); // Débit des uploads terminés (octets/s)
+    private final Histogram downloadRate = new Histogram(); // Débit des téléchargements terminés (octets/s)
+    private final LongAdder handshakeFailures = new LongAdder(); // Connexions fermées avant la fin de la négociation
+    private final LongAdder authFailures = new LongAdder(); // Identifiants refusés
+    private final LongAdder authCacheHits = new LongAdder(); // Identifiants acceptés sans calcul d’empreinte
+    private final LongAdder authThrottled = new LongAdder(); // Tentatives refusées sans vérification (trop d’échecs)
+    private final LongAdder tokenResumes = new LongAdder(); // Reconnexions par jeton de session acceptées
+    private final LongAdder tokenRejects = new LongAdder(); // Jetons de session refusés (expirés ou falsifiés)
+    private final LongAdder commands = new LongAdder(); // Commandes exécutées
+    private final LongAdder commandErrors = new LongAdder(); // Commandes terminées en erreur (annulées, client parti…)
+    private final LongAdder commandTimeouts = new LongAdder(); // Commandes arrêtées pour durée dépassée
+    private final LongAdder spawnFailures = new LongAdder(); // Processus ou interpréteurs impossibles à lancer
+    private final LongAdder uploads = new LongAdder(); // Uploads terminés
+    private final LongAdder uploadBytes = new LongAdder(); // Octets reçus par les uploads terminés
+    private final LongAdder reusedBytes = new LongAdder(); // Octets des uploads par différence déjà présents sur le serveur
+    private final LongAdder treeEntries = new LongAdder(); // Fichiers et dossiers reçus par les uploads de dossiers
+    private final LongAdder downloads = new LongAdder(); // Téléchargements terminés
+    private final LongAdder downloadBytes = new LongAdder(); // Octets envoyés par les téléchargements terminés
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>(); // Valeurs instantanées, par nom
+
+    /**
+     * Valeur instantanée lue auprès de son propriétaire.
+     */
+    private static final class Gauge {
+        private final String help; // Description
+        private final LongSupplier value; // Lecture de la valeur
+
+        Gauge(String help, LongSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Publie une valeur instantanée (remplace celle du même nom).
+     * @param name Le nom, au format Prometheus ({@code rcs_sessions_active})
+     * @param help La description
+     * @param value La lecture de la valeur, appelée à chaque publication
+     */
+    public void gauge(String name, String help, LongSupplier value) {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    /**
+     * @param nanos La durée de la négociation TLS d’une connexion
+     */
+    public void handshake(long nanos) {
+        handshake.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * Compte une connexion fermée avant la fin de sa négociation TLS.
+     */
+    public void handshakeFailed() {
+        handshakeFailures.increment();
+    }
+
+    /**
+     * @param nanos La durée de la vérification des identifiants
+     * @param accepted true si les identifiants sont acceptés
+     */
+    public void authenticated(long nanos, boolean accepted) {
+        auth.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        if (!accepted) {
+            authFailures.increment();
+        }
+    }
+
+    /**
+     * Compte des identifiants acceptés d’après une vérification récente, sans calcul d’empreinte.
+     */
+    public void authCached() {
+        authCacheHits.increment();
+    }
+
+    /**
+     * Compte une tentative refusée sans vérification, après trop d’échecs de son adresse ou de son login.
+     */
+    public void authThrottled() {
+        authThrottled.increment();
+    }
+
+    /**
+     * @param accepted true si le jeton de session présenté est accepté
+     */
+    public void resumed(boolean accepted) {
+        (accepted ? tokenResumes : tokenRejects).increment();
+    }
+
+    /**
+     * @param queueNanos L’attente d’une place
+     * @param execNanos L’exécution, de l’admission à la fin du processus
+     * @param sendNanos Le temps passé à attendre le client pendant l’envoi de la sortie
+     * @param failed true si la commande s’est terminée en erreur (pas seulement avec un code non nul)
+     */
+    public void command(long queueNanos, long execNanos, long sendNanos, boolean failed) {
+        commands.increment();
+        commandQueue.record(TimeUnit.NANOSECONDS.toMicros(queueNanos));
+        commandExec.record(TimeUnit.NANOSECONDS.toMicros(execNanos));
+        commandSend.record(TimeUnit.NANOSECONDS.toMicros(sendNanos));
+        if (failed) {
+            commandErrors.increment();
+        }
+    }
+
+    /**
+     * Compte une commande arrêtée pour dépassement de sa durée maximale.
+     */
+    public void commandTimedOut() {
+        commandTimeouts.increment();
+    }
+
+    /**
+     * Compte un processus ou un interpréteur impossible à lancer.
+     */
+    public void spawnFailed() {
+        spawnFailures.increment();
+    }
+
+    /**
+     * @param upload true pour un upload, false pour un téléchargement
+     * @param bytes Les octets transférés
+     * @param nanos La durée du transfert
+     */
+    public void transfer(boolean upload, long bytes, long nanos) {
+        (upload ? uploads : downloads).increment();
+        (upload ? uploadBytes : downloadBytes).add(bytes);
+        (upload ? uploadRate : downloadRate).record((long) (bytes * 1e9 / Math.max(1, nanos)));
+    }
+
+    /**
+     * @param bytes Les octets d’un upload par différence recopiés depuis les fichiers du serveur au lieu d’être reçus
+     */
+    public void reused(long bytes) {
+        reusedBytes.add(bytes);
+    }
+
+    /**
+     * @param entries Les fichiers et dossiers d’un upload de dossier terminé
+     */
+    public void treeEntries(long entries) {
+        treeEntries.add(entries);
+    }
+
+    /**
+     * @return Toutes les valeurs par nom, les durées en secondes ; chaque histogramme donne
+     * {@code _count}, {@code _mean}, {@code _p50}, {@code _p90}, {@code _p99}, {@code _p999} et {@code _max}
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().value.getAsLong());
+        }
+        counters((name, help, value) -> values.put(name, value));
+        histograms((name, help, snapshot, scale) -> {
+            values.put(name + "_count", snapshot.count());
+            values.put(name + "_mean", snapshot.mean() * scale);
+            for (int i = 0; i < QUANTILES.length; i++) {
+                values.put(name + "_" + QUANTILE_NAMES[i], snapshot.percentile(QUANTILES[i]) * scale);
+            }
+            values.put(name + "_max", snapshot.max() * scale);
+        });
+        return values;
+    }
+
+    /**
+     * @return Toutes les valeurs au format texte de Prometheus (version 0.0.4) : les histogrammes
+     * sont publiés comme des résumés ({@code summary}) avec leurs centiles
+     */
+    public String scrape() {
+        StringBuilder text = new StringBuilder(4096);
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+            header(text, gauge.getKey(), gauge.getValue().help, "gauge");
+            text.append(gauge.getKey()).append(' ').append(gauge.getValue().value.getAsLong()).append('\n');
+        }
+        counters((name, help, value) -> {
+            header(text, name, help, "counter");
+            text.append(name).append(' ').append(value).append('\n');
+        });
+        histograms((name, help, snapshot, scale) -> {
+            header(text, name, help, "summary");
+            for (double quantile : QUANTILES) {
+                text.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(format(snapshot.percentile(quantile) * scale)).append('\n');
+            }
+            text.append(name).append("_sum ").append(format(snapshot.sum() * scale)).append('\n');
+            text.append(name).append("_count ").append(snapshot.count()).append('\n');
+        });
+        return text.toString();
+    }
+
+    /**
+     * Reçoit un compteur.
+     */
+    private interface CounterVisitor {
+        void visit(String name, String help, long value);
+    }
+
+    /**
+     * Reçoit un histogramme.
+     */
+    private interface HistogramVisitor {
+        void visit(String name, String help, Histogram.Snapshot snapshot, double scale);
+    }
+
+    /**
+     * @param visitor Reçoit chaque compteur
+     */
+    private void counters(CounterVisitor visitor) {
+        visitor.visit("rcs_tls_handshake_failures_total", "Connexions fermées avant la fin de la négociation TLS",
+                handshakeFailures.sum());
+        visitor.visit("rcs_auth_failures_total", "Identifiants refusés", authFailures.sum());
+        visitor.visit("rcs_auth_cache_hits_total", "Identifiants acceptés sans calcul d’empreinte", authCacheHits.sum());
+        visitor.visit("rcs_auth_throttled_total", "Tentatives refusées sans vérification, trop d’échecs",
+                authThrottled.sum());
+        visitor.visit("rcs_token_resumes_total", "Reconnexions par jeton de session", tokenResumes.sum());
+        visitor.visit("rcs_token_rejects_total", "Jetons de session refusés", tokenRejects.sum());
+        visitor.visit("rcs_commands_total", "Commandes exécutées", commands.sum());
+        visitor.visit("rcs_command_errors_total", "Commandes terminées en erreur", commandErrors.sum());
+        visitor.visit("rcs_command_timeouts_total", "Commandes arrêtées pour durée dépassée", commandTimeouts.sum());
+        visitor.visit("rcs_spawn_failures_total", "Processus impossibles à lancer", spawnFailures.sum());
+        visitor.visit("rcs_uploads_total", "Uploads terminés", uploads.sum());
+        visitor.visit("rcs_upload_bytes_total", "Octets reçus par les uploads terminés", uploadBytes.sum());
+        visitor.visit("rcs_upload_reused_bytes_total", "Octets des uploads par différence déjà présents sur le serveur",
+                reusedBytes.sum());
+        visitor.visit("rcs_upload_tree_entries_total", "Fichiers et dossiers reçus par les uploads de dossiers",
+                treeEntries.sum());
+        visitor.visit("rcs_downloads_total", "Téléchargements terminés", downloads.sum());
+        visitor.visit("rcs_download_bytes_total", "Octets envoyés par les téléchargements terminés", downloadBytes.sum());
+    }
+
+    /**
+     * @param visitor Reçoit chaque histogramme, avec le facteur qui ramène ses valeurs à l’unité publiée
+     */
+    private void histograms(HistogramVisitor visitor) {
+        double micros = 1e-6; // Microsecondes vers secondes
+        visitor.visit("rcs_tls_handshake_seconds", "Durée de la négociation TLS", handshake.snapshot(), micros);
+        visitor.visit("rcs_auth_seconds", "Durée de la vérification des identifiants", auth.snapshot(), micros);
+        visitor.visit("rcs_command_queue_seconds", "Attente d’une place avant l’exécution", commandQueue.snapshot(), micros);
+        visitor.visit("rcs_command_exec_seconds", "Durée d’exécution des commandes", commandExec.snapshot(), micros);
+        visitor.visit("rcs_command_send_seconds", "Attente du client pendant l’envoi de la sortie",
+                commandSend.snapshot(), micros);
+        visitor.visit("rcs_upload_bytes_per_second", "Débit des uploads terminés", uploadRate.snapshot(), 1);
+        visitor.visit("rcs_download_bytes_per_second", "Débit des téléchargements terminés", downloadRate.snapshot(), 1);
+    }
+
+    /**
+     * @param text Le texte en cours
+     * @param name Le nom de la mesure
+     * @param help Sa description
+     * @param type Son type Prometheus
+     */
+    private static void header(StringBuilder text, String name, String help, String type) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * @param value Une valeur
+     * @return La valeur avec un point décimal, quelle que soit la langue du système
+     */
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6g", value);
+    }
+}
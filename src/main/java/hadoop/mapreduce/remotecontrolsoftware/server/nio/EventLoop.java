@@ -0,0 +1,119 @@
+package hadoop.mapreduce.remotecontrolsoftware.server.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Boucle d’événements NIO : un thread et un sélecteur qui servent de nombreuses connexions.
+ * Les buffers de travail (chiffré entrant/sortant, clair entrant) sont partagés par toutes
+ * les connexions de la boucle, si bien qu’une connexion inactive ne retient aucun buffer.
+ */
+final class EventLoop implements Runnable {
+    private final Selector selector; // Sélecteur des connexions de cette boucle
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // Tâches soumises par d’autres threads
+    private final Thread thread; // Thread unique de la boucle
+    private volatile boolean running = true; // Indicateur d’état de la boucle
+
+    final ByteBuffer netIn; // Buffer partagé des octets chiffrés reçus
+    final ByteBuffer netOut; // Buffer partagé des octets chiffrés à envoyer
+    final ByteBuffer appIn; // Buffer partagé des octets déchiffrés
+
+    /**
+     * Constructeur de la boucle.
+     * @param name Nom du thread de la boucle
+     * @param packetBufferSize Taille maximale d’un enregistrement TLS chiffré
+     * @param applicationBufferSize Taille maximale des données claires d’un enregistrement
+     * @throws IOException Si le sélecteur ne peut pas être ouvert
+     */
+    EventLoop(String name, int packetBufferSize, int applicationBufferSize) throws IOException {
+        this.selector = Selector.open(); // Ouvre le sélecteur
+        this.netIn = ByteBuffer.allocateDirect(packetBufferSize * 2); // Fragment précédent + nouvelle lecture
+        this.netOut = ByteBuffer.allocateDirect(packetBufferSize); // Un enregistrement chiffré
+        this.appIn = ByteBuffer.allocate(applicationBufferSize); // Un enregistrement déchiffré
+        this.thread = new Thread(this, name); // Crée le thread de la boucle
+        this.thread.setDaemon(true); // N’empêche pas l’arrêt de l’application
+    }
+
+    /**
+     * Démarre le thread de la boucle.
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * @return Le sélecteur de la boucle
+     */
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * @return true si l’appelant est le thread de la boucle
+     */
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Exécute une tâche dans le thread de la boucle.
+     * @param task La tâche à exécuter
+     */
+    void execute(Runnable task) {
+        tasks.add(task); // Ajoute la tâche à la file
+        selector.wakeup(); // Réveille le sélecteur pour la traiter
+    }
+
+    /**
+     * Arrête la boucle et ferme toutes ses connexions.
+     */
+    void shutdown() {
+        running = false; // Demande l’arrêt
+        selector.wakeup(); // Réveille la boucle
+    }
+
+    /**
+     * Boucle principale : attend les événements réseau et les délègue aux connexions.
+     */
+    @Override
+    public void run() {
+        while (running) { // Tant que la boucle n’est pas arrêtée
+            try {
+                selector.select(); // Attend un événement ou un réveil
+            } catch (IOException e) {
+                break; // Sélecteur inutilisable
+            }
+            runTasks(); // Traite les tâches soumises
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) { // Parcourt les connexions prêtes
+                SelectionKey key = keys.next();
+                keys.remove();
+                ((SslConnection) key.attachment()).onReady(key); // Lecture et/ou écriture
+            }
+        }
+        runTasks(); // Dernières tâches éventuelles
+        for (SelectionKey key : selector.keys()) { // Ferme les connexions restantes
+            ((SslConnection) key.attachment()).abort();
+        }
+        try {
+            selector.close(); // Libère le sélecteur
+        } catch (IOException ignored) {
+            // Rien de plus à libérer
+        }
+    }
+
+    /**
+     * Exécute les tâches en attente.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package hadoop.mapreduce.remotecontrolsoftware.server.nio;
+
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+import hadoop.mapreduce.remotecontrolsoftware.server.ClientHandler;
+import hadoop.mapreduce.remotecontrolsoftware.server.ConnectionAcceptor;
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerConfig;
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerContext;
+import hadoop.mapreduce.remotecontrolsoftware.server.SessionExecutor;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Accepteur NIO : les connexions acceptées sont réparties entre un petit nombre fixe
+ * de boucles d’événements qui font tourner TLS et le protocole de {@link ClientHandler}.
+ * Seules les commandes système, bloquantes par nature, s’exécutent sur des threads de travail
+ * fournis par le {@link SessionExecutor} configuré.
+ */
+public class NioAcceptor implements ConnectionAcceptor {
+    private static final int BACKLOG = 1024; // File d’attente du système pour les rafales de connexions
+
+    private final ServerSocketChannel serverChannel; // Canal d’écoute
+    private final SSLContext sslContext; // Contexte TLS (keystore du serveur, cache des sessions)
+    private final ServerContext server; // Services du serveur pour les sessions
+    private final EventLoop[] loops; // Boucles d’événements
+    private final SessionExecutor workers; // Threads d’exécution des commandes
+    private int nextLoop; // Index de la prochaine boucle (répartition circulaire)
+
+    /**
+     * Ouvre le port et démarre les boucles d’événements.
+     * @param config Configuration du serveur
+     * @param server Services du serveur pour les sessions
+     * @param sslContext Contexte TLS du serveur
+     * @throws IOException Si le port ne peut pas être ouvert
+     */
+    public NioAcceptor(ServerConfig config, ServerContext server, SSLContext sslContext) throws IOException {
+        this.sslContext = sslContext;
+        this.server = server;
+        SSLSession prototype = sslContext.createSSLEngine().getSession(); // Tailles des enregistrements TLS
+        this.loops = new EventLoop[config.eventLoops()];
+        for (int i = 0; i < loops.length; i++) { // Crée et démarre chaque boucle
+            loops[i] = new EventLoop("rcs-nio-" + i, prototype.getPacketBufferSize(), prototype.getApplicationBufferSize());
+            loops[i].start();
+        }
+        this.workers = new SessionExecutor(config, "rcs-worker-"); // Stratégie d’exécution configurée
+        this.serverChannel = ServerSocketChannel.open(); // Ouvre le canal d’écoute
+        this.serverChannel.bind(new InetSocketAddress(config.port()), BACKLOG);
+    }
+
+    @Override
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void serve() throws IOException {
+        while (serverChannel.isOpen()) { // Boucle tant que l’accepteur est ouvert
+            SocketChannel socket = serverChannel.accept(); // Accepte une connexion client
+            try {
+                socket.configureBlocking(false); // La boucle d’événements la pilote
+                socket.setOption(StandardSocketOptions.TCP_NODELAY, true); // Réponses interactives sans délai
+                InetSocketAddress remote = (InetSocketAddress) socket.getRemoteAddress();
+                SSLEngine engine = sslContext.createSSLEngine(remote.getHostString(), remote.getPort());
+                engine.setUseClientMode(false); // Le serveur présente son certificat
+                engine.setEnabledProtocols(Protocol.tlsProtocols(engine.getSupportedProtocols()));
+                EventLoop loop = loops[nextLoop++ % loops.length]; // Répartition circulaire
+                SslConnection connection = new SslConnection(loop, socket, engine, remote.getAddress().getHostAddress());
+                connection.attach(new ClientHandler(connection, server, workers)); // Protocole de la session
+                loop.execute(connection::register); // Enregistre dans le thread de la boucle
+            } catch (IOException | RuntimeException e) { // Un client défaillant n’arrête pas l’écoute
+                InetAddress peer = socket.socket().getInetAddress(); // Absente si le client est déjà parti
+                server.log("Erreur avec le client " + (peer != null ? peer.getHostAddress() : "inconnu") + " : " + e.getMessage());
+                socket.close();
+            }
+        }
+    }
+
+    @Override
+    public SessionExecutor executor() {
+        return workers;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverChannel.close(); // Débloque accept() et ferme le port
+        for (EventLoop loop : loops) {
+            loop.shutdown(); // Ferme les connexions de chaque boucle
+        }
+        workers.shutdown(); // N’accepte plus de nouvelles tâches
+    }
+}
@@ -0,0 +1,425 @@
+package hadoop.mapreduce.remotecontrolsoftware.server.nio;
+
+import hadoop.mapreduce.remotecontrolsoftware.server.ClientHandler;
+import hadoop.mapreduce.remotecontrolsoftware.server.SessionChannel;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connexion TLS non bloquante : chiffre et déchiffre via un {@link SSLEngine} et alimente
+ * la machine à états de {@link ClientHandler}. Toutes les opérations sur le moteur TLS et
+ * le socket ont lieu dans le thread de la boucle d’événements.
+ */
+final class SslConnection implements SessionChannel {
+    private static final int WRITE_BUFFER_LIMIT = 256 * 1024; // Octets en attente au-delà desquels les écrivains patientent
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0); // Source vide pour les messages de négociation
+
+    private final EventLoop loop; // Boucle d’événements propriétaire
+    private final SocketChannel socket; // Socket non bloquant du client
+    private final SSLEngine engine; // Moteur TLS de la connexion
+    private final String remoteAddress; // Adresse IP du client
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>(); // Données claires à chiffrer et envoyer
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(); // Évite de multiplier les tâches d’envoi
+    private final Object writeLock = new Object(); // Protège queuedBytes et la contre-pression
+    private long queuedBytes; // Octets clairs en attente d’envoi
+    private volatile boolean closed; // Connexion fermée
+
+    // État propre au thread de la boucle
+    private ClientHandler handler; // Protocole de la session
+    private SelectionKey key; // Clé d’enregistrement dans le sélecteur
+    private ByteBuffer pendingNetIn; // Enregistrement TLS reçu partiellement
+    private ByteBuffer pendingNetOut; // Octets chiffrés que le socket n’a pas encore acceptés
+    private boolean handshakeDone; // Négociation TLS terminée
+    private boolean closeRequested; // Fermeture demandée après l’envoi des données en attente
+    private boolean readsSuspended; // Lecture suspendue par le protocole
+    private boolean wantWrite; // Attente de disponibilité en écriture du socket
+
+    /**
+     * Constructeur de la connexion.
+     * @param loop Boucle d’événements propriétaire
+     * @param socket Socket non bloquant accepté
+     * @param engine Moteur TLS configuré en mode serveur
+     * @param remoteAddress Adresse IP du client
+     */
+    SslConnection(EventLoop loop, SocketChannel socket, SSLEngine engine, String remoteAddress) {
+        this.loop = loop;
+        this.socket = socket;
+        this.engine = engine;
+        this.remoteAddress = remoteAddress;
+    }
+
+    /**
+     * Associe le protocole de session à la connexion (avant l’enregistrement).
+     * @param handler Le gestionnaire du client
+     */
+    void attach(ClientHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Enregistre la connexion dans le sélecteur et démarre la négociation TLS.
+     * Appelé dans le thread de la boucle.
+     */
+    void register() {
+        try {
+            key = socket.register(loop.selector(), SelectionKey.OP_READ, this); // Attend le ClientHello
+            engine.beginHandshake(); // Démarre la négociation côté serveur
+        } catch (IOException e) {
+            abort();
+        }
+    }
+
+    @Override
+    public String remoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        if (closed) { // Plus rien ne peut être envoyé
+            throw new IOException("Connexion fermée");
+        }
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining()); // L’appelant peut réutiliser son buffer
+        copy.put(data).flip();
+        synchronized (writeLock) {
+            queuedBytes += copy.remaining(); // Comptabilise les octets en attente
+        }
+        outbound.add(copy); // Met en file pour la boucle
+        if (loop.inEventLoop()) {
+            flushOutbound(); // Déjà dans la boucle : envoie directement
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(() -> {
+                flushScheduled.set(false);
+                flushOutbound();
+            });
+        }
+    }
+
+    @Override
+    public void awaitWritable() throws IOException {
+        if (loop.inEventLoop()) { // La boucle ne doit jamais se bloquer elle-même
+            return;
+        }
+        synchronized (writeLock) {
+            while (queuedBytes > WRITE_BUFFER_LIMIT && !closed) { // Trop d’octets en attente
+                try {
+                    writeLock.wait(); // Attend que la boucle ait vidé la file
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // Conserve l’interruption
+                    throw new InterruptedIOException("Attente d’écriture interrompue");
+                }
+            }
+        }
+        if (closed) {
+            throw new IOException("Connexion fermée");
+        }
+    }
+
+    @Override
+    public void suspendReads() {
+        runInLoop(() -> {
+            readsSuspended = true;
+            updateInterest();
+        });
+    }
+
+    @Override
+    public void resumeReads() {
+        runInLoop(() -> {
+            readsSuspended = false;
+            updateInterest();
+        });
+    }
+
+    @Override
+    public void close() {
+        runInLoop(() -> {
+            closeRequested = true; // Ferme dès que les données en attente sont parties
+            flushOutbound();
+        });
+    }
+
+    /**
+     * Traite un événement du sélecteur.
+     * @param readyKey La clé prête
+     */
+    void onReady(SelectionKey readyKey) {
+        try {
+            if (readyKey.isValid() && readyKey.isReadable()) { // Données reçues
+                readAndUnwrap();
+            }
+            if (readyKey.isValid() && readyKey.isWritable()) { // Le socket accepte de nouveau des octets
+                flushOutbound();
+            }
+        } catch (IOException | RuntimeException e) {
+            abort(); // Erreur réseau ou TLS : la connexion est perdue
+        }
+    }
+
+    /**
+     * Ferme immédiatement la connexion sans attendre les envois en cours.
+     */
+    void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true; // Marque la connexion comme fermée
+        if (key != null) {
+            key.cancel(); // Retire la connexion du sélecteur
+        }
+        try {
+            socket.close(); // Ferme le socket
+        } catch (IOException ignored) {
+            // Socket déjà inutilisable
+        }
+        synchronized (writeLock) {
+            writeLock.notifyAll(); // Débloque les écrivains en attente
+        }
+        if (handler != null) {
+            handler.close(); // Termine la session
+        }
+    }
+
+    /**
+     * Lit les octets disponibles, les déchiffre et les transmet au protocole.
+     * @throws IOException En cas d’erreur réseau ou TLS
+     */
+    private void readAndUnwrap() throws IOException {
+        ByteBuffer in = loop.netIn; // Buffer partagé de la boucle
+        in.clear();
+        if (pendingNetIn != null) { // Replace le fragment d’enregistrement précédent
+            in.put(pendingNetIn);
+            pendingNetIn = null;
+        }
+        int count = socket.read(in); // Lit ce que le socket a reçu
+        if (count < 0) { // Le client a fermé la connexion
+            onEndOfStream();
+            return;
+        }
+        in.flip();
+        unwrapAll(in); // Déchiffre tous les enregistrements complets
+        if (in.hasRemaining() && !closed) { // Garde le fragment incomplet, à sa taille exacte
+            pendingNetIn = ByteBuffer.allocate(in.remaining());
+            pendingNetIn.put(in).flip();
+        }
+    }
+
+    /**
+     * Déchiffre les enregistrements TLS complets présents dans le buffer.
+     * @param in Octets chiffrés reçus
+     * @throws IOException En cas d’erreur TLS
+     */
+    private void unwrapAll(ByteBuffer in) throws IOException {
+        while (in.hasRemaining() && !closed) {
+            ByteBuffer app = loop.appIn; // Buffer partagé des données claires
+            app.clear();
+            SSLEngineResult result = engine.unwrap(in, app); // Déchiffre un enregistrement
+            app.flip();
+            switch (result.getStatus()) {
+                case OK:
+                    if (app.hasRemaining()) {
+                        handler.onInput(app); // Fait avancer le protocole
+                    }
+                    break;
+                case BUFFER_UNDERFLOW:
+                    return; // Enregistrement incomplet : attend la suite
+                case BUFFER_OVERFLOW:
+                    throw new SSLException("Enregistrement TLS trop grand");
+                case CLOSED:
+                    onEndOfStream(); // Le client a envoyé close_notify
+                    return;
+                default:
+                    break;
+            }
+            progressHandshake(result.getHandshakeStatus());
+            if (result.bytesConsumed() == 0 && result.bytesProduced() == 0
+                    && engine.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NEED_TASK
+                    && engine.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                return; // Aucun progrès possible sans nouvelles données
+            }
+        }
+    }
+
+    /**
+     * Fait avancer la négociation TLS tant qu’elle ne dépend pas de données du client.
+     * @param status État de négociation retourné par le moteur
+     * @throws IOException En cas d’erreur réseau ou TLS
+     */
+    private void progressHandshake(SSLEngineResult.HandshakeStatus status) throws IOException {
+        while (!closed) {
+            switch (status) {
+                case NEED_TASK:
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) { // Calculs cryptographiques
+                        task.run();
+                    }
+                    status = engine.getHandshakeStatus();
+                    break;
+                case NEED_WRAP:
+                    status = wrapAndSend(EMPTY).getHandshakeStatus(); // Message de négociation
+                    break;
+                case FINISHED:
+                    if (!handshakeDone) { // Première négociation terminée
+                        handshakeDone = true;
+                        handler.start(); // Démarre le protocole de session
+                        flushOutbound();
+                    }
+                    return;
+                default:
+                    return; // NEED_UNWRAP ou NOT_HANDSHAKING : attend le client
+            }
+        }
+    }
+
+    /**
+     * Chiffre et envoie les données en file, dans la limite de ce qu’accepte le socket.
+     */
+    private void flushOutbound() {
+        if (closed) {
+            return;
+        }
+        try {
+            if (pendingNetOut != null) { // Termine d’abord l’envoi précédent
+                socket.write(pendingNetOut);
+                if (pendingNetOut.hasRemaining()) {
+                    setWantWrite(true); // Le socket est plein : attend
+                    return;
+                }
+                pendingNetOut = null;
+            }
+            ByteBuffer head;
+            while (handshakeDone && (head = outbound.peek()) != null) { // Données applicatives en attente
+                int before = head.remaining();
+                SSLEngineResult result = wrapAndSend(head); // Chiffre un enregistrement
+                release(before - head.remaining());
+                if (!head.hasRemaining()) {
+                    outbound.poll(); // Buffer entièrement envoyé
+                }
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    abort();
+                    return;
+                }
+                progressHandshake(result.getHandshakeStatus());
+                if (pendingNetOut != null) { // Le socket est plein : attend
+                    setWantWrite(true);
+                    return;
+                }
+            }
+            setWantWrite(false); // Plus rien à envoyer
+            if (closeRequested && outbound.isEmpty()) {
+                closeGracefully();
+            }
+        } catch (IOException | RuntimeException e) {
+            abort();
+        }
+    }
+
+    /**
+     * Chiffre des données et les écrit sur le socket.
+     * @param source Données claires à chiffrer (éventuellement vides)
+     * @return Le résultat du chiffrement
+     * @throws IOException En cas d’erreur réseau ou TLS
+     */
+    private SSLEngineResult wrapAndSend(ByteBuffer source) throws IOException {
+        ByteBuffer out = loop.netOut; // Buffer partagé de la boucle
+        out.clear();
+        SSLEngineResult result = engine.wrap(source, out); // Produit un enregistrement chiffré
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+            throw new SSLException("Buffer de sortie TLS insuffisant");
+        }
+        out.flip();
+        if (pendingNetOut != null) { // Conserve l’ordre des octets déjà en attente
+            ByteBuffer grown = ByteBuffer.allocate(pendingNetOut.remaining() + out.remaining());
+            grown.put(pendingNetOut).put(out).flip();
+            pendingNetOut = grown;
+            return result;
+        }
+        socket.write(out); // Écrit autant que possible
+        if (out.hasRemaining()) { // Garde le reste pour plus tard
+            pendingNetOut = ByteBuffer.allocate(out.remaining());
+            pendingNetOut.put(out).flip();
+        }
+        return result;
+    }
+
+    /**
+     * Décompte les octets envoyés et réveille les écrivains si la file est assez courte.
+     * @param sent Nombre d’octets clairs consommés
+     */
+    private void release(int sent) {
+        synchronized (writeLock) {
+            queuedBytes -= sent;
+            if (queuedBytes <= WRITE_BUFFER_LIMIT) {
+                writeLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Gère la fin du flux entrant.
+     */
+    private void onEndOfStream() {
+        try {
+            engine.closeInbound(); // Termine la lecture TLS
+        } catch (SSLException ignored) {
+            // Client fermé sans close_notify : fréquent et sans conséquence ici
+        }
+        handler.onEndOfInput(); // Informe le protocole
+        abort();
+    }
+
+    /**
+     * Envoie close_notify puis ferme la connexion.
+     */
+    private void closeGracefully() {
+        try {
+            engine.closeOutbound(); // Prépare close_notify
+            wrapAndSend(EMPTY); // Tente de l’envoyer sans attendre
+        } catch (IOException ignored) {
+            // Le client est peut-être déjà parti
+        }
+        abort();
+    }
+
+    /**
+     * Active ou désactive l’attente d’écriture.
+     * @param value true pour être prévenu quand le socket accepte des octets
+     */
+    private void setWantWrite(boolean value) {
+        if (wantWrite != value) {
+            wantWrite = value;
+            updateInterest();
+        }
+    }
+
+    /**
+     * Met à jour les événements surveillés par le sélecteur.
+     */
+    private void updateInterest() {
+        if (key != null && key.isValid()) {
+            key.interestOps((readsSuspended ? 0 : SelectionKey.OP_READ) | (wantWrite ? SelectionKey.OP_WRITE : 0));
+        }
+    }
+
+    /**
+     * Exécute une action dans le thread de la boucle.
+     * @param action L’action à exécuter
+     */
+    private void runInLoop(Runnable action) {
+        if (loop.inEventLoop()) {
+            action.run();
+        } else {
+            loop.execute(action);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package hadoop.mapreduce.remotecontrolsoftware.tools;
+
+import hadoop.mapreduce.remotecontrolsoftware.server.CredentialStore;
+
+import java.io.BufferedReader;
+import java.io.Console;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Gère le fichier des comptes du serveur ({@link CredentialStore}) : ajoute ou remplace un compte,
+ * en supprime un, ou liste les logins. Le fichier est réécrit d’un bloc (fichier temporaire puis
+ * renommage), si bien qu’un serveur en marche ne lit jamais un fichier à moitié écrit ; il prend
+ * les changements en compte dans les secondes qui suivent, sans redémarrage.
+ * <p>
+ * Usage : {@code java -cp target/classes hadoop.mapreduce.remotecontrolsoftware.tools.CredentialTool
+ * [--file credentials.txt] [--iterations 600000] add|remove|list [login]}
+ * <p>
+ * Le mot de passe est demandé deux fois sur la console, ou lu sur une ligne de l’entrée standard
+ * sans console (scripts).
+ */
+public class CredentialTool {
+
+    /**
+     * Point d’entrée de l’outil.
+     * @param args Options, puis action et login
+     * @throws IOException Si le fichier des comptes ne peut pas être lu ou écrit
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get("credentials.txt");
+        int iterations = CredentialStore.DEFAULT_ITERATIONS;
+        int i = 0;
+        while (i + 1 < args.length && args[i].startsWith("--")) {
+            if ("--file".equals(args[i])) {
+                file = Paths.get(args[i + 1]);
+            } else if ("--iterations".equals(args[i])) {
+                iterations = Integer.parseInt(args[i + 1]);
+            } else {
+                usage();
+            }
+            i += 2;
+        }
+        String action = i < args.length ? args[i] : "";
+        String login = i + 1 < args.length ? args[i + 1] : null;
+        List<String> lines = Files.exists(file) ? Files.readAllLines(file, StandardCharsets.UTF_8) : new ArrayList<>();
+        switch (action) {
+            case "list":
+                for (String line : lines) {
+                    String trimmed = line.trim();
+                    if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                        System.out.println(trimmed.substring(0, Math.max(0, trimmed.indexOf(':'))));
+                    }
+                }
+                return;
+            case "add":
+                if (login == null) {
+                    usage();
+                }
+                char[] password = readPassword(login);
+                try {
+                    String account = CredentialStore.hash(login, password, iterations);
+                    boolean replaced = remove(lines, login);
+                    lines.add(account);
+                    write(file, lines);
+                    System.out.println((replaced ? "Compte remplacé : " : "Compte ajouté : ") + login);
+                } catch (IllegalArgumentException e) { // Login ou nombre d’itérations refusé
+                    System.err.println(e.getMessage());
+                    System.exit(1);
+                } finally {
+                    Arrays.fill(password, '\0');
+                }
+                return;
+            case "remove":
+                if (login == null) {
+                    usage();
+                }
+                if (remove(lines, login)) {
+                    write(file, lines);
+                    System.out.println("Compte supprimé : " + login);
+                } else {
+                    System.err.println("Compte inconnu : " + login);
+                    System.exit(1);
+                }
+                return;
+            default:
+                usage();
+        }
+    }
+
+    /**
+     * Retire les lignes d’un login.
+     * @param lines Les lignes du fichier, modifiées
+     * @param login Le login
+     * @return true si au moins une ligne a été retirée
+     */
+    private static boolean remove(List<String> lines, String login) {
+        return lines.removeIf(line -> line.trim().startsWith(login + ":"));
+    }
+
+    /**
+     * Réécrit le fichier des comptes d’un bloc.
+     * @param file Le fichier
+     * @param lines Ses nouvelles lignes
+     * @throws IOException Si l’écriture échoue
+     */
+    private static void write(Path file, List<String> lines) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, ".credentials", ".tmp"); // Même disque : renommage atomique
+        try {
+            Files.write(temporary, lines, StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @param login Le login dont on demande le mot de passe
+     * @return Le mot de passe saisi, à effacer après usage
+     * @throws IOException Si l’entrée standard est illisible
+     */
+    private static char[] readPassword(String login) throws IOException {
+        Console console = System.console();
+        if (console == null) { // Script : une ligne sur l’entrée standard
+            String line = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)).readLine();
+            if (line == null || line.isEmpty()) {
+                System.err.println("Mot de passe vide.");
+                System.exit(1);
+            }
+            return line.toCharArray();
+        }
+        char[] password = console.readPassword("Mot de passe de %s : ", login);
+        char[] confirmation = console.readPassword("Confirmation : ");
+        boolean same = password != null && password.length > 0 && Arrays.equals(password, confirmation);
+        if (confirmation != null) {
+            Arrays.fill(confirmation, '\0');
+        }
+        if (!same) {
+            System.err.println("Mots de passe vides ou différents.");
+            System.exit(1);
+        }
+        return password;
+    }
+
+    /**
+     * Affiche l’usage et termine le programme.
+     */
+    private static void usage() {
+        System.err.println("Usage : CredentialTool [--file fichier] [--iterations n] add|remove|list [login]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,408 @@
+package hadoop.mapreduce.remotecontrolsoftware.tools;
+
+import hadoop.mapreduce.remotecontrolsoftware.client.FramedConnection;
+import hadoop.mapreduce.remotecontrolsoftware.server.metrics.Histogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Générateur de charge sans interface : ouvre N sessions TLS en protocole binaire ({@link FramedConnection},
+ * le code du client), à un rythme donné, les authentifie, puis chacune rejoue en boucle un mélange
+ * d’actions tiré d’un fichier de scénario jusqu’à la fin de l’essai.
+ * <p>
+ * Usage (depuis la racine du projet, {@code server.keystore} sert de truststore par défaut) :
+ * {@code java -cp target/classes hadoop.mapreduce.remotecontrolsoftware.tools.LoadGenerator
+ * --host localhost --port 12345 --sessions 2000 --ramp 100 --duration 120 --scenario charge.txt}
+ * <p>
+ * Le scénario contient une action par ligne, précédée de son poids (les lignes vides et {@code #} sont ignorées) :
+ * <pre>
+ * 5 exec echo bonjour      commande système, attend la fin de sa sortie
+ * 1 upload 1048576         upload d’un fichier de cette taille (reçu en received_rcs-load-1048576.bin)
+ * 2 pause 200              temps de réflexion de la session, en millisecondes
+ * </pre>
+ * Chaque intervalle, une ligne donne les sessions ouvertes, les échecs de connexion et les connexions perdues
+ * de l’intervalle, le débit, les refus du serveur ({@code BUSY}), les erreurs et les centiles de latence des
+ * actions terminées ; le bilan final détaille chaque type d’action depuis le début de l’essai.
+ */
+public class LoadGenerator {
+    private static final long ACTION_TIMEOUT_MINUTES = 10; // Attente maximale du bilan d’une action
+    private static final long SESSION_STACK = 256 * 1024; // Pile des threads de session : des milliers de sessions
+
+    /**
+     * Action d’un scénario.
+     */
+    private static final class Action {
+        private final int weight; // Poids dans le tirage
+        private final String kind; // exec, upload ou pause
+        private final String argument; // Commande, taille ou durée
+        private Path file; // Fichier à envoyer (upload)
+
+        Action(int weight, String kind, String argument) {
+            this.weight = weight;
+            this.kind = kind;
+            this.argument = argument;
+        }
+    }
+
+    /**
+     * Mesures d’un type d’action (ou de la connexion) depuis le début de l’essai.
+     */
+    private static final class Stats {
+        private final Histogram latency = new Histogram(); // Durées des actions réussies (µs)
+        private final LongAdder busy = new LongAdder(); // Refus du serveur (file pleine)
+        private final LongAdder errors = new LongAdder(); // Échecs
+    }
+
+    private final String host; // Adresse du serveur
+    private final int port; // Port du serveur
+    private final String login; // Identifiants des sessions
+    private final String password;
+    private final int sessions; // Sessions à ouvrir
+    private final double ramp; // Sessions ouvertes par seconde
+    private final long durationNanos; // Durée de l’essai, montée en charge comprise
+    private final long intervalMillis; // Période des lignes de suivi
+    private final List<Action> scenario; // Actions possibles
+    private final int totalWeight; // Somme des poids
+    private final Map<String, Stats> stats = new LinkedHashMap<>(); // Par type d’action, plus "connexion"
+    private final AtomicReference<Histogram> window = new AtomicReference<>(new Histogram()); // Actions de l’intervalle
+    private final LongAdder windowBusy = new LongAdder(); // Refus de l’intervalle
+    private final LongAdder windowErrors = new LongAdder(); // Échecs de l’intervalle
+    private final LongAdder connectFailures = new LongAdder(); // Connexions ou authentifications échouées
+    private final LongAdder lost = new LongAdder(); // Connexions perdues en cours d’essai
+    private final AtomicInteger open = new AtomicInteger(); // Sessions authentifiées en cours
+    private final AtomicReference<String> lastFailure = new AtomicReference<>(); // Dernière cause d’échec de connexion
+    private long startNanos; // Début de l’essai
+
+    /**
+     * @param options Les options de la ligne de commande
+     * @param scenario Les actions du scénario
+     */
+    private LoadGenerator(Map<String, String> options, List<Action> scenario) {
+        this.host = options.getOrDefault("host", "localhost");
+        this.port = Integer.parseInt(options.getOrDefault("port", "12345"));
+        this.login = options.getOrDefault("login", "bouba");
+        this.password = options.getOrDefault("password", "passer");
+        this.sessions = Integer.parseInt(options.getOrDefault("sessions", "100"));
+        this.ramp = Double.parseDouble(options.getOrDefault("ramp", "50"));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "60")));
+        this.intervalMillis = Long.parseLong(options.getOrDefault("interval", "1000"));
+        if (sessions < 1 || ramp <= 0 || durationNanos <= 0 || intervalMillis <= 0) {
+            throw new IllegalArgumentException("Options invalides : " + options);
+        }
+        this.scenario = scenario;
+        int weights = 0;
+        stats.put("connexion", new Stats());
+        for (Action action : scenario) {
+            weights += action.weight;
+            if (!action.kind.equals("pause")) {
+                stats.computeIfAbsent(action.kind, kind -> new Stats());
+            }
+        }
+        this.totalWeight = weights;
+    }
+
+    /**
+     * Point d’entrée de l’outil.
+     * @param args Options {@code --nom valeur} : host, port, login, password, sessions, ramp (sessions/s),
+     *             duration (s), interval (ms), scenario (fichier ; par défaut {@code 1 exec echo rcs-load})
+     * @throws Exception En cas d’erreur avant l’essai (options, scénario)
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                System.err.println("Usage : LoadGenerator [--host h] [--port p] [--login l] [--password m] [--sessions n]"
+                        + " [--ramp sessions/s] [--duration s] [--interval ms] [--scenario fichier]");
+                System.exit(2);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        List<Action> scenario = options.containsKey("scenario")
+                ? parse(Files.readAllLines(Paths.get(options.get("scenario"))))
+                : parse(List.of("1 exec echo rcs-load"));
+        new LoadGenerator(options, scenario).run();
+    }
+
+    /**
+     * @param lines Les lignes du scénario
+     * @return Ses actions, fichiers d’upload créés
+     * @throws IOException Si un fichier d’upload ne peut pas être créé
+     */
+    private static List<Action> parse(List<String> lines) throws IOException {
+        List<Action> actions = new ArrayList<>();
+        Map<Long, Path> files = new LinkedHashMap<>(); // Un fichier par taille, partagé par toutes les sessions
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] parts = trimmed.split("\\s+", 3);
+            if (parts.length < 3 || !parts[1].matches("exec|upload|pause")) {
+                throw new IllegalArgumentException("Ligne de scénario invalide : " + line);
+            }
+            Action action = new Action(Integer.parseInt(parts[0]), parts[1], parts[2]);
+            if (action.kind.equals("upload")) {
+                long size = Long.parseLong(action.argument);
+                action.file = files.get(size);
+                if (action.file == null) {
+                    action.file = createUploadFile(size);
+                    files.put(size, action.file);
+                }
+            } else if (action.kind.equals("pause")) {
+                Long.parseLong(action.argument); // Vérifie la durée dès la lecture
+            }
+            actions.add(action);
+        }
+        if (actions.isEmpty()) {
+            throw new IllegalArgumentException("Scénario vide");
+        }
+        return actions;
+    }
+
+    /**
+     * @param size Taille du fichier
+     * @return Un fichier temporaire de cette taille, supprimé à la fin du processus
+     * @throws IOException Si le fichier ne peut pas être créé
+     */
+    private static Path createUploadFile(long size) throws IOException {
+        Path directory = Files.createTempDirectory("rcs-load");
+        Path file = directory.resolve("rcs-load-" + size + ".bin"); // Nom du fichier reçu par le serveur
+        byte[] block = new byte[64 * 1024];
+        ThreadLocalRandom.current().nextBytes(block); // Peu compressible
+        try (OutputStream output = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                output.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+        file.toFile().deleteOnExit();
+        directory.toFile().deleteOnExit(); // Supprimé après le fichier (ordre inverse)
+        return file;
+    }
+
+    /**
+     * Lance les sessions au rythme demandé, suit l’essai, puis affiche le bilan.
+     * @throws InterruptedException Si l’essai est interrompu
+     */
+    private void run() throws InterruptedException {
+        System.out.printf("%d sessions vers %s:%d, %.1f/s, %d s ; scénario : %d action(s)%n", sessions, host, port, ramp,
+                TimeUnit.NANOSECONDS.toSeconds(durationNanos), scenario.size());
+        System.out.printf("%8s %9s %9s %7s %10s %7s %8s %10s %10s %10s%n", "temps", "sessions", "échecs", "perdues",
+                "actions/s", "busy", "erreurs", "p50 (ms)", "p99 (ms)", "p999 (ms)");
+        startNanos = System.nanoTime();
+        long deadline = startNanos + durationNanos;
+        Thread reporter = new Thread(() -> report(deadline), "rcs-load-report");
+        reporter.setDaemon(true);
+        reporter.start();
+        List<Thread> threads = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            long due = startNanos + (long) (i * 1e9 / ramp); // Instant d’ouverture de cette session
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            if (System.nanoTime() >= deadline) { // Essai terminé avant la fin de la montée en charge
+                break;
+            }
+            Thread session = new Thread(null, () -> session(deadline), "rcs-load-" + i, SESSION_STACK);
+            session.setDaemon(true);
+            threads.add(session);
+            session.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        reporter.interrupt();
+        reporter.join();
+        summary(threads.size());
+    }
+
+    /**
+     * Une session : connexion, authentification, puis actions tirées au sort jusqu’à l’échéance.
+     * @param deadline Fin de l’essai
+     */
+    private void session(long deadline) {
+        long start = System.nanoTime();
+        FramedConnection connection;
+        try {
+            connection = new FramedConnection(host, port, cause -> lost.increment());
+            try {
+                connection.authenticate(login, password);
+            } catch (IOException e) {
+                connection.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            connectFailures.increment();
+            stats.get("connexion").errors.increment();
+            lastFailure.set(e.getMessage());
+            return;
+        }
+        stats.get("connexion").latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        open.incrementAndGet();
+        try {
+            while (System.nanoTime() < deadline && connection.isOpen()) {
+                perform(connection, pick());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            open.decrementAndGet();
+            connection.close();
+        }
+    }
+
+    /**
+     * @return Une action tirée au sort selon les poids
+     */
+    private Action pick() {
+        int draw = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Action action : scenario) {
+            draw -= action.weight;
+            if (draw < 0) {
+                return action;
+            }
+        }
+        return scenario.get(scenario.size() - 1);
+    }
+
+    /**
+     * Exécute une action et enregistre son issue.
+     * @param connection La connexion de la session
+     * @param action L’action
+     * @throws InterruptedException Si la session est interrompue
+     */
+    private void perform(FramedConnection connection, Action action) throws InterruptedException {
+        if (action.kind.equals("pause")) {
+            Thread.sleep(Long.parseLong(action.argument));
+            return;
+        }
+        Outcome outcome = new Outcome();
+        long start = System.nanoTime();
+        try {
+            if (action.kind.equals("exec")) {
+                connection.exec(action.argument, outcome);
+            } else {
+                connection.upload(action.file, outcome, null);
+            }
+            if (!outcome.done.await(ACTION_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                outcome.onError("pas de réponse");
+            }
+        } catch (IOException e) {
+            outcome.onError(e.getMessage());
+        }
+        Stats kind = stats.get(action.kind);
+        if (outcome.busy) {
+            kind.busy.increment();
+            windowBusy.increment();
+            Thread.sleep(outcome.retryAfterMillis); // Comme un client réel : attend le délai conseillé par le serveur
+        } else if (outcome.error != null) {
+            kind.errors.increment();
+            windowErrors.increment();
+        } else {
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            kind.latency.record(micros);
+            window.get().record(micros);
+        }
+    }
+
+    /**
+     * Issue d’une action, prévenue par le thread de lecture de la connexion.
+     */
+    private static final class Outcome implements FramedConnection.StreamListener {
+        private final CountDownLatch done = new CountDownLatch(1); // Bilan reçu
+        private volatile String error; // Cause de l’échec (null : réussite)
+        private volatile boolean busy; // Refusée par le serveur
+        private volatile long retryAfterMillis; // Délai conseillé avant l’action suivante, si refusée
+
+        @Override
+        public void onEnd(String[] fields) {
+            done.countDown();
+        }
+
+        @Override
+        public void onError(String message) {
+            error = message == null ? "erreur" : message;
+            done.countDown();
+        }
+
+        @Override
+        public void onBusy(long retryAfterMillis, String reason) {
+            this.retryAfterMillis = retryAfterMillis;
+            busy = true;
+            onError(reason);
+        }
+    }
+
+    /**
+     * Affiche une ligne de suivi par intervalle jusqu’à la fin de l’essai.
+     * @param deadline Fin de l’essai
+     */
+    private void report(long deadline) {
+        long previousConnectFailures = 0;
+        long previousLost = 0;
+        long previousBusy = 0;
+        long previousErrors = 0;
+        long last = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                break; // Toutes les sessions sont terminées
+            }
+            long now = System.nanoTime();
+            Histogram.Snapshot actions = window.getAndSet(new Histogram()).snapshot();
+            long failures = connectFailures.sum();
+            long lostNow = lost.sum();
+            long busyNow = windowBusy.sum();
+            long errorsNow = windowErrors.sum();
+            System.out.printf("%7.1fs %9d %9d %7d %10.1f %7d %8d %10.2f %10.2f %10.2f%n", (now - startNanos) / 1e9,
+                    open.get(), failures - previousConnectFailures, lostNow - previousLost,
+                    actions.count() * 1e9 / (now - last), busyNow - previousBusy, errorsNow - previousErrors,
+                    actions.percentile(0.5) / 1e3, actions.percentile(0.99) / 1e3, actions.percentile(0.999) / 1e3);
+            previousConnectFailures = failures;
+            previousLost = lostNow;
+            previousBusy = busyNow;
+            previousErrors = errorsNow;
+            last = now;
+            if (now >= deadline && open.get() == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Affiche le bilan de l’essai par type d’action.
+     * @param started Sessions lancées
+     */
+    private void summary(int started) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("%nBilan : %d sessions lancées en %.1f s, %d échecs de connexion, %d connexions perdues%n",
+                started, seconds, connectFailures.sum(), lost.sum());
+        if (lastFailure.get() != null) {
+            System.out.println("Dernier échec de connexion : " + lastFailure.get());
+        }
+        System.out.printf("%-10s %10s %10s %7s %8s %10s %10s %10s %10s%n", "action", "réussies", "par s", "busy",
+                "erreurs", "p50 (ms)", "p99 (ms)", "p999 (ms)", "max (ms)");
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats kind = entry.getValue();
+            Histogram.Snapshot latency = kind.latency.snapshot();
+            System.out.printf("%-10s %10d %10.1f %7d %8d %10.2f %10.2f %10.2f %10.2f%n", entry.getKey(), latency.count(),
+                    latency.count() / seconds, kind.busy.sum(), kind.errors.sum(), latency.percentile(0.5) / 1e3,
+                    latency.percentile(0.99) / 1e3, latency.percentile(0.999) / 1e3, latency.max() / 1e3);
+        }
+    }
+}
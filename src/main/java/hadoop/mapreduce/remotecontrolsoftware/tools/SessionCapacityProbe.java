@@ -0,0 +1,188 @@
+package hadoop.mapreduce.remotecontrolsoftware.tools;
+
+import hadoop.mapreduce.remotecontrolsoftware.client.ClientTls;
+import hadoop.mapreduce.remotecontrolsoftware.server.ConnectionAcceptor;
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerConfig;
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerContext;
+import hadoop.mapreduce.remotecontrolsoftware.server.SessionExecutor;
+import hadoop.mapreduce.remotecontrolsoftware.server.SessionRegistry;
+
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare le coût des sessions authentifiées inactives selon le mode d’entrées/sorties du serveur.
+ * Démarre le serveur dans ce processus, ouvre N sessions TLS, les authentifie, puis mesure
+ * le nombre de threads et la mémoire retenue pendant qu’elles restent inactives.
+ * <p>
+ * Usage (depuis la racine du projet, pour trouver {@code server.keystore}) :
+ * {@code java -cp target/classes hadoop.mapreduce.remotecontrolsoftware.tools.SessionCapacityProbe 2000 blocking nio}
+ * <p>
+ * Chaque mode peut préciser la stratégie d’exécution : {@code blocking/bounded}, {@code blocking/virtual}...
+ * <p>
+ * Les sockets clients vivent dans le même processus : leur coût est identique dans les deux modes,
+ * seule la différence entre les lignes est significative.
+ */
+public class SessionCapacityProbe {
+    private static final int CLIENT_THREADS = 16; // Threads qui ouvrent les sessions (arrêtés avant la mesure)
+    private static final int OPEN_TIMEOUT_MILLIS = 30_000; // Délai maximal d’ouverture d’une session
+
+    /**
+     * Point d’entrée de l’outil.
+     * @param args Nombre de sessions puis modes à comparer (blocking, nio, blocking/virtual...)
+     * @throws Exception En cas d’erreur pendant la mesure
+     */
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000; // Nombre de sessions à ouvrir
+        List<String> modes = new ArrayList<>(); // Modes à comparer
+        for (int i = 1; i < args.length; i++) {
+            modes.add(args[i]);
+        }
+        if (modes.isEmpty()) {
+            Collections.addAll(modes, "blocking", "nio");
+        }
+        System.out.printf("%-18s %10s %10s %12s %12s %14s %12s%n", "mode", "sessions", "threads+", "pic tâches",
+                "heap+ (Mo)", "Ko/session", "ouverture");
+        for (String mode : modes) {
+            String[] parts = mode.toUpperCase().split("/"); // Mode d’E/S et stratégie d’exécution
+            ServerConfig config = new ServerConfig().port(0).ioMode(ServerConfig.IoMode.valueOf(parts[0]));
+            if (parts.length > 1) {
+                config.executionMode(SessionExecutor.Mode.valueOf(parts[1]));
+            }
+            probe(config, sessions);
+        }
+    }
+
+    /**
+     * Mesure un mode d’entrées/sorties.
+     * @param config La configuration du serveur à mesurer
+     * @param sessions Nombre de sessions à ouvrir
+     * @throws Exception En cas d’erreur pendant la mesure
+     */
+    private static void probe(ServerConfig config, int sessions) throws Exception {
+        QuietServer server = new QuietServer(); // Serveur sans interface ni journal
+        settle();
+        int baseThreads = ManagementFactory.getThreadMXBean().getThreadCount(); // Threads avant le serveur
+        long baseMemory = usedMemory(); // Mémoire avant le serveur
+
+        ConnectionAcceptor acceptor = ConnectionAcceptor.open(config, server);
+        Thread acceptThread = new Thread(() -> {
+            try {
+                acceptor.serve(); // Accepte jusqu’à la fermeture
+            } catch (IOException ignored) {
+                // Fermeture de l’accepteur en fin de mesure
+            }
+        }, "probe-acceptor");
+        acceptThread.start();
+
+        List<SSLSocket> clients = Collections.synchronizedList(new ArrayList<>()); // Sessions ouvertes
+        long start = System.nanoTime();
+        ExecutorService openers = Executors.newFixedThreadPool(CLIENT_THREADS);
+        for (int i = 0; i < sessions; i++) {
+            openers.execute(() -> {
+                try {
+                    clients.add(openSession(acceptor.port()));
+                } catch (IOException e) {
+                    System.err.println("Session refusée : " + e.getMessage());
+                }
+            });
+        }
+        openers.shutdown();
+        openers.awaitTermination(10, TimeUnit.MINUTES); // Les threads clients disparaissent avant la mesure
+        long openMillis = (System.nanoTime() - start) / 1_000_000;
+
+        settle();
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount() - baseThreads; // Threads ajoutés
+        long memory = usedMemory() - baseMemory; // Mémoire ajoutée (tas + buffers directs)
+        String label = config.ioMode().name().toLowerCase() + "/" + acceptor.executor().mode().name().toLowerCase();
+        System.out.printf("%-18s %10d %10d %12d %12.1f %14.1f %10d ms%n", label, server.sessions.size(), threads,
+                acceptor.executor().peak(), memory / (1024.0 * 1024.0), memory / 1024.0 / Math.max(1, clients.size()),
+                openMillis);
+
+        for (SSLSocket client : clients) { // Libère les sessions
+            client.close();
+        }
+        acceptor.close();
+        acceptThread.join();
+    }
+
+    /**
+     * Ouvre une session TLS et s’authentifie, puis la laisse inactive.
+     * @param port Port du serveur
+     * @return Le socket authentifié
+     * @throws IOException En cas d’échec de connexion ou d’authentification
+     */
+    private static SSLSocket openSession(int port) throws IOException {
+        SSLSocket socket = ClientTls.connect("localhost", port);
+        socket.setSoTimeout(OPEN_TIMEOUT_MILLIS); // Une session en file d’attente (pool borné) ne bloque pas la mesure
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        in.readLine(); // Demande de login
+        out.println("probe");
+        in.readLine(); // Demande de mot de passe
+        out.println("probe");
+        String response = in.readLine(); // Résultat de l’authentification
+        if (response == null || !response.contains("Authentification réussie")) {
+            socket.close();
+            throw new IOException("Authentification refusée : " + response);
+        }
+        return socket;
+    }
+
+    /**
+     * Laisse le temps aux threads de se terminer puis force un GC pour stabiliser les mesures.
+     * @throws InterruptedException Si l’attente est interrompue
+     */
+    private static void settle() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+    }
+
+    /**
+     * @return La mémoire utilisée par le tas et les buffers directs
+     */
+    private static long usedMemory() {
+        long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            used += pool.getMemoryUsed(); // Buffers directs et mappés
+        }
+        return used;
+    }
+
+    /**
+     * Serveur minimal : accepte tout identifiant et ne journalise rien.
+     */
+    private static class QuietServer implements ServerContext {
+        private final SessionRegistry sessions = new SessionRegistry(); // Sessions authentifiées
+
+        @Override
+        public void log(String message) {
+            // Silencieux pendant la mesure
+        }
+
+        @Override
+        public boolean authenticate(String login, String password) {
+            return true;
+        }
+
+        @Override
+        public SessionRegistry.Session addClient(String clientAddress, String login, String protocol) {
+            return sessions.open(clientAddress, login, protocol);
+        }
+    }
+}
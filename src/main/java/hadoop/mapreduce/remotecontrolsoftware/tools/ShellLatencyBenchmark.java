@@ -0,0 +1,114 @@
+package hadoop.mapreduce.remotecontrolsoftware.tools;
+
+import hadoop.mapreduce.remotecontrolsoftware.server.SessionShell;
+import hadoop.mapreduce.remotecontrolsoftware.server.ShellPool;
+import hadoop.mapreduce.remotecontrolsoftware.server.StreamingCommand;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compare la latence des commandes courtes entre un processus par commande (mode {@code fork})
+ * et l’interpréteur persistant d’une session (mode {@code persistent}, voir {@code rcs.shell}).
+ * Les commandes sont exécutées dans ce processus, sans réseau : seul le coût d’exécution est mesuré,
+ * du lancement jusqu’au dernier caractère de sortie lu.
+ * <p>
+ * Usage : {@code java -cp target/classes hadoop.mapreduce.remotecontrolsoftware.tools.ShellLatencyBenchmark 200 "echo ok"}
+ * <p>
+ * Le premier appel du mode persistant (interpréteur pris dans la réserve) est affiché à part.
+ */
+public class ShellLatencyBenchmark {
+    private static final int WARMUP = 20; // Exécutions ignorées avant la mesure
+
+    /**
+     * Point d’entrée de l’outil.
+     * @param args Nombre d’exécutions par mode, puis commandes à mesurer ("echo ok" par défaut)
+     * @throws Exception En cas d’erreur pendant la mesure
+     */
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 200; // Exécutions mesurées par mode
+        List<String> commands = new ArrayList<>(); // Commandes à mesurer
+        commands.addAll(Arrays.asList(args).subList(Math.min(1, args.length), args.length));
+        if (commands.isEmpty()) {
+            commands.add("echo ok");
+        }
+
+        System.out.printf("%-12s %-24s %12s %10s %10s %10s %10s%n", "mode", "commande", "1er appel", "moy. (ms)",
+                "p50", "p99", "max");
+        for (String command : commands) {
+            measure("fork", command, runs, null);
+            ShellPool pool = new ShellPool(1, message -> System.err.println(message));
+            SessionShell shell = new SessionShell(pool);
+            try {
+                while (pool.available() == 0) { // Attend l’interpréteur prêt, comme pour une session réelle
+                    Thread.sleep(10);
+                }
+                measure("persistent", command, runs, shell);
+            } finally {
+                shell.close();
+                pool.close();
+            }
+        }
+    }
+
+    /**
+     * Mesure une commande dans un mode.
+     * @param mode Le libellé du mode
+     * @param command La commande
+     * @param runs Le nombre d’exécutions mesurées
+     * @param shell L’interpréteur de la session, ou null pour un processus par commande
+     * @throws Exception En cas d’erreur d’exécution
+     */
+    private static void measure(String mode, String command, int runs, SessionShell shell) throws Exception {
+        AtomicLong chars = new AtomicLong(); // Caractères lus : la sortie est consommée comme par un client
+        StreamingCommand.Output sink = (source, stream) -> drain(source, chars);
+        long first = time(command, sink, shell); // Premier appel : lancement ou prise dans la réserve
+        for (int i = 0; i < WARMUP; i++) {
+            time(command, sink, shell);
+        }
+        long[] samples = new long[runs];
+        long total = 0;
+        for (int i = 0; i < runs; i++) {
+            samples[i] = time(command, sink, shell);
+            total += samples[i];
+        }
+        Arrays.sort(samples);
+        System.out.printf("%-12s %-24s %12.3f %10.3f %10.3f %10.3f %10.3f%n", mode,
+                command.length() > 24 ? command.substring(0, 21) + "..." : command, first / 1e6,
+                total / 1e6 / runs, samples[runs / 2] / 1e6, samples[Math.min(runs - 1, runs * 99 / 100)] / 1e6,
+                samples[runs - 1] / 1e6);
+    }
+
+    /**
+     * Exécute une fois la commande.
+     * @param command La commande
+     * @param sink La destination de la sortie
+     * @param shell L’interpréteur de la session, ou null
+     * @return La durée de l’exécution en nanosecondes
+     * @throws Exception En cas d’erreur d’exécution
+     */
+    private static long time(String command, StreamingCommand.Output sink, SessionShell shell) throws Exception {
+        long start = System.nanoTime();
+        new StreamingCommand(command, sink, shell).run();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Lit un flux jusqu’à sa fin.
+     * @param source Le flux
+     * @param chars Reçoit le nombre de caractères lus
+     * @throws IOException Si la lecture échoue
+     */
+    private static void drain(Reader source, AtomicLong chars) throws IOException {
+        char[] buffer = new char[8192];
+        int count;
+        while ((count = source.read(buffer)) >= 0) {
+            chars.addAndGet(count);
+        }
+        source.close();
+    }
+}
@@ -0,0 +1,243 @@
+package hadoop.mapreduce.remotecontrolsoftware.tools;
+
+import hadoop.mapreduce.remotecontrolsoftware.client.ClientTls;
+import hadoop.mapreduce.remotecontrolsoftware.client.FramedConnection;
+import hadoop.mapreduce.remotecontrolsoftware.client.ParallelUpload;
+import hadoop.mapreduce.remotecontrolsoftware.protocol.Protocol;
+import hadoop.mapreduce.remotecontrolsoftware.server.ConnectionAcceptor;
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerConfig;
+import hadoop.mapreduce.remotecontrolsoftware.server.ServerContext;
+import hadoop.mapreduce.remotecontrolsoftware.server.SessionRegistry;
+
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare le débit et le coût CPU des quatre façons d’envoyer un fichier au serveur :
+ * {@code text} (commande {@code upload:} du protocole texte, octets bruts), {@code upload}
+ * (flux du protocole binaire), {@code put} (upload reprenable, CRC32C par morceau et SHA-256 final)
+ * et {@code stripes} (put découpé en {@code rcs.upload.stripes} bandes, une connexion par bande).
+ * Démarre le serveur dans ce processus, envoie un fichier aléatoire puis affiche le débit et
+ * le temps CPU consommé par gigaoctet.
+ * <p>
+ * Usage (depuis la racine du projet, pour trouver {@code server.keystore}) :
+ * {@code java -cp target/classes hadoop.mapreduce.remotecontrolsoftware.tools.UploadBenchmark 512 nio text upload put stripes}
+ * <p>
+ * Le client et le serveur partagent le processus : le temps CPU mesuré est celui des deux côtés
+ * (chiffrement TLS compris), seule la différence entre les lignes est significative.
+ */
+public class UploadBenchmark {
+    private static final int RUNS = 3; // Mesures par méthode (la meilleure est retenue)
+
+    /**
+     * Point d’entrée de l’outil.
+     * @param args Taille du fichier en Mo, mode d’E/S du serveur (blocking ou nio) puis méthodes à comparer
+     * @throws Exception En cas d’erreur pendant la mesure
+     */
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 256; // Taille du fichier envoyé
+        ServerConfig.IoMode ioMode = args.length > 1 ? ServerConfig.IoMode.valueOf(args[1].toUpperCase())
+                : ServerConfig.IoMode.NIO;
+        List<String> methods = new ArrayList<>(); // Méthodes à comparer
+        for (int i = 2; i < args.length; i++) {
+            methods.add(args[i]);
+        }
+        if (methods.isEmpty()) {
+            Collections.addAll(methods, "text", "upload", "put", "stripes");
+        }
+        Path file = Files.createTempFile("rcs-bench-", ".bin"); // Fichier aléatoire (incompressible)
+        ConnectionAcceptor acceptor = ConnectionAcceptor.open(new ServerConfig().port(0).ioMode(ioMode), new QuietServer());
+        Thread acceptThread = new Thread(() -> {
+            try {
+                acceptor.serve(); // Accepte jusqu’à la fermeture
+            } catch (IOException ignored) {
+                // Fermeture de l’accepteur en fin de mesure
+            }
+        }, "bench-acceptor");
+        acceptThread.start();
+        try {
+            fill(file, megabytes);
+            System.out.printf("%-8s %-10s %10s %12s %14s%n", "méthode", "serveur", "Mo", "Mo/s", "CPU s/Go");
+            for (String method : methods) {
+                double best = 0; // Meilleur débit
+                double cpu = 0; // Temps CPU de la meilleure mesure
+                for (int run = 0; run < RUNS; run++) {
+                    long cpuStart = processCpuNanos();
+                    long start = System.nanoTime();
+                    send(method, acceptor.port(), file);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    double throughput = megabytes / seconds;
+                    if (throughput > best) {
+                        best = throughput;
+                        cpu = (processCpuNanos() - cpuStart) / 1e9 / (megabytes / 1024.0);
+                    }
+                    Files.deleteIfExists(received(file)); // L’envoi suivant repart de zéro
+                }
+                System.out.printf("%-8s %-10s %10d %12.1f %14.2f%n", method, ioMode.name().toLowerCase(), megabytes, best, cpu);
+            }
+        } finally {
+            acceptor.close();
+            acceptThread.join();
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(received(file));
+        }
+    }
+
+    /**
+     * Envoie le fichier avec une méthode et attend la confirmation du serveur.
+     * @param method text, upload, put ou stripes
+     * @param port Port du serveur
+     * @param file Le fichier
+     * @throws Exception Si l’envoi échoue
+     */
+    private static void send(String method, int port, Path file) throws Exception {
+        if ("text".equals(method)) {
+            sendText(port, file);
+            return;
+        }
+        if ("stripes".equals(method)) {
+            ParallelUpload.upload(() -> {
+                FramedConnection connection = new FramedConnection("localhost", port, cause -> { });
+                connection.authenticate("bench", "bench");
+                return connection;
+            }, file, ParallelUpload.DEFAULT_STRIPES, null);
+            return;
+        }
+        CompletableFuture<String> result = new CompletableFuture<>(); // Bilan du serveur
+        FramedConnection.StreamListener listener = new FramedConnection.StreamListener() {
+            @Override
+            public void onEnd(String[] fields) {
+                result.complete(fields[0]);
+            }
+
+            @Override
+            public void onError(String message) {
+                result.completeExceptionally(new IOException(message));
+            }
+        };
+        try (FramedConnection connection = new FramedConnection("localhost", port, cause -> { })) {
+            connection.authenticate("bench", "bench");
+            if ("upload".equals(method)) {
+                connection.upload(file, listener, null);
+            } else if ("put".equals(method)) {
+                connection.uploadResumable(file, listener, null);
+            } else {
+                throw new IllegalArgumentException("Méthode inconnue : " + method);
+            }
+            result.get(5, TimeUnit.MINUTES); // Attend l’écriture (et la vérification) côté serveur
+        }
+    }
+
+    /**
+     * Envoie le fichier par la commande {@code upload:} du protocole texte.
+     * @param port Port du serveur
+     * @param file Le fichier
+     * @throws IOException Si l’envoi échoue
+     */
+    private static void sendText(int port, Path file) throws IOException {
+        try (SSLSocket socket = ClientTls.connect("localhost", port)) {
+            OutputStream raw = socket.getOutputStream();
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(raw, StandardCharsets.UTF_8), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            in.readLine(); // Demande de login
+            out.println("bench");
+            in.readLine(); // Demande de mot de passe
+            out.println("bench");
+            in.readLine(); // Résultat de l’authentification
+            out.println("upload:");
+            expect(in, Protocol.SEND_FILE_NAME);
+            out.println(file.getFileName());
+            expect(in, Protocol.SEND_FILE_SIZE);
+            out.println(Files.size(file));
+            try (InputStream source = Files.newInputStream(file)) {
+                source.transferTo(raw); // Octets bruts du fichier
+            }
+            raw.flush();
+            in.readLine(); // Confirmation de réception
+        }
+    }
+
+    /**
+     * Lit une ligne et vérifie qu’il s’agit de la réponse attendue.
+     * @param in Le flux du serveur
+     * @param expected La ligne attendue
+     * @throws IOException Si le serveur répond autre chose
+     */
+    private static void expect(BufferedReader in, String expected) throws IOException {
+        String line = in.readLine();
+        if (!expected.equals(line)) {
+            throw new IOException("Réponse inattendue : " + line);
+        }
+    }
+
+    /**
+     * Remplit un fichier d’octets aléatoires.
+     * @param file Le fichier
+     * @param megabytes Sa taille en Mo
+     * @throws IOException Si l’écriture échoue
+     */
+    private static void fill(Path file, int megabytes) throws IOException {
+        Random random = new Random(42);
+        byte[] block = new byte[1024 * 1024];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int i = 0; i < megabytes; i++) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+    }
+
+    /**
+     * @param file Le fichier envoyé
+     * @return Le fichier écrit par le serveur (dans son répertoire de travail)
+     */
+    private static Path received(Path file) {
+        return Paths.get("received_" + file.getFileName());
+    }
+
+    /**
+     * @return Le temps CPU consommé par le processus, en nanosecondes
+     */
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    /**
+     * Serveur minimal : accepte tout identifiant et ne journalise rien.
+     */
+    private static class QuietServer implements ServerContext {
+        private final SessionRegistry sessions = new SessionRegistry(); // Sessions des envois mesurés
+
+        @Override
+        public void log(String message) {
+            // Silencieux pendant la mesure
+        }
+
+        @Override
+        public boolean authenticate(String login, String password) {
+            return true;
+        }
+
+        @Override
+        public SessionRegistry.Session addClient(String clientAddress, String login, String protocol) {
+            return sessions.open(clientAddress, login, protocol);
+        }
+    }
+}